@@ -8,12 +8,16 @@ import java.awt.event.KeyEvent;
 import java.util.Collection;
 import java.util.Optional;
 
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.preferences.sources.ValidatorPrefHelper;
+import org.openstreetmap.josm.data.validation.IncrementalValidator;
 import org.openstreetmap.josm.data.validation.OsmValidator;
 import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.ValidationTask;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.MapFrame;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.tools.Shortcut;
 
 /**
@@ -29,6 +33,9 @@ public class ValidateAction extends JosmAction {
     /** Last selection used to validate */
     private transient Collection<OsmPrimitive> lastSelection;
 
+    /** Keeps the results of the last validation of a whole data set up to date */
+    private transient IncrementalValidator incrementalValidator;
+
     /**
      * Constructor
      */
@@ -76,12 +83,40 @@ public class ValidateAction extends JosmAction {
                     () -> getLayerManager().getActiveDataSet().allNonDeletedPrimitives());
         }
 
-        MainApplication.worker.submit(new ValidationTask(tests, selection, lastSelection));
+        ValidationTask task = new ValidationTask(tests, selection, lastSelection);
+        if (lastSelection == null && Boolean.TRUE.equals(ValidatorPrefHelper.PREF_INCREMENTAL.get())) {
+            task.setIncrementalValidator(getIncrementalValidator(getLayerManager().getActiveDataSet()));
+        } else {
+            destroyIncrementalValidator();
+        }
+        MainApplication.worker.submit(task);
+    }
+
+    private IncrementalValidator getIncrementalValidator(DataSet dataSet) {
+        if (incrementalValidator != null && incrementalValidator.getDataSet() != dataSet) {
+            destroyIncrementalValidator();
+        }
+        if (incrementalValidator == null) {
+            incrementalValidator = new IncrementalValidator(dataSet);
+        }
+        return incrementalValidator;
+    }
+
+    private void destroyIncrementalValidator() {
+        if (incrementalValidator != null) {
+            incrementalValidator.destroy();
+            incrementalValidator = null;
+        }
     }
 
     @Override
     public void updateEnabledState() {
         setEnabled(getLayerManager().getActiveDataSet() != null);
+        if (incrementalValidator != null && getLayerManager().getLayersOfType(OsmDataLayer.class).stream()
+                .noneMatch(layer -> layer.getDataSet() == incrementalValidator.getDataSet())) {
+            // the layer has been removed
+            destroyIncrementalValidator();
+        }
     }
 
     @Override
@@ -89,6 +124,7 @@ public class ValidateAction extends JosmAction {
         // Hack - this action should stay forever because it could be added to toolbar
         // Do not call super.destroy() here
         lastSelection = null;
+        destroyIncrementalValidator();
     }
 
 }
@@ -9,13 +9,17 @@ import java.awt.Component;
 import java.awt.GraphicsEnvironment;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import javax.swing.JOptionPane;
 
@@ -23,6 +27,7 @@ import org.openstreetmap.josm.actions.ActionParameter;
 import org.openstreetmap.josm.actions.ExpertToggleAction;
 import org.openstreetmap.josm.actions.JosmAction;
 import org.openstreetmap.josm.actions.ParameterizedAction;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.IPrimitive;
 import org.openstreetmap.josm.data.osm.OsmData;
 import org.openstreetmap.josm.data.osm.search.PushbackTokenizer;
@@ -63,6 +68,12 @@ public class SearchAction extends JosmAction implements ParameterizedAction {
      * Maximum number of characters before the search expression is shortened for display purposes.
      */
     public static final int MAX_LENGTH_SEARCH_EXPRESSION_DISPLAY = 100;
+    /**
+     * The preference key for the number of threads used to search. The search runs on the calling thread by default,
+     * since the matchers registered by plugins through {@link SearchCompiler#addMatchFactory} may not be thread safe.
+     * @since xxx
+     */
+    public static final String SEARCH_THREADS = "search.numberOfThreads";
 
     private static final String SEARCH_EXPRESSION = "searchExpression";
 
@@ -338,11 +349,14 @@ public class SearchAction extends JosmAction implements ParameterizedAction {
     }
 
     static final class SearchTask extends PleaseWaitRunnable {
+        /** The number of primitives tested by one task when the search runs on several threads */
+        private static final int PARALLEL_CHUNK_SIZE = 1000;
+
         private final OsmData<?, ?, ?, ?> ds;
         private final SearchSetting setting;
         private final Collection<IPrimitive> selection;
         private final Predicate<IPrimitive> predicate;
-        private boolean canceled;
+        private volatile boolean canceled;
         private int foundMatches;
         private final SearchReceiver resultReceiver;
 
@@ -393,35 +407,49 @@ public class SearchAction extends JosmAction implements ParameterizedAction {
                     foundMatches = selection.size();
                 }
 
-                Collection<? extends IPrimitive> all;
-                if (setting.allElements) {
-                    all = ds.allPrimitives();
-                } else {
-                    all = ds.getPrimitives(p -> p.isSelectable()); // Do not use method reference before Java 11!
+                Collection<? extends IPrimitive> all = null;
+                if (ds instanceof DataSet && setting.mode != SearchMode.in_selection) {
+                    // only the primitives found by the tag and spatial indexes can be added to or removed from the selection
+                    all = SearchCompiler.getCandidates(matcher, (DataSet) ds);
+                    if (all != null && !setting.allElements) {
+                        all = all.stream().filter(p -> p.isSelectable()).collect(Collectors.toList());
+                    }
+                }
+                if (all == null) {
+                    if (setting.allElements) {
+                        all = ds.allPrimitives();
+                    } else {
+                        all = ds.getPrimitives(p -> p.isSelectable()); // Do not use method reference before Java 11!
+                    }
                 }
                 final ProgressMonitor subMonitor = getProgressMonitor().createSubTaskMonitor(all.size(), false);
                 subMonitor.beginTask(trn("Searching in {0} object", "Searching in {0} objects", all.size(), all.size()));
 
-                for (IPrimitive osm : all) {
-                    if (canceled) {
-                        return;
-                    }
-                    if (setting.mode == SearchMode.replace) {
-                        if (matcher.match(osm)) {
-                            selection.add(osm);
-                            ++foundMatches;
-                        }
-                    } else if (setting.mode == SearchMode.add && !predicate.test(osm) && matcher.match(osm)) {
-                        selection.add(osm);
-                        ++foundMatches;
-                    } else if (setting.mode == SearchMode.remove && predicate.test(osm) && matcher.match(osm)) {
-                        selection.remove(osm);
-                        ++foundMatches;
-                    } else if (setting.mode == SearchMode.in_selection && predicate.test(osm) && !matcher.match(osm)) {
-                        selection.remove(osm);
-                        --foundMatches;
-                    }
-                    subMonitor.worked(1);
+                // the primitives whose selection state may change
+                final List<IPrimitive> tested;
+                if (setting.mode == SearchMode.replace) {
+                    tested = new ArrayList<>(all);
+                } else if (setting.mode == SearchMode.add) {
+                    tested = all.stream().filter(predicate.negate()).collect(Collectors.toList());
+                } else {
+                    tested = all.stream().filter(predicate).collect(Collectors.toList());
+                }
+                subMonitor.worked(all.size() - tested.size());
+                final Predicate<IPrimitive> test = setting.mode == SearchMode.in_selection
+                        ? osm -> !matcher.match(osm) : osm -> matcher.match(osm);
+                final List<IPrimitive> found = findAll(tested, test, subMonitor);
+                if (canceled) {
+                    return;
+                }
+                if (setting.mode == SearchMode.replace || setting.mode == SearchMode.add) {
+                    selection.addAll(found);
+                    foundMatches += found.size();
+                } else if (setting.mode == SearchMode.remove) {
+                    found.forEach(selection::remove);
+                    foundMatches += found.size();
+                } else if (setting.mode == SearchMode.in_selection) {
+                    found.forEach(selection::remove);
+                    foundMatches -= found.size();
                 }
                 subMonitor.finishTask();
             } catch (SearchParseError e) {
@@ -435,6 +463,46 @@ public class SearchAction extends JosmAction implements ParameterizedAction {
             }
         }
 
+        /**
+         * Finds the primitives passing the test, in the order of the given list. The primitives are tested on several
+         * threads if there are many of them.
+         * @param primitives the primitives to test
+         * @param test the test
+         * @param monitor the progress monitor
+         * @return the primitives passing the test, incomplete if the task has been canceled
+         */
+        private List<IPrimitive> findAll(List<IPrimitive> primitives, Predicate<IPrimitive> test, ProgressMonitor monitor) {
+            final List<IPrimitive> result = new ArrayList<>();
+            if (primitives.size() > PARALLEL_CHUNK_SIZE
+                    && Config.getPref().getInt(SEARCH_THREADS, 1) > 1) {
+                final ForkJoinPool pool = Utils.newForkJoinPool(SEARCH_THREADS, "search-%d", Thread.NORM_PRIORITY);
+                try {
+                    final List<ForkJoinTask<List<IPrimitive>>> tasks = new ArrayList<>();
+                    for (int start = 0; start < primitives.size(); start += PARALLEL_CHUNK_SIZE) {
+                        final List<IPrimitive> chunk = primitives.subList(start, Math.min(start + PARALLEL_CHUNK_SIZE, primitives.size()));
+                        tasks.add(pool.submit(() -> chunk.stream().filter(osm -> !canceled && test.test(osm)).collect(Collectors.toList())));
+                    }
+                    for (int i = 0; i < tasks.size() && !canceled; i++) {
+                        result.addAll(tasks.get(i).join());
+                        monitor.worked(Math.min(PARALLEL_CHUNK_SIZE, primitives.size() - i * PARALLEL_CHUNK_SIZE));
+                    }
+                } finally {
+                    pool.shutdownNow();
+                }
+            } else {
+                for (IPrimitive osm : primitives) {
+                    if (canceled) {
+                        break;
+                    }
+                    if (test.test(osm)) {
+                        result.add(osm);
+                    }
+                    monitor.worked(1);
+                }
+            }
+            return result;
+        }
+
         @Override
         protected void finish() {
             if (canceled) {
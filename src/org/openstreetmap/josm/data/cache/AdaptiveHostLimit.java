@@ -0,0 +1,223 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.cache;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * Number of parallel downloads allowed from a host, adjusted to the measured behaviour of the host.
+ * <p>
+ * The limit is increased by one download per round trip while the host is saturated and answers as fast as usual
+ * (additive increase), and it is halved at most once per round trip when the host answers with an error or asks to slow
+ * down with a 429 or 503 response (multiplicative decrease). The limit stays within the bounds given to the constructor, so
+ * the limit is fixed when both bounds are equal.
+ * @since xxx
+ */
+public final class AdaptiveHostLimit {
+
+    /** The limit is not increased while the average latency is higher than this factor times the usual latency */
+    private static final double LATENCY_TOLERANCE = 2;
+    /** Weight of a new sample in the average latency */
+    private static final double LATENCY_WEIGHT = 0.2;
+    /** Number of downloads after which the usual latency is measured again */
+    private static final int LATENCY_WINDOW = 50;
+    /** Duration over which the throughput is measured */
+    private static final long THROUGHPUT_WINDOW = TimeUnit.SECONDS.toNanos(5);
+    /** Duration after a decrease of the limit during which the host is considered as throttled */
+    private static final long THROTTLED_DURATION = TimeUnit.SECONDS.toNanos(10);
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private final String host;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int active;
+    private long downloads;
+    private long errors;
+    private long throttled;
+    private double latency = -1;
+    private double usualLatency = Double.POSITIVE_INFINITY;
+    private double windowLatency = Double.POSITIVE_INFINITY;
+    private int windowDownloads;
+    private boolean decreased;
+    private long lastDecrease;
+    private long throughputStart = System.nanoTime();
+    private long throughputBytes;
+    private double throughput;
+
+    /**
+     * Constructs a new {@code AdaptiveHostLimit}.
+     * @param host the host name
+     * @param limit the initial number of parallel downloads
+     * @param minLimit the smallest number of parallel downloads
+     * @param maxLimit the largest number of parallel downloads
+     */
+    AdaptiveHostLimit(String host, int limit, int minLimit, int maxLimit) {
+        this.host = host;
+        this.minLimit = Math.max(1, Math.min(minLimit, maxLimit));
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, limit));
+    }
+
+    /**
+     * Starts a download if the limit is not reached.
+     * @return {@code true} if the download may start
+     */
+    synchronized boolean tryAcquire() {
+        if (active < getLimit()) {
+            active++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Determines if a download may start.
+     * @return {@code true} if the limit is not reached
+     */
+    synchronized boolean isAvailable() {
+        return active < getLimit();
+    }
+
+    /**
+     * Ends a download.
+     */
+    synchronized void release() {
+        if (--active < 0) {
+            Logging.warn("More permits than it should be");
+            active = 0;
+        }
+    }
+
+    /**
+     * Adjusts the limit after a download, before it is {@linkplain #release() released}.
+     * @param durationNanos the duration of the HTTP request, in nanoseconds
+     * @param length the length of the received content, in bytes
+     * @param responseCode the HTTP response code, or a code above 500 if the request failed without response
+     */
+    synchronized void update(long durationNanos, long length, int responseCode) {
+        long now = System.nanoTime();
+        downloads++;
+        throughputBytes += length;
+        if (now - throughputStart >= THROUGHPUT_WINDOW) {
+            throughput = throughputBytes * 1e9 / (now - throughputStart);
+            throughputStart = now;
+            throughputBytes = 0;
+        }
+        if (responseCode == HTTP_TOO_MANY_REQUESTS || responseCode == HttpURLConnection.HTTP_UNAVAILABLE) {
+            throttled++;
+            decrease(now);
+            return;
+        } else if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+            errors++;
+            decrease(now);
+            return;
+        }
+
+        double sample = durationNanos / 1e6;
+        latency = latency < 0 ? sample : latency + LATENCY_WEIGHT * (sample - latency);
+        windowLatency = Math.min(windowLatency, sample);
+        usualLatency = Math.min(usualLatency, sample);
+        if (++windowDownloads >= LATENCY_WINDOW) {
+            // forget the fastest answers of the past, the host or the network may have changed
+            usualLatency = windowLatency;
+            windowLatency = Double.POSITIVE_INFINITY;
+            windowDownloads = 0;
+        }
+        // only grow when the limit is actually used, and the host does not slow down
+        if (active >= getLimit() && latency <= LATENCY_TOLERANCE * usualLatency) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    private void decrease(long now) {
+        // the downloads running when the limit was last decreased may still fail, so wait for a round trip
+        if (!decreased || now - lastDecrease >= Math.max(0, latency) * 1e6) {
+            limit = Math.max(minLimit, limit / 2);
+            decreased = true;
+            lastDecrease = now;
+        }
+    }
+
+    /**
+     * Returns the host name.
+     * @return the host name
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Returns the current number of parallel downloads allowed.
+     * @return the current number of parallel downloads allowed
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of running downloads.
+     * @return the number of running downloads
+     */
+    public synchronized int getActive() {
+        return active;
+    }
+
+    /**
+     * Determines if the host asked to slow down, or failed, recently.
+     * @return {@code true} if the limit was decreased in the last seconds
+     */
+    public synchronized boolean isThrottled() {
+        return decreased && System.nanoTime() - lastDecrease < THROTTLED_DURATION;
+    }
+
+    /**
+     * Returns the number of finished downloads.
+     * @return the number of finished downloads
+     */
+    public synchronized long getDownloads() {
+        return downloads;
+    }
+
+    /**
+     * Returns the ratio of downloads which failed with a server or network error.
+     * @return the ratio of failed downloads, between 0 and 1
+     */
+    public synchronized double getErrorRate() {
+        return downloads == 0 ? 0 : (double) errors / downloads;
+    }
+
+    /**
+     * Returns the ratio of downloads for which the host asked to slow down (HTTP 429 or 503).
+     * @return the ratio of throttled downloads, between 0 and 1
+     */
+    public synchronized double getThrottledRate() {
+        return downloads == 0 ? 0 : (double) throttled / downloads;
+    }
+
+    /**
+     * Returns the average duration of the successful downloads.
+     * @return the average latency in milliseconds, or {@code -1} if unknown
+     */
+    public synchronized double getLatency() {
+        return latency;
+    }
+
+    /**
+     * Returns the amount of data received from the host per second, measured over the last seconds.
+     * @return the throughput in bytes per second
+     */
+    public synchronized double getThroughput() {
+        long elapsed = System.nanoTime() - throughputStart;
+        return throughput > 0 || elapsed <= 0 ? throughput : throughputBytes * 1e9 / elapsed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AdaptiveHostLimit [host=" + host + ", limit=" + limit + ", active=" + active + ", downloads=" + downloads
+                + ", errors=" + errors + ", throttled=" + throttled + ", latency=" + latency + ']';
+    }
+}
@@ -52,6 +52,17 @@ public class CacheEntryAttributes extends ElementAttributes {
         attrs.put(HTTP_RESPONSE_CODE, "200");
     }
 
+    /**
+     * Constructs a new {@code CacheEntryAttributes} with all the attributes returned by {@link #getMetadata()},
+     * including the reserved ones.
+     * @param attributes the attributes
+     * @since xxx
+     */
+    CacheEntryAttributes(Map<String, String> attributes) {
+        this();
+        attrs.putAll(attributes);
+    }
+
     /**
      * Determines if the entry is marked as "no tile at this zoom level".
      * @return if the entry is marked as "no tile at this zoom level"
@@ -6,38 +6,61 @@ import java.net.URL;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.openstreetmap.josm.tools.Logging;
 
 /**
- * Queue for ThreadPoolExecutor that implements per-host limit. It will acquire a semaphore for each task
- * and it will set a runnable task with semaphore release, when job has finished.
+ * Queue for ThreadPoolExecutor that implements per-host limit. It will acquire the host limit for each task
+ * and it will set a runnable task with host limit release, when job has finished.
  * <p>
- * This implementation doesn't guarantee to have at most hostLimit connections per host[1], and it doesn't
- * guarantee that all threads will be busy, when there is work for them[2]. <br>
- * [1] More connection per host may happen, when ThreadPoolExecutor is growing its pool, and thus
- *     tasks do not go through the Queue <br>
- * [2] If we have a queue, and for all hosts in queue we will fail to acquire semaphore, the thread
- *     take the first available job and wait for semaphore. It might be the case, that semaphore was released
- *     for some task further in queue, but this implementation doesn't try to detect such situation
+ * Among the queued jobs whose host limit is not reached, the one with the lowest {@link JCSCachedTileLoaderJob#getPriority()
+ * priority} is taken first. The priorities are evaluated each time a worker looks for a job, so they may change while the
+ * jobs are queued. When the host limit is reached for all queued jobs, the workers wait until a job is queued or a job has
+ * finished, instead of waiting for the host limit of a job taken out of the queue.
+ * <p>
+ * The number of parallel downloads of each host is either fixed, or {@linkplain AdaptiveHostLimit adjusted} to the measured
+ * latency and errors of the host within the configured bounds.
+ * <p>
+ * This implementation doesn't guarantee to have at most hostLimit connections per host, as more connection per host may
+ * happen, when ThreadPoolExecutor is growing its pool, and thus tasks do not go through the Queue.
  *
  * @author Wiktor Niesiobędzki
  */
 public class HostLimitQueue extends LinkedBlockingDeque<Runnable> {
     private static final long serialVersionUID = 1L;
 
-    private final Map<String, Semaphore> hostSemaphores = new ConcurrentHashMap<>();
+    private final Map<String, AdaptiveHostLimit> hostLimits = new ConcurrentHashMap<>();
     private final int hostLimit;
+    private final int minHostLimit;
+    private final int maxHostLimit;
+    private final ReentrantLock changeLock = new ReentrantLock();
+    private final Condition changed = changeLock.newCondition();
+    /** Number of jobs queued or finished, used to detect the changes which happened while looking for a job */
+    private long changes;
 
     /**
      * Creates an unbounded queue
      * @param hostLimit how many parallel calls to host to allow
      */
     public HostLimitQueue(int hostLimit) {
+        this(hostLimit, hostLimit, hostLimit);
+    }
+
+    /**
+     * Creates an unbounded queue adjusting the number of parallel calls to each host
+     * @param hostLimit how many parallel calls to host to allow initially
+     * @param minHostLimit the smallest number of parallel calls to host
+     * @param maxHostLimit the largest number of parallel calls to host
+     * @since xxx
+     */
+    public HostLimitQueue(int hostLimit, int minHostLimit, int maxHostLimit) {
         super(); // create unbounded queue
         this.hostLimit = hostLimit;
+        this.minHostLimit = minHostLimit;
+        this.maxHostLimit = maxHostLimit;
     }
 
     /**
@@ -48,21 +71,29 @@ public class HostLimitQueue extends LinkedBlockingDeque<Runnable> {
     public HostLimitQueue(int hostLimit, int queueLimit) {
         super(queueLimit); // create bounded queue
         this.hostLimit = hostLimit;
+        this.minHostLimit = hostLimit;
+        this.maxHostLimit = hostLimit;
     }
 
-    private JCSCachedTileLoaderJob<?, ?> findJob() {
-        for (Runnable r : this) {
-            if (r instanceof JCSCachedTileLoaderJob) {
+    private Runnable findJob() {
+        while (true) {
+            JCSCachedTileLoaderJob<?, ?> best = null;
+            double bestPriority = Double.POSITIVE_INFINITY;
+            for (Runnable r : this) {
+                if (!(r instanceof JCSCachedTileLoaderJob)) {
+                    if (remove(r)) {
+                        return r;
+                    }
+                    continue;
+                }
                 JCSCachedTileLoaderJob<?, ?> job = (JCSCachedTileLoaderJob<?, ?>) r;
-                if (tryAcquireSemaphore(job)) {
-                    if (remove(job)) {
-                        return job;
-                    } else {
-                        // we have acquired the semaphore, but we didn't manage to remove job, as someone else did
-                        // release the semaphore and look for another candidate
-                        releaseSemaphore(job);
+                if (getHostLimit(job).isAvailable()) {
+                    double priority = job.getPriority();
+                    if (best == null || priority < bestPriority) {
+                        best = job;
+                        bestPriority = priority;
                     }
-                } else {
+                } else if (Logging.isDebugEnabled()) {
                     URL url = null;
                     try {
                         url = job.getUrl();
@@ -72,52 +103,136 @@ public class HostLimitQueue extends LinkedBlockingDeque<Runnable> {
                     Logging.debug("TMS - Skipping job {0} because host limit reached", url);
                 }
             }
+            if (best == null) {
+                return null;
+            }
+            if (getHostLimit(best).tryAcquire()) {
+                if (remove(best)) {
+                    final JCSCachedTileLoaderJob<?, ?> job = best;
+                    job.setFinishedTask(() -> releaseHostLimit(job));
+                    return job;
+                }
+                // we have acquired the host limit, but we didn't manage to remove job, as someone else did
+                // release the host limit and look for another candidate
+                releaseHostLimit(best);
+            }
+        }
+    }
+
+    private long getChanges() {
+        changeLock.lock();
+        try {
+            return changes;
+        } finally {
+            changeLock.unlock();
+        }
+    }
+
+    private void signalChange() {
+        changeLock.lock();
+        try {
+            changes++;
+            changed.signalAll();
+        } finally {
+            changeLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a job is queued or finished, if it did not happen since {@code seen} was read.
+     * @param seen the number of changes when the queue was last examined
+     * @param nanos the maximum time to wait, in nanoseconds
+     * @return an estimate of the remaining time, in nanoseconds
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private long awaitChange(long seen, long nanos) throws InterruptedException {
+        changeLock.lock();
+        try {
+            while (changes == seen && nanos > 0) {
+                nanos = changed.awaitNanos(nanos);
+            }
+            return nanos;
+        } finally {
+            changeLock.unlock();
         }
-        return null;
     }
 
     @Override
     public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
-        Runnable job = findJob();
-        if (job != null) {
-            return job;
-        }
-        job = pollFirst(timeout, unit);
-        if (job != null) {
-            try {
-                boolean gotLock = tryAcquireSemaphore(job, timeout, unit);
-                return gotLock ? job : null;
-            } catch (InterruptedException e) {
-                // acquire my got interrupted, first offer back what was taken
-                if (!offer(job)) {
-                    Logging.warn("Unable to offer back " + job);
-                }
-                throw e;
+        long nanos = unit.toNanos(timeout);
+        while (true) {
+            long seen = getChanges();
+            Runnable job = findJob();
+            if (job != null || nanos <= 0) {
+                return job;
             }
+            nanos = awaitChange(seen, nanos);
         }
-        return job;
     }
 
     @Override
     public Runnable take() throws InterruptedException {
-        Runnable job = findJob();
-        if (job != null) {
-            return job;
-        }
-        job = takeFirst();
-        try {
-            acquireSemaphore(job);
-        } catch (InterruptedException e) {
-            // acquire my got interrupted, first offer back what was taken
-            if (!offer(job)) {
-                Logging.warn("Unable to offer back " + job);
+        while (true) {
+            long seen = getChanges();
+            Runnable job = findJob();
+            if (job != null) {
+                return job;
             }
-            throw e;
+            awaitChange(seen, Long.MAX_VALUE);
         }
-        return job;
     }
 
-    private Semaphore getSemaphore(JCSCachedTileLoaderJob<?, ?> job) {
+    @Override
+    public boolean offerFirst(Runnable e) {
+        boolean ret = super.offerFirst(e);
+        signalChange();
+        return ret;
+    }
+
+    @Override
+    public boolean offerLast(Runnable e) {
+        boolean ret = super.offerLast(e);
+        signalChange();
+        return ret;
+    }
+
+    @Override
+    public boolean offerFirst(Runnable e, long timeout, TimeUnit unit) throws InterruptedException {
+        boolean ret = super.offerFirst(e, timeout, unit);
+        signalChange();
+        return ret;
+    }
+
+    @Override
+    public boolean offerLast(Runnable e, long timeout, TimeUnit unit) throws InterruptedException {
+        boolean ret = super.offerLast(e, timeout, unit);
+        signalChange();
+        return ret;
+    }
+
+    @Override
+    public void putFirst(Runnable e) throws InterruptedException {
+        super.putFirst(e);
+        signalChange();
+    }
+
+    @Override
+    public void putLast(Runnable e) throws InterruptedException {
+        super.putLast(e);
+        signalChange();
+    }
+
+    /**
+     * Returns the number of parallel downloads allowed for a host, and the statistics of its downloads.
+     * @param host the host name
+     * @return the limit of the host, or {@code null} if no download from this host was queued
+     * @since xxx
+     */
+    public AdaptiveHostLimit getHostLimit(String host) {
+        return hostLimits.get(host);
+    }
+
+    private AdaptiveHostLimit getHostLimit(JCSCachedTileLoaderJob<?, ?> job) {
         String host;
         try {
             host = job.getUrl().getHost();
@@ -125,55 +240,20 @@ public class HostLimitQueue extends LinkedBlockingDeque<Runnable> {
             // do not pass me illegal URL's
             throw new IllegalArgumentException(e);
         }
-        Semaphore limit = hostSemaphores.get(host);
+        AdaptiveHostLimit limit = hostLimits.get(host);
         if (limit == null) {
-            limit = hostSemaphores.computeIfAbsent(host, k -> new Semaphore(hostLimit));
+            limit = hostLimits.computeIfAbsent(host, k -> new AdaptiveHostLimit(k, hostLimit, minHostLimit, maxHostLimit));
         }
         return limit;
     }
 
-    private void acquireSemaphore(Runnable job) throws InterruptedException {
-        if (job instanceof JCSCachedTileLoaderJob) {
-            final JCSCachedTileLoaderJob<?, ?> jcsJob = (JCSCachedTileLoaderJob<?, ?>) job;
-            getSemaphore(jcsJob).acquire();
-            jcsJob.setFinishedTask(() -> releaseSemaphore(jcsJob));
-        }
-    }
-
-    private boolean tryAcquireSemaphore(final JCSCachedTileLoaderJob<?, ?> job) {
-        boolean ret = true;
-        Semaphore limit = getSemaphore(job);
-        if (limit != null) {
-            ret = limit.tryAcquire();
-            if (ret) {
-                job.setFinishedTask(() -> releaseSemaphore(job));
-            }
-        }
-        return ret;
-    }
-
-    private boolean tryAcquireSemaphore(Runnable job, long timeout, TimeUnit unit) throws InterruptedException {
-        boolean ret = true;
-        if (job instanceof JCSCachedTileLoaderJob) {
-            final JCSCachedTileLoaderJob<?, ?> jcsJob = (JCSCachedTileLoaderJob<?, ?>) job;
-            Semaphore limit = getSemaphore(jcsJob);
-            if (limit != null) {
-                ret = limit.tryAcquire(timeout, unit);
-                if (ret) {
-                    jcsJob.setFinishedTask(() -> releaseSemaphore(jcsJob));
-                }
-            }
-        }
-        return ret;
-    }
-
-    private void releaseSemaphore(JCSCachedTileLoaderJob<?, ?> job) {
-        Semaphore limit = getSemaphore(job);
-        if (limit != null) {
-            limit.release();
-            if (limit.availablePermits() > hostLimit) {
-                Logging.warn("More permits than it should be");
-            }
+    private void releaseHostLimit(JCSCachedTileLoaderJob<?, ?> job) {
+        AdaptiveHostLimit limit = getHostLimit(job);
+        long duration = job.getDownloadDuration();
+        if (duration >= 0) {
+            limit.update(duration, job.getDownloadLength(), job.getDownloadResponseCode());
         }
+        limit.release();
+        signalChange();
     }
 }
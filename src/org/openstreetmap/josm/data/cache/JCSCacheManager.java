@@ -220,6 +220,7 @@ public final class JCSCacheManager {
      */
     public static void shutdown() {
         JCS.shutdown();
+        MappedFileCache.shutdown();
     }
 
     private static IDiskCacheAttributes getDiskCacheAttributes(int maxDiskObjects, String cachePath, String cacheName) {
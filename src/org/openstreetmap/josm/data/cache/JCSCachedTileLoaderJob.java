@@ -99,6 +99,12 @@ public abstract class JCSCachedTileLoaderJob<K, V extends CacheEntry> implements
     private boolean force;
     private final long minimumExpiryTime;
 
+    // outcome of the HTTP request, used to adjust the number of parallel downloads from the host
+    private long downloadStart;
+    private long downloadDuration = -1;
+    private long downloadLength;
+    private int downloadResponseCode;
+
     /**
      * @param cache cache instance that we will work on
      * @param options options of the request
@@ -359,9 +365,11 @@ public abstract class JCSCachedTileLoaderJob<K, V extends CacheEntry> implements
                 request.setHeader("If-None-Match", attributes.getEtag());
             }
 
+            downloadStart = System.nanoTime();
             final HttpClient.Response urlConn = request.connect();
 
             if (urlConn.getResponseCode() == 304) {
+                downloadFinished(304, 0);
                 // If isModifiedSince or If-None-Match has been set
                 // and the server answers with a HTTP 304 = "Not Modified"
                 Logging.debug("JCS - If-Modified-Since/ETag test: local version is up to date: {0}", getUrl());
@@ -386,6 +394,7 @@ public abstract class JCSCachedTileLoaderJob<K, V extends CacheEntry> implements
 
             for (int i = 0; i < 5; ++i) {
                 if (urlConn.getResponseCode() == HttpURLConnection.HTTP_UNAVAILABLE) {
+                    downloadFinished(HttpURLConnection.HTTP_UNAVAILABLE, 0);
                     Thread.sleep(5000L+new SecureRandom().nextInt(5000));
                     continue;
                 }
@@ -408,6 +417,7 @@ public abstract class JCSCachedTileLoaderJob<K, V extends CacheEntry> implements
                         Logging.warn(e);
                     }
                 }
+                downloadFinished(urlConn.getResponseCode(), raw.length);
 
                 if (isResponseLoadable(urlConn.getHeaderFields(), urlConn.getResponseCode(), raw)) {
                     // we need to check cacheEmpty, so for cases, when data is returned, but we want to store
@@ -429,6 +439,7 @@ public abstract class JCSCachedTileLoaderJob<K, V extends CacheEntry> implements
             }
         } catch (FileNotFoundException e) {
             Logging.debug("JCS - Caching empty object as server returned 404 for: {0}", getUrlNoException());
+            downloadFinished(404, 0);
             attributes.setResponseCode(404);
             attributes.setError(e);
             attributes.setException(e);
@@ -440,6 +451,7 @@ public abstract class JCSCachedTileLoaderJob<K, V extends CacheEntry> implements
             return doCache;
         } catch (IOException e) {
             Logging.debug("JCS - IOException during communication with server for: {0}", getUrlNoException());
+            downloadFinished(599, 0);
             if (isObjectLoadable()) {
                 return true;
             } else {
@@ -459,6 +471,38 @@ public abstract class JCSCachedTileLoaderJob<K, V extends CacheEntry> implements
         return false;
     }
 
+    private void downloadFinished(int responseCode, long length) {
+        if (downloadStart != 0) {
+            downloadDuration = System.nanoTime() - downloadStart;
+            downloadLength = length;
+            downloadResponseCode = responseCode;
+        }
+    }
+
+    /**
+     * Returns the duration of the HTTP request made by this job.
+     * @return the duration in nanoseconds, or {@code -1} if no request was made
+     */
+    long getDownloadDuration() {
+        return downloadDuration;
+    }
+
+    /**
+     * Returns the length of the content received by the HTTP request made by this job.
+     * @return the length in bytes
+     */
+    long getDownloadLength() {
+        return downloadLength;
+    }
+
+    /**
+     * Returns the response code of the HTTP request made by this job.
+     * @return the HTTP response code, {@code 599} if the request failed without response
+     */
+    int getDownloadResponseCode() {
+        return downloadResponseCode;
+    }
+
     /**
      * Tries do detect an error message from given string.
      * @param data string to analyze
@@ -586,6 +630,16 @@ public abstract class JCSCachedTileLoaderJob<K, V extends CacheEntry> implements
 
     }
 
+    /**
+     * Returns the download priority of this job, the queued jobs with lower values being downloaded first. It is evaluated
+     * each time a worker looks for a job, so it may change while the job is queued.
+     * @return the download priority of this job, {@code 0} by default
+     * @since xxx
+     */
+    public double getPriority() {
+        return 0;
+    }
+
     /**
      * Marks this job as canceled
      */
@@ -0,0 +1,1257 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.apache.commons.jcs3.access.behavior.ICacheAccess;
+import org.apache.commons.jcs3.access.exception.CacheException;
+import org.apache.commons.jcs3.engine.CacheElement;
+import org.apache.commons.jcs3.engine.CompositeCacheAttributes;
+import org.apache.commons.jcs3.engine.behavior.ICache;
+import org.apache.commons.jcs3.engine.behavior.ICacheElement;
+import org.apache.commons.jcs3.engine.behavior.ICompositeCacheAttributes;
+import org.apache.commons.jcs3.engine.behavior.IElementAttributes;
+import org.apache.commons.jcs3.engine.stats.CacheStats;
+import org.apache.commons.jcs3.engine.stats.StatElement;
+import org.apache.commons.jcs3.engine.stats.Stats;
+import org.apache.commons.jcs3.engine.stats.behavior.ICacheStats;
+import org.apache.commons.jcs3.engine.stats.behavior.IStatElement;
+import org.apache.commons.jcs3.engine.stats.behavior.IStats;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * A tile cache storing all the entries of a cache region in a single file, as an alternative to the JCS disk caches.
+ * <p>
+ * The entries are appended to the data file and read back through memory mappings of the file, so that a cache hit is
+ * served from the page cache without any deserialization. An in-memory hash index maps the hash of each key, i.e. of the
+ * source, zoom and coordinates of a tile, to the position of its newest entry. The index is saved next to the data file when
+ * the cache is closed; the entries written after it was saved (e.g. before a crash) are found again by scanning the end of
+ * the data file when the cache is opened.
+ * <p>
+ * Replaced and removed entries are reclaimed by a background compaction, which also evicts the oldest entries not read since
+ * the previous compaction when the data file grows over the size limit of the cache. The compacted entries are written to
+ * the next generation of the data file, and the previous one is deleted once it is no longer mapped: a mapped file can be
+ * neither replaced nor deleted on Windows.
+ * <p>
+ * The tile layers use this cache instead of JCS when {@link #ENABLED} is set.
+ * @since xxx
+ */
+public final class MappedFileCache implements ICacheAccess<String, BufferedImageCacheEntry> {
+
+    /**
+     * Whether the tile caches are stored in a {@code MappedFileCache} instead of a JCS disk cache.
+     */
+    public static final BooleanProperty ENABLED = new BooleanProperty("jcs.cache.use_mapped_cache", false);
+
+    private static final String FILE_SUFFIX = "_MAPPED_v1";
+    /** the suffix of the data files after the first compaction, giving their generation */
+    private static final Pattern GENERATION = Pattern.compile("\\.(\\d{1,18})\\.data");
+    private static final int MAGIC = 0x4a4d4346; // "JMCF"
+    private static final int FORMAT_VERSION = 1;
+    /** magic, format version and file identifier */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * The data file is mapped in segments of this size, as a single mapping is limited to 2 GB. Records never straddle two
+     * segments: a record which does not fit in the rest of a segment is written at the start of the next one.
+     */
+    private static final int SEGMENT_BITS = 27;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    private static final byte ENTRY = 1;
+    private static final byte REMOVED = 2;
+    /** record length, checksum, type and key hash */
+    private static final int RECORD_HEADER_SIZE = 17;
+
+    /** Compactions are only started to reclaim at least this many bytes, unless the cache is over its size limit */
+    private static final long MIN_GARBAGE = 16L * 1024 * 1024;
+
+    private static final Map<Path, MappedFileCache> CACHES = new HashMap<>();
+
+    private static final ExecutorService COMPACTION_EXECUTOR = Executors.newSingleThreadExecutor(
+            Utils.newThreadFactory("mapped-cache-compaction-%d", Thread.MIN_PRIORITY));
+
+    private final String cacheName;
+    private final Path directory;
+    private final Path indexFile;
+    private final long maxSize;
+
+    /** Guards the fields below. Reads take the read lock, writes and compactions the write lock. */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object compactionLock = new Object();
+    /** the previous generations of the data file, which could not be deleted yet. Guarded by the compaction lock */
+    private final List<Path> obsoleteFiles = new ArrayList<>();
+    private Path dataFile;
+    private long generation;
+    private FileChannel channel;
+    private FileLock fileLock;
+    private long fileId;
+    private HashIndex index;
+    /** the position of the next record */
+    private long end;
+    /** the total length of the records referenced by the index */
+    private long liveBytes;
+    private boolean compactionScheduled;
+    /** the position of the next record from which a compaction is attempted again, after a failed compaction */
+    private long compactionRetryEnd;
+    private boolean closed;
+    /** set when the cache is being closed, to stop a running compaction */
+    private volatile boolean closing;
+
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private IElementAttributes defaultAttributes = new CacheEntryAttributes();
+    private ICompositeCacheAttributes cacheAttributes;
+
+    private MappedFileCache(String cacheName, Path directory, long maxSize) throws IOException {
+        this.cacheName = cacheName;
+        this.directory = directory;
+        this.indexFile = directory.resolve(cacheName + FILE_SUFFIX + ".key");
+        this.maxSize = maxSize;
+        CompositeCacheAttributes attributes = new CompositeCacheAttributes();
+        attributes.setCacheName(cacheName);
+        attributes.setMaxObjects(0);
+        this.cacheAttributes = attributes;
+        Files.createDirectories(directory);
+        open();
+    }
+
+    /**
+     * Returns the cache of the given region, opening it if needed.
+     * @param cacheName region name
+     * @param maxDiskSize maximum size of the data file in kB, or 0 for no limit
+     * @param cachePath directory of the cache files
+     * @return the cache, or {@code null} if the cache files cannot be opened, e.g. because they are used by another instance
+     */
+    public static synchronized MappedFileCache getCache(String cacheName, int maxDiskSize, String cachePath) {
+        Path directory = Paths.get(cachePath).toAbsolutePath();
+        Path key = directory.resolve(cacheName);
+        MappedFileCache cache = CACHES.get(key);
+        if (cache == null) {
+            try {
+                cache = new MappedFileCache(cacheName, directory, 1024L * maxDiskSize);
+                CACHES.put(key, cache);
+            } catch (IOException | OverlappingFileLockException | SecurityException e) {
+                Logging.log(Logging.LEVEL_WARN, "Unable to open the mapped cache " + cacheName + ':', e);
+                return null;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Closes all the caches, saving their indexes.
+     */
+    public static synchronized void shutdown() {
+        CACHES.values().forEach(MappedFileCache::close);
+        CACHES.clear();
+    }
+
+    private Path getDataFile(long generation) {
+        return directory.resolve(cacheName + FILE_SUFFIX + (generation == 0 ? "" : "." + generation) + ".data");
+    }
+
+    private Path getTemporaryFile() {
+        return getDataFile(0).resolveSibling(getDataFile(0).getFileName() + ".tmp");
+    }
+
+    /**
+     * Returns the generations of the data files found in the cache directory.
+     * @return the generations, in ascending order
+     * @throws IOException if the cache directory cannot be read
+     */
+    private List<Long> getGenerations() throws IOException {
+        String prefix = cacheName + FILE_SUFFIX;
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, file -> Files.isRegularFile(file)
+                && file.getFileName().toString().startsWith(prefix))) {
+            for (Path file : files) {
+                String suffix = file.getFileName().toString().substring(prefix.length());
+                Matcher matcher = GENERATION.matcher(suffix);
+                if (".data".equals(suffix)) {
+                    generations.add(0L);
+                } else if (matcher.matches()) {
+                    generations.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private void open() throws IOException {
+        List<Long> generations = getGenerations();
+        generation = generations.isEmpty() ? 0 : generations.get(generations.size() - 1);
+        dataFile = getDataFile(generation);
+        channel = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            fileLock = channel.tryLock();
+            List<Long> current = getGenerations();
+            // another process may have compacted the cache before releasing the lock of this generation
+            if (fileLock == null || current.isEmpty() || current.get(current.size() - 1) != generation) {
+                throw new IOException("Cache file " + dataFile + " is locked by another process");
+            }
+            // left over by a compaction interrupted by the end of JOSM, or still mapped when the cache was last compacted
+            Files.deleteIfExists(getTemporaryFile());
+            for (long previous : current) {
+                if (previous < generation) {
+                    obsoleteFiles.add(getDataFile(previous));
+                }
+            }
+            deleteObsoleteFiles();
+            if (readHeader()) {
+                scan(loadIndex());
+            } else {
+                reset();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private boolean readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                return false;
+            }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+            return false;
+        }
+        fileId = header.getLong();
+        return true;
+    }
+
+    /**
+     * Truncates the data file and writes a new header.
+     * @throws IOException if an I/O error occurs
+     */
+    private void reset() throws IOException {
+        segments = new MappedByteBuffer[0];
+        channel.truncate(0);
+        fileId = ThreadLocalRandom.current().nextLong();
+        writeFully(channel, newHeader(fileId), 0);
+        index = new HashIndex(0);
+        end = HEADER_SIZE;
+        liveBytes = 0;
+    }
+
+    private static ByteBuffer newHeader(long fileId) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(fileId).flip();
+        return header;
+    }
+
+    /**
+     * Loads the index saved when the cache was last closed.
+     * @return the length of the data file covered by the index
+     * @throws IOException if the size of the data file cannot be read
+     */
+    private long loadIndex() throws IOException {
+        index = new HashIndex(0);
+        liveBytes = 0;
+        if (!Files.isRegularFile(indexFile)) {
+            return HEADER_SIZE;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readLong() != fileId) {
+                return HEADER_SIZE;
+            }
+            long dataLength = in.readLong();
+            int count = in.readInt();
+            if (dataLength < HEADER_SIZE || dataLength > channel.size() || count < 0) {
+                return HEADER_SIZE;
+            }
+            HashIndex loaded = new HashIndex(count);
+            long live = 0;
+            for (int i = 0; i < count; i++) {
+                long hash = in.readLong();
+                long offset = in.readLong();
+                int length = in.readInt();
+                loaded.put(hash, offset, length);
+                live += length;
+            }
+            index = loaded;
+            liveBytes = live;
+            return dataLength;
+        } catch (IOException e) {
+            Logging.warn("Unable to read the index of the cache " + cacheName + ", rebuilding it");
+            Logging.debug(e);
+            return HEADER_SIZE;
+        }
+    }
+
+    /**
+     * Adds the records found after {@code start} to the index. The data file is truncated at the first incomplete or
+     * corrupted record, which was being written when JOSM was stopped.
+     * @param start the position of the first record not in the index
+     * @throws IOException if an I/O error occurs
+     */
+    private void scan(long start) throws IOException {
+        long size = channel.size();
+        long position = start;
+        while (position < size) {
+            int segmentRemaining = segmentRemaining(position);
+            if (segmentRemaining < RECORD_HEADER_SIZE) {
+                position += segmentRemaining;
+                continue;
+            } else if (size - position < 4) {
+                break;
+            }
+            int length = slice(position, 4).getInt();
+            if (length == 0) {
+                // padding up to the next segment
+                position += segmentRemaining;
+                continue;
+            }
+            if (length < RECORD_HEADER_SIZE || length > segmentRemaining || length > size - position) {
+                break;
+            }
+            ByteBuffer record = slice(position, length);
+            if (!hasValidChecksum(record)) {
+                break;
+            }
+            record.position(record.position() + 8);
+            byte type = record.get();
+            long hash = record.getLong();
+            if (type == ENTRY) {
+                liveBytes += length - Math.max(0, index.put(hash, position, length));
+            } else if (type == REMOVED) {
+                liveBytes -= Math.max(0, index.remove(hash));
+            } else {
+                break;
+            }
+            position += length;
+        }
+        if (position < size) {
+            Logging.warn("Truncating the corrupted end of the cache file " + dataFile);
+            segments = new MappedByteBuffer[0];
+            channel.truncate(position);
+        }
+        end = position;
+    }
+
+    private static boolean hasValidChecksum(ByteBuffer record) {
+        ByteBuffer checked = record.duplicate();
+        int checksum = checked.getInt(checked.position() + 4);
+        checked.position(checked.position() + 8);
+        CRC32 crc = new CRC32();
+        crc.update(checked);
+        return (int) crc.getValue() == checksum;
+    }
+
+    private static int segmentRemaining(long position) {
+        return SEGMENT_SIZE - (int) (position & (SEGMENT_SIZE - 1));
+    }
+
+    /**
+     * Returns a read-only view of a part of the data file.
+     * @param offset the position in the data file
+     * @param length the length, which must not cross a segment boundary
+     * @return a buffer positioned at {@code offset}, limited to {@code length} bytes
+     * @throws IOException if the data file cannot be mapped
+     */
+    private ByteBuffer slice(long offset, int length) throws IOException {
+        int segmentIndex = (int) (offset >>> SEGMENT_BITS);
+        int position = (int) (offset & (SEGMENT_SIZE - 1));
+        MappedByteBuffer[] mapped = segments;
+        MappedByteBuffer segment = segmentIndex < mapped.length ? mapped[segmentIndex] : null;
+        if (segment == null || segment.capacity() < position + length) {
+            segment = map(segmentIndex, position + length);
+        }
+        ByteBuffer buffer = segment.duplicate();
+        buffer.limit(position + length).position(position);
+        return buffer;
+    }
+
+    private synchronized MappedByteBuffer map(int segmentIndex, int minLength) throws IOException {
+        MappedByteBuffer[] mapped = segments;
+        if (segmentIndex < mapped.length && mapped[segmentIndex] != null && mapped[segmentIndex].capacity() >= minLength) {
+            return mapped[segmentIndex];
+        }
+        long start = (long) segmentIndex << SEGMENT_BITS;
+        long length = Math.min(SEGMENT_SIZE, channel.size() - start);
+        if (length < minLength) {
+            throw new EOFException("Cannot read after the end of " + dataFile);
+        }
+        MappedByteBuffer segment = channel.map(MapMode.READ_ONLY, start, length);
+        MappedByteBuffer[] copy = Arrays.copyOf(mapped, Math.max(mapped.length, segmentIndex + 1));
+        copy[segmentIndex] = segment;
+        segments = copy;
+        return segment;
+    }
+
+    private static void writeFully(FileChannel target, ByteBuffer buffer, long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            current += target.write(buffer, current);
+        }
+    }
+
+    /**
+     * Returns the position at which a record is written, padding the rest of the segment if the record does not fit in it.
+     * @param target the data file
+     * @param position the end of the data file
+     * @param length the length of the record
+     * @return the position of the record
+     * @throws IOException if an I/O error occurs
+     */
+    private static long align(FileChannel target, long position, int length) throws IOException {
+        int remaining = segmentRemaining(position);
+        if (length <= remaining) {
+            return position;
+        }
+        if (remaining >= 4) {
+            writeFully(target, ByteBuffer.allocate(4), position);
+        }
+        return position + remaining;
+    }
+
+    private long append(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        long offset = align(channel, end, length);
+        writeFully(channel, record, offset);
+        end = offset + length;
+        return offset;
+    }
+
+    /**
+     * Computes the hash of a key. The index uses the low bits of the hash, so the 64-bit FNV-1a hash of the key is finished
+     * with the mixing function of MurmurHash3. The value 0 marks the empty slots of the index and is never returned.
+     * @param key the key
+     * @return the hash of the key
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Encodes a record.
+     * @param type {@link #ENTRY} or {@link #REMOVED}
+     * @param key the key
+     * @param metadata the attributes of the entry
+     * @param content the content of the entry
+     * @return the record, or {@code null} if it is too large
+     */
+    private static ByteBuffer encode(byte type, String key, Map<String, String> metadata, byte[] content) {
+        List<byte[]> strings = new ArrayList<>(1 + 2 * metadata.size());
+        strings.add(key.getBytes(StandardCharsets.UTF_8));
+        metadata.forEach((k, v) -> {
+            strings.add(k.getBytes(StandardCharsets.UTF_8));
+            strings.add(v.getBytes(StandardCharsets.UTF_8));
+        });
+        long length = RECORD_HEADER_SIZE;
+        for (byte[] string : strings) {
+            if (string.length > 0xffff) {
+                return null;
+            }
+            length += 2 + string.length;
+        }
+        if (type == ENTRY) {
+            length += 2 + 4 + content.length;
+        }
+        if (length > SEGMENT_SIZE - HEADER_SIZE || metadata.size() > 0xffff) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate((int) length);
+        record.putInt((int) length).putInt(0).put(type).putLong(hash(key));
+        putString(record, strings.get(0));
+        if (type == ENTRY) {
+            record.putShort((short) metadata.size());
+            for (byte[] string : strings.subList(1, strings.size())) {
+                putString(record, string);
+            }
+            record.putInt(content.length).put(content);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, record.capacity() - 8);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] string) {
+        buffer.putShort((short) string.length).put(string);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] string = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(string);
+        return new String(string, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the key of a record.
+     * @param offset the position of the record
+     * @return the key
+     * @throws IOException if an I/O error occurs
+     */
+    private String readKey(long offset) throws IOException {
+        ByteBuffer head = slice(offset, RECORD_HEADER_SIZE + 2);
+        int length = head.getInt();
+        ByteBuffer record = slice(offset, length);
+        record.position(record.position() + RECORD_HEADER_SIZE);
+        return getString(record);
+    }
+
+    /**
+     * Reads an entry.
+     * @param offset the position of the record
+     * @param length the length of the record
+     * @param key the expected key, or {@code null} to accept any key
+     * @return the entry, or {@code null} if the record has another key, whose hash collides with {@code key}
+     * @throws IOException if an I/O error occurs
+     */
+    private ICacheElement<String, BufferedImageCacheEntry> read(long offset, int length, String key) throws IOException {
+        ByteBuffer record = slice(offset, length);
+        record.position(record.position() + RECORD_HEADER_SIZE);
+        String recordKey = getString(record);
+        if (key != null && !key.equals(recordKey)) {
+            return null;
+        }
+        int count = Short.toUnsignedInt(record.getShort());
+        Map<String, String> metadata = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            metadata.put(getString(record), getString(record));
+        }
+        byte[] content = new byte[record.getInt()];
+        record.get(content);
+        CacheElement<String, BufferedImageCacheEntry> element = new CacheElement<>(cacheName, recordKey,
+                new BufferedImageCacheEntry(content));
+        element.setElementAttributes(new CacheEntryAttributes(metadata));
+        return element;
+    }
+
+    @Override
+    public BufferedImageCacheEntry get(String name) {
+        ICacheElement<String, BufferedImageCacheEntry> element = getCacheElement(name);
+        return element == null ? null : element.getVal();
+    }
+
+    @Override
+    public BufferedImageCacheEntry get(String name, Supplier<BufferedImageCacheEntry> supplier) {
+        BufferedImageCacheEntry value = get(name);
+        if (value == null) {
+            value = supplier.get();
+            put(name, value);
+        }
+        return value;
+    }
+
+    @Override
+    public Map<String, BufferedImageCacheEntry> getMatching(String pattern) {
+        Map<String, BufferedImageCacheEntry> result = new HashMap<>();
+        getMatchingCacheElements(pattern).forEach((key, element) -> result.put(key, element.getVal()));
+        return result;
+    }
+
+    @Override
+    public void putSafe(String name, BufferedImageCacheEntry obj) {
+        lock.writeLock().lock();
+        try {
+            if (getCacheElement(name) != null) {
+                throw new CacheException("put failed, key " + name + " already exists in the cache " + cacheName);
+            }
+            put(name, obj);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(String name, BufferedImageCacheEntry obj) {
+        put(name, obj, defaultAttributes);
+    }
+
+    @Override
+    public void put(String name, BufferedImageCacheEntry obj, IElementAttributes attr) {
+        Map<String, String> metadata = attr instanceof CacheEntryAttributes
+                ? ((CacheEntryAttributes) attr).getMetadata() : Collections.<String, String>emptyMap();
+        ByteBuffer record = encode(ENTRY, name, metadata, obj.getContent());
+        if (record == null) {
+            Logging.debug("Entry {0} is too large for the cache {1}", name, cacheName);
+            return;
+        }
+        int length = record.remaining();
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            long offset = append(record);
+            liveBytes += length - Math.max(0, index.put(hash(name), offset, length));
+            checkCompaction();
+        } catch (IOException e) {
+            Logging.log(Logging.LEVEL_WARN, "Unable to write to the cache " + cacheName + ':', e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public ICacheElement<String, BufferedImageCacheEntry> getCacheElement(String name) {
+        long hash = hash(name);
+        lock.readLock().lock();
+        try {
+            int slot = closed ? -1 : index.find(hash);
+            ICacheElement<String, BufferedImageCacheEntry> element = slot < 0 ? null : read(index.offset(slot), index.length(slot), name);
+            if (element == null) {
+                misses.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+                index.setAccessed(slot);
+            }
+            return element;
+        } catch (IOException e) {
+            Logging.log(Logging.LEVEL_WARN, "Unable to read from the cache " + cacheName + ':', e);
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, ICacheElement<String, BufferedImageCacheEntry>> getCacheElements(Set<String> names) {
+        Map<String, ICacheElement<String, BufferedImageCacheEntry>> result = new HashMap<>();
+        for (String name : names) {
+            ICacheElement<String, BufferedImageCacheEntry> element = getCacheElement(name);
+            if (element != null) {
+                result.put(name, element);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, ICacheElement<String, BufferedImageCacheEntry>> getMatchingCacheElements(String pattern) {
+        Pattern compiled = Pattern.compile(pattern);
+        Map<String, ICacheElement<String, BufferedImageCacheEntry>> result = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; !closed && slot < index.capacity(); slot++) {
+                if (index.hash(slot) != 0 && compiled.matcher(readKey(index.offset(slot))).matches()) {
+                    ICacheElement<String, BufferedImageCacheEntry> element = read(index.offset(slot), index.length(slot), null);
+                    result.put(element.getKey(), element);
+                }
+            }
+        } catch (IOException e) {
+            Logging.log(Logging.LEVEL_WARN, "Unable to read from the cache " + cacheName + ':', e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Removes an entry from the cache. As with JCS, a name ending with {@link ICache#NAME_COMPONENT_DELIMITER} removes all the
+     * entries whose keys start with this name, i.e. all the tiles of a source.
+     * @param name the key of the entry, or the prefix of the keys of the entries to remove
+     */
+    @Override
+    public void remove(String name) {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            List<String> keys = new ArrayList<>();
+            if (name.endsWith(ICache.NAME_COMPONENT_DELIMITER)) {
+                for (int slot = 0; slot < index.capacity(); slot++) {
+                    if (index.hash(slot) != 0) {
+                        String key = readKey(index.offset(slot));
+                        if (key.startsWith(name)) {
+                            keys.add(key);
+                        }
+                    }
+                }
+            } else {
+                int slot = index.find(hash(name));
+                if (slot >= 0 && name.equals(readKey(index.offset(slot)))) {
+                    keys.add(name);
+                }
+            }
+            for (String key : keys) {
+                append(encode(REMOVED, key, Collections.<String, String>emptyMap(), null));
+                liveBytes -= Math.max(0, index.remove(hash(key)));
+            }
+            checkCompaction();
+        } catch (IOException e) {
+            Logging.log(Logging.LEVEL_WARN, "Unable to remove " + name + " from the cache " + cacheName + ':', e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void resetElementAttributes(String name, IElementAttributes attributes) {
+        BufferedImageCacheEntry value = get(name);
+        if (value != null) {
+            put(name, value, attributes);
+        }
+    }
+
+    @Override
+    public IElementAttributes getElementAttributes(String name) {
+        ICacheElement<String, BufferedImageCacheEntry> element = getCacheElement(name);
+        return element == null ? null : element.getElementAttributes();
+    }
+
+    /**
+     * Closes the cache, saving its index. The cache is no longer usable afterwards.
+     */
+    @Override
+    public void dispose() {
+        synchronized (MappedFileCache.class) {
+            CACHES.values().remove(this);
+        }
+        close();
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            if (!closed) {
+                reset();
+            }
+        } catch (IOException e) {
+            Logging.log(Logging.LEVEL_WARN, "Unable to clear the cache " + cacheName + ':', e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public IElementAttributes getDefaultElementAttributes() {
+        return defaultAttributes;
+    }
+
+    @Override
+    public void setDefaultElementAttributes(IElementAttributes attr) {
+        defaultAttributes = attr;
+    }
+
+    @Override
+    public ICompositeCacheAttributes getCacheAttributes() {
+        return cacheAttributes;
+    }
+
+    @Override
+    public void setCacheAttributes(ICompositeCacheAttributes cattr) {
+        cacheAttributes = cattr;
+    }
+
+    @Override
+    public int freeMemoryElements(int numberToFree) {
+        // the entries are only held by the page cache of the operating system
+        return 0;
+    }
+
+    @Override
+    public ICacheStats getStatistics() {
+        List<IStatElement<?>> elements = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            elements.add(new StatElement<>("Key Map Size", closed ? 0 : index.size()));
+            elements.add(new StatElement<>("Data File Length", closed ? 0L : end));
+            elements.add(new StatElement<>("Live Bytes", closed ? 0L : liveBytes));
+        } finally {
+            lock.readLock().unlock();
+        }
+        elements.add(new StatElement<>("Hits", hits.get()));
+        elements.add(new StatElement<>("Misses", misses.get()));
+        Stats stats = new Stats();
+        stats.setTypeName("Mapped File Cache");
+        stats.setStatElements(elements);
+        CacheStats cacheStats = new CacheStats();
+        cacheStats.setRegionName(cacheName);
+        cacheStats.setAuxiliaryCacheStats(Collections.<IStats>singletonList(stats));
+        return cacheStats;
+    }
+
+    @Override
+    public String getStats() {
+        return getStatistics().toString();
+    }
+
+    private void close() {
+        closing = true;
+        synchronized (compactionLock) {
+            closeFiles();
+        }
+    }
+
+    private void closeFiles() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            saveIndex();
+            fileLock.release();
+            channel.close();
+        } catch (IOException e) {
+            Logging.log(Logging.LEVEL_WARN, "Unable to close the cache " + cacheName + ':', e);
+        } finally {
+            segments = new MappedByteBuffer[0];
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(fileId);
+            out.writeLong(Math.min(end, channel.size()));
+            out.writeInt(index.size());
+            for (int slot = 0; slot < index.capacity(); slot++) {
+                if (index.hash(slot) != 0) {
+                    out.writeLong(index.hash(slot));
+                    out.writeLong(index.offset(slot));
+                    out.writeInt(index.length(slot));
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules a compaction if the data file is over the size limit, or if most of it is garbage. Called with the write lock.
+     */
+    private void checkCompaction() {
+        long garbage = end - HEADER_SIZE - liveBytes;
+        if (!compactionScheduled && end >= compactionRetryEnd
+                && ((maxSize > 0 && end > maxSize) || (garbage > MIN_GARBAGE && garbage > liveBytes))) {
+            compactionScheduled = true;
+            COMPACTION_EXECUTOR.execute(this::compact);
+        }
+    }
+
+    /**
+     * Rewrites the live entries to a new data file, and replaces the data file with it. If the cache is over its size limit,
+     * only the newest entries filling 3/4 of the limit are kept, giving precedence to the entries read since the last
+     * compaction. The entries are copied without blocking the cache; only those written during the copy are copied with
+     * the write lock held, before the files are swapped.
+     */
+    void compact() {
+        synchronized (compactionLock) {
+            deleteObsoleteFiles();
+            Path temporaryFile = getTemporaryFile();
+            boolean failed = false;
+            try (FileChannel out = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                compact(temporaryFile, out);
+            } catch (IOException e) {
+                failed = true;
+                Logging.log(Logging.LEVEL_WARN, "Unable to compact the cache " + cacheName + ':', e);
+            } finally {
+                lock.writeLock().lock();
+                compactionScheduled = false;
+                // do not compact again after each write when the compaction fails, e.g. when the disk is full
+                compactionRetryEnd = failed ? end + Math.max(MIN_GARBAGE, end / 2) : 0;
+                lock.writeLock().unlock();
+                try {
+                    Files.deleteIfExists(temporaryFile);
+                } catch (IOException e) {
+                    Logging.warn(e);
+                }
+            }
+        }
+    }
+
+    private void compact(Path temporaryFile, FileChannel out) throws IOException {
+        final long snapshotId;
+        final long snapshotEnd;
+        final long[] offsets;
+        final int[] lengths;
+        final boolean[] accessed;
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            snapshotId = fileId;
+            snapshotEnd = end;
+            offsets = new long[index.size()];
+            lengths = new int[offsets.length];
+            accessed = new boolean[offsets.length];
+            for (int slot = 0, i = 0; slot < index.capacity(); slot++) {
+                if (index.hash(slot) != 0) {
+                    offsets[i] = index.offset(slot);
+                    lengths[i] = index.length(slot);
+                    accessed[i++] = index.isAccessed(slot);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // select the entries to keep: the newest read entries first, then the newest other entries
+        Integer[] byOffset = new Integer[offsets.length];
+        Arrays.setAll(byOffset, i -> i);
+        Arrays.sort(byOffset, Comparator.comparingLong(i -> offsets[i]));
+        boolean[] keep = new boolean[offsets.length];
+        long budget = maxSize > 0 && snapshotEnd > maxSize ? maxSize / 4 * 3 : Long.MAX_VALUE;
+        for (boolean read : new boolean[] {true, false}) {
+            for (int j = byOffset.length - 1; j >= 0 && budget > 0; j--) {
+                int i = byOffset[j];
+                if (accessed[i] == read && lengths[i] <= budget) {
+                    keep[i] = true;
+                    budget -= lengths[i];
+                }
+            }
+        }
+
+        // copy them, in the order they were written
+        long newId = ThreadLocalRandom.current().nextLong();
+        writeFully(out, newHeader(newId), 0);
+        long newEnd = HEADER_SIZE;
+        long[] kept = new long[offsets.length];
+        long[] newOffsets = new long[offsets.length];
+        int keptCount = 0;
+        for (int i : byOffset) {
+            if (!keep[i]) {
+                continue;
+            }
+            lock.readLock().lock();
+            try {
+                if (closing || fileId != snapshotId) {
+                    return;
+                }
+                long offset = align(out, newEnd, lengths[i]);
+                writeFully(out, slice(offsets[i], lengths[i]), offset);
+                kept[keptCount] = offsets[i];
+                newOffsets[keptCount++] = offset;
+                newEnd = offset + lengths[i];
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        kept = Arrays.copyOf(kept, keptCount);
+
+        lock.writeLock().lock();
+        try {
+            if (closed || fileId != snapshotId) {
+                return;
+            }
+            // build the new index from the current one, copying the entries written since the snapshot
+            HashIndex newIndex = new HashIndex(index.size());
+            long newLive = 0;
+            List<long[]> written = new ArrayList<>();
+            for (int slot = 0; slot < index.capacity(); slot++) {
+                long hash = index.hash(slot);
+                if (hash == 0) {
+                    continue;
+                }
+                long offset = index.offset(slot);
+                int length = index.length(slot);
+                if (offset >= snapshotEnd) {
+                    written.add(new long[] {hash, offset, length});
+                } else {
+                    int i = Arrays.binarySearch(kept, offset);
+                    if (i >= 0) {
+                        newIndex.put(hash, newOffsets[i], length);
+                        newLive += length;
+                    }
+                }
+            }
+            written.sort(Comparator.comparingLong(entry -> entry[1]));
+            for (long[] entry : written) {
+                int length = (int) entry[2];
+                long offset = align(out, newEnd, length);
+                writeFully(out, slice(entry[1], length), offset);
+                newIndex.put(entry[0], offset, length);
+                newLive += length;
+                newEnd = offset + length;
+            }
+            out.force(false);
+            out.close();
+            swap(temporaryFile);
+            fileId = newId;
+            index = newIndex;
+            end = newEnd;
+            liveBytes = newLive;
+            Logging.debug("Compacted the cache {0}: {1} entries, {2} bytes", cacheName, newIndex.size(), newEnd);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the data file with the compacted file, which becomes the next generation of the data file. Called with the
+     * write lock.
+     * @param temporaryFile the compacted file
+     * @throws IOException if the compacted file cannot be used, in which case the cache keeps using the old data file
+     */
+    private void swap(Path temporaryFile) throws IOException {
+        Path newFile = getDataFile(generation + 1);
+        Files.move(temporaryFile, newFile, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel newChannel = null;
+        FileLock newLock;
+        try {
+            newChannel = FileChannel.open(newFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            newLock = newChannel.tryLock();
+            if (newLock == null) {
+                throw new IOException("Cache file " + newFile + " is locked by another process");
+            }
+        } catch (IOException | RuntimeException e) {
+            if (newChannel != null) {
+                newChannel.close();
+            }
+            Files.deleteIfExists(newFile);
+            throw e;
+        }
+        FileChannel oldChannel = channel;
+        obsoleteFiles.add(dataFile);
+        segments = new MappedByteBuffer[0];
+        channel = newChannel;
+        fileLock = newLock;
+        dataFile = newFile;
+        generation++;
+        try {
+            // also releases the lock of the old data file
+            oldChannel.close();
+        } catch (IOException e) {
+            Logging.warn(e);
+        }
+        deleteObsoleteFiles();
+    }
+
+    /**
+     * Deletes the previous generations of the data file. On Windows, a data file cannot be deleted until all the mappings of
+     * the file have been garbage collected, so the deletion is attempted again before the next compaction.
+     */
+    private void deleteObsoleteFiles() {
+        for (Iterator<Path> it = obsoleteFiles.iterator(); it.hasNext();) {
+            Path file = it.next();
+            try {
+                Files.deleteIfExists(file);
+                it.remove();
+            } catch (IOException e) {
+                Logging.log(Logging.LEVEL_DEBUG, "Unable to delete the previous cache file " + file + ':', e);
+            }
+        }
+    }
+
+    /**
+     * Returns the current data file.
+     * @return the current data file
+     */
+    Path getDataFile() {
+        lock.readLock().lock();
+        try {
+            return dataFile;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * An open addressing hash table from the hashes of the keys to the positions and lengths of their records, using
+     * linear probing. It also records whether each entry was read since the last compaction.
+     */
+    static final class HashIndex {
+        private long[] hashes;
+        private long[] offsets;
+        private int[] lengths;
+        private boolean[] accessed;
+        private int size;
+
+        /**
+         * Constructs a new {@code HashIndex}.
+         * @param expectedSize the expected number of entries
+         */
+        HashIndex(int expectedSize) {
+            int capacity = 16;
+            while (capacity / 4 * 3 < expectedSize) {
+                capacity <<= 1;
+            }
+            hashes = new long[capacity];
+            offsets = new long[capacity];
+            lengths = new int[capacity];
+            accessed = new boolean[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int capacity() {
+            return hashes.length;
+        }
+
+        /**
+         * Returns the hash stored in a slot.
+         * @param slot the slot
+         * @return the hash, or 0 if the slot is empty
+         */
+        long hash(int slot) {
+            return hashes[slot];
+        }
+
+        long offset(int slot) {
+            return offsets[slot];
+        }
+
+        int length(int slot) {
+            return lengths[slot];
+        }
+
+        boolean isAccessed(int slot) {
+            return accessed[slot];
+        }
+
+        void setAccessed(int slot) {
+            accessed[slot] = true;
+        }
+
+        /**
+         * Finds the slot of a hash.
+         * @param hash the hash
+         * @return the slot, or -1 if the hash is not in the index
+         */
+        int find(long hash) {
+            int mask = hashes.length - 1;
+            for (int slot = (int) hash & mask;; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash) {
+                    return slot;
+                } else if (hashes[slot] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * Adds or replaces an entry.
+         * @param hash the hash, not 0
+         * @param offset the position of the record
+         * @param length the length of the record
+         * @return the length of the replaced record, or -1
+         */
+        int put(long hash, long offset, int length) {
+            if ((size + 1) > hashes.length / 4 * 3) {
+                grow();
+            }
+            int mask = hashes.length - 1;
+            int slot = (int) hash & mask;
+            while (hashes[slot] != 0 && hashes[slot] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            int previous = -1;
+            if (hashes[slot] == 0) {
+                hashes[slot] = hash;
+                size++;
+            } else {
+                previous = lengths[slot];
+            }
+            offsets[slot] = offset;
+            lengths[slot] = length;
+            accessed[slot] = false;
+            return previous;
+        }
+
+        /**
+         * Removes an entry, moving back the following entries of its cluster to fill the hole.
+         * @param hash the hash
+         * @return the length of the removed record, or -1
+         */
+        int remove(long hash) {
+            int slot = find(hash);
+            if (slot < 0) {
+                return -1;
+            }
+            int previous = lengths[slot];
+            int mask = hashes.length - 1;
+            int gap = slot;
+            for (int i = (slot + 1) & mask; hashes[i] != 0; i = (i + 1) & mask) {
+                int ideal = (int) hashes[i] & mask;
+                // the entry can move to the gap if the gap is between its ideal slot and its current slot
+                if (((i - ideal) & mask) >= ((i - gap) & mask)) {
+                    hashes[gap] = hashes[i];
+                    offsets[gap] = offsets[i];
+                    lengths[gap] = lengths[i];
+                    accessed[gap] = accessed[i];
+                    gap = i;
+                }
+            }
+            hashes[gap] = 0;
+            offsets[gap] = 0;
+            lengths[gap] = 0;
+            accessed[gap] = false;
+            size--;
+            return previous;
+        }
+
+        private void grow() {
+            long[] oldHashes = hashes;
+            long[] oldOffsets = offsets;
+            int[] oldLengths = lengths;
+            boolean[] oldAccessed = accessed;
+            hashes = new long[oldHashes.length * 2];
+            offsets = new long[hashes.length];
+            lengths = new int[hashes.length];
+            accessed = new boolean[hashes.length];
+            size = 0;
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != 0) {
+                    put(oldHashes[i], oldOffsets[i], oldLengths[i]);
+                    accessed[find(oldHashes[i])] = oldAccessed[i];
+                }
+            }
+        }
+    }
+}
@@ -112,4 +112,35 @@ public final class QuadTiling {
         int shift = NR_LEVELS-level-1;
         return (byte) ((x >> shift & 1) * 2 + (y >> shift & 1));
     }
+
+    /**
+     * Returns the quad key of the given coordinates, i.e. the {@link #index(double, double, int) quad tiling indexes}
+     * of all levels in one number. The index of level {@code l} is {@code (quadKey >> 2 * (NR_LEVELS - l - 1)) & 3}.
+     * Sorting by quad key sorts the coordinates along a Z-order curve.
+     *
+     * @param lat latitude
+     * @param lon longitude
+     *
+     * @return quad key for given coordinates
+     * @since xxx
+     */
+    public static long quadKey(final double lat, final double lon) {
+        final long mask = (1L << NR_LEVELS) - 1;
+        return interleave(lon2x(lon) & mask) << 1 | interleave(lat2y(lat) & mask);
+    }
+
+    /**
+     * Spreads the bits of the given value, so that bit {@code i} moves to bit {@code 2 * i}
+     * @param value the value, which must fit into 32 bits
+     * @return the spread value
+     */
+    private static long interleave(long value) {
+        long v = value;
+        v = (v | (v << 16)) & 0x0000ffff0000ffffL;
+        v = (v | (v << 8)) & 0x00ff00ff00ff00ffL;
+        v = (v | (v << 4)) & 0x0f0f0f0f0f0f0f0fL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
 }
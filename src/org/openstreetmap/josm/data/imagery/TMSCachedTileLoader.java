@@ -1,6 +1,10 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.data.imagery;
 
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -12,10 +16,12 @@ import org.openstreetmap.gui.jmapviewer.interfaces.TileJob;
 import org.openstreetmap.gui.jmapviewer.interfaces.TileLoader;
 import org.openstreetmap.gui.jmapviewer.interfaces.TileLoaderListener;
 import org.openstreetmap.gui.jmapviewer.interfaces.TileSource;
+import org.openstreetmap.josm.data.cache.AdaptiveHostLimit;
 import org.openstreetmap.josm.data.cache.BufferedImageCacheEntry;
 import org.openstreetmap.josm.data.cache.HostLimitQueue;
 import org.openstreetmap.josm.data.preferences.IntegerProperty;
 import org.openstreetmap.josm.tools.CheckParameterUtil;
+import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.Utils;
 
 /**
@@ -39,6 +45,21 @@ public class TMSCachedTileLoader implements TileLoader, CachedTileLoader {
      */
     public static final IntegerProperty HOST_LIMIT = new IntegerProperty("imagery.tms.tmsloader.maxjobsperhost", 6);
 
+    /**
+     * Smallest number of concurrent connections per host, when the host answers with errors
+     * @since xxx
+     */
+    public static final IntegerProperty MIN_HOST_LIMIT = new IntegerProperty("imagery.tms.tmsloader.jobsperhost.min", 1);
+
+    /**
+     * Largest number of concurrent connections per host, when the host answers fast. By default, the number of connections
+     * does not grow above {@link #HOST_LIMIT}: set this higher to let it grow. Set it and {@link #MIN_HOST_LIMIT}
+     * to {@link #HOST_LIMIT} to disable the adjustment of the number of connections.
+     * @since xxx
+     */
+    public static final IntegerProperty MAX_HOST_LIMIT = new IntegerProperty("imagery.tms.tmsloader.jobsperhost.max",
+            HOST_LIMIT.getDefaultValue());
+
     /**
      * separate from JCS thread pool for TMS loader, so we can have different thread pools for default JCS
      * and for TMS imagery
@@ -47,6 +68,8 @@ public class TMSCachedTileLoader implements TileLoader, CachedTileLoader {
 
     private ThreadPoolExecutor downloadExecutor = DEFAULT_DOWNLOAD_JOB_DISPATCHER;
     protected final TileJobOptions options;
+    private volatile TileViewport viewport;
+    private volatile List<TileViewport> prefetchAreas = Collections.emptyList();
 
     /**
      * Constructor
@@ -76,7 +99,8 @@ public class TMSCachedTileLoader implements TileLoader, CachedTileLoader {
      * Returns a new {@link ThreadPoolExecutor}.
      * @param nameFormat see {@link Utils#newThreadFactory(String, int)}
      * @param workers number of worker thread to keep
-     * @param hostLimit number of concurrent downloads per host allowed
+     * @param hostLimit number of concurrent downloads per host allowed initially, adjusted between {@link #MIN_HOST_LIMIT}
+     *                  and {@link #MAX_HOST_LIMIT} to the measured latency and errors of each host
      * @return new ThreadPoolExecutor that will use a @see HostLimitQueue based queue
      */
     public static ThreadPoolExecutor getNewThreadPoolExecutor(String nameFormat, int workers, int hostLimit) {
@@ -85,7 +109,7 @@ public class TMSCachedTileLoader implements TileLoader, CachedTileLoader {
                 workers, // be never more threads than corePoolSize
                 300, // keep alive for thread
                 TimeUnit.SECONDS,
-                new HostLimitQueue(hostLimit),
+                new HostLimitQueue(hostLimit, Math.min(hostLimit, MIN_HOST_LIMIT.get()), Math.max(hostLimit, MAX_HOST_LIMIT.get())),
                 Utils.newThreadFactory(nameFormat, Thread.NORM_PRIORITY)
                 );
     }
@@ -101,12 +125,43 @@ public class TMSCachedTileLoader implements TileLoader, CachedTileLoader {
 
     @Override
     public TileJob createTileLoaderJob(Tile tile) {
-        return new TMSCachedTileLoaderJob(
+        TMSCachedTileLoaderJob job = new TMSCachedTileLoaderJob(
                 listener,
                 tile,
                 cache,
                 options,
                 getDownloadExecutor());
+        job.setLoader(this);
+        return job;
+    }
+
+    /**
+     * Creates a job prefetching a tile which is not displayed yet. The job is downloaded after the other tiles, until the
+     * tile is displayed.
+     * @param tile the tile to prefetch
+     * @return the job, or {@code null} if the downloads are too busy, or the host of the tile is throttled or fully used
+     * @since xxx
+     */
+    public TileJob createPrefetchJob(Tile tile) {
+        if (downloadExecutor.getQueue().size() >= downloadExecutor.getMaximumPoolSize()) {
+            return null;
+        }
+        if (downloadExecutor.getQueue() instanceof HostLimitQueue) {
+            try {
+                AdaptiveHostLimit limit = ((HostLimitQueue) downloadExecutor.getQueue()).getHostLimit(new URL(tile.getUrl()).getHost());
+                if (limit != null && (limit.isThrottled() || limit.getActive() >= limit.getLimit())) {
+                    return null;
+                }
+            } catch (IOException e) {
+                Logging.trace(e);
+                return null;
+            }
+        }
+        TileJob job = createTileLoaderJob(tile);
+        if (job instanceof TMSCachedTileLoaderJob) {
+            ((TMSCachedTileLoaderJob) job).setPrefetch(true);
+        }
+        return job;
     }
 
     @Override
@@ -135,6 +190,51 @@ public class TMSCachedTileLoader implements TileLoader, CachedTileLoader {
         }
     }
 
+    /**
+     * Returns the tiles shown to the user, used to order the downloads of this loader.
+     * @return the tiles shown to the user, or {@code null} if unknown
+     * @since xxx
+     */
+    public TileViewport getViewport() {
+        return viewport;
+    }
+
+    /**
+     * Sets the tiles shown to the user. The queued downloads of this loader are then ordered by their distance to the
+     * viewport, and the queued downloads of tiles which are no longer near the viewport are cancelled. The downloads of
+     * the other loaders sharing the same executor are left untouched.
+     * @param viewport the tiles shown to the user, or {@code null} to cancel all the queued downloads of this loader
+     * @since xxx
+     */
+    public void setViewport(TileViewport viewport) {
+        setViewport(viewport, Collections.emptyList());
+    }
+
+    /**
+     * Sets the tiles shown to the user, and the tiles which are prefetched. The queued downloads of this loader are then
+     * ordered by their distance to the viewport, and the queued downloads of tiles which are no longer near the viewport are
+     * cancelled, unless the tiles are prefetched and still in one of the prefetched areas. The downloads of the other
+     * loaders sharing the same executor are left untouched.
+     * @param viewport the tiles shown to the user, or {@code null} to cancel all the queued downloads of this loader
+     * @param prefetchAreas the tiles which are prefetched, see {@link TileMotionPredictor#getPrefetchAreas}
+     * @since xxx
+     */
+    public void setViewport(TileViewport viewport, List<TileViewport> prefetchAreas) {
+        if (viewport != null && viewport.equals(this.viewport) && prefetchAreas.equals(this.prefetchAreas)) {
+            return;
+        }
+        this.viewport = viewport;
+        this.prefetchAreas = prefetchAreas;
+        for (Runnable r: downloadExecutor.getQueue()) {
+            if (r instanceof TMSCachedTileLoaderJob) {
+                TMSCachedTileLoaderJob job = (TMSCachedTileLoaderJob) r;
+                if (job.getLoader() == this && !job.isRelevant(viewport, prefetchAreas) && downloadExecutor.remove(job)) {
+                    job.handleJobCancellation();
+                }
+            }
+        }
+    }
+
     @Override
     public boolean hasOutstandingTasks() {
         return downloadExecutor.getTaskCount() > downloadExecutor.getCompletedTaskCount();
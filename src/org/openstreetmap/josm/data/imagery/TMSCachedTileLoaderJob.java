@@ -58,6 +58,8 @@ public class TMSCachedTileLoaderJob extends JCSCachedTileLoaderJob<String, Buffe
     protected final Tile tile;
     private volatile URL url;
     private final TileJobOptions options;
+    private volatile TMSCachedTileLoader loader;
+    private volatile boolean prefetch;
 
     // we need another deduplication of Tile Loader listeners, as for each submit, new TMSCachedTileLoaderJob was created
     // that way, we reduce calls to tileLoadingFinished, and general CPU load due to surplus Map repaints
@@ -94,6 +96,56 @@ public class TMSCachedTileLoaderJob extends JCSCachedTileLoaderJob<String, Buffe
         return null;
     }
 
+    /**
+     * Returns the loader which created this job.
+     * @return the loader which created this job, or {@code null}
+     */
+    TMSCachedTileLoader getLoader() {
+        return loader;
+    }
+
+    /**
+     * Sets the loader which created this job, whose viewport determines the download priority.
+     * @param loader the loader which created this job
+     */
+    void setLoader(TMSCachedTileLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Marks this job as prefetching a tile which is not displayed yet, to be downloaded after the other tiles.
+     * @param prefetch {@code true} if the tile of this job is prefetched
+     */
+    void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public double getPriority() {
+        TMSCachedTileLoader l = loader;
+        TileViewport viewport = l == null ? null : l.getViewport();
+        if (viewport == null || tile == null) {
+            return super.getPriority();
+        }
+        return prefetch
+                ? viewport.getPrefetchPriority(tile.getXtile(), tile.getYtile(), tile.getZoom())
+                : viewport.getPriority(tile.getXtile(), tile.getYtile(), tile.getZoom());
+    }
+
+    /**
+     * Determines if the tile of this job is still worth downloading.
+     * @param viewport the tiles shown to the user, or {@code null}
+     * @param prefetchAreas the tiles which are prefetched
+     * @return {@code true} if the tile of this job is near the viewport, or is prefetched and still in a prefetched area
+     */
+    boolean isRelevant(TileViewport viewport, List<TileViewport> prefetchAreas) {
+        if (viewport == null || tile == null) {
+            return false;
+        }
+        return viewport.isRelevant(tile.getXtile(), tile.getYtile(), tile.getZoom())
+                || (prefetch && prefetchAreas.stream().anyMatch(area -> area.contains(tile.getXtile(), tile.getYtile(), tile.getZoom())));
+    }
+
     /*
      *  this doesn't needs to be synchronized, as it's not that costly to keep only one execution
      *  in parallel, but URL creation and Tile.getUrl() are costly and are not needed when fetching
@@ -0,0 +1,116 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.imagery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows the successive {@linkplain TileViewport viewports} of an imagery layer while the user pans and zooms, to find the
+ * tiles which will be displayed next.
+ * <p>
+ * The pan velocity is extrapolated over a short time, and the tiles of the previous zoom level, and of the next zoom level
+ * while zooming in, are prefetched too.
+ * @since xxx
+ */
+public final class TileMotionPredictor {
+
+    /** Duration over which the pan velocity is extrapolated */
+    private static final double LOOKAHEAD = 1;
+    /** Duration after which the map is considered to stand still */
+    private static final long IDLE = TimeUnit.SECONDS.toNanos(1);
+    /** Duration after a zoom change during which the next zoom level is prefetched */
+    private static final long ZOOM_MEMORY = TimeUnit.SECONDS.toNanos(2);
+    /** Weight of a new sample in the pan velocity */
+    private static final double SMOOTHING = 0.5;
+    /** Slowest pan velocity to extrapolate, in tiles per second */
+    private static final double MIN_SPEED = 0.5;
+    /** Number of tiles around the predicted viewport to prefetch */
+    private static final int RING = 1;
+
+    private TileViewport last;
+    private long lastTime;
+    private double vx;
+    private double vy;
+    private int zoomDirection;
+    private long lastZoomChange;
+
+    /**
+     * Records the current viewport.
+     * @param viewport the current viewport, or {@code null} if unknown
+     * @param nanos the current time, as given by {@link System#nanoTime()}
+     */
+    public synchronized void update(TileViewport viewport, long nanos) {
+        if (viewport == null) {
+            last = null;
+            vx = 0;
+            vy = 0;
+            return;
+        }
+        if (viewport.equals(last)) {
+            return;
+        }
+        if (last != null) {
+            if (viewport.getZoom() != last.getZoom()) {
+                zoomDirection = Integer.signum(viewport.getZoom() - last.getZoom());
+                lastZoomChange = nanos;
+                vx = 0;
+                vy = 0;
+            } else if (nanos - lastTime > IDLE || nanos <= lastTime) {
+                // a new gesture starts
+                vx = 0;
+                vy = 0;
+            } else {
+                double dt = (nanos - lastTime) / 1e9;
+                vx += SMOOTHING * ((centerX(viewport) - centerX(last)) / dt - vx);
+                vy += SMOOTHING * ((centerY(viewport) - centerY(last)) / dt - vy);
+            }
+        }
+        last = viewport;
+        lastTime = nanos;
+    }
+
+    private static double centerX(TileViewport viewport) {
+        return (viewport.getMinX() + viewport.getMaxX() + 1) / 2d;
+    }
+
+    private static double centerY(TileViewport viewport) {
+        return (viewport.getMinY() + viewport.getMaxY() + 1) / 2d;
+    }
+
+    /**
+     * Returns the tiles to prefetch: the tiles ahead of the viewport in the pan direction, and the tiles of the previous and
+     * of the next zoom levels. The areas include the current viewport, whose tiles are already loaded.
+     * @param nanos the current time, as given by {@link System#nanoTime()}
+     * @return the areas to prefetch, which may exceed the bounds of the tile source
+     */
+    public synchronized List<TileViewport> getPrefetchAreas(long nanos) {
+        List<TileViewport> areas = new ArrayList<>(3);
+        if (last == null) {
+            return areas;
+        }
+        int zoom = last.getZoom();
+        int minX = last.getMinX();
+        int minY = last.getMinY();
+        int maxX = last.getMaxX();
+        int maxY = last.getMaxY();
+        if (nanos - lastTime <= IDLE && Math.hypot(vx, vy) >= MIN_SPEED) {
+            // do not prefetch more than half a screen ahead
+            int dx = (int) Math.round(clamp(vx * LOOKAHEAD, (maxX - minX + 1) / 2d));
+            int dy = (int) Math.round(clamp(vy * LOOKAHEAD, (maxY - minY + 1) / 2d));
+            areas.add(new TileViewport(zoom, Math.min(minX, minX + dx) - RING, Math.min(minY, minY + dy) - RING,
+                    Math.max(maxX, maxX + dx) + RING, Math.max(maxY, maxY + dy) + RING));
+        }
+        if (zoom > 0) {
+            areas.add(new TileViewport(zoom - 1, minX >> 1, minY >> 1, maxX >> 1, maxY >> 1));
+        }
+        if (zoomDirection > 0 && nanos - lastZoomChange <= ZOOM_MEMORY) {
+            areas.add(new TileViewport(zoom + 1, 2 * minX, 2 * minY, 2 * maxX + 1, 2 * maxY + 1));
+        }
+        return areas;
+    }
+
+    private static double clamp(double value, double max) {
+        return Math.max(-max, Math.min(max, value));
+    }
+}
@@ -0,0 +1,171 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.imagery;
+
+import java.util.Objects;
+
+/**
+ * The tiles of an imagery layer which are shown to the user, used to schedule the tile downloads.
+ * <p>
+ * The download queue starts with the tiles closest to the center of the viewport, at the zoom level of the viewport, and the
+ * queued tiles which are no longer near the viewport are cancelled. The prefetched tiles are loaded after all the other tiles,
+ * until they become visible.
+ * @since xxx
+ */
+public final class TileViewport {
+
+    /** Added to the priority of the tiles outside of the viewport, so that they are loaded after all the visible tiles */
+    private static final double OFF_SCREEN = 1000;
+    /** Added to the priority of the prefetched tiles which are not visible, so that they are loaded after all the other tiles */
+    private static final double PREFETCH = 2 * OFF_SCREEN;
+    /**
+     * Number of tiles around the viewport whose downloads are kept when the viewport moves. The prefetched tiles further
+     * ahead are kept while they are in the {@linkplain TileMotionPredictor#getPrefetchAreas predicted areas}
+     */
+    private static final int MARGIN = 2;
+
+    private final int zoom;
+    private final int minX;
+    private final int minY;
+    private final int maxX;
+    private final int maxY;
+
+    /**
+     * Constructs a new {@code TileViewport}.
+     * @param zoom the zoom level of the displayed tiles
+     * @param minX the smallest x index of the displayed tiles
+     * @param minY the smallest y index of the displayed tiles
+     * @param maxX the largest x index of the displayed tiles
+     * @param maxY the largest y index of the displayed tiles
+     */
+    public TileViewport(int zoom, int minX, int minY, int maxX, int maxY) {
+        this.zoom = zoom;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Returns the zoom level of the displayed tiles.
+     * @return the zoom level of the displayed tiles
+     */
+    public int getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Returns the smallest x index of the displayed tiles.
+     * @return the smallest x index of the displayed tiles
+     */
+    public int getMinX() {
+        return minX;
+    }
+
+    /**
+     * Returns the smallest y index of the displayed tiles.
+     * @return the smallest y index of the displayed tiles
+     */
+    public int getMinY() {
+        return minY;
+    }
+
+    /**
+     * Returns the largest x index of the displayed tiles.
+     * @return the largest x index of the displayed tiles
+     */
+    public int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Returns the largest y index of the displayed tiles.
+     * @return the largest y index of the displayed tiles
+     */
+    public int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Returns the download priority of a tile, lower values being downloaded first. It is the distance between the tile and
+     * the center of the viewport, in tiles at the zoom level of the viewport, plus the difference between the zoom levels.
+     * The tiles outside of the viewport come after all the visible tiles.
+     * @param x the x index of the tile
+     * @param y the y index of the tile
+     * @param tileZoom the zoom level of the tile
+     * @return the priority of the tile
+     */
+    public double getPriority(int x, int y, int tileZoom) {
+        double scale = Math.scalb(1d, zoom - tileZoom);
+        double dx = distance(x * scale, (x + 1) * scale, (minX + maxX + 1) / 2d);
+        double dy = distance(y * scale, (y + 1) * scale, (minY + maxY + 1) / 2d);
+        double priority = Math.hypot(dx, dy) + Math.abs(zoom - tileZoom);
+        return intersects(x, y, tileZoom, 0) ? priority : OFF_SCREEN + priority;
+    }
+
+    /**
+     * Returns the download priority of a prefetched tile: the {@linkplain #getPriority priority} of the tile once it is
+     * displayed, or a priority after all the other tiles before.
+     * @param x the x index of the tile
+     * @param y the y index of the tile
+     * @param tileZoom the zoom level of the tile
+     * @return the priority of the tile
+     */
+    public double getPrefetchPriority(int x, int y, int tileZoom) {
+        double priority = getPriority(x, y, tileZoom);
+        return tileZoom == zoom && intersects(x, y, tileZoom, 0) ? priority : PREFETCH + priority;
+    }
+
+    /**
+     * Determines if a tile is still worth downloading: if it is not at a higher zoom level than needed, and if it is near the
+     * viewport.
+     * @param x the x index of the tile
+     * @param y the y index of the tile
+     * @param tileZoom the zoom level of the tile
+     * @return {@code true} if the tile is still worth downloading
+     */
+    public boolean isRelevant(int x, int y, int tileZoom) {
+        return tileZoom <= zoom + 1 && intersects(x, y, tileZoom, MARGIN);
+    }
+
+    /**
+     * Determines if a tile is one of the tiles of this viewport, at the same zoom level.
+     * @param x the x index of the tile
+     * @param y the y index of the tile
+     * @param tileZoom the zoom level of the tile
+     * @return {@code true} if the tile is in this viewport
+     * @since xxx
+     */
+    public boolean contains(int x, int y, int tileZoom) {
+        return tileZoom == zoom && x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    private boolean intersects(int x, int y, int tileZoom, int margin) {
+        double scale = Math.scalb(1d, zoom - tileZoom);
+        return x * scale < maxX + 1 + margin && (x + 1) * scale > minX - margin
+            && y * scale < maxY + 1 + margin && (y + 1) * scale > minY - margin;
+    }
+
+    private static double distance(double min, double max, double value) {
+        return Math.max(0, Math.max(min - value, value - max));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        TileViewport other = (TileViewport) obj;
+        return zoom == other.zoom && minX == other.minX && minY == other.minY && maxX == other.maxX && maxY == other.maxY;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(zoom, minX, minY, maxX, maxY);
+    }
+
+    @Override
+    public String toString() {
+        return "TileViewport [zoom=" + zoom + ", x=" + minX + '-' + maxX + ", y=" + minY + '-' + maxY + ']';
+    }
+}
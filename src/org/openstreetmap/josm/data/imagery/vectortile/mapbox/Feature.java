@@ -11,7 +11,9 @@ import java.util.Locale;
 import org.openstreetmap.josm.data.osm.TagMap;
 import org.openstreetmap.josm.data.protobuf.ProtobufPacked;
 import org.openstreetmap.josm.data.protobuf.ProtobufParser;
+import org.openstreetmap.josm.data.protobuf.ProtobufReader;
 import org.openstreetmap.josm.data.protobuf.ProtobufRecord;
+import org.openstreetmap.josm.data.protobuf.WireType;
 import org.openstreetmap.josm.tools.Utils;
 
 /**
@@ -118,6 +120,66 @@ public class Feature {
         }
     }
 
+    /**
+     * Create a new Feature
+     *
+     * @param layer  The layer the feature is part of (required for tags)
+     * @param reader The reader for the feature message
+     * @since xxx
+     */
+    public Feature(Layer layer, ProtobufReader reader) {
+        long tId = 0;
+        GeometryTypes geometryTypeTemp = GeometryTypes.UNKNOWN;
+        String key = null;
+        // See Feature(Layer, ProtobufRecord) for why this is a list
+        ArrayList<String> tagList = null;
+        while (reader.hasNext()) {
+            final int field = reader.nextField();
+            if (field == TAG_FIELD && reader.getWireType() == WireType.LENGTH_DELIMITED) {
+                // This is packed in v1 and v2
+                final long[] numbers = new long[reader.getPackedVarIntCount()];
+                final int count = reader.readPackedVarInt(numbers, 0);
+                if (tagList == null) {
+                    tagList = new ArrayList<>(count);
+                } else {
+                    tagList.ensureCapacity(tagList.size() + count);
+                }
+                for (int i = 0; i < count; i++) {
+                    key = parseTagValue(key, layer, (int) numbers[i], tagList);
+                }
+            } else if (field == GEOMETRY_FIELD && reader.getWireType() == WireType.LENGTH_DELIMITED) {
+                // This is packed in v1 and v2
+                final long[] numbers = new long[reader.getPackedVarIntCount()];
+                final int count = reader.readPackedVarInt(numbers, 0);
+                CommandInteger currentCommand = null;
+                for (int i = 0; i < count; i++) {
+                    if (currentCommand != null && currentCommand.hasAllExpectedParameters()) {
+                        currentCommand = null;
+                    }
+                    if (currentCommand == null) {
+                        currentCommand = new CommandInteger(Math.toIntExact(numbers[i]));
+                        this.geometry.add(currentCommand);
+                    } else {
+                        currentCommand.addParameter(ProtobufParser.decodeZigZag(numbers[i]));
+                    }
+                }
+            } else if (field == GEOMETRY_TYPE_FIELD) {
+                geometryTypeTemp = GeometryTypes.getAllValues()[(int) reader.readVarInt()];
+            } else if (field == ID_FIELD) {
+                tId = reader.readVarInt();
+            } else {
+                reader.skipField();
+            }
+        }
+        this.id = tId;
+        this.geometryType = geometryTypeTemp;
+        if (tagList != null && !tagList.isEmpty()) {
+            this.tags = new TagMap(tagList.toArray(EMPTY_STRING_ARRAY));
+        } else {
+            this.tags = null;
+        }
+    }
+
     /**
      * Parse a tag value
      *
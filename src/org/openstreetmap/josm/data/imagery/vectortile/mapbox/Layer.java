@@ -17,8 +17,10 @@ import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.openstreetmap.josm.data.protobuf.ProtobufParser;
+import org.openstreetmap.josm.data.protobuf.ProtobufReader;
 import org.openstreetmap.josm.data.protobuf.ProtobufRecord;
 import org.openstreetmap.josm.tools.Destroyable;
+import org.openstreetmap.josm.tools.Utils;
 
 /**
  * A Mapbox Vector Tile Layer
@@ -160,24 +162,88 @@ public final class Layer implements Destroyable {
     }
 
     /**
-     * Get all the records from a array of bytes
-     * @param bytes The byte information
-     * @return All the protobuf records
-     * @throws IOException If there was an error reading the bytes (unlikely)
+     * Create a new layer
+     * @param bytes The bytes that the layer comes from
+     * @throws IOException - if an IO error occurs
      */
-    private static Collection<ProtobufRecord> getAllRecords(byte[] bytes) throws IOException {
-        try (ProtobufParser parser = new ProtobufParser(bytes)) {
-            return parser.allRecords();
-        }
+    public Layer(byte[] bytes) throws IOException {
+        this(new ProtobufReader(bytes));
     }
 
     /**
      * Create a new layer
-     * @param bytes The bytes that the layer comes from
-     * @throws IOException - if an IO error occurs
+     * @param reader The reader for the layer message
+     * @since xxx
      */
-    public Layer(byte[] bytes) throws IOException {
-        this(getAllRecords(bytes));
+    public Layer(ProtobufReader reader) {
+        byte tVersion = DEFAULT_VERSION;
+        String tName = null;
+        int tExtent = DEFAULT_EXTENT;
+        // Features need the keys and values, which may come later
+        final List<ProtobufReader> features = new ArrayList<>();
+        while (reader.hasNext()) {
+            final int field = reader.nextField();
+            if (field == VERSION_FIELD) {
+                tVersion = (byte) reader.readVarInt();
+                // Per spec, we cannot continue past this until we have checked the version number
+                if (tVersion != 1 && tVersion != 2) {
+                    throw new IllegalArgumentException(tr("We do not understand version {0} of the vector tile specification", tVersion));
+                }
+            } else if (field == NAME_FIELD) {
+                tName = Utils.intern(reader.readString());
+            } else if (field == EXTENT_FIELD) {
+                tExtent = (int) reader.readVarInt();
+            } else if (field == KEY_FIELD) {
+                this.keyList.add(Utils.intern(reader.readString()));
+            } else if (field == VALUE_FIELD) {
+                final int limit = reader.beginMessage();
+                parseValue(reader);
+                reader.endMessage(limit);
+            } else if (field == FEATURE_FIELD) {
+                features.add(reader.readMessage());
+            } else {
+                reader.skipField();
+            }
+        }
+        this.version = tVersion;
+        if (tName == null) {
+            throw new IllegalArgumentException(tr("Vector tile layers must have a layer name"));
+        }
+        this.name = tName;
+        this.extent = tExtent;
+
+        this.featureCollection = new ArrayList<>(features.size());
+        for (ProtobufReader feature : features) {
+            this.featureCollection.add(new Feature(this, feature));
+        }
+    }
+
+    private void parseValue(ProtobufReader reader) {
+        final int field = reader.nextField();
+        switch (field) {
+            case 1:
+                this.valueList.add(Utils.intern(reader.readString()));
+                break;
+            case 2:
+                this.valueList.add(reader.readFloat());
+                break;
+            case 3:
+                this.valueList.add(reader.readDouble());
+                break;
+            case 4:
+            case 5:
+                // This may have issues if there are actual uint_values (i.e., more than {@link Long#MAX_VALUE})
+                this.valueList.add(ProtobufParser.convertLong(reader.readVarInt()));
+                break;
+            case 6:
+                this.valueList.add(ProtobufParser.convertLong(reader.readSignedVarInt()));
+                break;
+            case 7:
+                this.valueList.add(reader.readVarInt() != 0);
+                break;
+            default:
+                throw new IllegalArgumentException(tr("Unknown field in vector tile layer value ({0})", field));
+        }
     }
 
     /**
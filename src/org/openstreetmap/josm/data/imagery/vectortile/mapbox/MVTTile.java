@@ -4,6 +4,7 @@ package org.openstreetmap.josm.data.imagery.vectortile.mapbox;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.BufferUnderflowException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -15,8 +16,7 @@ import org.openstreetmap.gui.jmapviewer.interfaces.TileSource;
 import org.openstreetmap.josm.data.IQuadBucketType;
 import org.openstreetmap.josm.data.imagery.vectortile.VectorTile;
 import org.openstreetmap.josm.data.osm.BBox;
-import org.openstreetmap.josm.data.protobuf.ProtobufParser;
-import org.openstreetmap.josm.data.protobuf.ProtobufRecord;
+import org.openstreetmap.josm.data.protobuf.ProtobufReader;
 import org.openstreetmap.josm.data.vector.VectorDataStore;
 import org.openstreetmap.josm.tools.ListenerList;
 import org.openstreetmap.josm.tools.Logging;
@@ -50,19 +50,18 @@ public class MVTTile extends Tile implements VectorTile, IQuadBucketType {
     public void loadImage(final InputStream inputStream) throws IOException {
         if (this.image == null || this.image == Tile.LOADING_IMAGE || this.image == Tile.ERROR_IMAGE) {
             this.initLoading();
-            ProtobufParser parser = new ProtobufParser(inputStream);
-            Collection<ProtobufRecord> protobufRecords = parser.allRecords();
-            this.layers = new ArrayList<>(protobufRecords.size());
-            for (ProtobufRecord protoBufRecord : protobufRecords) {
-                if (protoBufRecord.getField() == Layer.LAYER_FIELD) {
-                    try (ProtobufParser tParser = new ProtobufParser(protoBufRecord.getBytes())) {
-                        this.layers.add(new Layer(tParser.allRecords()));
-                    } catch (IOException e) {
+            final ProtobufReader reader = new ProtobufReader(inputStream.readAllBytes());
+            this.layers = new ArrayList<>();
+            while (reader.hasNext()) {
+                if (reader.nextField() == Layer.LAYER_FIELD) {
+                    final ProtobufReader layerReader = reader.readMessage();
+                    try {
+                        this.layers.add(new Layer(layerReader));
+                    } catch (BufferUnderflowException e) {
                         Logging.error(e);
-                    } finally {
-                        // Cleanup bytes
-                        protoBufRecord.close();
                     }
+                } else {
+                    reader.skipField();
                 }
             }
             this.layers = new ArrayList<>(this.layers);
@@ -4,6 +4,7 @@ package org.openstreetmap.josm.data.osm;
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.awt.geom.Area;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -106,6 +107,10 @@ import org.openstreetmap.josm.tools.SubclassFilteredCollection;
  * Note that locks cannot be upgraded - if one threads use read lock and and then write lock, dead lock will occur - see #5814 for
  * sample ticket
  *
+ * Short read-only operations, e.g. searches run by background tasks, can avoid the read lock with {@link #readOptimistically}.
+ * They are run without lock and only repeated with the read lock if the dataset was modified in the meantime.
+ * The stamps of {@link #tryOptimisticRead()} and {@link #validate(long)} can be used for the same purpose.
+ *
  * @author imi
  */
 public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>, ProjectionChangeListener {
@@ -125,6 +130,11 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     private final Storage<OsmPrimitive> allPrimitives = new Storage<>(new Storage.PrimitiveIdHash(), true);
     private final Map<PrimitiveId, OsmPrimitive> primitivesMap = allPrimitives
             .foreignKey(new Storage.PrimitiveIdHash());
+    /**
+     * The inverted index of the tags, created on first use by {@link #getTagIndex()}
+     */
+    private volatile TagIndex tagIndex;
+    private final Object tagIndexLock = new Object();
     private final CopyOnWriteArrayList<DataSetListener> listeners = new CopyOnWriteArrayList<>();
 
     // provide means to highlight map elements that are not osm primitives
@@ -144,6 +154,11 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     private final AtomicBoolean isReadOnly = new AtomicBoolean(false);
 
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Incremented when the outermost update begins and ends, so it is odd while the dataset is being modified.
+     * It starts at 2, because 0 is the invalid stamp of {@link #tryOptimisticRead()}.
+     */
+    private volatile long updateStamp = 2;
 
     /**
      * The mutex lock that is used to synchronize selection changes.
@@ -305,6 +320,87 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
         return lock.readLock();
     }
 
+    /**
+     * Returns a stamp for reading the dataset without lock. The stamp must be checked with {@link #validate(long)}
+     * after reading: if it is not valid anymore, the dataset may have been modified during the read.
+     * @return the stamp, or 0 if the dataset is currently being modified
+     * @since xxx
+     */
+    public long tryOptimisticRead() {
+        final long stamp = updateStamp;
+        return (stamp & 1) == 0 ? stamp : 0;
+    }
+
+    /**
+     * Checks if the dataset was not modified since a stamp was returned by {@link #tryOptimisticRead()}.
+     * @param stamp the stamp
+     * @return {@code true} if the dataset was not modified since the stamp was issued
+     * @since xxx
+     */
+    public boolean validate(long stamp) {
+        VarHandle.loadLoadFence();
+        return stamp != 0 && stamp == updateStamp;
+    }
+
+    /**
+     * Performs a read-only action, without locking the dataset if possible.
+     * <p>
+     * The action is first run without lock. If the dataset was modified concurrently, its result is discarded, and it is
+     * run again while holding the {@link #getReadLock() read lock}. The action must therefore not have side effects, and it
+     * must cope with inconsistent data in the first run: exceptions thrown because of a concurrent modification are ignored.
+     * @param action the read-only action
+     * @param <R> result type
+     * @return action result
+     * @since xxx
+     */
+    public <R> R readOptimistically(Supplier<R> action) {
+        final long stamp = tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                final R result = action.get();
+                if (validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (validate(stamp)) {
+                    throw e;
+                }
+                Logging.trace(e);
+            }
+        }
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the inverted index of the tags of this data set. The index is created on the first call, and then kept
+     * up to date when the data set changes. See {@link TagIndex} for the locking requirements.
+     * @return the tag index, or {@code null} if the tag index is {@linkplain TagIndex#ENABLED disabled}
+     * @since xxx
+     */
+    public TagIndex getTagIndex() {
+        TagIndex index = tagIndex;
+        if (index == null && TagIndex.ENABLED.get()) {
+            lock.readLock().lock();
+            try {
+                synchronized (tagIndexLock) {
+                    index = tagIndex;
+                    if (index == null) {
+                        index = new TagIndex(allPrimitives);
+                        tagIndex = index;
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        return index;
+    }
+
     /**
      * History of selections - shared by plugins and SelectionListDialog
      */
@@ -409,12 +505,7 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
 
     @Override
     public List<Node> searchNodes(BBox bbox) {
-        lock.readLock().lock();
-        try {
-            return store.searchNodes(bbox);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return readOptimistically(() -> store.searchNodes(bbox));
     }
 
     @Override
@@ -424,22 +515,12 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
 
     @Override
     public List<Way> searchWays(BBox bbox) {
-        lock.readLock().lock();
-        try {
-            return store.searchWays(bbox);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return readOptimistically(() -> store.searchWays(bbox));
     }
 
     @Override
     public List<Relation> searchRelations(BBox bbox) {
-        lock.readLock().lock();
-        try {
-            return store.searchRelations(bbox);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return readOptimistically(() -> store.searchRelations(bbox));
     }
 
     /**
@@ -521,10 +602,57 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
             primitive.setDataset(this);
             primitive.updatePosition(); // Set cached bbox for way and relation (required for reindexWay and reindexRelation to work properly)
             store.addPrimitive(primitive);
+            if (tagIndex != null) {
+                tagIndex.add(primitive);
+            }
             firePrimitivesAdded(Collections.singletonList(primitive), false);
         });
     }
 
+    /**
+     * Adds primitives to the dataset. This is much faster than adding them one by one,
+     * since the spatial index is built in one go.
+     *
+     * @param primitives the primitives.
+     * @throws IllegalStateException if the dataset is read-only
+     * @since xxx
+     */
+    public void addPrimitives(Collection<? extends OsmPrimitive> primitives) {
+        checkModifiable();
+        if (primitives.isEmpty()) {
+            return;
+        }
+        update(() -> {
+            List<OsmPrimitive> added = new ArrayList<>(primitives.size());
+            try {
+                for (OsmPrimitive primitive : primitives) {
+                    Objects.requireNonNull(primitive, "primitive");
+                    if (getPrimitiveById(primitive) != null)
+                        throw new DataIntegrityProblemException(
+                                tr("Unable to add primitive {0} to the dataset because it is already included", primitive.toString()),
+                                null, primitive);
+                    primitive.setDataset(this);
+                    allPrimitives.add(primitive);
+                    added.add(primitive);
+                }
+            } catch (RuntimeException e) {
+                for (OsmPrimitive primitive : added) {
+                    allPrimitives.remove(primitive);
+                    primitive.setDataset(null);
+                }
+                throw e;
+            }
+            for (OsmPrimitive primitive : added) {
+                primitive.updatePosition(); // Set cached bbox for way and relation (required for reindexWay and reindexRelation to work properly)
+            }
+            store.addPrimitives(added);
+            if (tagIndex != null) {
+                added.forEach(tagIndex::add);
+            }
+            firePrimitivesAdded(added, false);
+        });
+    }
+
     /**
      * Adds recursively a primitive, and all its children, to the dataset.
      *
@@ -627,6 +755,9 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
 
     private void removePrimitiveFromStorage(OsmPrimitive primitive) {
         store.removePrimitive(primitive);
+        if (tagIndex != null) {
+            tagIndex.remove(primitive);
+        }
         allPrimitives.remove(primitive);
         primitive.setDataset(null);
     }
@@ -1004,7 +1135,11 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
      */
     public void beginUpdate() {
         lock.writeLock().lock();
-        updateCount++;
+        if (updateCount++ == 0) {
+            updateStamp++;
+            // The modifications must not become visible before the stamp
+            VarHandle.storeStoreFence();
+        }
     }
 
     /**
@@ -1026,6 +1161,7 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
             updateCount--;
             List<AbstractDatasetChangedEvent> eventsToFire = Collections.emptyList();
             if (updateCount == 0) {
+                updateStamp++;
                 eventsToFire = new ArrayList<>(cachedEvents);
                 cachedEvents.clear();
             }
@@ -1126,6 +1262,9 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     }
 
     void fireTagsChanged(OsmPrimitive prim, Map<String, String> originalKeys) {
+        if (tagIndex != null) {
+            tagIndex.tagsChanged(prim, originalKeys);
+        }
         fireEvent(new TagsChangedEvent(this, prim, originalKeys));
     }
 
@@ -1211,6 +1350,7 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
             }
             store.clear();
             allPrimitives.clear();
+            tagIndex = null;
             conflicts.get().clear();
         });
     }
@@ -1329,6 +1469,9 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     public void lock() {
         if (!isReadOnly.compareAndSet(false, true)) {
             Logging.warn("Trying to set readOnly flag on a readOnly dataset ", getName());
+        } else {
+            // The spatial index of a read-only dataset does not change, so it can be packed
+            update(store::pack);
         }
     }
 
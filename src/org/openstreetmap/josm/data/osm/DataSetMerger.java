@@ -46,6 +46,8 @@ public class DataSetMerger {
      */
     private final Set<PrimitiveId> objectsWithChildrenToMerge;
     private final Set<OsmPrimitive> objectsToDelete;
+    /** new primitives which are added to the target dataset at once, see {@link #addNewPrimitives()} */
+    private final List<OsmPrimitive> newPrimitives;
 
     /**
      * constructor
@@ -64,6 +66,7 @@ public class DataSetMerger {
         mergedMap = new HashMap<>();
         objectsWithChildrenToMerge = new HashSet<>();
         objectsToDelete = new HashSet<>();
+        newPrimitives = new ArrayList<>();
     }
 
     /**
@@ -121,11 +124,20 @@ public class DataSetMerger {
         default: throw new AssertionError();
         }
         target.mergeFrom(source);
-        targetDataSet.addPrimitive(target);
+        newPrimitives.add(target);
         mergedMap.put(source.getPrimitiveId(), target.getPrimitiveId());
         objectsWithChildrenToMerge.add(source.getPrimitiveId());
     }
 
+    /**
+     * Adds the new primitives created by {@link #mergePrimitive} to the target dataset.
+     * They are added in one go, which is much faster than adding them one by one.
+     */
+    private void addNewPrimitives() {
+        targetDataSet.addPrimitives(newPrimitives);
+        newPrimitives.clear();
+    }
+
     protected OsmPrimitive getMergeTarget(OsmPrimitive mergeSource) {
         PrimitiveId targetId = mergedMap.get(mergeSource.getPrimitiveId());
         if (targetId == null)
@@ -428,6 +440,7 @@ public class DataSetMerger {
                     progressMonitor.worked(1);
                 }
             }
+            addNewPrimitives();
             candidates = null;
             for (Way way: sourceDataSet.getWays()) {
                 // lazy initialisation to improve performance
@@ -439,6 +452,7 @@ public class DataSetMerger {
                     progressMonitor.worked(1);
                 }
             }
+            addNewPrimitives();
             candidates = null;
             for (Relation relation: sourceDataSet.getRelations()) {
                 // lazy initialisation to improve performance
@@ -450,6 +464,7 @@ public class DataSetMerger {
                     progressMonitor.worked(1);
                 }
             }
+            addNewPrimitives();
             candidates = null;
             fixReferences();
 
@@ -2,8 +2,10 @@
 package org.openstreetmap.josm.data.osm;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import org.openstreetmap.josm.data.osm.search.SearchCompiler;
 import org.openstreetmap.josm.data.osm.search.SearchCompiler.Match;
@@ -72,17 +74,27 @@ public class FilterMatcher {
     }
 
     private static class FilterInfo {
+        private final Match compiled;
         private final Match match;
         private final boolean isDelete;
         private final boolean isInverted;
+        /** The primitives which may match {@link #compiled}, or {@code null} if every primitive has to be tested */
+        private Set<OsmPrimitive> candidates;
 
         FilterInfo(Filter filter) throws SearchParseError {
             isDelete = filter.mode == SearchMode.remove || filter.mode == SearchMode.in_selection;
 
-            Match compiled = SearchCompiler.compile(filter);
+            this.compiled = SearchCompiler.compile(filter);
             this.match = filter.inverted ? new Not(compiled) : compiled;
             this.isInverted = filter.inverted;
         }
+
+        boolean match(IPrimitive primitive) {
+            if (candidates != null && !candidates.contains(primitive)) {
+                return isInverted;
+            }
+            return match.match(primitive);
+        }
     }
 
     private final List<FilterInfo> hiddenFilters = new ArrayList<>();
@@ -108,6 +120,35 @@ public class FilterMatcher {
         disabledFilters.clear();
     }
 
+    /**
+     * Uses the tag index of a data set to skip the evaluation of the filters for the primitives which cannot match them.
+     * The data set must not change until this method is called again with {@code null}.
+     * @param index the tag index, or {@code null} to evaluate the filters for every primitive
+     */
+    void setTagIndex(TagIndex index) {
+        for (List<FilterInfo> filters : Arrays.asList(hiddenFilters, disabledFilters)) {
+            for (FilterInfo fi : filters) {
+                fi.candidates = index == null ? null : fi.compiled.getCandidates(index);
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of parent/child links between a primitive and the primitives whose changes may change
+     * whether the filters match it.
+     * @return the maximum {@linkplain Match#getDependencyDepth() dependency depth} of the filters
+     * @since xxx
+     */
+    public int getDependencyDepth() {
+        int depth = 0;
+        for (List<FilterInfo> filters : Arrays.asList(hiddenFilters, disabledFilters)) {
+            for (FilterInfo fi : filters) {
+                depth = Math.max(depth, fi.compiled.getDependencyDepth());
+            }
+        }
+        return depth;
+    }
+
     /**
      * Determines if at least one filter is enabled.
      * @return {@code true} if at least one filter is enabled
@@ -230,11 +271,11 @@ public class FilterMatcher {
 
         for (FilterInfo fi: filters) {
             if (fi.isDelete) {
-                if (filtered && fi.match.match(primitive)) {
+                if (filtered && fi.match(primitive)) {
                     filtered = false;
                 }
             } else {
-                if ((!filtered || (!explicitlyFiltered && !fi.isInverted)) && fi.match.match(primitive)) {
+                if ((!filtered || (!explicitlyFiltered && !fi.isInverted)) && fi.match(primitive)) {
                     filtered = true;
                     if (!fi.isInverted) {
                         explicitlyFiltered = true;
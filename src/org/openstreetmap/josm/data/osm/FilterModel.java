@@ -21,6 +21,8 @@ import javax.swing.JOptionPane;
 import org.openstreetmap.josm.data.SortableModel;
 import org.openstreetmap.josm.data.StructUtils;
 import org.openstreetmap.josm.data.osm.Filter.FilterPreferenceEntry;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
 import org.openstreetmap.josm.data.osm.search.SearchParseError;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.widgets.OSDLabel;
@@ -112,7 +114,14 @@ public class FilterModel implements SortableModel<Filter> {
             try {
                 final Collection<OsmPrimitive> all = ds.allNonDeletedCompletePrimitives();
 
-                changed = FilterWorker.executeFilters(all, filterMatcher);
+                if (filterMatcher.hasFilters()) {
+                    filterMatcher.setTagIndex(ds.getTagIndex());
+                }
+                try {
+                    changed = FilterWorker.executeFilters(all, filterMatcher);
+                } finally {
+                    filterMatcher.setTagIndex(null);
+                }
 
                 disabledCount = 0;
                 disabledAndHiddenCount = 0;
@@ -153,34 +162,85 @@ public class FilterModel implements SortableModel<Filter> {
         DataSet ds = OsmDataManager.getInstance().getActiveDataSet();
         if (ds == null)
             return;
+        executeFilters(ds, primitives, false);
+    }
+
+    /**
+     * Runs the filters after a change of the edit data set. Only the primitives touched by the change, and the primitives
+     * whose filter state may depend on them, are evaluated again. The filters are run on the whole data set if the
+     * change cannot be handled incrementally.
+     * @param event the change of the edit data set
+     * @since xxx
+     */
+    public void executeFilters(AbstractDatasetChangedEvent event) {
+        DataSet ds = OsmDataManager.getInstance().getActiveDataSet();
+        int depth = filterMatcher.getDependencyDepth();
+        Set<OsmPrimitive> touched = new HashSet<>();
+        if (ds == null || event.getDataset() != ds || depth == Integer.MAX_VALUE || !collectTouchedPrimitives(event, touched)) {
+            executeFilters();
+            return;
+        }
+        // the primitives which are added (including undeletions) change the number of filtered primitives
+        boolean recount = hasAddedPrimitives(event);
+        List<OsmPrimitive> affected = getAffectedPrimitives(touched, depth).stream()
+                .filter(p -> p.getDataSet() == ds && !p.isDeleted() && !p.isIncomplete())
+                .collect(Collectors.toList());
+        executeFilters(ds, affected, recount);
+    }
 
+    private static boolean collectTouchedPrimitives(AbstractDatasetChangedEvent event, Set<OsmPrimitive> touched) {
+        switch (event.getType()) {
+        case DATA_CHANGED:
+            List<AbstractDatasetChangedEvent> events = ((DataChangedEvent) event).getEvents();
+            return events != null && events.stream().allMatch(e -> collectTouchedPrimitives(e, touched));
+        case FILTERS_CHANGED:
+            return true;
+        case WAY_NODES_CHANGED:
+        case RELATION_MEMBERS_CHANGED:
+        case PRIMITIVES_REMOVED:
+            // the events do not carry the former children, whose filter state may depend on their former parents
+            return false;
+        default:
+            touched.addAll(event.getPrimitives());
+            return true;
+        }
+    }
+
+    private static boolean hasAddedPrimitives(AbstractDatasetChangedEvent event) {
+        switch (event.getType()) {
+        case DATA_CHANGED:
+            return ((DataChangedEvent) event).getEvents().stream().anyMatch(FilterModel::hasAddedPrimitives);
+        case PRIMITIVES_ADDED:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private void executeFilters(DataSet ds, Collection<? extends OsmPrimitive> primitives, boolean recount) {
         changed = false;
         List<OsmPrimitive> deselect = new ArrayList<>();
 
         ds.update(() -> {
-            for (int i = 0; i < 2; i++) {
+            // first relations, then ways and nodes last, as the filter state of the children depends on their parents
+            for (Class<?> type : Arrays.asList(Relation.class, Way.class, Node.class)) {
                 for (OsmPrimitive primitive: primitives) {
 
-                    if (i == 0 && primitive instanceof Node) {
+                    if (!type.isInstance(primitive)) {
                         continue;
                     }
 
-                    if (i == 1 && !(primitive instanceof Node)) {
-                        continue;
-                    }
-
-                    if (primitive.isDisabled()) {
-                        disabledCount--;
-                    }
+                    // like in a full run, the disabled count does not include the hidden primitives
                     if (primitive.isDisabledAndHidden()) {
                         disabledAndHiddenCount--;
+                    } else if (primitive.isDisabled()) {
+                        disabledCount--;
                     }
                     changed |= FilterWorker.executeFilters(primitive, filterMatcher);
-                    if (primitive.isDisabled()) {
-                        disabledCount++;
-                    }
                     if (primitive.isDisabledAndHidden()) {
                         disabledAndHiddenCount++;
+                    } else if (primitive.isDisabled()) {
+                        disabledCount++;
                     }
 
                     if (primitive.isSelected() && primitive.isDisabled()) {
@@ -188,6 +248,19 @@ public class FilterModel implements SortableModel<Filter> {
                     }
                 }
             }
+            if (recount) {
+                disabledCount = 0;
+                disabledAndHiddenCount = 0;
+                for (OsmPrimitive osm : ds.allNonDeletedCompletePrimitives()) {
+                    if (osm.isDisabled()) {
+                        disabledCount++;
+                        if (osm.isDisabledAndHidden()) {
+                            disabledAndHiddenCount++;
+                        }
+                    }
+                }
+                disabledCount -= disabledAndHiddenCount;
+            }
         });
 
         if (!deselect.isEmpty()) {
@@ -447,6 +520,51 @@ public class FilterModel implements SortableModel<Filter> {
         return result;
     }
 
+    /**
+     * Returns the primitives whose filter state can be affected by a change of the given primitives, when the
+     * {@linkplain FilterMatcher#getDependencyDepth() dependency depth} of the filters is {@code depth}.
+     * <p>
+     * Unlike {@link #getAffectedPrimitives(Collection)}, this does not visit the whole graph of parents and children.
+     * @param primitives the changed primitives
+     * @param depth the maximum number of parent/child links between a primitive and the primitives the filters look at
+     * @return the primitives whose filter state can be affected by the change
+     * @since xxx
+     */
+    public static Collection<OsmPrimitive> getAffectedPrimitives(Collection<? extends OsmPrimitive> primitives, int depth) {
+        Set<OsmPrimitive> result = new HashSet<>(primitives);
+        // the filters may match differently for the parents and children up to depth links away
+        visitRelatives(result, new ArrayList<>(primitives), depth, true);
+        // the filter state of the way nodes and of the multipolygon member ways depends on the state of their parents
+        visitRelatives(result, new ArrayList<>(result), 2, false);
+        return result;
+    }
+
+    private static void visitRelatives(Set<OsmPrimitive> result, List<OsmPrimitive> start, int depth, boolean parents) {
+        List<OsmPrimitive> level = start;
+        for (int i = 0; i < depth && !level.isEmpty(); i++) {
+            List<OsmPrimitive> next = new ArrayList<>();
+            for (OsmPrimitive p : level) {
+                if (p instanceof Way) {
+                    addRelatives(result, next, ((Way) p).getNodes());
+                } else if (p instanceof Relation) {
+                    addRelatives(result, next, ((Relation) p).getMemberPrimitivesList());
+                }
+                if (parents) {
+                    addRelatives(result, next, p.getReferrers(true));
+                }
+            }
+            level = next;
+        }
+    }
+
+    private static void addRelatives(Set<OsmPrimitive> result, List<OsmPrimitive> next, Collection<? extends OsmPrimitive> relatives) {
+        for (OsmPrimitive relative : relatives) {
+            if (result.add(relative)) {
+                next.add(relative);
+            }
+        }
+    }
+
     @Override
     public void sort() {
         Collections.sort(filters);
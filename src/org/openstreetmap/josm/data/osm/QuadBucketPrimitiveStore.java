@@ -115,6 +115,41 @@ public class QuadBucketPrimitiveStore<N extends INode, W extends IWay<N>, R exte
         }
     }
 
+    /**
+     * Adds primitives to this quad bucket store. Many primitives are added much faster than one by one.
+     *
+     * @param primitives the primitives.
+     * @since xxx
+     */
+    @SuppressWarnings("unchecked")
+    public void addPrimitives(Collection<? extends IPrimitive> primitives) {
+        List<N> newNodes = new ArrayList<>();
+        List<W> newWays = new ArrayList<>();
+        for (IPrimitive primitive : primitives) {
+            if (primitive instanceof INode) {
+                newNodes.add((N) primitive);
+            } else if (primitive instanceof IWay) {
+                newWays.add((W) primitive);
+            } else if (primitive instanceof IRelation) {
+                relations.add((R) primitive);
+            } else {
+                throw new JosmRuntimeException("failed to add primitive: "+primitive);
+            }
+        }
+        nodes.addAll(newNodes);
+        ways.addAll(newWays);
+    }
+
+    /**
+     * Packs the quad buckets of this store, for stores which are not going to be modified.
+     * @see QuadBuckets#pack()
+     * @since xxx
+     */
+    public void pack() {
+        nodes.pack();
+        ways.pack();
+    }
+
     protected void removePrimitive(IPrimitive primitive) {
         boolean success = false;
         if (primitive instanceof INode) {
@@ -37,6 +37,8 @@ public class QuadBuckets<T extends IQuadBucketType> implements Collection<T> {
     }
 
     private static final int MAX_OBJECTS_PER_NODE = 48;
+    /** Collections of at least this size are added with a bulk load */
+    private static final int BULK_LOAD_THRESHOLD = MAX_OBJECTS_PER_NODE;
 
     static class QBLevel<T extends IQuadBucketType> extends BBox {
         private final byte level;
@@ -173,7 +175,7 @@ public class QuadBuckets<T extends IQuadBucketType> implements Collection<T> {
             return content.add(o);
         }
 
-        boolean matches(final T o, final BBox searchBbox) {
+        static boolean matches(final IQuadBucketType o, final BBox searchBbox) {
             // Avoid allocations for point (AKA Node) objects
             if (o instanceof ILatLon) {
                 return searchBbox.contains((ILatLon) o);
@@ -295,6 +297,51 @@ public class QuadBuckets<T extends IQuadBucketType> implements Collection<T> {
             findBucket(o.getBBox()).doAdd(o);
         }
 
+        /**
+         * Adds a range of a bulk load to this bucket or its children.
+         * The items end up in the same buckets as if they were added one by one with {@link #add}.
+         * @param load the bulk load
+         * @param from the first item of the range (inclusive)
+         * @param to the last item of the range (exclusive)
+         */
+        void bulkAdd(BulkLoad<T> load, int from, int to) {
+            if (!hasChildren()) {
+                int size = content == null ? 0 : content.size();
+                if (!isLeaf() || level >= QuadTiling.NR_LEVELS || size + to - from <= MAX_OBJECTS_PER_NODE) {
+                    if (content == null) {
+                        content = new ArrayList<>(to - from);
+                    }
+                    for (int i = from; i < to; i++) {
+                        content.add(load.get(i));
+                    }
+                    return;
+                }
+                // Split right away, the new items are distributed to the children below
+                List<T> tmpcontent = content;
+                content = null;
+                isLeaf = false;
+                if (tmpcontent != null) {
+                    for (T o : tmpcontent) {
+                        byte idx = o.getBBox().getIndex(level);
+                        if (idx == -1) {
+                            doAddContent(o);
+                        } else {
+                            getChild(idx).doAdd(o);
+                        }
+                    }
+                }
+            }
+            int[] starts = load.partition(from, to, level);
+            for (int i = starts[0]; i < starts[1]; i++) {
+                doAddContent(load.get(i));
+            }
+            for (byte idx = 0; idx < QuadTiling.TILES_PER_LEVEL; idx++) {
+                if (starts[idx + 1] < starts[idx + 2]) {
+                    getChild(idx).bulkAdd(load, starts[idx + 1], starts[idx + 2]);
+                }
+            }
+        }
+
         private void search(QuadBuckets<T> buckets, BBox searchBbox, List<T> result) {
             if (!this.intersects(searchBbox))
                 return;
@@ -361,8 +408,223 @@ public class QuadBuckets<T extends IQuadBucketType> implements Collection<T> {
         }
     }
 
+    /**
+     * Items to add to the tree at once, with the quad key of their bbox.
+     * <p>
+     * The items are sorted by quad key level by level (a radix sort) while they are handed down the tree,
+     * so that each bucket gets all its items in one go instead of splitting again and again.
+     * The items end up in the same buckets as if they were added one by one.
+     */
+    static final class BulkLoad<T extends IQuadBucketType> {
+        private final Object[] items;
+        private final long[] keys;
+        /** The number of levels for which all corners of the bbox are in the same quad */
+        private final byte[] depths;
+        private final Object[] tmpItems;
+        private final long[] tmpKeys;
+        private final byte[] tmpDepths;
+        private int size;
+
+        BulkLoad(int capacity) {
+            items = new Object[capacity];
+            keys = new long[capacity];
+            depths = new byte[capacity];
+            tmpItems = new Object[capacity];
+            tmpKeys = new long[capacity];
+            tmpDepths = new byte[capacity];
+        }
+
+        void add(T o, BBox bbox) {
+            final long key = QuadTiling.quadKey(bbox.ymin, bbox.xmin);
+            final long diff = (key ^ QuadTiling.quadKey(bbox.ymin, bbox.xmax))
+                    | (key ^ QuadTiling.quadKey(bbox.ymax, bbox.xmin))
+                    | (key ^ QuadTiling.quadKey(bbox.ymax, bbox.xmax));
+            items[size] = o;
+            keys[size] = key;
+            // Each level is one pair of bits, the highest differing bit gives the first level where the corners differ
+            depths[size] = (byte) (diff == 0 ? QuadTiling.NR_LEVELS
+                    : QuadTiling.NR_LEVELS - 1 - (Long.SIZE - 1 - Long.numberOfLeadingZeros(diff)) / 2);
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int i) {
+            return (T) items[i];
+        }
+
+        /**
+         * Get the quad index of an item, like {@link BBox#getIndex(int)}
+         */
+        private int index(int i, int level, int shift) {
+            return depths[i] > level ? (int) (keys[i] >> shift) & 0x3 : -1;
+        }
+
+        /**
+         * Sort a range of items by their quad index at the given level
+         * @param from the first item of the range (inclusive)
+         * @param to the last item of the range (exclusive)
+         * @param level the level
+         * @return the start of the items staying at this level, followed by the starts of the items of each child
+         * and the end of the range
+         */
+        int[] partition(int from, int to, int level) {
+            final int shift = 2 * (QuadTiling.NR_LEVELS - level - 1);
+            final int[] starts = new int[QuadTiling.TILES_PER_LEVEL + 2];
+            for (int i = from; i < to; i++) {
+                starts[index(i, level, shift) + 2]++;
+            }
+            starts[0] = from;
+            for (int i = 1; i < starts.length; i++) {
+                starts[i] += starts[i - 1];
+            }
+            final int[] next = Arrays.copyOf(starts, QuadTiling.TILES_PER_LEVEL + 1);
+            for (int i = from; i < to; i++) {
+                final int j = next[index(i, level, shift) + 1]++;
+                tmpItems[j] = items[i];
+                tmpKeys[j] = keys[i];
+                tmpDepths[j] = depths[i];
+            }
+            System.arraycopy(tmpItems, from, items, from, to - from);
+            System.arraycopy(tmpKeys, from, keys, from, to - from);
+            System.arraycopy(tmpDepths, from, depths, from, to - from);
+            return starts;
+        }
+    }
+
+    /**
+     * The buckets of a tree packed into arrays, in depth first order.
+     * <p>
+     * This uses much less memory than the {@link QBLevel} objects, and searches only need to walk the arrays.
+     * It cannot be modified.
+     */
+    static final class Packed<T extends IQuadBucketType> {
+        /** xmin, ymin, xmax and ymax of each bucket */
+        private final double[] bounds;
+        private final byte[] levels;
+        private final byte[] indexes;
+        /** The first bucket after the subtree of each bucket */
+        private final int[] ends;
+        /** The content of bucket {@code i} is from {@code contentStarts[i]} (inclusive) to {@code contentStarts[i + 1]} (exclusive) */
+        private final int[] contentStarts;
+        private final Object[] items;
+        private int bucketCount;
+        private int itemCount;
+
+        Packed(QBLevel<T> root) {
+            count(root);
+            bounds = new double[4 * bucketCount];
+            levels = new byte[bucketCount];
+            indexes = new byte[bucketCount];
+            ends = new int[bucketCount];
+            contentStarts = new int[bucketCount + 1];
+            items = new Object[itemCount];
+            bucketCount = 0;
+            itemCount = 0;
+            pack(root);
+            contentStarts[bucketCount] = itemCount;
+        }
+
+        private void count(QBLevel<T> level) {
+            bucketCount++;
+            if (level.content != null) {
+                itemCount += level.content.size();
+            }
+            for (QBLevel<T> child : level.getChildren()) {
+                if (child != null) {
+                    count(child);
+                }
+            }
+        }
+
+        private void pack(QBLevel<T> level) {
+            final int i = bucketCount++;
+            bounds[4 * i] = level.xmin;
+            bounds[4 * i + 1] = level.ymin;
+            bounds[4 * i + 2] = level.xmax;
+            bounds[4 * i + 3] = level.ymax;
+            levels[i] = level.level;
+            indexes[i] = level.index;
+            contentStarts[i] = itemCount;
+            if (level.content != null) {
+                for (T o : level.content) {
+                    items[itemCount++] = o;
+                }
+            }
+            for (QBLevel<T> child : level.getChildren()) {
+                if (child != null) {
+                    pack(child);
+                }
+            }
+            ends[i] = bucketCount;
+        }
+
+        int size() {
+            return items.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int i) {
+            return (T) items[i];
+        }
+
+        private boolean intersects(int i, BBox b) {
+            return bounds[4 * i] <= b.xmax && bounds[4 * i + 2] >= b.xmin
+                    && bounds[4 * i + 1] <= b.ymax && bounds[4 * i + 3] >= b.ymin;
+        }
+
+        void search(BBox searchBbox, List<T> result) {
+            int i = 0;
+            while (i < ends.length) {
+                if (!intersects(i, searchBbox)) {
+                    i = ends[i];
+                    continue;
+                }
+                for (int j = contentStarts[i]; j < contentStarts[i + 1]; j++) {
+                    final T o = get(j);
+                    if (QBLevel.matches(o, searchBbox)) {
+                        result.add(o);
+                    }
+                }
+                i++;
+            }
+        }
+
+        /**
+         * Find the bucket like {@link QBLevel#findBucket} and look for the object there
+         */
+        boolean contains(T t) {
+            final BBox bbox = t.getBBox();
+            int i = 0;
+            while (i + 1 < ends[i]) {
+                final byte idx = bbox.getIndex(levels[i]);
+                if (idx == -1) {
+                    break;
+                }
+                int child = i + 1;
+                while (child < ends[i] && indexes[child] != idx) {
+                    child = ends[child];
+                }
+                if (child == ends[i]) {
+                    return false;
+                }
+                i = child;
+            }
+            for (int j = contentStarts[i]; j < contentStarts[i + 1]; j++) {
+                if (t.equals(items[j])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     private QBLevel<T> root;
-    private QBLevel<T> searchCache;
+    private volatile QBLevel<T> searchCache;
+    private volatile Packed<T> packed;
     private int size;
     private Collection<T> invalidBBoxPrimitives;
 
@@ -378,11 +640,55 @@ public class QuadBuckets<T extends IQuadBucketType> implements Collection<T> {
         root = new QBLevel<>();
         invalidBBoxPrimitives = new LinkedHashSet<>();
         searchCache = null;
+        packed = null;
         size = 0;
     }
 
+    /**
+     * Packs the buckets into arrays. This saves memory and speeds up searches, but the next modification
+     * has to rebuild the buckets. Use this for collections which are not going to be modified.
+     * @see #isPacked()
+     * @since xxx
+     */
+    public void pack() {
+        if (packed == null) {
+            packed = new Packed<>(root);
+            root = new QBLevel<>();
+            searchCache = null;
+        }
+    }
+
+    /**
+     * Determines if the buckets are packed into arrays.
+     * @return {@code true} after {@link #pack()} until the next modification
+     * @since xxx
+     */
+    public boolean isPacked() {
+        return packed != null;
+    }
+
+    /**
+     * Rebuilds the buckets of a packed tree, before it gets modified
+     */
+    private void unpack() {
+        final Packed<T> p = packed;
+        if (p != null) {
+            final BulkLoad<T> load = new BulkLoad<>(p.size());
+            for (int i = 0; i < p.size(); i++) {
+                final T o = p.get(i);
+                load.add(o, o.getBBox());
+            }
+            final QBLevel<T> newRoot = new QBLevel<>();
+            newRoot.bulkAdd(load, 0, load.size());
+            root = newRoot;
+            searchCache = null;
+            packed = null;
+        }
+    }
+
     @Override
     public boolean add(T n) {
+        unpack();
         if (n.getBBox().isValid()) {
             root.add(n);
         } else {
@@ -413,9 +719,30 @@ public class QuadBuckets<T extends IQuadBucketType> implements Collection<T> {
         return objects.stream().map(this::remove).reduce(false, (a, b) -> a || b);
     }
 
+    /**
+     * Adds all objects. Large collections are sorted by quad key and added bucket by bucket,
+     * which is much faster than adding them one by one.
+     */
     @Override
     public boolean addAll(Collection<? extends T> objects) {
-        return objects.stream().map(this::add).reduce(false, (a, b) -> a || b);
+        if (objects.size() < BULK_LOAD_THRESHOLD) {
+            return objects.stream().map(this::add).reduce(false, (a, b) -> a || b);
+        }
+        unpack();
+        final BulkLoad<T> load = new BulkLoad<>(objects.size());
+        for (T o : objects) {
+            final BBox bbox = o.getBBox();
+            if (bbox.isValid()) {
+                load.add(o, bbox);
+            } else {
+                invalidBBoxPrimitives.add(o);
+            }
+        }
+        if (load.size() > 0) {
+            root.bulkAdd(load, 0, load.size());
+        }
+        size += objects.size();
+        return true;
     }
 
     @Override
@@ -427,6 +754,7 @@ public class QuadBuckets<T extends IQuadBucketType> implements Collection<T> {
     public boolean remove(Object o) {
         @SuppressWarnings("unchecked")
         T t = (T) o;
+        unpack();
         searchCache = null; // Search cache might point to one of removed buckets
         QBLevel<T> bucket = root.findBucket(t.getBBox());
         boolean removed = bucket.removeContent(t);
@@ -446,6 +774,10 @@ public class QuadBuckets<T extends IQuadBucketType> implements Collection<T> {
         if (!t.getBBox().isValid()) {
             return invalidBBoxPrimitives.contains(o);
         }
+        final Packed<T> p = packed;
+        if (p != null) {
+            return p.contains(t);
+        }
         QBLevel<T> bucket = root.findBucket(t.getBBox());
         return bucket != null && bucket.content != null && bucket.content.contains(t);
     }
@@ -556,8 +888,53 @@ public class QuadBuckets<T extends IQuadBucketType> implements Collection<T> {
         }
     }
 
+    /**
+     * Iterates over the items of a packed tree. Removing an item rebuilds the buckets, the iteration continues on the
+     * packed arrays.
+     */
+    class PackedIterator implements Iterator<T> {
+        private final Packed<T> p;
+        private final Iterator<T> invalidBBoxIterator = invalidBBoxPrimitives.iterator();
+        private int index;
+        private T last;
+
+        PackedIterator(Packed<T> p) {
+            this.p = p;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < p.size() || invalidBBoxIterator.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (index < p.size()) {
+                last = p.get(index++);
+                return last;
+            }
+            last = null;
+            return invalidBBoxIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                invalidBBoxIterator.remove();
+                size--;
+            } else {
+                QuadBuckets.this.remove(last);
+                last = null;
+            }
+        }
+    }
+
     @Override
     public Iterator<T> iterator() {
+        final Packed<T> p = packed;
+        if (p != null) {
+            return new PackedIterator(p);
+        }
         return new QuadBucketIterator(this);
     }
 
@@ -571,6 +948,21 @@ public class QuadBuckets<T extends IQuadBucketType> implements Collection<T> {
         return size == 0;
     }
 
+    /**
+     * Determines if a bucket is still linked to the current root, i.e. it was not removed nor replaced by a modification.
+     * @param level the bucket
+     * @return {@code true} if the bucket is reachable from the root
+     */
+    private boolean isInTree(QBLevel<T> level) {
+        QBLevel<T> l = level;
+        for (QBLevel<T> p = l.parent; p != null; l = p, p = p.parent) {
+            if (p.nw != l && p.ne != l && p.sw != l && p.se != l) {
+                return false;
+            }
+        }
+        return l == root;
+    }
+
     /**
      * Search the tree for objects in the bbox (or crossing the bbox if they are ways)
      * @param searchBbox the bbox
@@ -581,25 +973,33 @@ public class QuadBuckets<T extends IQuadBucketType> implements Collection<T> {
         if (searchBbox == null || !searchBbox.isValid()) {
             return ret;
         }
+        final Packed<T> p = packed;
+        if (p != null) {
+            p.search(searchBbox, ret);
+            return ret;
+        }
 
         // Doing this cuts down search cost on a real-life data set by about 25%
-        if (searchCache == null) {
-            searchCache = root;
+        // The cache is only a hint shared by concurrent searches, so it is read once. A search running without lock may
+        // have stored a bucket which was removed from the tree since, so the hint is only used if it is still in the tree
+        QBLevel<T> start = searchCache;
+        if (start == null || !isInTree(start)) {
+            start = root;
         }
         // Walk back up the tree when the last search spot can not cover the current search
-        while (searchCache != null && !searchCache.bounds(searchBbox)) {
-            searchCache = searchCache.parent;
+        while (start != null && !start.bounds(searchBbox)) {
+            start = start.parent;
         }
 
-        if (searchCache == null) {
-            searchCache = root;
+        if (start == null) {
+            start = root;
             Logging.info("bbox: " + searchBbox + " is out of the world");
         }
+        searchCache = start;
 
-        // Save parent because searchCache might change during search call
-        QBLevel<T> tmp = searchCache.parent;
+        QBLevel<T> tmp = start.parent;
 
-        searchCache.search(this, searchBbox, ret);
+        start.search(this, searchBbox, ret);
 
         // A way that spans this bucket may be stored in one
         // of the nodes which is a parent of the search cache
@@ -1,6 +1,7 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.data.osm;
 
+import java.lang.invoke.VarHandle;
 import java.util.AbstractSet;
 import java.util.Arrays;
 import java.util.Collection;
@@ -68,6 +69,10 @@ import org.openstreetmap.josm.tools.Utils;
  * </pre></li>
  * </ul>
  *
+ * Lookups ({@link #get}, {@link #contains}, {@link #size} and the {@code get} and {@code containsKey} methods of
+ * {@link #foreignKey foreign key maps}) do not lock the storage. They only synchronize if the storage was modified
+ * concurrently, which is detected using a version stamp. Modifications are synchronized.
+ *
  * @author nenik
  * @param <T> type of stored objects
  */
@@ -95,6 +100,8 @@ public class Storage<T> extends AbstractSet<T> {
     private int mask;
     private int size;
     private volatile int modCount;
+    /** Incremented before and after every modification, so it is odd while the storage is modified */
+    private volatile int writeStamp;
     private static final double LOAD_FACTOR = 0.6d;
     private static final int DEFAULT_CAPACITY = 16;
     private final boolean safeIterator;
@@ -191,8 +198,15 @@ public class Storage<T> extends AbstractSet<T> {
 
     // --------------- Collection implementation ------------------------
     @Override
-    public synchronized int size() {
-        return size;
+    public int size() {
+        final int stamp = writeStamp;
+        final int currentSize = size;
+        if (validate(stamp)) {
+            return currentSize;
+        }
+        synchronized (this) {
+            return size;
+        }
     }
 
     @Override
@@ -206,11 +220,10 @@ public class Storage<T> extends AbstractSet<T> {
     }
 
     @Override
-    public synchronized boolean contains(Object o) {
+    public boolean contains(Object o) {
         @SuppressWarnings("unchecked")
         T t = (T) o;
-        int bucket = getBucket(hash, t);
-        return bucket >= 0;
+        return find(hash, t) != null;
     }
 
     @Override
@@ -229,10 +242,15 @@ public class Storage<T> extends AbstractSet<T> {
 
     @Override
     public synchronized void clear() {
-        copyArray();
-        modCount++;
-        size = 0;
-        Arrays.fill(data, null);
+        beginWrite();
+        try {
+            copyArray();
+            modCount++;
+            size = 0;
+            Arrays.fill(data, null);
+        } finally {
+            endWrite();
+        }
     }
 
     @Override
@@ -258,49 +276,63 @@ public class Storage<T> extends AbstractSet<T> {
     // ----------------- Extended API ----------------------------
 
     public synchronized T put(T t) {
-        copyArray();
-        modCount++;
-        ensureSpace();
-
-        int bucket = getBucket(hash, t);
-        if (bucket < 0) {
-            size++;
-            bucket = ~bucket;
-            assert data[bucket] == null;
-        }
+        beginWrite();
+        try {
+            copyArray();
+            modCount++;
+            ensureSpace();
+
+            int bucket = getBucket(hash, t);
+            if (bucket < 0) {
+                size++;
+                bucket = ~bucket;
+                assert data[bucket] == null;
+            }
 
-        T old = data[bucket];
-        data[bucket] = t;
+            T old = data[bucket];
+            data[bucket] = t;
 
-        return old;
+            return old;
+        } finally {
+            endWrite();
+        }
     }
 
-    public synchronized T get(T t) {
-        int bucket = getBucket(hash, t);
-        return bucket < 0 ? null : data[bucket];
+    public T get(T t) {
+        return find(hash, t);
     }
 
     public synchronized T putUnique(T t) {
-        copyArray();
-        modCount++;
-        ensureSpace();
+        beginWrite();
+        try {
+            copyArray();
+            modCount++;
+            ensureSpace();
+
+            int bucket = getBucket(hash, t);
+            if (bucket < 0) { // unique
+                size++;
+                assert data[~bucket] == null;
+                data[~bucket] = t;
+                return t;
+            }
 
-        int bucket = getBucket(hash, t);
-        if (bucket < 0) { // unique
-            size++;
-            assert data[~bucket] == null;
-            data[~bucket] = t;
-            return t;
+            return data[bucket];
+        } finally {
+            endWrite();
         }
-
-        return data[bucket];
     }
 
     public synchronized T removeElem(T t) {
-        copyArray();
-        modCount++;
-        int bucket = getBucket(hash, t);
-        return bucket < 0 ? null : doRemove(bucket);
+        beginWrite();
+        try {
+            copyArray();
+            modCount++;
+            int bucket = getBucket(hash, t);
+            return bucket < 0 ? null : doRemove(bucket);
+        } finally {
+            endWrite();
+        }
     }
 
     public <K> Map<K, T> foreignKey(Hash<K, ? super T> h) {
@@ -309,6 +341,52 @@ public class Storage<T> extends AbstractSet<T> {
 
     // ---------------- Implementation
 
+    private void beginWrite() {
+        writeStamp++;
+        // The modifications must not become visible before the stamp
+        VarHandle.storeStoreFence();
+    }
+
+    private void endWrite() {
+        writeStamp++;
+    }
+
+    private boolean validate(int stamp) {
+        VarHandle.loadLoadFence();
+        return (stamp & 1) == 0 && stamp == writeStamp;
+    }
+
+    /**
+     * Finds the entry equivalent to the key. The lookup is first done without locking,
+     * and is repeated while holding the lock if the storage was modified concurrently.
+     * @param <K> type for hashCode and first equals parameter
+     * @param ha hash function
+     * @param key The key to compare
+     * @return the entry equivalent to the key, or {@code null}
+     */
+    private <K> T find(Hash<K, ? super T> ha, K key) {
+        final int stamp = writeStamp;
+        if ((stamp & 1) == 0) {
+            try {
+                final T[] table = data;
+                final int bucket = getBucket(table, table.length - 1, ha, key);
+                final T entry = bucket < 0 ? null : table[bucket];
+                if (validate(stamp)) {
+                    return entry;
+                }
+            } catch (RuntimeException e) {
+                // A concurrent modification left the table inconsistent
+                if (validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        synchronized (this) {
+            final int bucket = getBucket(ha, key);
+            return bucket < 0 ? null : data[bucket];
+        }
+    }
+
     /**
      * Additional mixing of hash
      * @param h hash
@@ -328,13 +406,17 @@ public class Storage<T> extends AbstractSet<T> {
      * where such an entry can be stored.
      */
     private <K> int getBucket(Hash<K, ? super T> ha, K key) {
+        return getBucket(data, mask, ha, key);
+    }
+
+    private static <K, T> int getBucket(T[] table, int tableMask, Hash<K, ? super T> ha, K key) {
         T entry;
         int hcode = rehash(ha.getHashCode(key));
-        int bucket = hcode & mask;
-        while (bucket < data.length && (entry = data[bucket]) != null) {
+        int bucket = hcode & tableMask;
+        while (bucket < table.length && (entry = table[bucket]) != null) {
             if (ha.equals(key, entry))
                 return bucket;
-            bucket = (bucket+1) & mask;
+            bucket = (bucket+1) & tableMask;
         }
         return ~bucket;
     }
@@ -433,8 +515,7 @@ public class Storage<T> extends AbstractSet<T> {
         public boolean containsKey(Object o) {
             @SuppressWarnings("unchecked")
             K key = (K) o;
-            int bucket = getBucket(fHash, key);
-            return bucket >= 0;
+            return find(fHash, key) != null;
         }
 
         @Override
@@ -446,8 +527,7 @@ public class Storage<T> extends AbstractSet<T> {
         public T get(Object o) {
             @SuppressWarnings("unchecked")
             K key = (K) o;
-            int bucket = getBucket(fHash, key);
-            return bucket < 0 ? null : data[bucket];
+            return find(fHash, key);
         }
 
         @Override
@@ -459,12 +539,18 @@ public class Storage<T> extends AbstractSet<T> {
         @Override
         public T remove(Object o) {
             synchronized (Storage.this) {
-                modCount++;
-                @SuppressWarnings("unchecked")
-                K key = (K) o;
-                int bucket = getBucket(fHash, key);
-
-                return bucket < 0 ? null : doRemove(bucket);
+                beginWrite();
+                try {
+                    copyArray();
+                    modCount++;
+                    @SuppressWarnings("unchecked")
+                    K key = (K) o;
+                    int bucket = getBucket(fHash, key);
+
+                    return bucket < 0 ? null : doRemove(bucket);
+                } finally {
+                    endWrite();
+                }
             }
         }
 
@@ -564,7 +650,14 @@ public class Storage<T> extends AbstractSet<T> {
         public void remove() {
             if (removeSlot == -1) throw new IllegalStateException();
 
-            doRemove(removeSlot);
+            synchronized (Storage.this) {
+                beginWrite();
+                try {
+                    doRemove(removeSlot);
+                } finally {
+                    endWrite();
+                }
+            }
             slot = removeSlot; // some entry might have been relocated here
             removeSlot = -1;
         }
@@ -0,0 +1,198 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+
+/**
+ * An inverted index of the tags of the primitives of a {@link DataSet}: it finds the primitives having a given key, or
+ * a given key=value pair, without looking at every primitive.
+ * <p>
+ * The index is created by {@link DataSet#getTagIndex()} and then kept up to date by the data set when primitives are
+ * added or removed, or when their tags change. It must only be read while holding the {@link DataSet#getReadLock() read lock}
+ * of the data set, or inside an update of the data set.
+ * <p>
+ * The sets returned by this class compare the primitives by identity.
+ * @since xxx
+ */
+public final class TagIndex {
+
+    /**
+     * Whether data sets build a tag index when it is first requested.
+     */
+    public static final BooleanProperty ENABLED = new BooleanProperty("search.tag-index", true);
+
+    /**
+     * key → value → primitives. Most values are used by a single primitive (names, addresses, …), which is then
+     * stored directly instead of in a set to save memory.
+     */
+    private final Map<String, Map<String, Object>> index = new HashMap<>();
+
+    /**
+     * Constructs a new {@code TagIndex} with the tags of the given primitives.
+     * @param primitives the primitives
+     */
+    TagIndex(Collection<OsmPrimitive> primitives) {
+        for (OsmPrimitive primitive : primitives) {
+            add(primitive);
+        }
+    }
+
+    /**
+     * Returns a new, empty, set of primitives which compares its elements by identity.
+     * @return a new set of primitives
+     */
+    public static Set<OsmPrimitive> newPrimitiveSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>());
+    }
+
+    /**
+     * Returns the keys used by the primitives.
+     * @return the keys, unmodifiable
+     */
+    public Set<String> getKeys() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * Returns the values of the given key.
+     * @param key the key
+     * @return the values, unmodifiable
+     */
+    public Set<String> getValues(String key) {
+        Map<String, Object> values = index.get(key);
+        return values == null ? Collections.emptySet() : Collections.unmodifiableSet(values.keySet());
+    }
+
+    /**
+     * Returns the primitives having the tag {@code key=value}.
+     * @param key the key
+     * @param value the value
+     * @return the primitives, unmodifiable
+     */
+    public Set<OsmPrimitive> get(String key, String value) {
+        Map<String, Object> values = index.get(key);
+        return values == null ? Collections.emptySet() : toSet(values.get(value));
+    }
+
+    /**
+     * Returns the primitives having the given key, with any value.
+     * @param key the key
+     * @return the primitives
+     */
+    public Set<OsmPrimitive> get(String key) {
+        Map<String, Object> values = index.get(key);
+        if (values == null) {
+            return Collections.emptySet();
+        } else if (values.size() == 1) {
+            return toSet(values.values().iterator().next());
+        }
+        Set<OsmPrimitive> result = newPrimitiveSet();
+        for (Object primitives : values.values()) {
+            result.addAll(toSet(primitives));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the primitives having a tag whose key and value match the given predicates.
+     * @param keyPredicate the predicate on the keys
+     * @param valuePredicate the predicate on the values, only tested for the keys matching {@code keyPredicate}
+     * @return the primitives
+     */
+    public Set<OsmPrimitive> get(Predicate<String> keyPredicate, Predicate<String> valuePredicate) {
+        Set<OsmPrimitive> result = newPrimitiveSet();
+        index.forEach((key, values) -> {
+            if (keyPredicate.test(key)) {
+                values.forEach((value, primitives) -> {
+                    if (valuePredicate.test(value)) {
+                        result.addAll(toSet(primitives));
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<OsmPrimitive> toSet(Object primitives) {
+        if (primitives == null) {
+            return Collections.emptySet();
+        } else if (primitives instanceof OsmPrimitive) {
+            return Collections.singleton((OsmPrimitive) primitives);
+        }
+        return Collections.unmodifiableSet((Set<OsmPrimitive>) primitives);
+    }
+
+    /**
+     * Adds the tags of a primitive to the index.
+     * @param primitive the primitive
+     */
+    void add(OsmPrimitive primitive) {
+        if (primitive.hasKeys()) {
+            primitive.visitKeys((p, key, value) -> add(primitive, key, value));
+        }
+    }
+
+    /**
+     * Removes the tags of a primitive from the index.
+     * @param primitive the primitive
+     */
+    void remove(OsmPrimitive primitive) {
+        if (primitive.hasKeys()) {
+            primitive.visitKeys((p, key, value) -> remove(primitive, key, value));
+        }
+    }
+
+    /**
+     * Updates the index after the tags of a primitive changed.
+     * @param primitive the primitive
+     * @param originalKeys the tags of the primitive before the change
+     */
+    void tagsChanged(OsmPrimitive primitive, Map<String, String> originalKeys) {
+        originalKeys.forEach((key, value) -> remove(primitive, key, value));
+        add(primitive);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void add(OsmPrimitive primitive, String key, String value) {
+        Map<String, Object> values = index.computeIfAbsent(key, k -> new HashMap<>());
+        Object primitives = values.get(value);
+        if (primitives == null) {
+            values.put(value, primitive);
+        } else if (primitives instanceof OsmPrimitive) {
+            if (primitives != primitive) {
+                Set<OsmPrimitive> set = newPrimitiveSet();
+                set.add((OsmPrimitive) primitives);
+                set.add(primitive);
+                values.put(value, set);
+            }
+        } else {
+            ((Set<OsmPrimitive>) primitives).add(primitive);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void remove(OsmPrimitive primitive, String key, String value) {
+        Map<String, Object> values = index.get(key);
+        if (values == null) {
+            return;
+        }
+        Object primitives = values.get(value);
+        if (primitives == primitive
+                || (primitives instanceof Set && ((Set<OsmPrimitive>) primitives).remove(primitive)
+                        && ((Set<OsmPrimitive>) primitives).isEmpty())) {
+            values.remove(value);
+            if (values.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+}
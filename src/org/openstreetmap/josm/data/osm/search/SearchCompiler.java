@@ -18,22 +18,26 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 
 import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
 import org.openstreetmap.josm.data.osm.OsmUtils;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.TagIndex;
 import org.openstreetmap.josm.data.osm.Tagged;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.osm.search.PushbackTokenizer.Range;
@@ -360,6 +364,41 @@ public class SearchCompiler {
             return match(object);
         }
 
+        /**
+         * Returns the primitives which may match this criterion, found with the tag index of a data set. This allows to
+         * test only a few primitives instead of the whole data set.
+         * @param index the tag index
+         * @return a superset of the primitives matching this criterion, or {@code null} if the tag index cannot be used
+         * @since xxx
+         */
+        public Set<OsmPrimitive> getCandidates(TagIndex index) {
+            return null;
+        }
+
+        /**
+         * Returns the areas containing the primitives which may match this criterion. This allows to find them with the
+         * spatial index of a data set instead of testing the whole data set.
+         * @param ds the data set
+         * @return the areas intersecting the bounding box of every primitive of the data set matching this criterion,
+         * or {@code null} if primitives anywhere may match
+         * @since xxx
+         */
+        public Collection<Bounds> getCandidateBounds(DataSet ds) {
+            return null;
+        }
+
+        /**
+         * Returns the maximum number of parent/child links between a primitive and the primitives whose data (tags, flags,
+         * coordinates, nodes or members) may change whether it matches this criterion. This allows to update the matching
+         * primitives incrementally when the data set changes.
+         * @return {@code 0} if the criterion only depends on the primitive itself,
+         * or {@link Integer#MAX_VALUE} if the dependencies are unknown or not bounded
+         * @since xxx
+         */
+        public int getDependencyDepth() {
+            return Integer.MAX_VALUE;
+        }
+
         /**
          * Check if this is a valid match object
          * @return {@code this}, for easy chaining
@@ -384,6 +423,11 @@ public class SearchCompiler {
             return match((Tagged) osm);
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return 0;
+        }
+
         protected static Pattern compilePattern(String regex, int flags) throws SearchParseError {
             try {
                 return Pattern.compile(regex, flags);
@@ -418,6 +462,11 @@ public class SearchCompiler {
             return match;
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return match.getDependencyDepth();
+        }
+
         @Override
         public int hashCode() {
             return 31 + match.hashCode();
@@ -480,6 +529,11 @@ public class SearchCompiler {
             return operator.apply(mapper.apply(lhs), mapper.apply(rhs));
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return Math.max(lhs.getDependencyDepth(), rhs.getDependencyDepth());
+        }
+
         protected static String parenthesis(Match m) {
             return '(' + m.toString() + ')';
         }
@@ -522,6 +576,11 @@ public class SearchCompiler {
         public boolean match(Tagged osm) {
             return false;
         }
+
+        @Override
+        public Set<OsmPrimitive> getCandidates(TagIndex index) {
+            return Collections.emptySet();
+        }
     }
 
     /**
@@ -619,6 +678,23 @@ public class SearchCompiler {
             return lhs.match(osm) && rhs.match(osm);
         }
 
+        @Override
+        public Set<OsmPrimitive> getCandidates(TagIndex index) {
+            // a primitive matching both sides is a candidate of each side: use the most selective one
+            Set<OsmPrimitive> lhsCandidates = lhs.getCandidates(index);
+            Set<OsmPrimitive> rhsCandidates = rhs.getCandidates(index);
+            if (lhsCandidates == null || (rhsCandidates != null && rhsCandidates.size() < lhsCandidates.size())) {
+                return rhsCandidates;
+            }
+            return lhsCandidates;
+        }
+
+        @Override
+        public Collection<Bounds> getCandidateBounds(DataSet ds) {
+            Collection<Bounds> lhsBounds = lhs.getCandidateBounds(ds);
+            return lhsBounds != null ? lhsBounds : rhs.getCandidateBounds(ds);
+        }
+
         @Override
         public String toString() {
             return map(m -> m instanceof AbstractBinaryMatch && !(m instanceof And) ? parenthesis(m) : m, (s1, s2) -> s1 + " && " + s2);
@@ -648,6 +724,31 @@ public class SearchCompiler {
             return lhs.match(osm) || rhs.match(osm);
         }
 
+        @Override
+        public Set<OsmPrimitive> getCandidates(TagIndex index) {
+            Set<OsmPrimitive> lhsCandidates = lhs.getCandidates(index);
+            Set<OsmPrimitive> rhsCandidates = lhsCandidates == null ? null : rhs.getCandidates(index);
+            if (rhsCandidates == null) {
+                return null;
+            }
+            Set<OsmPrimitive> candidates = TagIndex.newPrimitiveSet();
+            candidates.addAll(lhsCandidates);
+            candidates.addAll(rhsCandidates);
+            return candidates;
+        }
+
+        @Override
+        public Collection<Bounds> getCandidateBounds(DataSet ds) {
+            Collection<Bounds> lhsBounds = lhs.getCandidateBounds(ds);
+            Collection<Bounds> rhsBounds = lhsBounds == null ? null : rhs.getCandidateBounds(ds);
+            if (rhsBounds == null) {
+                return null;
+            }
+            List<Bounds> bounds = new ArrayList<>(lhsBounds);
+            bounds.addAll(rhsBounds);
+            return bounds;
+        }
+
         @Override
         public String toString() {
             return map(m -> m instanceof AbstractBinaryMatch && !(m instanceof Or) ? parenthesis(m) : m, (s1, s2) -> s1 + " || " + s2);
@@ -791,14 +892,29 @@ public class SearchCompiler {
             } else {
                 String mv = getMv(osm);
                 if (mv != null) {
-                    String v1 = Normalizer.normalize(caseSensitive ? mv : mv.toLowerCase(Locale.ENGLISH), Normalizer.Form.NFC);
-                    String v2 = Normalizer.normalize(caseSensitive ? value : value.toLowerCase(Locale.ENGLISH), Normalizer.Form.NFC);
-                    return v1.contains(v2);
+                    return containsValue(mv);
                 }
             }
             return false;
         }
 
+        private boolean containsValue(String mv) {
+            String v1 = Normalizer.normalize(caseSensitive ? mv : mv.toLowerCase(Locale.ENGLISH), Normalizer.Form.NFC);
+            String v2 = Normalizer.normalize(caseSensitive ? value : value.toLowerCase(Locale.ENGLISH), Normalizer.Form.NFC);
+            return v1.contains(v2);
+        }
+
+        @Override
+        public Set<OsmPrimitive> getCandidates(TagIndex index) {
+            if (keyPattern != null) {
+                return index.get(k -> keyPattern.matcher(k).find(), v -> valuePattern.matcher(v).find());
+            } else if (TIMESTAMP.equals(key)) {
+                return null;
+            }
+            // when searching case-insensitively, the keys differing in case are only used if the key is missing
+            return index.get(k -> caseSensitive ? key.equals(k) : key.equalsIgnoreCase(k), this::containsValue);
+        }
+
         private String getMv(Tagged osm) {
             String mv;
             if (TIMESTAMP.equals(key) && osm instanceof OsmPrimitive) {
@@ -1066,6 +1182,31 @@ public class SearchCompiler {
             throw new AssertionError("Missed state");
         }
 
+        @Override
+        public Set<OsmPrimitive> getCandidates(TagIndex index) {
+            switch (mode) {
+            case ANY_VALUE:
+                return index.get(key);
+            case ANY_KEY:
+                Set<OsmPrimitive> candidates = TagIndex.newPrimitiveSet();
+                for (String k : index.getKeys()) {
+                    candidates.addAll(index.get(k, value));
+                }
+                return candidates;
+            case EXACT:
+                return index.get(key, value);
+            case ANY_KEY_REGEXP:
+                return index.get(k -> true, v -> valuePattern.matcher(v).matches());
+            case ANY_VALUE_REGEXP:
+                return index.get(k -> keyPattern.matcher(k).matches(), v -> true);
+            case EXACT_REGEXP:
+                return index.get(k -> keyPattern.matcher(k).matches(), v -> valuePattern.matcher(v).matches());
+            default:
+                // the other modes match untagged primitives, or all tagged primitives
+                return null;
+            }
+        }
+
         public String getKey() {
             return key;
         }
@@ -1133,33 +1274,45 @@ public class SearchCompiler {
                 return search.isEmpty();
 
             for (Map.Entry<String, String> entry: osm.getKeys().entrySet()) {
-                String key = entry.getKey();
-                String value = entry.getValue();
-                if (searchRegex != null) {
-
-                    value = Normalizer.normalize(value, Normalizer.Form.NFC);
+                if (matchKey(entry.getKey()) || matchValue(entry.getValue()))
+                    return true;
+            }
+            return false;
+        }
 
-                    final Matcher keyMatcher = searchRegex.matcher(key);
-                    final Matcher valMatcher = searchRegex.matcher(value);
+        private boolean matchKey(String key) {
+            if (searchRegex != null) {
+                return searchRegex.matcher(key).find();
+            }
+            return (caseSensitive ? key : key.toLowerCase(Locale.ENGLISH)).contains(search);
+        }
 
-                    boolean keyMatchFound = keyMatcher.find();
-                    boolean valMatchFound = valMatcher.find();
+        private boolean matchValue(String value) {
+            if (searchRegex != null) {
+                return searchRegex.matcher(Normalizer.normalize(value, Normalizer.Form.NFC)).find();
+            }
+            return Normalizer.normalize(caseSensitive ? value : value.toLowerCase(Locale.ENGLISH), Normalizer.Form.NFC).contains(search);
+        }
 
-                    if (keyMatchFound || valMatchFound)
-                        return true;
+        @Override
+        public Set<OsmPrimitive> getCandidates(TagIndex index) {
+            if (search.isEmpty()) {
+                // matches untagged primitives
+                return null;
+            }
+            Set<OsmPrimitive> candidates = TagIndex.newPrimitiveSet();
+            for (String key : index.getKeys()) {
+                if (matchKey(key)) {
+                    candidates.addAll(index.get(key));
                 } else {
-                    if (!caseSensitive) {
-                        key = key.toLowerCase(Locale.ENGLISH);
-                        value = value.toLowerCase(Locale.ENGLISH);
+                    for (String value : index.getValues(key)) {
+                        if (matchValue(value)) {
+                            candidates.addAll(index.get(key, value));
+                        }
                     }
-
-                    value = Normalizer.normalize(value, Normalizer.Form.NFC);
-
-                    if (key.contains(search) || value.contains(search))
-                        return true;
                 }
             }
-            return false;
+            return candidates;
         }
 
         @Override
@@ -1207,6 +1360,11 @@ public class SearchCompiler {
             return type == osm.getType();
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return 0;
+        }
+
         @Override
         public String toString() {
             return "type=" + type;
@@ -1254,6 +1412,11 @@ public class SearchCompiler {
                 return osm.getUser().hasName(user);
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return 0;
+        }
+
         @Override
         public String toString() {
             return "user=" + (user == null ? "" : user);
@@ -1299,6 +1462,12 @@ public class SearchCompiler {
                     .anyMatch(testRole -> role.equals(testRole == null ? "" : testRole));
         }
 
+        @Override
+        public int getDependencyDepth() {
+            // the role or the position in the parent ways and relations
+            return 1;
+        }
+
         @Override
         public String toString() {
             return "role=" + role;
@@ -1364,6 +1533,12 @@ public class SearchCompiler {
             return false;
         }
 
+        @Override
+        public int getDependencyDepth() {
+            // the role or the position in the parent ways and relations
+            return 1;
+        }
+
         @Override
         public String toString() {
             return "Nth{nth=" + nthObject + ", modulo=" + modulo + '}';
@@ -1416,6 +1591,11 @@ public class SearchCompiler {
                 return (num >= min) && (num <= max);
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return 0;
+        }
+
         @Override
         public String toString() {
             return getString() + '=' + min + '-' + max;
@@ -1494,6 +1674,12 @@ public class SearchCompiler {
         protected String getString() {
             return "ways";
         }
+
+        @Override
+        public int getDependencyDepth() {
+            // the ways of a node
+            return 1;
+        }
     }
 
     /*
@@ -1603,6 +1789,11 @@ public class SearchCompiler {
             return osm instanceof Relation && ((Relation) osm).getMemberRoles().contains(role);
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return 0;
+        }
+
         @Override
         public int hashCode() {
             return 31 + ((role == null) ? 0 : role.hashCode());
@@ -1628,6 +1819,11 @@ public class SearchCompiler {
             return osm.isNew();
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return 0;
+        }
+
         @Override
         public String toString() {
             return "new";
@@ -1643,6 +1839,11 @@ public class SearchCompiler {
             return osm.isModified() || osm.isNewOrUndeleted();
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return 0;
+        }
+
         @Override
         public String toString() {
             return MODIFIED;
@@ -1658,6 +1859,11 @@ public class SearchCompiler {
             return osm.isDeleted();
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return 0;
+        }
+
         @Override
         public String toString() {
             return DELETED;
@@ -1673,6 +1879,11 @@ public class SearchCompiler {
             return osm.getDataSet().isSelected(osm);
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return 0;
+        }
+
         @Override
         public String toString() {
             return SELECTED;
@@ -1690,6 +1901,11 @@ public class SearchCompiler {
             return osm.isIncomplete() || (osm instanceof Relation && ((Relation) osm).hasIncompleteMembers());
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return 0;
+        }
+
         @Override
         public String toString() {
             return INCOMPLETE;
@@ -1707,6 +1923,11 @@ public class SearchCompiler {
             return !osm.isTagged() && !osm.isIncomplete();
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return 0;
+        }
+
         @Override
         public String toString() {
             return UNTAGGED;
@@ -1722,6 +1943,11 @@ public class SearchCompiler {
             return osm instanceof Way && ((Way) osm).isClosed();
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return 0;
+        }
+
         @Override
         public String toString() {
             return CLOSED;
@@ -1747,6 +1973,11 @@ public class SearchCompiler {
             }
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return saturatedIncrement(match.getDependencyDepth());
+        }
+
         @Override
         public String toString() {
             return "parent(" + match + ')';
@@ -1767,6 +1998,11 @@ public class SearchCompiler {
             return osm.getReferrers().stream().anyMatch(match::match);
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return saturatedIncrement(match.getDependencyDepth());
+        }
+
         @Override
         public String toString() {
             return "child(" + match + ')';
@@ -1798,6 +2034,12 @@ public class SearchCompiler {
         protected String getString() {
             return AREA_SIZE;
         }
+
+        @Override
+        public int getDependencyDepth() {
+            // the nodes of the ways of a multipolygon
+            return 2;
+        }
     }
 
     /**
@@ -1825,6 +2067,12 @@ public class SearchCompiler {
         protected String getString() {
             return WAY_LENGTH;
         }
+
+        @Override
+        public int getDependencyDepth() {
+            // the nodes of a way
+            return 1;
+        }
     }
 
     /**
@@ -1894,6 +2142,11 @@ public class SearchCompiler {
             return primitive.getDataSet() != null ? primitive.getDataSet().getDataSourceBounds() : null;
         }
 
+        @Override
+        public Collection<Bounds> getCandidateBounds(DataSet ds) {
+            return ds.getDataSourceBounds();
+        }
+
         @Override
         public String toString() {
             return all ? ALL_IN_DOWNLOADED_AREA : IN_DOWNLOADED_AREA;
@@ -1920,6 +2173,12 @@ public class SearchCompiler {
                     Collections.singleton(ProjectionRegistry.getProjection().getWorldBoundsLatLon()) : bounds;
         }
 
+        @Override
+        public Collection<Bounds> getCandidateBounds(DataSet ds) {
+            final Collection<Bounds> bounds = super.getCandidateBounds(ds);
+            return Utils.isEmpty(bounds) ? null : bounds;
+        }
+
         @Override
         public String toString() {
             return "NotOutsideDataSourceArea";
@@ -1964,6 +2223,11 @@ public class SearchCompiler {
             return this.presets.stream().anyMatch(preset -> preset.test(osm));
         }
 
+        @Override
+        public int getDependencyDepth() {
+            return 0;
+        }
+
         private static boolean presetNameMatch(String name, TaggingPreset preset, boolean matchStrictly) {
             if (matchStrictly) {
                 return name.equalsIgnoreCase(preset.getRawName());
@@ -2030,6 +2294,65 @@ public class SearchCompiler {
                 .parse();
     }
 
+    /**
+     * Returns the primitives of a data set which may match the given search criterion, found with the
+     * {@linkplain DataSet#getTagIndex() tag index} and the spatial index of the data set.
+     * @param match the search criterion
+     * @param ds the data set
+     * @return a superset of the primitives of the data set matching the criterion,
+     * or {@code null} if every primitive of the data set has to be tested
+     * @since xxx
+     */
+    public static Collection<OsmPrimitive> getCandidates(Match match, DataSet ds) {
+        final TagIndex index = ds.getTagIndex();
+        final Lock lock = ds.getReadLock();
+        lock.lock();
+        try {
+            final Set<OsmPrimitive> candidates = index == null ? null : match.getCandidates(index);
+            final Collection<Bounds> bounds = match.getCandidateBounds(ds);
+            if (bounds == null) {
+                return candidates == null ? null : new ArrayList<>(candidates);
+            }
+            final List<BBox> boxes = toBBoxes(bounds);
+            if (candidates != null) {
+                return candidates.stream().filter(p -> intersects(p, boxes)).collect(Collectors.toList());
+            }
+            final Set<OsmPrimitive> result = TagIndex.newPrimitiveSet();
+            for (BBox box : boxes) {
+                result.addAll(ds.searchNodes(box));
+                result.addAll(ds.searchWays(box));
+            }
+            // the relations are not in the spatial index, and the ways without nodes are not found through it
+            for (OsmPrimitive p : ds.allPrimitives()) {
+                if ((p instanceof Relation || (p instanceof Way && !p.getBBox().isValid())) && intersects(p, boxes)) {
+                    result.add(p);
+                }
+            }
+            return new ArrayList<>(result);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static List<BBox> toBBoxes(Collection<Bounds> bounds) {
+        final List<BBox> boxes = new ArrayList<>(bounds.size());
+        for (Bounds b : bounds) {
+            if (b.crosses180thMeridian()) {
+                boxes.add(new BBox(b.getMinLon(), b.getMinLat(), 180, b.getMaxLat()));
+                boxes.add(new BBox(-180, b.getMinLat(), b.getMaxLon(), b.getMaxLat()));
+            } else {
+                boxes.add(b.toBBox());
+            }
+        }
+        return boxes;
+    }
+
+    private static boolean intersects(OsmPrimitive p, List<BBox> boxes) {
+        final BBox bbox = p.getBBox();
+        // the ways and relations without coordinates match the criteria requiring all their nodes or members to be in an area
+        return !bbox.isValid() || boxes.stream().anyMatch(bbox::intersects);
+    }
+
     static Match compileMapCSS(String mapCSS) throws SearchParseError {
         try {
             final List<Selector> selectors = new MapCSSParser(new StringReader(mapCSS)).selectors_for_search();
@@ -2220,6 +2543,10 @@ public class SearchCompiler {
         return match != null ? match.validate() : null;
     }
 
+    private static int saturatedIncrement(int depth) {
+        return depth == Integer.MAX_VALUE ? depth : depth + 1;
+    }
+
     private static int regexFlags(boolean caseSensitive) {
         int searchFlags = 0;
 
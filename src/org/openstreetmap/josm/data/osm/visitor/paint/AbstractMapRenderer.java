@@ -7,6 +7,7 @@ import java.awt.geom.GeneralPath;
 import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 import java.util.Iterator;
+import java.util.List;
 
 import org.openstreetmap.josm.data.osm.BBox;
 import org.openstreetmap.josm.data.osm.INode;
@@ -65,6 +66,9 @@ public abstract class AbstractMapRenderer implements Rendering {
     /** Performs slow operations by default. Can be disabled when fast partial rendering is required */
     protected boolean doSlowOperations = true;
 
+    /** The simplified geometry of the long ways, {@code null} to draw all nodes */
+    private SimplifiedWayCache simplifiedWays;
+
     /**
      * <p>Creates an abstract paint visitor</p>
      *
@@ -274,4 +278,23 @@ public abstract class AbstractMapRenderer implements Rendering {
     public final void enableSlowOperations(boolean enable) {
         doSlowOperations = enable;
     }
+
+    /**
+     * Sets the cache of the simplified geometry of the long ways.
+     * @param simplifiedWays the cache, or {@code null} to draw all the nodes of the ways
+     * @since xxx
+     */
+    public final void setSimplifiedWays(SimplifiedWayCache simplifiedWays) {
+        this.simplifiedWays = simplifiedWays;
+    }
+
+    /**
+     * Returns the nodes to draw for a way, i.e. the simplified nodes of long ways when zoomed out.
+     * @param w the way
+     * @return the nodes to draw
+     * @since xxx
+     */
+    protected List<? extends INode> getDrawnNodes(IWay<?> w) {
+        return simplifiedWays != null ? simplifiedWays.getNodes(w, mapState) : w.getNodes();
+    }
 }
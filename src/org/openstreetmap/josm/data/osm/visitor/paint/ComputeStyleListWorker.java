@@ -4,7 +4,6 @@ package org.openstreetmap.josm.data.osm.visitor.paint;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveTask;
 
 import org.openstreetmap.josm.data.osm.INode;
@@ -16,6 +15,7 @@ import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer.StyleReco
 import org.openstreetmap.josm.gui.NavigatableComponent;
 import org.openstreetmap.josm.gui.mappaint.ElemStyles;
 import org.openstreetmap.josm.gui.mappaint.MapPaintStyles;
+import org.openstreetmap.josm.gui.mappaint.Range;
 import org.openstreetmap.josm.gui.mappaint.StyleElementList;
 import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource;
 import org.openstreetmap.josm.gui.mappaint.styleelement.AreaElement;
@@ -25,6 +25,7 @@ import org.openstreetmap.josm.gui.mappaint.styleelement.StyleElement;
 import org.openstreetmap.josm.gui.mappaint.styleelement.TextElement;
 import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.JosmRuntimeException;
+import org.openstreetmap.josm.tools.Pair;
 import org.openstreetmap.josm.tools.bugreport.BugReport;
 
 /**
@@ -46,6 +47,8 @@ public class ComputeStyleListWorker extends RecursiveTask<List<StyleRecord>> imp
     private final boolean drawArea;
     private final boolean drawMultipolygon;
     private final boolean drawRestriction;
+    /** The scale range in which the computed styles are valid */
+    private transient Range range = Range.ZERO_TO_INFINITY;
 
     /**
      * Constructs a new {@code ComputeStyleListWorker}.
@@ -92,14 +95,17 @@ public class ComputeStyleListWorker extends RecursiveTask<List<StyleRecord>> imp
         if (input.size() <= directExecutionTaskSize) {
             return computeDirectly();
         } else {
-            final Collection<ForkJoinTask<List<StyleRecord>>> tasks = new ArrayList<>();
+            final Collection<ComputeStyleListWorker> tasks = new ArrayList<>();
             for (int fromIndex = 0; fromIndex < input.size(); fromIndex += directExecutionTaskSize) {
                 final int toIndex = Math.min(fromIndex + directExecutionTaskSize, input.size());
-                tasks.add(new ComputeStyleListWorker(circum, nc, input.subList(fromIndex, toIndex),
-                        new ArrayList<>(directExecutionTaskSize), directExecutionTaskSize, styles).fork());
+                final ComputeStyleListWorker task = new ComputeStyleListWorker(circum, nc, input.subList(fromIndex, toIndex),
+                        new ArrayList<>(directExecutionTaskSize), directExecutionTaskSize, styles);
+                task.fork();
+                tasks.add(task);
             }
-            for (ForkJoinTask<List<StyleRecord>> task : tasks) {
+            for (ComputeStyleListWorker task : tasks) {
                 output.addAll(task.join());
+                cutRange(task.range);
             }
             return output;
         }
@@ -133,6 +139,27 @@ public class ComputeStyleListWorker extends RecursiveTask<List<StyleRecord>> imp
         }
     }
 
+    /**
+     * Returns the scale range in which the computed styles are valid, once the styles have been computed.
+     * @return the scale range of the computed styles
+     * @since xxx
+     */
+    Range getRange() {
+        return range;
+    }
+
+    private StyleElementList getStyles(IPrimitive osm) {
+        final Pair<StyleElementList, Range> p = styles.getStyleCacheWithRange(osm, circum, nc);
+        cutRange(p.b);
+        return p.a;
+    }
+
+    private void cutRange(Range other) {
+        if (other.getLower() > range.getLower() || other.getUpper() < range.getUpper()) {
+            range = Range.cut(range, other);
+        }
+    }
+
     @Override
     public void visit(INode n) {
         add(n, StyledMapRenderer.computeFlags(n, false));
@@ -155,7 +182,7 @@ public class ComputeStyleListWorker extends RecursiveTask<List<StyleRecord>> imp
      * @since 13810 (signature)
      */
     public void add(INode osm, int flags) {
-        StyleElementList sl = styles.get(osm, circum, nc);
+        StyleElementList sl = getStyles(osm);
         for (StyleElement s : sl) {
             output.add(new StyleRecord(s, osm, flags));
         }
@@ -168,7 +195,7 @@ public class ComputeStyleListWorker extends RecursiveTask<List<StyleRecord>> imp
      * @since 13810 (signature)
      */
     public void add(IWay<?> osm, int flags) {
-        StyleElementList sl = styles.get(osm, circum, nc);
+        StyleElementList sl = getStyles(osm);
         for (StyleElement s : sl) {
             if ((drawArea && (flags & StyledMapRenderer.FLAG_DISABLED) == 0) || !(s instanceof AreaElement)) {
                 output.add(new StyleRecord(s, osm, flags));
@@ -183,7 +210,7 @@ public class ComputeStyleListWorker extends RecursiveTask<List<StyleRecord>> imp
      * @since 13810 (signature)
      */
     public void add(IRelation<?> osm, int flags) {
-        StyleElementList sl = styles.get(osm, circum, nc);
+        StyleElementList sl = getStyles(osm);
         for (StyleElement s : sl) {
             if (drawAreaElement(flags, s) ||
                (drawMultipolygon && drawArea && s instanceof TextElement) ||
@@ -0,0 +1,305 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSelectionListener;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.INode;
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.IRelation;
+import org.openstreetmap.josm.data.osm.IWay;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+import org.openstreetmap.josm.data.osm.event.FilterChangedEvent;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer.StyleRecord;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.gui.mappaint.Range;
+import org.openstreetmap.josm.gui.mappaint.StyleCache;
+import org.openstreetmap.josm.tools.Destroyable;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Pair;
+import org.openstreetmap.josm.tools.Stopwatch;
+
+/**
+ * Keeps the sorted style records of a data set between repaints of the map.
+ * <p>
+ * Computing the styles of the visible primitives and sorting the resulting records is the most expensive part of
+ * rendering a data layer. The display list keeps the records of the area painted so far, as long as the map is
+ * rendered with the same styles in the scale range of the computed styles. Panning only computes the records of
+ * the newly visible primitives. The list listens to the changes of the data set and of the selection, and only
+ * computes again the records of the changed primitives, their parents and their children.
+ * @since xxx
+ */
+public class DisplayList implements Destroyable {
+
+    /** Whether the data layers keep the style records of the data between repaints */
+    public static final BooleanProperty ENABLED = new BooleanProperty("mappaint.retain-style-records", true);
+
+    /** The number of painted areas above which they are merged, or the list is computed again from the visible area only */
+    private static final int MAX_COVERED_AREAS = 16;
+
+    private static final StyleRecord[] EMPTY_RECORDS = new StyleRecord[0];
+
+    private final DataSet dataSet;
+    private final DataSetListenerAdapter listener = new DataSetListenerAdapter(this::processDatasetEvent);
+    private final DataSelectionListener selectionListener = event -> {
+        addDirty(event.getAdded());
+        addDirty(event.getRemoved());
+    };
+
+    /** The primitives whose records must be computed again. Guarded by {@code listener} */
+    private Set<IPrimitive> dirty = new HashSet<>();
+    /** Whether all records must be computed again. Guarded by {@code listener} */
+    private boolean invalid = true;
+
+    /** The style settings of the records */
+    private Object[] settings;
+    /** The mappaint cache index of the data set when the records were computed */
+    private short mappaintCacheIndex;
+    /** The scale range in which the records are valid */
+    private Range range = Range.ZERO_TO_INFINITY;
+    /** The areas whose primitives have records */
+    private final List<BBox> covered = new ArrayList<>();
+    /** The records, sorted in painting order */
+    private StyleRecord[] records = EMPTY_RECORDS;
+    /** The cached style of the primitive of each record when the record was computed */
+    private StyleCache[] caches = new StyleCache[0];
+
+    /**
+     * Constructs a new {@code DisplayList} and starts listening to the changes of the data set.
+     * @param dataSet the data set to render
+     */
+    public DisplayList(DataSet dataSet) {
+        this.dataSet = Objects.requireNonNull(dataSet, "dataSet");
+        dataSet.addDataSetListener(listener);
+        dataSet.addSelectionListener(selectionListener);
+    }
+
+    /**
+     * Returns the rendered data set.
+     * @return the rendered data set
+     */
+    public DataSet getDataSet() {
+        return dataSet;
+    }
+
+    private void processDatasetEvent(AbstractDatasetChangedEvent event) {
+        if (event instanceof DataChangedEvent && ((DataChangedEvent) event).getEvents() != null) {
+            ((DataChangedEvent) event).getEvents().forEach(this::processDatasetEvent);
+        } else if (event instanceof DataChangedEvent || event instanceof FilterChangedEvent) {
+            // Too many changes to be recorded, or the disabled state of any primitive may have changed
+            invalidate();
+        } else {
+            addDirty(event.getPrimitives());
+        }
+    }
+
+    private void addDirty(Collection<? extends IPrimitive> primitives) {
+        synchronized (listener) {
+            if (!invalid) {
+                dirty.addAll(primitives);
+            }
+        }
+    }
+
+    /**
+     * Makes the next repaint compute all records again.
+     */
+    public void invalidate() {
+        synchronized (listener) {
+            invalid = true;
+            dirty = new HashSet<>();
+        }
+    }
+
+    /**
+     * Returns the records of the primitives in the given area, sorted in painting order.
+     * Must be called while holding the read lock of the data set.
+     * @param renderer the renderer computing the missing records
+     * @param bbox the painted area
+     * @return the sorted records of the primitives in the area
+     */
+    synchronized StyleRecord[] getRecords(StyledMapRenderer renderer, BBox bbox) {
+        final Set<IPrimitive> changed;
+        final boolean complete;
+        final Object[] newSettings = renderer.getStyleSettings();
+        synchronized (listener) {
+            complete = invalid || !Arrays.equals(settings, newSettings)
+                    || mappaintCacheIndex != dataSet.getMappaintCacheIndex() || !range.contains(renderer.getCircum());
+            changed = dirty;
+            dirty = new HashSet<>();
+            invalid = false;
+        }
+        if (complete) {
+            settings = newSettings;
+            mappaintCacheIndex = dataSet.getMappaintCacheIndex();
+            range = Range.ZERO_TO_INFINITY;
+            covered.clear();
+            records = EMPTY_RECORDS;
+            caches = new StyleCache[0];
+        } else {
+            update(renderer, changed);
+        }
+        if (covered.stream().noneMatch(area -> area.bounds(bbox))) {
+            cover(renderer, bbox);
+        }
+        return Arrays.stream(records).filter(r -> intersects(bbox, r.getPrimitive())).toArray(StyleRecord[]::new);
+    }
+
+    /**
+     * Computes the records of the changed primitives again.
+     * @param renderer the renderer
+     * @param changed the primitives changed since the last repaint
+     */
+    private void update(StyledMapRenderer renderer, Set<IPrimitive> changed) {
+        // The flags of the records depend on the selection of the parents, the styles may depend on the parents and children
+        final Set<IPrimitive> affected = new HashSet<>();
+        final Deque<IPrimitive> parents = new ArrayDeque<>();
+        for (IPrimitive p : changed) {
+            if (affected.add(p)) {
+                parents.add(p);
+            }
+            if (p instanceof IWay) {
+                affected.addAll(((IWay<?>) p).getNodes());
+            } else if (p instanceof IRelation) {
+                ((IRelation<?>) p).getMemberPrimitivesList().forEach(affected::add);
+            }
+        }
+        while (!parents.isEmpty()) {
+            for (IPrimitive referrer : parents.poll().getReferrers()) {
+                if (affected.add(referrer)) {
+                    parents.add(referrer);
+                }
+            }
+        }
+        // The cached style of a primitive is cleared when the style of the primitive may have changed
+        for (int i = 0; i < records.length; i++) {
+            if (records[i].getPrimitive().getCachedStyle() != caches[i]) {
+                affected.add(records[i].getPrimitive());
+            }
+        }
+        if (affected.isEmpty()) {
+            return;
+        }
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final List<INode> nodes = new ArrayList<>();
+        final List<IWay<?>> ways = new ArrayList<>();
+        final List<IRelation<?>> relations = new ArrayList<>();
+        for (IPrimitive p : affected) {
+            if (p.getDataSet() == dataSet && covered.stream().anyMatch(area -> intersects(area, p))) {
+                if (p instanceof INode) {
+                    nodes.add((INode) p);
+                } else if (p instanceof IWay) {
+                    ways.add((IWay<?>) p);
+                } else if (p instanceof IRelation) {
+                    relations.add((IRelation<?>) p);
+                }
+            }
+        }
+        final StyleRecord[] kept = Arrays.stream(records).filter(r -> !affected.contains(r.getPrimitive())).toArray(StyleRecord[]::new);
+        merge(kept, compute(renderer, nodes, ways, relations));
+        Logging.debug(stopwatch.toString("Updating the style records of " + affected.size() + " primitives"));
+    }
+
+    /**
+     * Computes the records of the primitives in the given area which have no records yet.
+     * @param renderer the renderer
+     * @param bbox the painted area
+     */
+    private void cover(StyledMapRenderer renderer, BBox bbox) {
+        BBox area = bbox;
+        if (covered.size() >= MAX_COVERED_AREAS) {
+            // Cover the union of the painted areas if they are close to each other, e.g. when panning
+            final BBox union = new BBox(bbox);
+            covered.forEach(union::add);
+            if (union.area() > MAX_COVERED_AREAS * bbox.area()) {
+                covered.clear();
+                records = EMPTY_RECORDS;
+                caches = new StyleCache[0];
+            } else {
+                area = union;
+            }
+        }
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final List<BBox> before = new ArrayList<>(covered);
+        covered.removeIf(area::bounds);
+        covered.add(area.toImmutable());
+        final StyleRecord[] added = compute(renderer,
+                notCovered(dataSet.searchNodes(area), before),
+                notCovered(dataSet.searchWays(area), before),
+                notCovered(dataSet.searchRelations(area), before));
+        merge(records, added);
+        Logging.debug(stopwatch.toString("Computing " + added.length + " style records"));
+    }
+
+    private static <T extends IPrimitive> List<T> notCovered(List<T> primitives, List<BBox> covered) {
+        if (covered.isEmpty()) {
+            return primitives;
+        }
+        return primitives.stream().filter(p -> covered.stream().noneMatch(area -> intersects(area, p))).collect(Collectors.toList());
+    }
+
+    private StyleRecord[] compute(StyledMapRenderer renderer, List<? extends INode> nodes, List<? extends IWay<?>> ways,
+            List<? extends IRelation<?>> relations) {
+        final Pair<List<StyleRecord>, Range> result = renderer.computeStyleRecords(nodes, ways, relations);
+        range = Range.cut(range, result.b);
+        final StyleRecord[] sorted = result.a.toArray(EMPTY_RECORDS);
+        Arrays.parallelSort(sorted, null);
+        return sorted;
+    }
+
+    /**
+     * Merges the sorted records, keeping the order of equal records (the kept records first).
+     * @param kept the records kept from the last repaint
+     * @param added the new records
+     */
+    private void merge(StyleRecord[] kept, StyleRecord[] added) {
+        final StyleRecord[] merged = new StyleRecord[kept.length + added.length];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < merged.length; k++) {
+            if (j == added.length || (i < kept.length && kept[i].compareTo(added[j]) <= 0)) {
+                merged[k] = kept[i++];
+            } else {
+                merged[k] = added[j++];
+            }
+        }
+        records = merged;
+        caches = new StyleCache[merged.length];
+        for (int k = 0; k < merged.length; k++) {
+            caches[k] = merged[k].getPrimitive().getCachedStyle();
+        }
+    }
+
+    private static boolean intersects(BBox area, IPrimitive p) {
+        if (p instanceof INode) {
+            final INode n = (INode) p;
+            return n.isLatLonKnown() && n.lon() >= area.getMinLon() && n.lon() <= area.getMaxLon()
+                    && n.lat() >= area.getMinLat() && n.lat() <= area.getMaxLat();
+        }
+        return area.intersects(p.getBBox());
+    }
+
+    @Override
+    public void destroy() {
+        dataSet.removeDataSetListener(listener);
+        dataSet.removeSelectionListener(selectionListener);
+        synchronized (this) {
+            covered.clear();
+            records = EMPTY_RECORDS;
+            caches = new StyleCache[0];
+        }
+    }
+}
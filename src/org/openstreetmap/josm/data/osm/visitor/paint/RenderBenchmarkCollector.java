@@ -45,6 +45,17 @@ public class RenderBenchmarkCollector {
         return true;
     }
 
+    /**
+     * Notified when the renderer method starts drawing the styles of another major z-index, e.g. the lines after the areas
+     * @param majorZIndex The major z-index of the next styles
+     * @return <code>true</code> if the renderer should continue to render
+     * @since xxx
+     */
+    public boolean renderDrawLayer(float majorZIndex) {
+        // nop
+        return true;
+    }
+
     /**
      * Notified when the render method is done.
      */
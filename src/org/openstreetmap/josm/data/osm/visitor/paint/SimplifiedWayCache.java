@@ -0,0 +1,245 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.INode;
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.IWay;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesRemovedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.data.preferences.DoubleProperty;
+import org.openstreetmap.josm.data.projection.Projecting;
+import org.openstreetmap.josm.gui.MapViewState;
+import org.openstreetmap.josm.tools.Destroyable;
+
+/**
+ * Keeps the simplified geometry of the long ways of a data set, for each zoom band.
+ * <p>
+ * When the map is zoomed out, a way with thousands of nodes (e.g. a coastline or a boundary) covers only a few hundred
+ * pixels, yet projecting and stroking all its nodes is the most expensive part of drawing it. The renderers draw the
+ * nodes kept by the Douglas-Peucker algorithm instead, with a tolerance below one pixel. The zoom bands are the powers of
+ * two of the scale: the simplified nodes computed for a band are used for all the scales of the band.
+ * At the editing scales, below {@link #MIN_SCALE}, the ways are drawn with all their nodes.
+ * The cache listens to the changes of the data set, and forgets the ways whose nodes changed or moved.
+ * @since xxx
+ */
+public class SimplifiedWayCache implements Destroyable {
+
+    /** Whether the renderers draw simplified ways */
+    public static final BooleanProperty ENABLED = new BooleanProperty("mappaint.simplify-ways", true);
+    /** The maximal distance in pixels between the simplified way and the removed nodes */
+    public static final DoubleProperty TOLERANCE = new DoubleProperty("mappaint.simplify-ways.tolerance", 0.5);
+    /** The scale in meters per pixel (about zoom level 14) below which the ways are not simplified */
+    public static final DoubleProperty MIN_SCALE = new DoubleProperty("mappaint.simplify-ways.min-scale", 10);
+
+    /** The number of nodes below which ways are drawn as they are */
+    private static final int MIN_NODES = 32;
+    /** The number of zoom bands kept for each way */
+    private static final int MAX_BANDS = 3;
+
+    private final DataSet dataSet;
+    private final DataSetListenerAdapter listener = new DataSetListenerAdapter(this::processDatasetEvent);
+    private final Map<IWay<?>, Simplified[]> ways = new ConcurrentHashMap<>();
+
+    /**
+     * The simplified nodes of a way for a zoom band.
+     */
+    private static final class Simplified {
+        private final int band;
+        private final Projecting projecting;
+        private final int nodesCount;
+        /** The kept nodes, {@code null} if the way cannot be simplified */
+        private final List<INode> nodes;
+
+        Simplified(int band, Projecting projecting, int nodesCount, List<INode> nodes) {
+            this.band = band;
+            this.projecting = projecting;
+            this.nodesCount = nodesCount;
+            this.nodes = nodes;
+        }
+    }
+
+    /**
+     * Constructs a new {@code SimplifiedWayCache} and starts listening to the changes of the data set.
+     * @param dataSet the data set to render
+     */
+    public SimplifiedWayCache(DataSet dataSet) {
+        this.dataSet = Objects.requireNonNull(dataSet, "dataSet");
+        dataSet.addDataSetListener(listener);
+    }
+
+    private void processDatasetEvent(AbstractDatasetChangedEvent event) {
+        if (event instanceof DataChangedEvent) {
+            if (((DataChangedEvent) event).getEvents() != null) {
+                ((DataChangedEvent) event).getEvents().forEach(this::processDatasetEvent);
+            } else {
+                ways.clear();
+            }
+        } else if (event instanceof WayNodesChangedEvent || event instanceof NodeMovedEvent || event instanceof PrimitivesRemovedEvent) {
+            forget(event.getPrimitives());
+        }
+    }
+
+    private void forget(Collection<? extends IPrimitive> primitives) {
+        for (IPrimitive p : primitives) {
+            if (p instanceof IWay) {
+                ways.remove(p);
+            } else if (p instanceof INode) {
+                for (IPrimitive referrer : p.getReferrers()) {
+                    if (referrer instanceof IWay) {
+                        ways.remove(referrer);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the nodes to draw for a way at the scale of the given map view state.
+     * @param way the way
+     * @param state the map view state
+     * @return the simplified nodes of the way, or all its nodes if it cannot be simplified or the map is zoomed in
+     */
+    public List<? extends INode> getNodes(IWay<?> way, MapViewState state) {
+        final List<? extends INode> nodes = way.getNodes();
+        if (nodes.size() < MIN_NODES || way.getDataSet() != dataSet
+                || state.getScale() * state.getProjection().getMetersPerUnit() < MIN_SCALE.get()) {
+            return nodes;
+        }
+        final int band = Math.getExponent(state.getScale());
+        final Projecting projecting = state.getProjecting();
+        final Simplified[] entries = ways.get(way);
+        if (entries != null) {
+            for (Simplified entry : entries) {
+                if (entry.band == band && entry.projecting == projecting && entry.nodesCount == nodes.size()) {
+                    return entry.nodes != null ? entry.nodes : nodes;
+                }
+            }
+        }
+        final Simplified entry = new Simplified(band, projecting, nodes.size(),
+                simplify(nodes, projecting, TOLERANCE.get() * Math.scalb(1.0, band)));
+        ways.compute(way, (w, old) -> {
+            if (old == null) {
+                return new Simplified[] {entry};
+            }
+            final Simplified[] updated = Arrays.copyOf(old, Math.min(old.length + 1, MAX_BANDS));
+            System.arraycopy(old, 0, updated, 1, updated.length - 1);
+            updated[0] = entry;
+            return updated;
+        });
+        return entry.nodes != null ? entry.nodes : nodes;
+    }
+
+    /**
+     * Simplifies a line with the Douglas-Peucker algorithm.
+     * @param nodes the nodes of the line
+     * @param projecting the projection of the nodes
+     * @param tolerance the maximal distance in east/north units between the simplified line and the removed nodes
+     * @return the kept nodes, or {@code null} if the nodes cannot be simplified
+     */
+    static List<INode> simplify(List<? extends INode> nodes, Projecting projecting, double tolerance) {
+        final int n = nodes.size();
+        final double[] x = new double[n];
+        final double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            final INode node = nodes.get(i);
+            final EastNorth en = node.isLatLonKnown() ? node.getEastNorth(projecting) : null;
+            if (en == null) {
+                return null;
+            }
+            x[i] = en.east();
+            y[i] = en.north();
+        }
+        final boolean[] kept = new boolean[n];
+        kept[0] = true;
+        kept[n - 1] = true;
+        final double toleranceSq = tolerance * tolerance;
+        final int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        int count = 2;
+        while (top > 0) {
+            final int to = stack[--top];
+            final int from = stack[--top];
+            int farthest = -1;
+            double maxDistanceSq = toleranceSq;
+            for (int i = from + 1; i < to; i++) {
+                final double distanceSq = distanceSq(x[i], y[i], x[from], y[from], x[to], y[to]);
+                if (distanceSq > maxDistanceSq) {
+                    maxDistanceSq = distanceSq;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                kept[farthest] = true;
+                count++;
+                stack[top++] = from;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = to;
+            }
+        }
+        if (count > n * 3 / 4) {
+            // not worth it
+            return null;
+        }
+        final List<INode> result = new ArrayList<>(count);
+        for (int i = 0; i < n; i++) {
+            if (kept[i]) {
+                result.add(nodes.get(i));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Returns the square of the distance between a point and a segment.
+     * @param px the x coordinate of the point
+     * @param py the y coordinate of the point
+     * @param x1 the x coordinate of the first end of the segment
+     * @param y1 the y coordinate of the first end of the segment
+     * @param x2 the x coordinate of the second end of the segment
+     * @param y2 the y coordinate of the second end of the segment
+     * @return the square of the distance
+     */
+    private static double distanceSq(double px, double py, double x1, double y1, double x2, double y2) {
+        final double dx = x2 - x1;
+        final double dy = y2 - y1;
+        final double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : ((px - x1) * dx + (py - y1) * dy) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+        final double ex = x1 + t * dx - px;
+        final double ey = y1 + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Returns the number of ways with simplified nodes.
+     * @return the number of ways with simplified nodes
+     */
+    int size() {
+        return ways.size();
+    }
+
+    @Override
+    public void destroy() {
+        dataSet.removeDataSetListener(listener);
+        ways.clear();
+    }
+}
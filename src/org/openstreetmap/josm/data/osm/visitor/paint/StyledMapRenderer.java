@@ -70,6 +70,7 @@ import org.openstreetmap.josm.gui.draw.MapViewPath;
 import org.openstreetmap.josm.gui.draw.MapViewPositionAndRotation;
 import org.openstreetmap.josm.gui.mappaint.ElemStyles;
 import org.openstreetmap.josm.gui.mappaint.MapPaintStyles;
+import org.openstreetmap.josm.gui.mappaint.Range;
 import org.openstreetmap.josm.gui.mappaint.styleelement.BoxTextElement;
 import org.openstreetmap.josm.gui.mappaint.styleelement.BoxTextElement.HorizontalTextAlignment;
 import org.openstreetmap.josm.gui.mappaint.styleelement.BoxTextElement.VerticalTextAlignment;
@@ -87,6 +88,7 @@ import org.openstreetmap.josm.tools.Geometry.AreaAndPerimeter;
 import org.openstreetmap.josm.tools.HiDPISupport;
 import org.openstreetmap.josm.tools.JosmRuntimeException;
 import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Pair;
 import org.openstreetmap.josm.tools.RotationAngle;
 import org.openstreetmap.josm.tools.ShapeClipper;
 import org.openstreetmap.josm.tools.Utils;
@@ -218,6 +220,15 @@ public class StyledMapRenderer extends AbstractMapRenderer {
             return style;
         }
 
+        /**
+         * Get the primitive painted with the style.
+         * @return The primitive
+         * @since xxx
+         */
+        public IPrimitive getPrimitive() {
+            return osm;
+        }
+
         /**
          * Paints the primitive with the style.
          * @param paintSettings The settings to use.
@@ -364,6 +375,7 @@ public class StyledMapRenderer extends AbstractMapRenderer {
     private Object antialiasing;
 
     private Supplier<RenderBenchmarkCollector> benchmarkFactory = RenderBenchmarkCollector.defaultBenchmarkSupplier();
+    private DisplayList displayList;
 
     /**
      * Constructs a new {@code StyledMapRenderer}.
@@ -1283,7 +1295,7 @@ public class StyledMapRenderer extends AbstractMapRenderer {
             bounds.grow(100, 100);
         }
 
-        List<? extends INode> wayNodes = way.getNodes();
+        List<? extends INode> wayNodes = getDrawnNodes(way);
         if (wayNodes.size() < 2) return;
 
         // only highlight the segment if the way itself is not highlighted
@@ -1458,9 +1470,9 @@ public class StyledMapRenderer extends AbstractMapRenderer {
     private MapViewPath getPath(IWay<?> w) {
         MapViewPath path = new MapViewPath(mapState);
         if (w.isClosed()) {
-            path.appendClosed(w.getNodes(), false);
+            path.appendClosed(getDrawnNodes(w), false);
         } else {
-            path.append(w.getNodes(), false);
+            path.append(getDrawnNodes(w), false);
         }
         return path;
     }
@@ -1661,38 +1673,39 @@ public class StyledMapRenderer extends AbstractMapRenderer {
 
             benchmark.renderStart(circum);
 
-            List<? extends INode> nodes = data.searchNodes(bbox);
-            List<? extends IWay<?>> ways = data.searchWays(bbox);
-            List<? extends IRelation<?>> relations = data.searchRelations(bbox);
-
-            final List<StyleRecord> allStyleElems = new ArrayList<>(nodes.size()+ways.size()+relations.size());
-
-            // Need to process all relations first.
-            // Reason: Make sure, ElemStyles.getStyleCacheWithRange is not called for the same primitive in parallel threads.
-            // (Could be synchronized, but try to avoid this for performance reasons.)
-            if (THREAD_POOL != null) {
-                THREAD_POOL.invoke(new ComputeStyleListWorker(circum, nc, relations, allStyleElems,
-                        Math.max(20, relations.size() / THREAD_POOL.getParallelism() / 3), styles));
-                THREAD_POOL.invoke(new ComputeStyleListWorker(circum, nc, new CompositeList<>(nodes, ways), allStyleElems,
-                        Math.max(100, (nodes.size() + ways.size()) / THREAD_POOL.getParallelism() / 3), styles));
+            final List<StyleRecord> allStyleElems;
+            final StyleRecord[] sorted;
+            if (displayList != null && displayList.getDataSet() == data) {
+                // The records are already sorted
+                sorted = displayList.getRecords(this, bbox);
+                allStyleElems = Arrays.asList(sorted);
+                if (!benchmark.renderSort()) {
+                    return;
+                }
             } else {
-                new ComputeStyleListWorker(circum, nc, relations, allStyleElems, 0, styles).computeDirectly();
-                new ComputeStyleListWorker(circum, nc, new CompositeList<>(nodes, ways), allStyleElems, 0, styles).computeDirectly();
-            }
+                allStyleElems = computeStyleRecords(data.searchNodes(bbox), data.searchWays(bbox), data.searchRelations(bbox)).a;
 
-            if (!benchmark.renderSort()) {
-                return;
-            }
+                if (!benchmark.renderSort()) {
+                    return;
+                }
 
-            // We use parallel sort here. This is only available for arrays.
-            StyleRecord[] sorted = allStyleElems.toArray(new StyleRecord[0]);
-            Arrays.parallelSort(sorted, null);
+                // We use parallel sort here. This is only available for arrays.
+                sorted = allStyleElems.toArray(new StyleRecord[0]);
+                Arrays.parallelSort(sorted, null);
+            }
 
             if (!benchmark.renderDraw(allStyleElems)) {
                 return;
             }
 
+            float majorZIndex = Float.NaN;
             for (StyleRecord styleRecord : sorted) {
+                if (Float.compare(styleRecord.getStyle().majorZIndex, majorZIndex) != 0) {
+                    majorZIndex = styleRecord.getStyle().majorZIndex;
+                    if (!benchmark.renderDrawLayer(majorZIndex)) {
+                        return;
+                    }
+                }
                 paintRecord(styleRecord);
             }
 
@@ -1709,6 +1722,57 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         }
     }
 
+    /**
+     * Computes the style records of the given primitives, in no particular order.
+     * @param nodes the nodes
+     * @param ways the ways
+     * @param relations the relations
+     * @return the style records and the scale range in which they are valid
+     */
+    Pair<List<StyleRecord>, Range> computeStyleRecords(List<? extends INode> nodes, List<? extends IWay<?>> ways,
+            List<? extends IRelation<?>> relations) {
+        final List<StyleRecord> allStyleElems = new ArrayList<>(nodes.size()+ways.size()+relations.size());
+
+        // Need to process all relations first.
+        // Reason: Make sure, ElemStyles.getStyleCacheWithRange is not called for the same primitive in parallel threads.
+        // (Could be synchronized, but try to avoid this for performance reasons.)
+        final ComputeStyleListWorker relationsWorker;
+        final ComputeStyleListWorker otherWorker;
+        if (THREAD_POOL != null) {
+            relationsWorker = new ComputeStyleListWorker(circum, nc, relations, allStyleElems,
+                    Math.max(20, relations.size() / THREAD_POOL.getParallelism() / 3), styles);
+            THREAD_POOL.invoke(relationsWorker);
+            otherWorker = new ComputeStyleListWorker(circum, nc, new CompositeList<>(nodes, ways), allStyleElems,
+                    Math.max(100, (nodes.size() + ways.size()) / THREAD_POOL.getParallelism() / 3), styles);
+            THREAD_POOL.invoke(otherWorker);
+        } else {
+            relationsWorker = new ComputeStyleListWorker(circum, nc, relations, allStyleElems, 0, styles);
+            relationsWorker.computeDirectly();
+            otherWorker = new ComputeStyleListWorker(circum, nc, new CompositeList<>(nodes, ways), allStyleElems, 0, styles);
+            otherWorker.computeDirectly();
+        }
+        return new Pair<>(allStyleElems, Range.cut(relationsWorker.getRange(), otherWorker.getRange()));
+    }
+
+    /**
+     * Gets the style settings used by the style records: the records computed with other settings cannot be reused.
+     * @return the styles, and whether areas, multipolygons and restrictions are drawn
+     */
+    Object[] getStyleSettings() {
+        final boolean drawArea = circum <= Config.getPref().getInt("mappaint.fillareas", 10_000_000);
+        return new Object[] {styles, drawArea, drawArea && Config.getPref().getBoolean("mappaint.multipolygon", true),
+                Config.getPref().getBoolean("mappaint.restriction", true)};
+    }
+
+    /**
+     * Sets the display list used to keep the style records of the data between repaints.
+     * @param displayList the display list, or {@code null} to compute the style records at each repaint
+     * @since xxx
+     */
+    public void setDisplayList(DisplayList displayList) {
+        this.displayList = displayList;
+    }
+
     private void paintRecord(StyleRecord styleRecord) {
         try {
             styleRecord.paintPrimitive(paintSettings, this);
@@ -311,7 +311,9 @@ public class WireframeMapRenderer extends AbstractMapRenderer implements Primiti
             wayColor = dfltWayColor;
         }
 
-        Iterator<? extends INode> it = w.getNodes().iterator();
+        // the order numbers are the ones of the segments of the way
+        boolean drawOrderNumbers = (showOrderNumber || (showOrderNumberOnSelectedWay && w.isSelected())) && !isInactiveMode;
+        Iterator<? extends INode> it = (drawOrderNumbers ? w.getNodes() : getDrawnNodes(w)).iterator();
         if (it.hasNext()) {
             MapViewPoint lastP = mapState.getPointFor(it.next());
             int lastPOutside = lastP.getOutsideRectangleFlags(viewClip);
@@ -321,7 +323,7 @@ public class WireframeMapRenderer extends AbstractMapRenderer implements Primiti
                 if ((pOutside & lastPOutside) == 0) {
                     drawSegment(lastP, p, wayColor,
                             showOnlyHeadArrowOnly ? !it.hasNext() : showThisDirectionArrow);
-                    if ((showOrderNumber || (showOrderNumberOnSelectedWay && w.isSelected())) && !isInactiveMode) {
+                    if (drawOrderNumbers) {
                         drawOrderNumber(lastP, p, orderNumber, g.getColor());
                     }
                 }
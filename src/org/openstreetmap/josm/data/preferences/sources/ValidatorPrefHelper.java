@@ -77,6 +77,13 @@ public class ValidatorPrefHelper extends SourcePrefHelper {
      */
     public static final BooleanProperty PREF_UNFURL = new BooleanProperty(PREFIX + ".force.unfurl.window", true);
 
+    /**
+     * The preferences key for the validation of the whole data set with an
+     * {@link org.openstreetmap.josm.data.validation.IncrementalValidator}
+     * @since xxx
+     */
+    public static final BooleanProperty PREF_INCREMENTAL = new BooleanProperty(PREFIX + ".incremental", false);
+
     /**
      * Constructs a new {@code PresetPrefHelper}.
      */
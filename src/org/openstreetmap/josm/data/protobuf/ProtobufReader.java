@@ -0,0 +1,367 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.protobuf;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A cursor-style Protobuf reader working directly on a {@link ByteBuffer}.
+ * <p>
+ * Unlike {@link ProtobufParser} and {@link ProtobufRecord}, this does not allocate objects for each field. Values are
+ * returned as primitives, and packed repeated fields are decoded into caller-supplied primitive arrays.
+ * Embedded messages can be read in place with {@link #beginMessage()} and {@link #endMessage(int)}.
+ * <p>
+ * Typical usage:
+ * <pre>
+ * while (reader.hasNext()) {
+ *     switch (reader.nextField()) {
+ *         case 1:
+ *             id = reader.readVarInt();
+ *             break;
+ *         default:
+ *             reader.skipField();
+ *     }
+ * }
+ * </pre>
+ * Instances are not thread safe.
+ *
+ * @since xxx
+ */
+public final class ProtobufReader {
+    private final ByteBuffer buffer;
+    private int field;
+    private WireType wireType = WireType.UNKNOWN;
+
+    /**
+     * Create a new reader
+     *
+     * @param bytes The bytes to read
+     */
+    public ProtobufReader(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Create a new reader. The reader reads from the current position to the limit of the buffer.
+     *
+     * @param buffer The buffer to read. The buffer is not copied, but its position and limit are not modified.
+     */
+    public ProtobufReader(ByteBuffer buffer) {
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Check if there is more data to read in the current message
+     *
+     * @return {@code true} if there is more data to read
+     */
+    public boolean hasNext() {
+        return this.buffer.hasRemaining();
+    }
+
+    /**
+     * Read the next field key. The value must then be read with one of the {@code read} methods, or skipped with
+     * {@link #skipField()}.
+     *
+     * @return The field number
+     * @throws IllegalArgumentException if the field key is malformed
+     */
+    public int nextField() {
+        final long key = readVarInt();
+        this.field = (int) (key >>> 3);
+        final int type = (int) (key & 7);
+        this.wireType = WireType.UNKNOWN;
+        for (WireType wType : WireType.getAllValues()) {
+            if (wType.getTypeRepresentation() == type) {
+                this.wireType = wType;
+                break;
+            }
+        }
+        return this.field;
+    }
+
+    /**
+     * Get the field number of the last field key read by {@link #nextField()}
+     *
+     * @return The field number
+     */
+    public int getField() {
+        return this.field;
+    }
+
+    /**
+     * Get the wire type of the last field key read by {@link #nextField()}
+     *
+     * @return The wire type
+     */
+    public WireType getWireType() {
+        return this.wireType;
+    }
+
+    /**
+     * Read a var int ({@code int32}, {@code int64}, {@code uint32}, {@code uint64}, {@code bool}, {@code enum})
+     *
+     * @return The value
+     * @throws IllegalArgumentException if the var int is longer than 10 bytes
+     */
+    public long readVarInt() {
+        final ByteBuffer buf = this.buffer;
+        long result = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += ProtobufParser.VAR_INT_BYTE_SIZE) {
+            final byte b = buf.get();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed protobuf var int");
+    }
+
+    /**
+     * Read a zig-zag encoded var int ({@code sint32}, {@code sint64})
+     *
+     * @return The decoded value
+     */
+    public long readSignedVarInt() {
+        return ProtobufParser.decodeZigZag(readVarInt());
+    }
+
+    /**
+     * Read a {@link WireType#THIRTY_TWO_BIT} value ({@code fixed32}, {@code sfixed32})
+     *
+     * @return The value
+     */
+    public int readFixed32() {
+        return this.buffer.getInt();
+    }
+
+    /**
+     * Read a {@link WireType#SIXTY_FOUR_BIT} value ({@code fixed64}, {@code sfixed64})
+     *
+     * @return The value
+     */
+    public long readFixed64() {
+        return this.buffer.getLong();
+    }
+
+    /**
+     * Read a {@code float}
+     *
+     * @return The value
+     */
+    public float readFloat() {
+        return this.buffer.getFloat();
+    }
+
+    /**
+     * Read a {@code double}
+     *
+     * @return The value
+     */
+    public double readDouble() {
+        return this.buffer.getDouble();
+    }
+
+    /**
+     * Read a length delimited string
+     *
+     * @return The string (decoded as {@link StandardCharsets#UTF_8})
+     */
+    public String readString() {
+        final int length = readLength();
+        final String string;
+        if (this.buffer.hasArray()) {
+            string = new String(this.buffer.array(), this.buffer.arrayOffset() + this.buffer.position(), length, StandardCharsets.UTF_8);
+            this.buffer.position(this.buffer.position() + length);
+        } else {
+            final byte[] bytes = new byte[length];
+            this.buffer.get(bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return string;
+    }
+
+    /**
+     * Read length delimited bytes
+     *
+     * @return A copy of the bytes
+     */
+    public byte[] readBytes() {
+        final byte[] bytes = new byte[readLength()];
+        this.buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Read an embedded message as a new reader. The bytes are shared, not copied.
+     * Use {@link #beginMessage()} if the message can be read in place.
+     *
+     * @return A reader for the embedded message
+     */
+    public ProtobufReader readMessage() {
+        final int length = readLength();
+        final ByteBuffer message = this.buffer.duplicate();
+        message.limit(message.position() + length);
+        this.buffer.position(this.buffer.position() + length);
+        return new ProtobufReader(message);
+    }
+
+    /**
+     * Enter an embedded message. Until {@link #endMessage(int)} is called, this reader only reads the embedded message.
+     *
+     * @return The value to pass to {@link #endMessage(int)}
+     */
+    public int beginMessage() {
+        final int length = readLength();
+        final int oldLimit = this.buffer.limit();
+        this.buffer.limit(this.buffer.position() + length);
+        return oldLimit;
+    }
+
+    /**
+     * Leave an embedded message entered with {@link #beginMessage()}. Unread fields of the message are skipped.
+     *
+     * @param oldLimit The value returned by {@link #beginMessage()}
+     */
+    public void endMessage(int oldLimit) {
+        this.buffer.position(this.buffer.limit());
+        this.buffer.limit(oldLimit);
+    }
+
+    /**
+     * Skip the value of the current field
+     *
+     * @throws IllegalArgumentException if the wire type cannot be skipped
+     */
+    public void skipField() {
+        switch (this.wireType) {
+            case VARINT:
+                readVarInt();
+                break;
+            case SIXTY_FOUR_BIT:
+                skip(Long.BYTES);
+                break;
+            case LENGTH_DELIMITED:
+                skip(readLength());
+                break;
+            case THIRTY_TWO_BIT:
+                skip(Integer.BYTES);
+                break;
+            default:
+                throw new IllegalArgumentException("Cannot skip protobuf wire type " + this.wireType);
+        }
+    }
+
+    /**
+     * Get the number of values in the packed var int field at the current position, without reading it.
+     *
+     * @return The number of values
+     */
+    public int getPackedVarIntCount() {
+        final int start = this.buffer.position();
+        final int length = readLength();
+        final int end = this.buffer.position() + length;
+        if (end > this.buffer.limit()) {
+            throw new BufferUnderflowException();
+        }
+        int count = 0;
+        for (int i = this.buffer.position(); i < end; i++) {
+            if (this.buffer.get(i) >= 0) {
+                count++;
+            }
+        }
+        this.buffer.position(start);
+        return count;
+    }
+
+    /**
+     * Read a packed repeated var int field ({@code int32}, {@code int64}, {@code uint32}, {@code uint64}, {@code bool},
+     * {@code enum}) into an array
+     *
+     * @param destination The array to write to. It must have room for {@link #getPackedVarIntCount()} values.
+     * @param offset      The first index of the array to write to
+     * @return The number of values read
+     */
+    public int readPackedVarInt(long[] destination, int offset) {
+        final int end = packedEnd();
+        int index = offset;
+        while (this.buffer.position() < end) {
+            destination[index++] = readVarInt();
+        }
+        return index - offset;
+    }
+
+    /**
+     * Read a packed repeated var int field ({@code int32}, {@code uint32}, {@code bool}, {@code enum}) into an array
+     *
+     * @param destination The array to write to. It must have room for {@link #getPackedVarIntCount()} values.
+     * @param offset      The first index of the array to write to
+     * @return The number of values read
+     */
+    public int readPackedVarInt(int[] destination, int offset) {
+        final int end = packedEnd();
+        int index = offset;
+        while (this.buffer.position() < end) {
+            destination[index++] = (int) readVarInt();
+        }
+        return index - offset;
+    }
+
+    /**
+     * Read a packed repeated zig-zag encoded var int field ({@code sint32}, {@code sint64}) into an array
+     *
+     * @param destination The array to write to. It must have room for {@link #getPackedVarIntCount()} values.
+     * @param offset      The first index of the array to write to
+     * @return The number of values read
+     */
+    public int readPackedSignedVarInt(long[] destination, int offset) {
+        final int end = packedEnd();
+        int index = offset;
+        while (this.buffer.position() < end) {
+            destination[index++] = readSignedVarInt();
+        }
+        return index - offset;
+    }
+
+    /**
+     * Read a packed repeated var int field, appending the values to an array.
+     * This is meant for packed fields which may (but usually don't) occur several times in a message.
+     *
+     * @param array  The values read so far
+     * @param signed {@code true} if the values are zig-zag encoded ({@code sint32}, {@code sint64})
+     * @return A new array with the values of {@code array}, followed by the values of the field
+     */
+    public long[] readPackedVarInt(long[] array, boolean signed) {
+        final long[] result = Arrays.copyOf(array, array.length + getPackedVarIntCount());
+        if (signed) {
+            readPackedSignedVarInt(result, array.length);
+        } else {
+            readPackedVarInt(result, array.length);
+        }
+        return result;
+    }
+
+    private int packedEnd() {
+        final int length = readLength();
+        final int end = this.buffer.position() + length;
+        if (end > this.buffer.limit()) {
+            throw new BufferUnderflowException();
+        }
+        return end;
+    }
+
+    private int readLength() {
+        final long length = readVarInt();
+        if (length < 0 || length > this.buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return (int) length;
+    }
+
+    private void skip(int length) {
+        this.buffer.position(this.buffer.position() + length);
+    }
+}
@@ -0,0 +1,234 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.validation;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+import org.openstreetmap.josm.data.preferences.DoubleProperty;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.Destroyable;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Stopwatch;
+
+/**
+ * Keeps the validation results of a data set up to date.
+ * <p>
+ * The first run validates the whole data set. Afterwards, the validator listens to the changes of the data set,
+ * and the following runs only validate the changed primitives, their parents, the primitives which shared an error
+ * with them and their spatial neighbours. The errors of the other primitives are taken from the previous run.
+ * <p>
+ * Tests which depend on the whole data set (e.g. whether a coastline is closed far away from the changes) may
+ * report slightly different results than a complete validation, like the partial validation before an upload.
+ * @since xxx
+ */
+public class IncrementalValidator implements Destroyable {
+
+    /** The distance in degrees around a changed primitive in which other primitives are validated again */
+    public static final DoubleProperty MARGIN = new DoubleProperty("validator.incremental.margin", 0.0001);
+
+    private final DataSet dataSet;
+    private final DataSetListenerAdapter listener = new DataSetListenerAdapter(this::processDatasetEvent);
+
+    /** The primitives changed since the last run. Guarded by {@code this} */
+    private Set<OsmPrimitive> dirty = new HashSet<>();
+    /** Whether the whole data set has to be validated. Guarded by {@code this} */
+    private boolean invalid = true;
+    /** The errors of the last run, by test */
+    private final Map<Test, List<TestError>> errors = new LinkedHashMap<>();
+
+    /**
+     * Constructs a new {@code IncrementalValidator} and starts listening to the changes of the data set.
+     * @param dataSet the data set to validate
+     */
+    public IncrementalValidator(DataSet dataSet) {
+        this.dataSet = Objects.requireNonNull(dataSet, "dataSet");
+        dataSet.addDataSetListener(listener);
+    }
+
+    /**
+     * Returns the validated data set.
+     * @return the validated data set
+     */
+    public DataSet getDataSet() {
+        return dataSet;
+    }
+
+    private synchronized void processDatasetEvent(AbstractDatasetChangedEvent event) {
+        if (event instanceof DataChangedEvent) {
+            if (((DataChangedEvent) event).getEvents() == null) {
+                // Too many changes to be recorded
+                invalidate();
+            } else {
+                ((DataChangedEvent) event).getEvents().forEach(this::processDatasetEvent);
+            }
+        } else if (!invalid) {
+            dirty.addAll(event.getPrimitives());
+        }
+    }
+
+    /**
+     * Makes the next run validate the whole data set.
+     */
+    public synchronized void invalidate() {
+        invalid = true;
+        dirty = new HashSet<>();
+    }
+
+    /**
+     * Returns the number of primitives which changed since the last run.
+     * @return the number of changed primitives, or {@code -1} if the next run validates the whole data set
+     */
+    public synchronized int getDirtyCount() {
+        return invalid ? -1 : dirty.size();
+    }
+
+    /**
+     * Runs the given tests on the primitives which changed since the last run, and returns all errors of the data set.
+     * If the tests differ from the last run, the whole data set is validated.
+     * @param tests the tests to run
+     * @param progressMonitor the progress monitor. Can be {@code null}
+     * @return the errors of all primitives of the data set
+     */
+    public List<TestError> validate(Collection<Test> tests, ProgressMonitor progressMonitor) {
+        final ProgressMonitor monitor = progressMonitor != null ? progressMonitor : NullProgressMonitor.INSTANCE;
+        // Only one run at a time, the changes are recorded on the other threads while it is running
+        synchronized (errors) {
+            final Set<OsmPrimitive> changed;
+            final boolean complete;
+            synchronized (this) {
+                complete = invalid || !errors.keySet().equals(new HashSet<>(tests));
+                changed = dirty;
+                dirty = new HashSet<>();
+                invalid = false;
+            }
+            final Stopwatch stopwatch = Stopwatch.createStarted();
+            final Map<Test, List<TestError>> result = complete ? validateAll(tests, monitor) : validateChanges(tests, changed, monitor);
+            if (monitor.isCanceled()) {
+                synchronized (this) {
+                    if (complete) {
+                        invalid = true;
+                    } else {
+                        dirty.addAll(changed);
+                    }
+                }
+                return new ArrayList<>();
+            }
+            errors.clear();
+            errors.putAll(result);
+            Logging.debug(stopwatch.toString(complete ? "Validating the data set" : "Validating " + changed.size() + " changes"));
+            return errors.values().stream().flatMap(List::stream).collect(Collectors.toList());
+        }
+    }
+
+    private Map<Test, List<TestError>> validateAll(Collection<Test> tests, ProgressMonitor monitor) {
+        final Collection<OsmPrimitive> primitives = dataSet.allNonDeletedPrimitives();
+        final Map<Test, List<TestError>> result = new LinkedHashMap<>();
+        monitor.setTicksCount(tests.size());
+        for (Test test : tests) {
+            if (monitor.isCanceled()) {
+                break;
+            }
+            monitor.setCustomText(tr("Test {0}/{1}: Starting {2}", result.size() + 1, tests.size(), test.getName()));
+            result.put(test, run(test, primitives, false, monitor.createSubTaskMonitor(1, false)));
+        }
+        return result;
+    }
+
+    private Map<Test, List<TestError>> validateChanges(Collection<Test> tests, Set<OsmPrimitive> changed, ProgressMonitor monitor) {
+        // The changed primitives and the primitives which shared an error with them. Their errors are replaced
+        final Set<OsmPrimitive> relevant = new HashSet<>(changed);
+        relevant.addAll(ValidationTask.getRelevantParents(
+                changed.stream().filter(p -> p.getDataSet() == dataSet).collect(Collectors.toList())));
+        final Set<OsmPrimitive> partners = new HashSet<>();
+        errors.values().stream().flatMap(List::stream)
+                .filter(e -> e.isConcerned(relevant))
+                .forEach(e -> partners.addAll(e.getPrimitives()));
+        relevant.addAll(partners);
+
+        // The primitives to validate: the relevant ones, the primitives of the errors to be replaced and the neighbours
+        final Set<OsmPrimitive> toValidate = new HashSet<>(relevant);
+        final Map<Test, List<TestError>> result = new LinkedHashMap<>();
+        for (Map.Entry<Test, List<TestError>> entry : errors.entrySet()) {
+            final List<TestError> kept = new ArrayList<>(entry.getValue().size());
+            for (TestError error : entry.getValue()) {
+                if (error.isConcerned(relevant)) {
+                    toValidate.addAll(error.getPrimitives());
+                } else {
+                    kept.add(error);
+                }
+            }
+            result.put(entry.getKey(), kept);
+        }
+        // Unlike AggregatePrimitivesVisitor, do not add the members of relations: the tests find them anyway
+        final Set<OsmPrimitive> primitives = new HashSet<>();
+        for (OsmPrimitive p : toValidate) {
+            if (p.getDataSet() == dataSet && !p.isDeleted()) {
+                primitives.add(p);
+                if (p instanceof Way) {
+                    primitives.addAll(((Way) p).getNodes());
+                }
+            }
+        }
+        // The neighbours did not change, their own nodes do not need to be validated again
+        final double margin = MARGIN.get();
+        for (OsmPrimitive p : changed) {
+            if ((p instanceof Node || p instanceof Way) && p.getDataSet() == dataSet && p.getBBox().isValid()) {
+                final BBox bbox = new BBox();
+                bbox.addPrimitive(p, margin);
+                primitives.addAll(dataSet.searchNodes(bbox));
+                primitives.addAll(dataSet.searchWays(bbox));
+            }
+        }
+        primitives.removeIf(OsmPrimitive::isDeleted);
+
+        monitor.setTicksCount(tests.size());
+        int count = 0;
+        for (Test test : tests) {
+            if (monitor.isCanceled()) {
+                break;
+            }
+            monitor.setCustomText(tr("Test {0}/{1}: Starting {2}", ++count, tests.size(), test.getName()));
+            // The other errors found in the neighbourhood are still in the result of the last run
+            run(test, primitives, true, monitor.createSubTaskMonitor(1, false)).stream()
+                    .filter(e -> e.isConcerned(relevant))
+                    .forEach(result.get(test)::add);
+        }
+        return result;
+    }
+
+    private static List<TestError> run(Test test, Collection<OsmPrimitive> primitives, boolean partial, ProgressMonitor monitor) {
+        test.setPartialSelection(partial);
+        test.startTest(monitor);
+        test.visit(primitives);
+        test.endTest();
+        final List<TestError> result = new ArrayList<>(test.getErrors());
+        test.clear();
+        return result;
+    }
+
+    @Override
+    public void destroy() {
+        dataSet.removeDataSetListener(listener);
+        synchronized (errors) {
+            errors.clear();
+        }
+    }
+}
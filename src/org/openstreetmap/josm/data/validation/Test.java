@@ -331,6 +331,17 @@ public class Test implements OsmPrimitiveVisitor {
         return progressMonitor != null && progressMonitor.isCanceled();
     }
 
+    /**
+     * Determines if the test can run on another thread at the same time as other tests.
+     * Only tests which neither share data with other tests nor keep static mutable state may return {@code true}.
+     * The other tests run alone, once the previous tests have finished.
+     * @return {@code true} if the test can run concurrently with other tests
+     * @since xxx
+     */
+    public boolean canRunConcurrently() {
+        return false;
+    }
+
     /**
      * Build a Delete command on all primitives that have not yet been deleted manually by user, or by another error fix.
      * If all primitives have already been deleted, null is returned.
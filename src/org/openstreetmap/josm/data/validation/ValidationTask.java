@@ -3,13 +3,21 @@ package org.openstreetmap.josm.data.validation;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
+import java.awt.Component;
 import java.awt.GraphicsEnvironment;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -24,15 +32,27 @@ import org.openstreetmap.josm.gui.MapFrame;
 import org.openstreetmap.josm.gui.Notification;
 import org.openstreetmap.josm.gui.PleaseWaitRunnable;
 import org.openstreetmap.josm.gui.dialogs.ValidatorDialog;
+import org.openstreetmap.josm.gui.progress.AbstractProgressMonitor;
+import org.openstreetmap.josm.gui.progress.CancelHandler;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressTaskId;
 import org.openstreetmap.josm.gui.progress.swing.PleaseWaitProgressMonitor;
 import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.tools.JosmRuntimeException;
+import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.Utils;
 
 /**
  * Asynchronous task for running a collection of tests against a collection of primitives
  */
 public class ValidationTask extends PleaseWaitRunnable {
+    /**
+     * The preference key for the number of threads used to run the tests
+     * @since xxx
+     */
+    public static final String VALIDATOR_THREADS = "validator.numberOfThreads";
+
     private final Consumer<List<TestError>> onFinish;
     private Collection<Test> tests;
     private final Collection<OsmPrimitive> initialPrimitives;
@@ -41,6 +61,7 @@ public class ValidationTask extends PleaseWaitRunnable {
     private boolean canceled;
     private final List<TestError> errors = new ArrayList<>();
     private BiConsumer<ValidationTask, Test> testConsumer;
+    private IncrementalValidator incrementalValidator;
 
     /**
      * Constructs a new {@code ValidationTask}
@@ -88,7 +109,7 @@ public class ValidationTask extends PleaseWaitRunnable {
      * @param primitives the given objects
      * @return the collection of relevant parent objects
      */
-    private static Set<OsmPrimitive> getRelevantParents(Collection<OsmPrimitive> primitives) {
+    static Set<OsmPrimitive> getRelevantParents(Collection<OsmPrimitive> primitives) {
         Set<OsmPrimitive> addedWays = new HashSet<>();
         Set<OsmPrimitive> addedRelations = new HashSet<>();
         for (OsmPrimitive p : primitives) {
@@ -161,6 +182,35 @@ public class ValidationTask extends PleaseWaitRunnable {
     protected void realRun() {
         if (Utils.isEmpty(tests))
             return;
+        if (incrementalValidator != null) {
+            errors.addAll(incrementalValidator.validate(tests, getProgressMonitor()));
+        } else {
+            runTests();
+        }
+        if (canceled)
+            return;
+        tests = null;
+        if (Boolean.TRUE.equals(ValidatorPrefHelper.PREF_USE_IGNORE.get())) {
+            getProgressMonitor().setCustomText("");
+            getProgressMonitor().subTask(tr("Updating ignored errors ..."));
+            for (TestError error : errors) {
+                if (canceled) return;
+                error.updateIgnored();
+            }
+        }
+
+        if (errors.stream().anyMatch(e -> e.getPrimitives().stream().anyMatch(OsmPrimitive::isDisabledAndHidden))) {
+            final String msg = "<b>" + tr("Validation results contain elements hidden by a filter.") + "</b><br/>"
+                    + tr("Please review active filters to see the hidden results.");
+            GuiHelper.runInEDT(() -> new Notification(msg)
+                    .setDuration(Notification.TIME_LONG)
+                    .setIcon(JOptionPane.WARNING_MESSAGE)
+                    .setHelpTopic("Dialog/Validator")
+                    .show());
+        }
+    }
+
+    private void runTests() {
         int testCounter = 0;
         final boolean isPartial = this.beforeUpload || formerValidatedPrimitives != null;
         Set<OsmPrimitive> filter = null;
@@ -180,48 +230,133 @@ public class ValidationTask extends PleaseWaitRunnable {
         }
         getProgressMonitor().setTicksCount(tests.size() * validatedPrimitives.size());
 
+        if (tests.size() > 1 && Config.getPref().getInt(VALIDATOR_THREADS, Runtime.getRuntime().availableProcessors()) > 1) {
+            runTestsConcurrently(validatedPrimitives, isPartial, filter);
+            return;
+        }
         for (Test test : tests) {
             if (canceled)
                 return;
             testCounter++;
             getProgressMonitor().setCustomText(tr("Test {0}/{1}: Starting {2}", testCounter, tests.size(), test.getName()));
-            test.setBeforeUpload(this.beforeUpload);
-            // Pre-upload checks only run on a partial selection.
-            test.setPartialSelection(isPartial);
-            test.startTest(getProgressMonitor().createSubTaskMonitor(validatedPrimitives.size(), false));
-            test.visit(validatedPrimitives);
-            test.endTest();
-            if (isPartial && Boolean.TRUE.equals(ValidatorPrefHelper.PREF_REMOVE_IRRELEVANT.get())) {
-                // #23397: remove errors for objects which were not in the initial list of primitives
-                test.removeIrrelevantErrors(filter);
-            }
+            runTest(test, validatedPrimitives, isPartial, filter, getProgressMonitor().createSubTaskMonitor(validatedPrimitives.size(), false));
+            collectErrors(test);
+        }
+    }
 
-            errors.addAll(test.getErrors());
-            if (this.testConsumer != null) {
-                this.testConsumer.accept(this, test);
+    /**
+     * Runs the tests on a pool. Consecutive tests which can run concurrently run at the same time, each other test runs
+     * alone on the calling thread once the previous tests have finished. The errors are collected in the order of the tests,
+     * like in a sequential run.
+     * @param validatedPrimitives the primitives to validate
+     * @param isPartial whether this is a partial validation
+     * @param filter the primitives whose errors are relevant, {@code null} if all errors are relevant
+     */
+    private void runTestsConcurrently(Collection<OsmPrimitive> validatedPrimitives, boolean isPartial, Set<OsmPrimitive> filter) {
+        final ForkJoinPool pool = Utils.newForkJoinPool(VALIDATOR_THREADS, "validator-%d", Thread.NORM_PRIORITY);
+        // the sub task monitors of the task monitor must not be used by several threads at once,
+        // so the progress of the tests running on the pool is reported by the calling thread
+        final CancelHandler cancelHandler = new CancelHandler();
+        final Map<Test, Future<?>> running = new LinkedHashMap<>();
+        int testCounter = 0;
+        try {
+            for (Test test : tests) {
+                if (canceled)
+                    return;
+                if (test.canRunConcurrently()) {
+                    final ProgressMonitor monitor = new ConcurrentTestProgressMonitor(getProgressMonitor(), cancelHandler);
+                    running.put(test, pool.submit(() -> runTest(test, validatedPrimitives, isPartial, filter, monitor)));
+                } else {
+                    if (!collectErrors(running, testCounter, validatedPrimitives.size()))
+                        return;
+                    getProgressMonitor().setCustomText(tr("Test {0}/{1}: Starting {2}", testCounter + 1, tests.size(), test.getName()));
+                    runTest(test, validatedPrimitives, isPartial, filter,
+                            getProgressMonitor().createSubTaskMonitor(validatedPrimitives.size(), false));
+                    collectErrors(test);
+                }
+                testCounter++;
+            }
+            collectErrors(running, testCounter, validatedPrimitives.size());
+        } finally {
+            // the tests are reused by the next validation, so do not leave them running after a cancellation or an error
+            cancelHandler.cancel();
+            running.values().forEach(future -> future.cancel(true));
+            pool.shutdownNow();
+            try {
+                if (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                    Logging.warn("Some validator tests are still running");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            test.clear();
-            test.setBeforeUpload(false);
         }
-        tests = null;
-        if (Boolean.TRUE.equals(ValidatorPrefHelper.PREF_USE_IGNORE.get())) {
-            getProgressMonitor().setCustomText("");
-            getProgressMonitor().subTask(tr("Updating ignored errors ..."));
-            for (TestError error : errors) {
-                if (canceled) return;
-                error.updateIgnored();
+    }
+
+    /**
+     * Waits for the tests running on the pool and collects their errors, in the order of the tests.
+     * @param running the running tests, the tests whose errors have been collected are removed
+     * @param testCounter the number of tests started so far
+     * @param ticks the ticks of each test
+     * @return {@code false} if the validation has been canceled
+     */
+    private boolean collectErrors(Map<Test, Future<?>> running, int testCounter, int ticks) {
+        int testNumber = testCounter - running.size();
+        for (Iterator<Map.Entry<Test, Future<?>>> it = running.entrySet().iterator(); it.hasNext();) {
+            final Map.Entry<Test, Future<?>> entry = it.next();
+            if (canceled)
+                return false;
+            testNumber++;
+            getProgressMonitor().setCustomText(tr("Test {0}/{1}: Starting {2}", testNumber, tests.size(), entry.getKey().getName()));
+            try {
+                entry.getValue().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                canceled = true;
+                return false;
+            } catch (ExecutionException e) {
+                throw unwrap(e.getCause());
             }
+            it.remove();
+            collectErrors(entry.getKey());
+            getProgressMonitor().worked(ticks);
         }
+        return true;
+    }
 
-        if (errors.stream().anyMatch(e -> e.getPrimitives().stream().anyMatch(OsmPrimitive::isDisabledAndHidden))) {
-            final String msg = "<b>" + tr("Validation results contain elements hidden by a filter.") + "</b><br/>"
-                    + tr("Please review active filters to see the hidden results.");
-            GuiHelper.runInEDT(() -> new Notification(msg)
-                    .setDuration(Notification.TIME_LONG)
-                    .setIcon(JOptionPane.WARNING_MESSAGE)
-                    .setHelpTopic("Dialog/Validator")
-                    .show());
+    private static RuntimeException unwrap(Throwable cause) {
+        // ForkJoinTask wraps checked exceptions
+        while (cause != null && cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        } else if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
         }
+        return new JosmRuntimeException(cause);
+    }
+
+    private void runTest(Test test, Collection<OsmPrimitive> validatedPrimitives, boolean isPartial, Set<OsmPrimitive> filter,
+            ProgressMonitor monitor) {
+        test.setBeforeUpload(this.beforeUpload);
+        // Pre-upload checks only run on a partial selection.
+        test.setPartialSelection(isPartial);
+        test.startTest(monitor);
+        test.visit(validatedPrimitives);
+        test.endTest();
+        if (filter != null && Boolean.TRUE.equals(ValidatorPrefHelper.PREF_REMOVE_IRRELEVANT.get())) {
+            // #23397: remove errors for objects which were not in the initial list of primitives
+            test.removeIrrelevantErrors(filter);
+        }
+    }
+
+    private void collectErrors(Test test) {
+        errors.addAll(test.getErrors());
+        if (this.testConsumer != null) {
+            this.testConsumer.accept(this, test);
+        }
+        test.clear();
+        test.setBeforeUpload(false);
     }
 
     /**
@@ -240,4 +375,76 @@ public class ValidationTask extends PleaseWaitRunnable {
     public void setTestConsumer(BiConsumer<ValidationTask, Test> testConsumer) {
         this.testConsumer = testConsumer;
     }
+
+    /**
+     * Uses the given incremental validator to validate its data set, instead of running the tests on the primitives
+     * given in the constructor. The test consumer is not called in this case.
+     * @param incrementalValidator the incremental validator. Can be {@code null}
+     * @since xxx
+     */
+    public void setIncrementalValidator(IncrementalValidator incrementalValidator) {
+        this.incrementalValidator = incrementalValidator;
+    }
+
+    /**
+     * The progress monitor of a test running on the pool. It only follows the cancellation of the task monitor.
+     */
+    private static final class ConcurrentTestProgressMonitor extends AbstractProgressMonitor {
+        private final ProgressMonitor taskMonitor;
+
+        ConcurrentTestProgressMonitor(ProgressMonitor taskMonitor, CancelHandler cancelHandler) {
+            super(cancelHandler);
+            this.taskMonitor = taskMonitor;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return super.isCanceled() || taskMonitor.isCanceled();
+        }
+
+        @Override
+        protected void doBeginTask() {
+            // Do nothing
+        }
+
+        @Override
+        protected void doFinishTask() {
+            // Do nothing
+        }
+
+        @Override
+        protected void doSetIntermediate(boolean value) {
+            // Do nothing
+        }
+
+        @Override
+        protected void doSetTitle(String title) {
+            // Do nothing
+        }
+
+        @Override
+        protected void doSetCustomText(String title) {
+            // Do nothing
+        }
+
+        @Override
+        protected void updateProgress(double value) {
+            // Do nothing
+        }
+
+        @Override
+        public void setProgressTaskId(ProgressTaskId taskId) {
+            // Do nothing
+        }
+
+        @Override
+        public ProgressTaskId getProgressTaskId() {
+            return null;
+        }
+
+        @Override
+        public Component getWindowParent() {
+            return null;
+        }
+    }
 }
@@ -193,6 +193,11 @@ public class DuplicateRelation extends Test {
                 tr("This test checks that there are no relations with same tags and same members with same roles."));
     }
 
+    @Override
+    public boolean canRunConcurrently() {
+        return true;
+    }
+
     @Override
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
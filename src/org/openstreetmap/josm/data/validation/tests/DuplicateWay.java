@@ -114,6 +114,11 @@ public class DuplicateWay extends Test {
                 tr("This test checks that there are no ways with same node coordinates and optionally also same tags."));
     }
 
+    @Override
+    public boolean canRunConcurrently() {
+        return true;
+    }
+
     @Override
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
@@ -43,6 +43,11 @@ public class LongSegment extends Test {
               tr("This tests for long way segments, which are usually errors."));
     }
 
+    @Override
+    public boolean canRunConcurrently() {
+        return true;
+    }
+
     @Override
     public void visit(Node n) {
         if (!partialSelection)
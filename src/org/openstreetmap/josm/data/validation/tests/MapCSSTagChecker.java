@@ -4,11 +4,9 @@ package org.openstreetmap.josm.data.validation.tests;
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.awt.geom.Area;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -19,6 +17,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
@@ -43,7 +43,6 @@ import org.openstreetmap.josm.gui.mappaint.mapcss.parsergen.TokenMgrError;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.io.CachedFile;
 import org.openstreetmap.josm.io.FileWatcher;
-import org.openstreetmap.josm.io.UTFInputStreamReader;
 import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.CheckParameterUtil;
 import org.openstreetmap.josm.tools.I18n;
@@ -58,11 +57,12 @@ import org.openstreetmap.josm.tools.Utils;
  */
 public class MapCSSTagChecker extends Test.TagTest {
     private MapCSSStyleIndex indexData;
-    private final Map<MapCSSRule, MapCSSTagCheckerAndRule> ruleToCheckMap = new HashMap<>();
-    private static final Map<IPrimitive, Area> mpAreaCache = new HashMap<>();
-    private static final Set<IPrimitive> toMatchForSurrounding = new HashSet<>();
+    private final Map<MapCSSRule, MapCSSTagCheckerAndRule> ruleToCheckMap = new ConcurrentHashMap<>();
+    private final Map<IPrimitive, Area> mpAreaCache = new ConcurrentHashMap<>();
     static final boolean ALL_TESTS = true;
     static final boolean ONLY_SELECTED_TESTS = false;
+    /** The number of primitives checked by one task when the checks run on several threads */
+    private static final int PARALLEL_CHUNK_SIZE = 1000;
 
     /**
      * Cached version of {@link ValidatorPrefHelper#PREF_OTHER}, see #20745.
@@ -156,11 +156,21 @@ public class MapCSSTagChecker extends Test.TagTest {
      * @return all errors for the given primitive, with or without those of "info" severity
      */
     public synchronized Collection<TestError> getErrorsForPrimitive(OsmPrimitive p, boolean includeOtherSeverity) {
-        final List<TestError> res = new ArrayList<>();
         if (indexData == null) {
             indexData = createMapCSSTagCheckerIndex(checks, includeOtherSeverity, ALL_TESTS);
         }
+        return getErrorsForPrimitive(p, indexData, null);
+    }
 
+    /**
+     * Obtains all {@link TestError}s for the {@link OsmPrimitive} {@code p}. This may be called from any thread.
+     * @param p The OSM primitive
+     * @param indexData The index of the rules to check
+     * @param toMatchForSurrounding the primitives which must be matched by the child or parent selectors, {@code null} for any
+     * @return all errors for the given primitive
+     */
+    private List<TestError> getErrorsForPrimitive(OsmPrimitive p, MapCSSStyleIndex indexData, Set<IPrimitive> toMatchForSurrounding) {
+        final List<TestError> res = new ArrayList<>();
         final Environment env = new Environment(p, new MultiCascade(), Environment.DEFAULT_LAYER, null);
         env.mpAreaCache = mpAreaCache;
         env.toMatchForSurrounding = toMatchForSurrounding;
@@ -220,8 +230,7 @@ public class MapCSSTagChecker extends Test.TagTest {
         // this variant is only used by the assertion tests
         final List<TestError> r = new ArrayList<>();
         final Environment env = new Environment(p, new MultiCascade(), Environment.DEFAULT_LAYER, null);
-        env.mpAreaCache = mpAreaCache;
-        env.toMatchForSurrounding = toMatchForSurrounding;
+        env.mpAreaCache = new HashMap<>();
         for (Set<MapCSSTagCheckerRule> schecks : checksCol) {
             for (MapCSSTagCheckerRule check : schecks) {
                 boolean ignoreError = Severity.OTHER == check.getSeverity() && !includeOtherSeverity;
@@ -284,11 +293,10 @@ public class MapCSSTagChecker extends Test.TagTest {
         ParseResult result;
         try (CachedFile cache = new CachedFile(url);
              InputStream zip = cache.findZipEntryInputStream("validator.mapcss", "");
-             InputStream s = zip != null ? zip : cache.getInputStream();
-             Reader reader = new BufferedReader(UTFInputStreamReader.create(s))) {
+             InputStream s = zip != null ? zip : cache.getInputStream()) {
             if (zip != null)
                 I18n.addTexts(cache.getFile());
-            result = MapCSSTagCheckerRule.readMapCSS(reader, assertionConsumer);
+            result = MapCSSTagCheckerRule.readMapCSS(url, s, assertionConsumer);
             checks.remove(url);
             checks.putAll(url, result.parseChecks);
             urlTitles.put(url, findURLTitle(url));
@@ -376,10 +384,15 @@ public class MapCSSTagChecker extends Test.TagTest {
         // always clear the cache to make sure that we catch changes in geometry
         mpAreaCache.clear();
         ruleToCheckMap.clear();
-        toMatchForSurrounding.clear();
         super.endTest();
     }
 
+    @Override
+    public boolean canRunConcurrently() {
+        // the caches of this test are not shared with other instances, and the tag checker using it runs alone
+        return true;
+    }
+
     @Override
     public void visit(Collection<OsmPrimitive> selection) {
         visit(selection, null);
@@ -396,7 +409,6 @@ public class MapCSSTagChecker extends Test.TagTest {
         }
 
         mpAreaCache.clear();
-        toMatchForSurrounding.clear();
 
         Set<OsmPrimitive> surrounding = new HashSet<>();
         for (Entry<String, Set<MapCSSTagCheckerRule>> entry : checks.entrySet()) {
@@ -428,25 +440,30 @@ public class MapCSSTagChecker extends Test.TagTest {
         if (progressMonitor != null) {
             progressMonitor.setExtraText(tr(" {0}", title));
         }
-        long cnt = 0;
-        Stopwatch stopwatch = Stopwatch.createStarted();
-        for (OsmPrimitive p : selection) {
-            if (isCanceled()) {
-                break;
-            }
-            if (isPrimitiveUsable(p)) {
-                check(p);
-                if (partialSelection) {
-                    tested.add(p);
+        if (selection.size() > PARALLEL_CHUNK_SIZE && getClass() == MapCSSTagChecker.class
+                && ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool().getParallelism() > 1) {
+            visitConcurrently(title, new ArrayList<>(selection), tested);
+        } else {
+            long cnt = 0;
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            for (OsmPrimitive p : selection) {
+                if (isCanceled()) {
+                    break;
                 }
-            }
-            if (progressMonitor != null) {
-                progressMonitor.worked(1);
-                cnt++;
-                // add frequently changing info to progress monitor so that it
-                // doesn't seem to hang when test takes longer than 0.5 seconds
-                if (cnt % 10_000 == 0 && stopwatch.elapsed() >= 500) {
-                    progressMonitor.setExtraText(tr(" {0}: {1} of {2} elements done", title, cnt, selection.size()));
+                if (isPrimitiveUsable(p)) {
+                    check(p);
+                    if (partialSelection) {
+                        tested.add(p);
+                    }
+                }
+                if (progressMonitor != null) {
+                    progressMonitor.worked(1);
+                    cnt++;
+                    // add frequently changing info to progress monitor so that it
+                    // doesn't seem to hang when test takes longer than 0.5 seconds
+                    if (cnt % 10_000 == 0 && stopwatch.elapsed() >= 500) {
+                        progressMonitor.setExtraText(tr(" {0}: {1} of {2} elements done", title, cnt, selection.size()));
+                    }
                 }
             }
         }
@@ -456,6 +473,56 @@ public class MapCSSTagChecker extends Test.TagTest {
         }
     }
 
+    /**
+     * Performs the checks on the pool of the current thread, e.g. when the tests are run by a {@code ValidationTask}.
+     * The errors are added in the order of the selection, like in a sequential run.
+     * @param title the title of the checks
+     * @param selection primitives to check
+     * @param tested the tested primitives, filled by this routine for a partial selection
+     */
+    private void visitConcurrently(String title, List<OsmPrimitive> selection, Set<OsmPrimitive> tested) {
+        final MapCSSStyleIndex index = indexData;
+        final List<ForkJoinTask<List<List<TestError>>>> tasks = new ArrayList<>();
+        for (int start = 0; start < selection.size(); start += PARALLEL_CHUNK_SIZE) {
+            final List<OsmPrimitive> chunk = selection.subList(start, Math.min(start + PARALLEL_CHUNK_SIZE, selection.size()));
+            tasks.add(ForkJoinTask.adapt(() -> getErrors(chunk, index)).fork());
+        }
+        int cnt = 0;
+        for (ForkJoinTask<List<List<TestError>>> task : tasks) {
+            final List<List<TestError>> chunkErrors = task.join();
+            for (List<TestError> primitiveErrors : chunkErrors) {
+                final OsmPrimitive p = selection.get(cnt++);
+                if (primitiveErrors != null) {
+                    primitiveErrors.forEach(e -> addIfNotSimilar(e, errors));
+                    if (partialSelection) {
+                        tested.add(p);
+                    }
+                }
+            }
+            if (isCanceled()) {
+                break;
+            }
+            if (progressMonitor != null) {
+                progressMonitor.worked(chunkErrors.size());
+                progressMonitor.setExtraText(tr(" {0}: {1} of {2} elements done", title, cnt, selection.size()));
+            }
+        }
+    }
+
+    /**
+     * Obtains the errors of the given primitives. This may be called from any thread.
+     * @param primitives the primitives to check
+     * @param index the index of the rules to check
+     * @return the errors of each primitive, {@code null} for primitives which are not checked
+     */
+    private List<List<TestError>> getErrors(List<OsmPrimitive> primitives, MapCSSStyleIndex index) {
+        final List<List<TestError>> result = new ArrayList<>(primitives.size());
+        for (OsmPrimitive p : primitives) {
+            result.add(isCanceled() || !isPrimitiveUsable(p) ? null : getErrorsForPrimitive(p, index, null));
+        }
+        return result;
+    }
+
     private void testPartial(MultiMap<String, MapCSSTagCheckerRule> currentCheck, Set<OsmPrimitive> tested, Set<OsmPrimitive> surrounding) {
 
         // #14287: see https://josm.openstreetmap.de/ticket/14287#comment:15
@@ -477,12 +544,11 @@ public class MapCSSTagChecker extends Test.TagTest {
             }
         }
 
-        toMatchForSurrounding.clear();
-        toMatchForSurrounding.addAll(tested);
+        final Set<IPrimitive> toMatchForSurrounding = new HashSet<>(tested);
         for (OsmPrimitive p : surrounding) {
             if (tested.contains(p))
                 continue;
-            Collection<TestError> additionalErrors = getErrorsForPrimitive(p, includeOtherSeverity);
+            Collection<TestError> additionalErrors = getErrorsForPrimitive(p, indexData, toMatchForSurrounding);
             for (TestError e : additionalErrors) {
                 if (e.getPrimitives().stream().anyMatch(tested::contains))
                     addIfNotSimilar(e, errors);
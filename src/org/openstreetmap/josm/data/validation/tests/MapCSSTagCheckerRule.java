@@ -4,6 +4,8 @@ package org.openstreetmap.josm.data.validation.tests;
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.awt.geom.Area;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
@@ -37,6 +39,7 @@ import org.openstreetmap.josm.gui.mappaint.mapcss.ConditionFactory.ClassConditio
 import org.openstreetmap.josm.gui.mappaint.mapcss.Expression;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Instruction;
 import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSRule;
+import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSRuleCache;
 import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource;
 import org.openstreetmap.josm.gui.mappaint.mapcss.PlaceholderExpression;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Selector;
@@ -192,6 +195,28 @@ final class MapCSSTagCheckerRule implements Predicate<OsmPrimitive> {
         try (StringReader mapcss = new StringReader(preprocessor.pp_root(source))) {
             new MapCSSParser(mapcss, MapCSSParser.LexicalState.DEFAULT).sheet(source);
         }
+        return toParseResult(source, assertionConsumer);
+    }
+
+    /**
+     * Reads the rules of a MapCSS config file, or their parsed version from the {@link MapCSSRuleCache}.
+     * @param url the URL of the config file
+     * @param css the content of the config file
+     * @param assertionConsumer A string consumer for error messages, {@code null} to not check the assertions
+     * @return List of tag checks and parsing errors
+     * @throws ParseException if the config file does not match MapCSS syntax
+     * @throws IOException if any I/O error occurs
+     */
+    static MapCSSTagChecker.ParseResult readMapCSS(String url, InputStream css, Consumer<String> assertionConsumer)
+            throws ParseException, IOException {
+        CheckParameterUtil.ensureParameterNotNull(css, "css");
+
+        final MapCSSStyleSource source = new MapCSSStyleSource("");
+        MapCSSRuleCache.parse(source, url, css);
+        return toParseResult(source, assertionConsumer);
+    }
+
+    private static MapCSSTagChecker.ParseResult toParseResult(MapCSSStyleSource source, Consumer<String> assertionConsumer) {
         // Ignore "meta" rule(s) from external rules of JOSM wiki
         source.removeMetaRules();
         List<MapCSSTagCheckerRule> parseChecks = new ArrayList<>();
@@ -43,6 +43,11 @@ public class SharpAngles extends Test {
         super(tr("Sharp angles"), tr("Check for sharp angles on roads"));
     }
 
+    @Override
+    public boolean canRunConcurrently() {
+        return true;
+    }
+
     @Override
     public void visit(Way way) {
         if (!way.isUsable()) return;
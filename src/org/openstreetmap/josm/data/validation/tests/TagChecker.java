@@ -1281,6 +1281,12 @@ public class TagChecker extends TagTest implements TaggingPresetListener {
         super.endTest();
     }
 
+    @Override
+    public boolean canRunConcurrently() {
+        // uses the errors of the MapCSS tag checker
+        return false;
+    }
+
     @Override
     public void visit(Collection<OsmPrimitive> selection) {
         if (checkKeys || checkValues || checkComplex || checkFixmes || checkPresetsTypes || checkRegions) {
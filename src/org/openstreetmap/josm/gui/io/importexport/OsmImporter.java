@@ -78,7 +78,7 @@ public class OsmImporter extends FileImporter {
      */
     @Override
     public void importData(File file, ProgressMonitor progressMonitor) throws IOException, IllegalDataException {
-        try (InputStream in = Compression.getUncompressedFileInputStream(file)) {
+        try (InputStream in = Compression.getParallelUncompressedFileInputStream(file)) {
             importData(in, file, progressMonitor);
         } catch (FileNotFoundException e) {
             Logging.error(e);
@@ -10,6 +10,7 @@ import org.openstreetmap.gui.jmapviewer.interfaces.TileLoader;
 import org.openstreetmap.gui.jmapviewer.tilesources.AbstractTMSTileSource;
 import org.openstreetmap.josm.data.cache.BufferedImageCacheEntry;
 import org.openstreetmap.josm.data.cache.JCSCacheManager;
+import org.openstreetmap.josm.data.cache.MappedFileCache;
 import org.openstreetmap.josm.data.imagery.CachedTileLoaderFactory;
 import org.openstreetmap.josm.data.imagery.ImageryInfo;
 import org.openstreetmap.josm.data.imagery.TileLoaderFactory;
@@ -77,6 +78,9 @@ public abstract class AbstractCachedTileSourceLayer<T extends AbstractTMSTileSou
      * @return cache used by this layer
      */
     private synchronized ICacheAccess<String, BufferedImageCacheEntry> getCache() {
+        if (cache == null && MappedFileCache.ENABLED.get()) {
+            cache = MappedFileCache.getCache(getCacheName(), getDiskCacheSize(), CachedTileLoaderFactory.PROP_TILECACHE_DIR.get());
+        }
         if (cache == null) {
             cache = JCSCacheManager.getCache(getCacheName(),
                     0,
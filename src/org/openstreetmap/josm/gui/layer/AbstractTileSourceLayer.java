@@ -35,12 +35,16 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -70,6 +74,7 @@ import org.openstreetmap.gui.jmapviewer.interfaces.ICoordinate;
 import org.openstreetmap.gui.jmapviewer.interfaces.IProjected;
 import org.openstreetmap.gui.jmapviewer.interfaces.TemplatedTileSource;
 import org.openstreetmap.gui.jmapviewer.interfaces.TileCache;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileJob;
 import org.openstreetmap.gui.jmapviewer.interfaces.TileLoader;
 import org.openstreetmap.gui.jmapviewer.interfaces.TileLoaderListener;
 import org.openstreetmap.gui.jmapviewer.interfaces.TileSource;
@@ -81,6 +86,8 @@ import org.openstreetmap.josm.actions.RenameLayerAction;
 import org.openstreetmap.josm.actions.SaveActionBase;
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.ProjectionBounds;
+import org.openstreetmap.josm.data.cache.AdaptiveHostLimit;
+import org.openstreetmap.josm.data.cache.HostLimitQueue;
 import org.openstreetmap.josm.data.coor.EastNorth;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.imagery.CoordinateConversion;
@@ -88,6 +95,8 @@ import org.openstreetmap.josm.data.imagery.ImageryInfo;
 import org.openstreetmap.josm.data.imagery.OffsetBookmark;
 import org.openstreetmap.josm.data.imagery.TMSCachedTileLoader;
 import org.openstreetmap.josm.data.imagery.TileLoaderFactory;
+import org.openstreetmap.josm.data.imagery.TileMotionPredictor;
+import org.openstreetmap.josm.data.imagery.TileViewport;
 import org.openstreetmap.josm.data.imagery.vectortile.VectorTile;
 import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
 import org.openstreetmap.josm.data.preferences.BooleanProperty;
@@ -113,6 +122,7 @@ import org.openstreetmap.josm.gui.layer.imagery.IncreaseZoomAction;
 import org.openstreetmap.josm.gui.layer.imagery.LoadAllTilesAction;
 import org.openstreetmap.josm.gui.layer.imagery.LoadErroneousTilesAction;
 import org.openstreetmap.josm.gui.layer.imagery.MVTLayer;
+import org.openstreetmap.josm.gui.layer.imagery.ProcessedTileImages;
 import org.openstreetmap.josm.gui.layer.imagery.ReprojectionTile;
 import org.openstreetmap.josm.gui.layer.imagery.ShowErrorsAction;
 import org.openstreetmap.josm.gui.layer.imagery.TileAnchor;
@@ -172,6 +182,7 @@ implements ImageObserver, TileLoaderListener, ZoomChangeListener, FilterChangeLi
     private int currentZoomLevel;
 
     private final AttributionSupport attribution = new AttributionSupport();
+    private final TileMotionPredictor motionPredictor = new TileMotionPredictor();
 
     /**
      * Offset between calculated zoom level and zoom level used to download and show tiles. Negative values will result in
@@ -180,6 +191,8 @@ implements ImageObserver, TileLoaderListener, ZoomChangeListener, FilterChangeLi
     public static final IntegerProperty ZOOM_OFFSET = new IntegerProperty(PREFERENCE_PREFIX + ".zoom_offset", 0);
 
     private static final BooleanProperty POPUP_MENU_ENABLED = new BooleanProperty(PREFERENCE_PREFIX + ".popupmenu", true);
+    /** Whether the tiles ahead of the pan and zoom motion are loaded before they are displayed */
+    private static final BooleanProperty PREFETCH_ENABLED = new BooleanProperty(PREFERENCE_PREFIX + ".prefetch", true);
     private static final String ERROR_STRING = marktr("Error");
 
     /*
@@ -196,6 +209,15 @@ implements ImageObserver, TileLoaderListener, ZoomChangeListener, FilterChangeLi
     /** A timer that is used to delay invalidation events if required. */
     private final Timer invalidateLaterTimer = new Timer(100, e -> this.invalidate());
 
+    /** The executor processing the tile images when the image processors change */
+    private static final ExecutorService IMAGE_PROCESSING_EXECUTOR = Executors.newSingleThreadExecutor(
+            Utils.newThreadFactory("imagery-processing-%d", Thread.NORM_PRIORITY));
+
+    /** The tile images with the image processors of this layer applied */
+    private final ProcessedTileImages processedImages = new ProcessedTileImages(
+            this::getImageProcessorsVersion, this::applyImageProcessors);
+    private final AtomicBoolean imageProcessingScheduled = new AtomicBoolean();
+
     private final MouseAdapter adapter = new MouseAdapter() {
         @Override
         public void mouseClicked(MouseEvent e) {
@@ -306,10 +328,22 @@ implements ImageObserver, TileLoaderListener, ZoomChangeListener, FilterChangeLi
     }
 
     @Override
-    public synchronized void tileLoadingFinished(Tile tile, boolean success) {
-        if (tile.hasError()) {
-            success = false;
-            tile.setImage(null);
+    public void tileLoadingFinished(Tile tile, boolean success) {
+        synchronized (this) {
+            if (tile.hasError()) {
+                success = false;
+                tile.setImage(null);
+            }
+        }
+        if (success) {
+            // process the image on the loader thread rather than when it is painted
+            BufferedImage img;
+            synchronized (tile) {
+                img = getLoadedTileImage(tile);
+            }
+            if (img != null) {
+                processImage(tile, img, getImageProcessorsVersion());
+            }
         }
         invalidateLater();
         Logging.debug("tileLoadingFinished() tile: {0} success: {1}", tile, success);
@@ -323,6 +357,7 @@ implements ImageObserver, TileLoaderListener, ZoomChangeListener, FilterChangeLi
             ((CachedTileLoader) tileLoader).clearCache(tileSource);
         }
         tileCache.clear();
+        processedImages.clear();
     }
 
     @Override
@@ -342,6 +377,20 @@ implements ImageObserver, TileLoaderListener, ZoomChangeListener, FilterChangeLi
             content.add(Arrays.asList(tr("Tile display projection"), ProjectionRegistry.getProjection().toCode()));
         }
         content.add(Arrays.asList(tr("Current zoom"), Integer.toString(currentZoomLevel)));
+        if (tileLoader instanceof TMSCachedTileLoader
+                && ((TMSCachedTileLoader) tileLoader).getDownloadExecutor().getQueue() instanceof HostLimitQueue) {
+            HostLimitQueue queue = (HostLimitQueue) ((TMSCachedTileLoader) tileLoader).getDownloadExecutor().getQueue();
+            for (String host : getVisibleTileHosts()) {
+                AdaptiveHostLimit limit = queue.getHostLimit(host);
+                if (limit != null) {
+                    content.add(Arrays.asList(tr("Downloads from {0}", host), tr(
+                            "{0} in parallel ({1} running), {2} ms, {3}/s, {4}% errors, {5}% throttled",
+                            limit.getLimit(), limit.getActive(), Math.round(Math.max(0, limit.getLatency())),
+                            Utils.getSizeString(Math.round(limit.getThroughput()), Locale.getDefault()),
+                            Math.round(100 * limit.getErrorRate()), Math.round(100 * limit.getThrottledRate()))));
+                }
+            }
+        }
         for (List<String> entry: content) {
             panel.add(new JLabel(entry.get(0) + ':'), GBC.std());
             panel.add(GBC.glue(5, 0), GBC.std());
@@ -350,6 +399,18 @@ implements ImageObserver, TileLoaderListener, ZoomChangeListener, FilterChangeLi
         return panel;
     }
 
+    private Set<String> getVisibleTileHosts() {
+        Set<String> hosts = new TreeSet<>();
+        for (Tile tile : getVisibleTileSet().allExistingTiles()) {
+            try {
+                hosts.add(new URL(tile.getUrl()).getHost());
+            } catch (IOException e) {
+                Logging.trace(e);
+            }
+        }
+        return hosts;
+    }
+
     @Override
     protected Action getAdjustAction() {
         return adjustAction;
@@ -786,13 +847,54 @@ implements ImageObserver, TileLoaderListener, ZoomChangeListener, FilterChangeLi
     private void zoomChanged(boolean invalidate) {
         Logging.debug("zoomChanged(): {0}", currentZoomLevel);
         if (tileLoader instanceof TMSCachedTileLoader) {
-            tileLoader.cancelOutstandingTasks();
+            TMSCachedTileLoader loader = (TMSCachedTileLoader) tileLoader;
+            TileViewport viewport = getVisibleTileSet().toViewport();
+            long now = System.nanoTime();
+            motionPredictor.update(viewport, now);
+            boolean prefetch = viewport != null && PREFETCH_ENABLED.get() && getDisplaySettings().isAutoLoad();
+            // the prefetched tiles ahead of the viewport are kept in the queue as long as they are predicted
+            List<TileViewport> areas = prefetch ? motionPredictor.getPrefetchAreas(now) : Collections.<TileViewport>emptyList();
+            loader.setViewport(viewport, areas);
+            if (prefetch) {
+                prefetchTiles(loader, viewport, areas);
+            }
         }
         if (invalidate) {
             invalidate();
         }
     }
 
+    /**
+     * Loads the tiles which are likely to be displayed next, until the downloads get busy.
+     * @param loader the tile loader
+     * @param viewport the displayed tiles, which are loaded when painted
+     * @param areas the areas to prefetch
+     */
+    private void prefetchTiles(TMSCachedTileLoader loader, TileViewport viewport, List<TileViewport> areas) {
+        for (TileViewport area : areas) {
+            if (area.getZoom() < getMinZoomLvl() || area.getZoom() > getMaxZoomLvl()) {
+                continue;
+            }
+            TileSet ts = new TileSet(new TileXY(area.getMinX(), area.getMinY()), new TileXY(area.getMaxX(), area.getMaxY()),
+                    area.getZoom());
+            if (ts.tooLarge()) {
+                continue;
+            }
+            List<Tile> tiles = ts.allTilesCreate();
+            tiles.sort(ts.getTileDistanceComparator());
+            for (Tile tile : tiles) {
+                if (tile.isLoaded() || tile.isLoading() || viewport.contains(tile.getXtile(), tile.getYtile(), tile.getZoom())) {
+                    continue;
+                }
+                TileJob job = loader.createPrefetchJob(tile);
+                if (job == null) {
+                    return; // the downloads are busy
+                }
+                job.submit(false);
+            }
+        }
+    }
+
     protected int getMaxZoomLvl() {
         if (info.getMaxZoom() != 0)
             return checkMaxZoomLvl(info.getMaxZoom(), tileSource);
@@ -938,7 +1040,7 @@ implements ImageObserver, TileLoaderListener, ZoomChangeListener, FilterChangeLi
 
     private TileSet getVisibleTileSet() {
         if (!MainApplication.isDisplayingMapView())
-            return new TileSet();
+            return nullTileSet;
         ProjectionBounds bounds = MainApplication.getMap().mapView.getProjectionBounds();
         return getTileSet(bounds, currentZoomLevel);
     }
@@ -1011,6 +1113,34 @@ implements ImageObserver, TileLoaderListener, ZoomChangeListener, FilterChangeLi
         return img;
     }
 
+    /**
+     * Returns the image of a tile with the image processors of this layer applied.
+     * @param tile the tile
+     * @param img the loaded image of the tile
+     * @return the processed image
+     */
+    private BufferedImage getProcessedImage(Tile tile, BufferedImage img) {
+        final BufferedImage processed = processedImages.get(tile, img);
+        if (processedImages.hasStaleTiles()) {
+            scheduleImageProcessing();
+        }
+        return processed;
+    }
+
+    /**
+     * Processes again the images of the tiles painted with previous settings in the background, then repaints the layer.
+     */
+    private void scheduleImageProcessing() {
+        if (imageProcessingScheduled.compareAndSet(false, true)) {
+            IMAGE_PROCESSING_EXECUTOR.execute(() -> {
+                imageProcessingScheduled.set(false);
+                if (processedImages.processStaleTiles()) {
+                    invalidateLater();
+                }
+            });
+        }
+    }
+
     /**
      * Draw a tile image on screen.
      * @param g the Graphics2D
@@ -1062,7 +1192,7 @@ implements ImageObserver, TileLoaderListener, ZoomChangeListener, FilterChangeLi
             }
 
             if (img != null) {
-                img = applyImageProcessors(img);
+                img = getProcessedImage(tile, img);
             }
 
             TileAnchor anchorScreen = coordinateConverter.getScreenAnchorForTile(tile);
@@ -1122,7 +1252,7 @@ implements ImageObserver, TileLoaderListener, ZoomChangeListener, FilterChangeLi
             }
 
             // applying all filters to this layer
-            img = applyImageProcessors(img);
+            img = getProcessedImage(tile, img);
 
             Shape clip;
             if (tileSource.isInside(tile, border)) {
@@ -1261,6 +1391,14 @@ implements ImageObserver, TileLoaderListener, ZoomChangeListener, FilterChangeLi
             maxY = Utils.clamp(maxY, tileSource.getTileYMin(zoom), tileSource.getTileYMax(zoom));
         }
 
+        /**
+         * Returns the viewport used to order the tile downloads.
+         * @return the viewport, or {@code null} for the null tile set
+         */
+        private TileViewport toViewport() {
+            return this == nullTileSet ? null : new TileViewport(zoom, minX, minY, maxX, maxY);
+        }
+
         private boolean tooSmall() {
             return this.tilesSpanned() < 2.1;
         }
@@ -1495,7 +1633,7 @@ implements ImageObserver, TileLoaderListener, ZoomChangeListener, FilterChangeLi
      */
     protected TileSet getTileSet(ProjectionBounds bounds, int zoom) {
         if (zoom == 0)
-            return new TileSet();
+            return nullTileSet;
         TileXY t1;
         TileXY t2;
         IProjected topLeftUnshifted = coordinateConverter.shiftDisplayToServer(bounds.getMin());
@@ -0,0 +1,285 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.layer;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.DataSelectionListener;
+import org.openstreetmap.josm.data.osm.HighlightUpdateListener;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+import org.openstreetmap.josm.data.osm.visitor.paint.AbstractMapRenderer;
+import org.openstreetmap.josm.data.osm.visitor.paint.MapRendererFactory;
+import org.openstreetmap.josm.data.osm.visitor.paint.RenderBenchmarkCollector;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer.StyleRecord;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.spi.preferences.PreferenceChangedListener;
+import org.openstreetmap.josm.tools.Destroyable;
+import org.openstreetmap.josm.tools.JosmRuntimeException;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Renders a data layer into a back buffer on a worker thread, so that the event dispatch thread does not wait for
+ * the rendering of a heavy style on a dense area.
+ * <p>
+ * The map view paints the last rendered image, moved and scaled to the current viewport, and requests a new image if
+ * the viewport or the data changed. A newer request cancels the rendering of an outdated viewport before the next
+ * major z-index. If the rendering is slow, the map view gets the progress at each major z-index: areas first, then
+ * lines, then icons and labels.
+ * @since xxx
+ */
+public final class DataLayerBackgroundRenderer implements Destroyable {
+
+    /** Whether the data layers are rendered on a worker thread */
+    public static final BooleanProperty ENABLED = new BooleanProperty("mappaint.render-in-background", false);
+
+    /** The time in milliseconds after which the partially rendered image is displayed */
+    private static final long PROGRESS_DELAY = 150;
+
+    private static final ExecutorService RENDERER = Executors.newSingleThreadExecutor(
+            Utils.newThreadFactory("data-layer-renderer-%d", Thread.NORM_PRIORITY));
+
+    private final OsmDataLayer layer;
+    private final DataSetListenerAdapter dataSetListener = new DataSetListenerAdapter(event -> changed());
+    private final DataSelectionListener selectionListener = event -> changed();
+    private final HighlightUpdateListener highlightListener = event -> changed();
+    private final PreferenceChangedListener preferenceListener = event -> {
+        if (DataLayerTileCache.isRenderingPreference(event.getKey())) {
+            changed();
+        }
+    };
+
+    /** Incremented when the data, the selection or the preferences change. Guarded by {@code this} */
+    private int version;
+    /** The rendering in progress, {@code null} if none. Guarded by {@code this} */
+    private Request pending;
+    /** The last rendered image. Guarded by {@code this} */
+    private Rendered shown;
+
+    /** The view used to render the images, only used on the rendering thread */
+    private NavigatableComponent renderView;
+
+    /**
+     * A request to render the layer for a viewport.
+     */
+    private static final class Request {
+        private final EastNorth center;
+        private final double scale;
+        private final int width;
+        private final int height;
+        private final boolean inactive;
+        private final boolean virtual;
+        private final boolean slowOperations;
+        private final int version;
+        private final short mappaintCacheIndex;
+        private volatile boolean cancelled;
+
+        Request(NavigatableComponent nc, boolean inactive, boolean virtual, boolean slowOperations, int version,
+                short mappaintCacheIndex) {
+            this.center = nc.getCenter();
+            this.scale = nc.getScale();
+            this.width = nc.getWidth();
+            this.height = nc.getHeight();
+            this.inactive = inactive;
+            this.virtual = virtual;
+            this.slowOperations = slowOperations;
+            this.version = version;
+            this.mappaintCacheIndex = mappaintCacheIndex;
+        }
+
+        boolean isSameAs(Request other) {
+            return other != null && center.equals(other.center) && Double.compare(scale, other.scale) == 0
+                    && width == other.width && height == other.height && inactive == other.inactive
+                    && virtual == other.virtual && slowOperations == other.slowOperations && version == other.version
+                    && mappaintCacheIndex == other.mappaintCacheIndex;
+        }
+    }
+
+    /**
+     * A rendered image.
+     */
+    private static final class Rendered {
+        private final Request request;
+        private final BufferedImage image;
+        /** The east/north coordinates of the top left corner of the image */
+        private final EastNorth topLeft;
+        private final boolean complete;
+
+        Rendered(Request request, BufferedImage image, EastNorth topLeft, boolean complete) {
+            this.request = request;
+            this.image = image;
+            this.topLeft = topLeft;
+            this.complete = complete;
+        }
+    }
+
+    private static final class RenderView extends NavigatableComponent {
+        RenderView(int width, int height) {
+            setBounds(0, 0, width, height);
+            updateLocationState();
+        }
+
+        @Override
+        protected boolean isVisibleOnScreen() {
+            return true;
+        }
+
+        @Override
+        public Point getLocationOnScreen() {
+            return new Point(0, 0);
+        }
+    }
+
+    /**
+     * Constructs a new {@code DataLayerBackgroundRenderer} and starts listening to the changes of the data of the layer.
+     * @param layer the rendered layer
+     */
+    DataLayerBackgroundRenderer(OsmDataLayer layer) {
+        this.layer = Objects.requireNonNull(layer, "layer");
+        layer.data.addDataSetListener(dataSetListener);
+        layer.data.addSelectionListener(selectionListener);
+        layer.data.addHighlightUpdateListener(highlightListener);
+        Config.getPref().addPreferenceChangeListener(preferenceListener);
+    }
+
+    private synchronized void changed() {
+        version++;
+    }
+
+    /**
+     * Paints the last rendered image, and requests a new image if it does not match the viewport.
+     * @param g the graphics to paint to
+     * @param nc the map view
+     * @param inactive whether the layer is painted in the colors of inactive layers
+     * @param virtual whether the virtual nodes are painted
+     * @param slowOperations whether slow operations like the labels are painted
+     */
+    synchronized void paint(Graphics2D g, NavigatableComponent nc, boolean inactive, boolean virtual, boolean slowOperations) {
+        final Request request = new Request(nc, inactive, virtual, slowOperations, version, layer.data.getMappaintCacheIndex());
+        if (shown != null) {
+            final Point2D topLeft = nc.getState().getPointFor(shown.topLeft).getInView();
+            final AffineTransform transform = AffineTransform.getTranslateInstance(topLeft.getX(), topLeft.getY());
+            transform.scale(shown.request.scale / request.scale, shown.request.scale / request.scale);
+            g.drawImage(shown.image, transform, null);
+        }
+        final boolean rendered = shown != null && shown.complete && request.isSameAs(shown.request);
+        if (!rendered && !request.isSameAs(pending) && request.width > 0 && request.height > 0) {
+            if (pending != null) {
+                pending.cancelled = true;
+            }
+            pending = request;
+            RENDERER.execute(() -> render(request));
+        }
+    }
+
+    /**
+     * Determines if an image is being rendered.
+     * @return {@code true} if an image is being rendered
+     */
+    synchronized boolean isRendering() {
+        return pending != null;
+    }
+
+    private void render(Request request) {
+        if (request.cancelled) {
+            return;
+        }
+        final long start = System.nanoTime();
+        if (renderView == null || renderView.getWidth() != request.width || renderView.getHeight() != request.height) {
+            renderView = new RenderView(request.width, request.height);
+        }
+        renderView.zoomTo(request.center, request.scale, true);
+        final EastNorth topLeft = renderView.getEastNorth(0, 0);
+        final BufferedImage image = new BufferedImage(request.width, request.height, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = image.createGraphics();
+        boolean failed = false;
+        try {
+            final AbstractMapRenderer painter = MapRendererFactory.getInstance().createActiveRenderer(g, renderView, request.inactive);
+            if (painter instanceof StyledMapRenderer) {
+                final StyledMapRenderer renderer = (StyledMapRenderer) painter;
+                renderer.setDisplayList(layer.getDisplayList());
+                renderer.setBenchmarkFactory(() -> new RenderBenchmarkCollector() {
+                    @Override
+                    public boolean renderSort() {
+                        return !request.cancelled;
+                    }
+
+                    @Override
+                    public boolean renderDraw(List<StyleRecord> allStyleElems) {
+                        return !request.cancelled;
+                    }
+
+                    @Override
+                    public boolean renderDrawLayer(float majorZIndex) {
+                        if (!request.cancelled && System.nanoTime() - start > PROGRESS_DELAY * 1_000_000) {
+                            publish(new Rendered(request, copy(image), topLeft, false));
+                        }
+                        return !request.cancelled;
+                    }
+                });
+            }
+            painter.setSimplifiedWays(layer.getSimplifiedWays());
+            painter.enableSlowOperations(request.slowOperations);
+            painter.render(layer.data, request.virtual, renderView.getLatLonBounds(new Rectangle(0, 0, request.width, request.height)));
+        } catch (JosmRuntimeException | IllegalArgumentException | IllegalStateException e) {
+            Logging.error(e);
+            failed = true;
+        } finally {
+            g.dispose();
+        }
+        synchronized (this) {
+            if (pending == request) {
+                pending = null;
+            }
+        }
+        // A partial image is not published as complete, the layer is rendered again at the next repaint
+        if (!request.cancelled && !failed) {
+            publish(new Rendered(request, image, topLeft, true));
+        }
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        final BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        final Graphics2D g = copy.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+
+    private void publish(Rendered rendered) {
+        synchronized (this) {
+            if (rendered.request.cancelled) {
+                return;
+            }
+            shown = rendered;
+        }
+        layer.invalidate();
+    }
+
+    @Override
+    public void destroy() {
+        layer.data.removeDataSetListener(dataSetListener);
+        layer.data.removeSelectionListener(selectionListener);
+        layer.data.removeHighlightUpdateListener(highlightListener);
+        Config.getPref().removePreferenceChangeListener(preferenceListener);
+        synchronized (this) {
+            if (pending != null) {
+                pending.cancelled = true;
+                pending = null;
+            }
+            shown = null;
+        }
+    }
+}
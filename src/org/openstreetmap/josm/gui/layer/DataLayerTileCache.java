@@ -0,0 +1,351 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.layer;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.ProjectionBounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSelectionListener;
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+import org.openstreetmap.josm.data.osm.event.PrimitiveFlagsChangedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesAddedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesRemovedEvent;
+import org.openstreetmap.josm.data.osm.event.TagsChangedEvent;
+import org.openstreetmap.josm.data.osm.visitor.paint.AbstractMapRenderer;
+import org.openstreetmap.josm.data.osm.visitor.paint.MapRendererFactory;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
+import org.openstreetmap.josm.data.preferences.NamedColorProperty;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.gui.util.LruCache;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.spi.preferences.PreferenceChangedListener;
+import org.openstreetmap.josm.tools.Destroyable;
+import org.openstreetmap.josm.tools.JosmRuntimeException;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Keeps the rendering of an inactive data layer in raster tiles, like the tiles of an imagery layer.
+ * <p>
+ * The tiles are aligned on the pixel grid of the map view and rendered on background threads, for each scale the
+ * layer is displayed at. Panning only renders the tiles which were not displayed before. A change of the data set or
+ * of the selection only renders again the tiles whose area contains the changed primitives; the outdated image of a
+ * tile is displayed until the new one is available.
+ * <p>
+ * Labels and symbols crossing the border of a tile are rendered in both tiles, but a label of a long way may be
+ * placed differently than when the whole view is rendered at once.
+ * @since xxx
+ */
+public final class DataLayerTileCache implements Destroyable {
+
+    /** Whether the inactive data layers are rendered in tiles */
+    public static final BooleanProperty ENABLED = new BooleanProperty("mappaint.tile-cache", false);
+    /** The maximum number of tiles kept by each layer */
+    public static final IntegerProperty SIZE = new IntegerProperty("mappaint.tile-cache.size", 128);
+    /** The number of threads rendering the tiles */
+    public static final IntegerProperty THREADS = new IntegerProperty("mappaint.tile-cache.threads", 2);
+
+    /** The size of the tiles, in pixels */
+    static final int TILE_SIZE = 256;
+    /** The distance in pixels around a tile in which the primitives are rendered, for symbols and labels */
+    private static final int MARGIN = 64;
+
+    private static final ExecutorService RENDERERS = Executors.newFixedThreadPool(Math.max(1, THREADS.get()),
+            Utils.newThreadFactory("data-tile-renderer-%d", Thread.NORM_PRIORITY - 1));
+    /** The view used to render the tiles, one per rendering thread */
+    private static final ThreadLocal<NavigatableComponent> TILE_VIEW = ThreadLocal.withInitial(TileView::new);
+
+    private final OsmDataLayer layer;
+    private final DataSetListenerAdapter dataSetListener = new DataSetListenerAdapter(this::processDatasetEvent);
+    private final DataSelectionListener selectionListener = event -> {
+        invalidate(event.getAdded());
+        invalidate(event.getRemoved());
+    };
+    private final PreferenceChangedListener preferenceListener = e -> {
+        if (isRenderingPreference(e.getKey())) {
+            invalidateAll();
+        }
+    };
+
+    /** The tiles, guarded by {@code this} */
+    private final Map<TileKey, Tile> tiles = new LruCache<>(SIZE.get());
+    /** The tiles of the last repaint, the other tiles are not rendered. Guarded by {@code this} */
+    private Set<TileKey> wanted = new HashSet<>();
+    /** The projection and mappaint cache index of the tiles. Guarded by {@code this} */
+    private Projection projection;
+    private short mappaintCacheIndex;
+
+    private static final class TileView extends NavigatableComponent {
+        TileView() {
+            setBounds(0, 0, TILE_SIZE, TILE_SIZE);
+            updateLocationState();
+        }
+
+        @Override
+        protected boolean isVisibleOnScreen() {
+            return true;
+        }
+
+        @Override
+        public Point getLocationOnScreen() {
+            return new Point(0, 0);
+        }
+    }
+
+    private static final class TileKey {
+        private final double scale;
+        private final int x;
+        private final int y;
+        private final boolean inactive;
+
+        TileKey(double scale, int x, int y, boolean inactive) {
+            this.scale = scale;
+            this.x = x;
+            this.y = y;
+            this.inactive = inactive;
+        }
+
+        EastNorth getCenter() {
+            return new EastNorth((x + 0.5) * TILE_SIZE * scale, -(y + 0.5) * TILE_SIZE * scale);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(scale, x, y, inactive);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            TileKey other = (TileKey) obj;
+            return Double.compare(scale, other.scale) == 0 && x == other.x && y == other.y && inactive == other.inactive;
+        }
+    }
+
+    private static final class Tile {
+        /** The area of the rendered primitives */
+        private final BBox area;
+        /** The rendered image, {@code null} if the tile has not been rendered yet */
+        private BufferedImage image;
+        /** Incremented when the tile must be rendered again */
+        private int generation;
+        private boolean upToDate;
+        private boolean rendering;
+
+        Tile(BBox area) {
+            this.area = area;
+        }
+    }
+
+    /**
+     * Constructs a new {@code DataLayerTileCache} and starts listening to the changes of the data of the layer.
+     * @param layer the rendered layer
+     */
+    DataLayerTileCache(OsmDataLayer layer) {
+        this.layer = Objects.requireNonNull(layer, "layer");
+        layer.data.addDataSetListener(dataSetListener);
+        layer.data.addSelectionListener(selectionListener);
+        Config.getPref().addPreferenceChangeListener(preferenceListener);
+    }
+
+    /**
+     * Determines if a preference changes the rendering of the data layers: the map paint settings, the wireframe
+     * settings and the colors.
+     * @param key the preference key
+     * @return {@code true} if the rendered images must be discarded when the preference changes
+     */
+    static boolean isRenderingPreference(String key) {
+        return key != null && !key.startsWith(ENABLED.getKey())
+                && (key.startsWith("mappaint.") || key.startsWith("draw.") || key.startsWith(NamedColorProperty.NAMED_COLOR_PREFIX));
+    }
+
+    private void processDatasetEvent(AbstractDatasetChangedEvent event) {
+        if (event instanceof DataChangedEvent && ((DataChangedEvent) event).getEvents() != null) {
+            ((DataChangedEvent) event).getEvents().forEach(this::processDatasetEvent);
+        } else if (event instanceof PrimitivesAddedEvent || event instanceof PrimitivesRemovedEvent
+                || event instanceof TagsChangedEvent || event instanceof PrimitiveFlagsChangedEvent) {
+            invalidate(event.getPrimitives());
+        } else {
+            // The former position of the changed primitives is unknown
+            invalidateAll();
+        }
+    }
+
+    private synchronized void invalidate(Collection<? extends IPrimitive> primitives) {
+        for (IPrimitive p : primitives) {
+            final BBox bbox = new BBox(p.getBBox());
+            // The style of the parents and of the members may depend on the primitive
+            for (IPrimitive referrer : p.getReferrers()) {
+                bbox.add(referrer.getBBox());
+            }
+            if (bbox.isValid()) {
+                tiles.values().stream().filter(tile -> tile.area.intersects(bbox)).forEach(DataLayerTileCache::invalidate);
+            }
+        }
+    }
+
+    private static void invalidate(Tile tile) {
+        tile.generation++;
+        tile.upToDate = false;
+    }
+
+    /**
+     * Renders all tiles again.
+     */
+    public synchronized void invalidateAll() {
+        tiles.values().forEach(DataLayerTileCache::invalidate);
+    }
+
+    /**
+     * Paints the tiles covering the map view. The tiles which are not up to date are rendered in the background,
+     * the layer is invalidated once they are available.
+     * @param g the graphics to paint to
+     * @param nc the map view
+     * @param inactive whether the layer is painted in the colors of inactive layers
+     */
+    synchronized void paint(Graphics2D g, NavigatableComponent nc, boolean inactive) {
+        final Projection currentProjection = ProjectionRegistry.getProjection();
+        if (projection != currentProjection || mappaintCacheIndex != layer.data.getMappaintCacheIndex()) {
+            projection = currentProjection;
+            mappaintCacheIndex = layer.data.getMappaintCacheIndex();
+            tiles.clear();
+        }
+        final double scale = nc.getScale();
+        // The map view aligns the east/north origin on the pixel grid
+        final Point2D origin = nc.getState().getPointFor(new EastNorth(0, 0)).getInView();
+        final int minX = (int) Math.floor(-origin.getX() / TILE_SIZE);
+        final int minY = (int) Math.floor(-origin.getY() / TILE_SIZE);
+        final int maxX = (int) Math.floor((nc.getWidth() - origin.getX()) / TILE_SIZE);
+        final int maxY = (int) Math.floor((nc.getHeight() - origin.getY()) / TILE_SIZE);
+        final Set<TileKey> visible = new HashSet<>();
+        // Render a ring of tiles around the view in advance, for small pans
+        for (int x = minX - 1; x <= maxX + 1; x++) {
+            for (int y = minY - 1; y <= maxY + 1; y++) {
+                visible.add(new TileKey(scale, x, y, inactive));
+            }
+        }
+        wanted = visible;
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                final Tile tile = getTile(new TileKey(scale, x, y, inactive));
+                if (tile.image != null) {
+                    g.drawImage(tile.image, (int) Math.round(origin.getX()) + x * TILE_SIZE,
+                            (int) Math.round(origin.getY()) + y * TILE_SIZE, null);
+                }
+            }
+        }
+        visible.forEach(this::getTile);
+    }
+
+    private Tile getTile(TileKey key) {
+        Tile tile = tiles.get(key);
+        if (tile == null) {
+            final double extent = (TILE_SIZE + 2 * MARGIN) * key.scale / 2;
+            final EastNorth center = key.getCenter();
+            final Bounds bounds = projection.getLatLonBoundsBox(new ProjectionBounds(
+                    center.east() - extent, center.north() - extent, center.east() + extent, center.north() + extent));
+            tile = new Tile(bounds.toBBox());
+            tiles.put(key, tile);
+        }
+        if (!tile.upToDate && !tile.rendering) {
+            tile.rendering = true;
+            final Tile t = tile;
+            final int generation = tile.generation;
+            RENDERERS.execute(() -> render(key, t, generation));
+        }
+        return tile;
+    }
+
+    private void render(TileKey key, Tile tile, int generation) {
+        synchronized (this) {
+            if (!wanted.contains(key) || tile.generation != generation) {
+                tile.rendering = false;
+                return;
+            }
+        }
+        BufferedImage image = null;
+        try {
+            image = renderTile(key);
+        } catch (JosmRuntimeException | IllegalArgumentException | IllegalStateException e) {
+            Logging.error(e);
+        }
+        synchronized (this) {
+            tile.rendering = false;
+            if (tile.generation == generation && image != null) {
+                tile.image = image;
+                tile.upToDate = true;
+            }
+        }
+        layer.invalidate();
+    }
+
+    private BufferedImage renderTile(TileKey key) {
+        final NavigatableComponent nc = TILE_VIEW.get();
+        nc.zoomTo(key.getCenter(), key.scale, true);
+        final BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = image.createGraphics();
+        try {
+            g.setClip(0, 0, TILE_SIZE, TILE_SIZE);
+            final AbstractMapRenderer painter = MapRendererFactory.getInstance().createActiveRenderer(g, nc, key.inactive);
+            if (painter instanceof StyledMapRenderer) {
+                ((StyledMapRenderer) painter).setDisplayList(layer.getDisplayList());
+            }
+            painter.setSimplifiedWays(layer.getSimplifiedWays());
+            painter.render(layer.data, false, nc.getLatLonBounds(new Rectangle(-MARGIN, -MARGIN, TILE_SIZE + 2 * MARGIN,
+                    TILE_SIZE + 2 * MARGIN)));
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Returns the number of tiles kept in the cache.
+     * @return the number of tiles
+     */
+    synchronized int getTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * Returns the number of tiles which are up to date.
+     * @return the number of tiles which are up to date
+     */
+    synchronized int getUpToDateCount() {
+        return (int) tiles.values().stream().filter(tile -> tile.upToDate).count();
+    }
+
+    @Override
+    public void destroy() {
+        layer.data.removeDataSetListener(dataSetListener);
+        layer.data.removeSelectionListener(selectionListener);
+        Config.getPref().removePreferenceChangeListener(preferenceListener);
+        synchronized (this) {
+            wanted = new HashSet<>();
+            tiles.clear();
+        }
+    }
+}
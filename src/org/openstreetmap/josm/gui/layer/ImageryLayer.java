@@ -15,6 +15,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -58,7 +60,9 @@ public abstract class ImageryLayer extends Layer {
      */
     public static final IntegerProperty PROP_SHARPEN_LEVEL = new IntegerProperty("imagery.sharpen_level", 0);
 
-    private final List<ImageProcessor> imageProcessors = new ArrayList<>();
+    /** The image processors, applied by the tile loading threads while they are changed on the EDT */
+    private final List<ImageProcessor> imageProcessors = new CopyOnWriteArrayList<>();
+    private final AtomicInteger imageProcessorsVersion = new AtomicInteger();
 
     protected final ImageryInfo info;
 
@@ -83,6 +87,7 @@ public abstract class ImageryLayer extends Layer {
         for (ImageProcessor processor : filterSettings.getProcessors()) {
             addImageProcessor(processor);
         }
+        filterSettings.addFilterChangeListener(imageProcessorsVersion::incrementAndGet);
         filterSettings.setSharpenLevel(1 + PROP_SHARPEN_LEVEL.get() / 2f);
     }
 
@@ -280,7 +285,10 @@ public abstract class ImageryLayer extends Layer {
      * @return true if processor was added, false otherwise
      */
     public boolean addImageProcessor(ImageProcessor processor) {
-        return processor != null && imageProcessors.add(processor);
+        final boolean added = processor != null && imageProcessors.add(processor);
+        // after the change, so that an image processed with the new version is processed with the new processors
+        imageProcessorsVersion.incrementAndGet();
+        return added;
     }
 
     /**
@@ -291,7 +299,9 @@ public abstract class ImageryLayer extends Layer {
      * @return true if processor was removed
      */
     public boolean removeImageProcessor(ImageProcessor processor) {
-        return imageProcessors.remove(processor);
+        final boolean removed = imageProcessors.remove(processor);
+        imageProcessorsVersion.incrementAndGet();
+        return removed;
     }
 
     /**
@@ -314,6 +324,17 @@ public abstract class ImageryLayer extends Layer {
         return imageProcessors;
     }
 
+    /**
+     * Returns a number which changes when an image processor is added or removed, or when the
+     * {@linkplain #getFilterSettings() filter settings} change. The images processed with another version
+     * must be processed again.
+     * @return the version of the image processors
+     * @since xxx
+     */
+    public int getImageProcessorsVersion() {
+        return imageProcessorsVersion.get();
+    }
+
     /**
      * Applies all the chosen {@link ImageProcessor}s to the image
      *
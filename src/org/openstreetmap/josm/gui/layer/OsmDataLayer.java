@@ -91,7 +91,10 @@ import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter.Listener;
 import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
 import org.openstreetmap.josm.data.osm.visitor.OsmPrimitiveVisitor;
 import org.openstreetmap.josm.data.osm.visitor.paint.AbstractMapRenderer;
+import org.openstreetmap.josm.data.osm.visitor.paint.DisplayList;
 import org.openstreetmap.josm.data.osm.visitor.paint.MapRendererFactory;
+import org.openstreetmap.josm.data.osm.visitor.paint.SimplifiedWayCache;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer;
 import org.openstreetmap.josm.data.osm.visitor.paint.relations.MultipolygonCache;
 import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.data.preferences.IntegerProperty;
@@ -382,6 +385,22 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
      */
     public final DataSet data;
     private final DataSetListenerAdapter dataSetListenerAdapter;
+    /**
+     * The style records kept between repaints, see {@link DisplayList#ENABLED}
+     */
+    private DisplayList displayList;
+    /**
+     * The simplified geometry of the long ways, see {@link SimplifiedWayCache#ENABLED}
+     */
+    private SimplifiedWayCache simplifiedWays;
+    /**
+     * The tiles of the layer when it is not active, see {@link DataLayerTileCache#ENABLED}
+     */
+    private DataLayerTileCache tileCache;
+    /**
+     * The renderer painting the layer on a worker thread, see {@link DataLayerBackgroundRenderer#ENABLED}
+     */
+    private DataLayerBackgroundRenderer backgroundRenderer;
 
     /**
      * a texture for non-downloaded area
@@ -537,13 +556,76 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
             }
         }
 
-        AbstractMapRenderer painter = MapRendererFactory.getInstance().createActiveRenderer(g, mv, inactive);
-        painter.enableSlowOperations(mv.getMapMover() == null || !mv.getMapMover().movementInProgress()
-                || !PROPERTY_HIDE_LABELS_WHILE_DRAGGING.get());
-        painter.render(data, virtual, box);
+        boolean slowOperations = mv.getMapMover() == null || !mv.getMapMover().movementInProgress()
+                || !PROPERTY_HIDE_LABELS_WHILE_DRAGGING.get();
+        DataLayerTileCache cache = getTileCache(active);
+        DataLayerBackgroundRenderer backgroundRenderer = getBackgroundRenderer();
+        if (cache != null) {
+            cache.paint(g, mv, inactive);
+        } else if (backgroundRenderer != null) {
+            backgroundRenderer.paint(g, mv, inactive, virtual, slowOperations);
+        } else {
+            AbstractMapRenderer painter = MapRendererFactory.getInstance().createActiveRenderer(g, mv, inactive);
+            if (painter instanceof StyledMapRenderer) {
+                ((StyledMapRenderer) painter).setDisplayList(getDisplayList());
+            }
+            painter.setSimplifiedWays(getSimplifiedWays());
+            painter.enableSlowOperations(slowOperations);
+            painter.render(data, virtual, box);
+        }
         MainApplication.getMap().conflictDialog.paintConflicts(g, mv);
     }
 
+    synchronized DisplayList getDisplayList() {
+        if (!DisplayList.ENABLED.get() && displayList != null) {
+            displayList.destroy();
+            displayList = null;
+        } else if (DisplayList.ENABLED.get() && displayList == null) {
+            displayList = new DisplayList(data);
+        }
+        return displayList;
+    }
+
+    synchronized SimplifiedWayCache getSimplifiedWays() {
+        if (!SimplifiedWayCache.ENABLED.get() && simplifiedWays != null) {
+            simplifiedWays.destroy();
+            simplifiedWays = null;
+        } else if (SimplifiedWayCache.ENABLED.get() && simplifiedWays == null) {
+            simplifiedWays = new SimplifiedWayCache(data);
+        }
+        return simplifiedWays;
+    }
+
+    /**
+     * Returns the tile cache used to paint the layer, if the layer is rendered in tiles.
+     * @param active whether the layer is the active layer
+     * @return the tile cache, or {@code null} if the layer is rendered directly
+     */
+    private synchronized DataLayerTileCache getTileCache(boolean active) {
+        if (!DataLayerTileCache.ENABLED.get() && tileCache != null) {
+            tileCache.destroy();
+            tileCache = null;
+        } else if (DataLayerTileCache.ENABLED.get() && tileCache == null) {
+            tileCache = new DataLayerTileCache(this);
+        }
+        // The active layer is edited, its tiles would be rendered again continuously
+        return active ? null : tileCache;
+    }
+
+    /**
+     * Returns the renderer painting the layer on a worker thread, if enabled.
+     * @return the background renderer, or {@code null} if the layer is rendered on the calling thread
+     */
+    private synchronized DataLayerBackgroundRenderer getBackgroundRenderer() {
+        if (!DataLayerBackgroundRenderer.ENABLED.get() && backgroundRenderer != null) {
+            backgroundRenderer.destroy();
+            backgroundRenderer = null;
+        } else if (DataLayerBackgroundRenderer.ENABLED.get() && backgroundRenderer == null) {
+            backgroundRenderer = new DataLayerBackgroundRenderer(this);
+        }
+        return backgroundRenderer;
+    }
+
     @Override public String getToolTipText() {
         DataCountVisitor counter = new DataCountVisitor();
         for (final OsmPrimitive osm : data.allPrimitives()) {
@@ -1143,6 +1225,22 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
         data.removeHighlightUpdateListener(this);
         data.removeDataSetListener(dataSetListenerAdapter);
         data.removeDataSetListener(MultipolygonCache.getInstance());
+        if (displayList != null) {
+            displayList.destroy();
+            displayList = null;
+        }
+        if (simplifiedWays != null) {
+            simplifiedWays.destroy();
+            simplifiedWays = null;
+        }
+        if (tileCache != null) {
+            tileCache.destroy();
+            tileCache = null;
+        }
+        if (backgroundRenderer != null) {
+            backgroundRenderer.destroy();
+            backgroundRenderer = null;
+        }
         data.clearSelection();
         validationErrors.clear();
         removeClipboardDataFor(this);
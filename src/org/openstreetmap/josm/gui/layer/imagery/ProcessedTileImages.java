@@ -0,0 +1,141 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.layer.imagery;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.IntSupplier;
+import java.util.function.UnaryOperator;
+
+import org.openstreetmap.gui.jmapviewer.Tile;
+
+/**
+ * The tile images of an imagery layer with its image processors applied.
+ * <p>
+ * The image of a tile is processed once, when it is painted for the first time. When the image processors change, the image
+ * processed with the previous settings is still returned, and the tile is remembered as stale until it is
+ * {@linkplain #processStaleTiles() processed again} in the background. The tiles are weakly referenced, so that a processed
+ * image is released together with its tile when the tile is evicted from the tile cache.
+ * @since xxx
+ */
+public final class ProcessedTileImages {
+
+    /**
+     * The image of a tile with the image processors applied.
+     */
+    private static final class ProcessedImage {
+        /** the image of the tile */
+        final BufferedImage source;
+        /** the version of the image processors */
+        final int version;
+        /** the processed image */
+        final BufferedImage image;
+
+        ProcessedImage(BufferedImage source, int version, BufferedImage image) {
+            this.source = source;
+            this.version = version;
+            this.image = image;
+        }
+    }
+
+    private final IntSupplier version;
+    private final UnaryOperator<BufferedImage> processors;
+    private final Map<Tile, ProcessedImage> images = Collections.synchronizedMap(new WeakHashMap<>());
+    /** The tiles painted with an image processed with previous settings */
+    private final Set<Tile> staleTiles = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    /**
+     * Constructs a new {@code ProcessedTileImages}.
+     * @param version returns a number which changes when the image processors change. It must change after the processors
+     * @param processors applies the image processors to an image. It may be called from any thread
+     */
+    public ProcessedTileImages(IntSupplier version, UnaryOperator<BufferedImage> processors) {
+        this.version = Objects.requireNonNull(version, "version");
+        this.processors = Objects.requireNonNull(processors, "processors");
+    }
+
+    /**
+     * Returns the processed image of a tile. The image is processed now if it has not been processed yet.
+     * @param tile the tile
+     * @param img the loaded image of the tile
+     * @return the processed image, which may have been processed with previous settings if the tile is
+     * {@linkplain #hasStaleTiles() stale}
+     */
+    public BufferedImage get(Tile tile, BufferedImage img) {
+        final ProcessedImage processed = images.get(tile);
+        if (processed != null && processed.source == img) {
+            if (processed.version != version.getAsInt()) {
+                // the image processed with the previous settings is painted until the tile has been processed again
+                staleTiles.add(tile);
+            }
+            return processed.image;
+        }
+        return process(tile, img, version.getAsInt());
+    }
+
+    private BufferedImage process(Tile tile, BufferedImage img, int processedVersion) {
+        final BufferedImage image = processors.apply(img);
+        images.put(tile, new ProcessedImage(img, processedVersion, image));
+        return image;
+    }
+
+    /**
+     * Determines if some tiles have been returned with an image processed with previous settings.
+     * @return {@code true} if {@link #processStaleTiles()} has work to do
+     */
+    public boolean hasStaleTiles() {
+        return !staleTiles.isEmpty();
+    }
+
+    /**
+     * Processes again the images of the stale tiles. This may be called from any thread.
+     * @return {@code true} if an image has been processed, i.e. the tiles should be painted again
+     */
+    public boolean processStaleTiles() {
+        final List<Tile> tiles;
+        synchronized (staleTiles) {
+            tiles = new ArrayList<>(staleTiles);
+            staleTiles.clear();
+        }
+        final int currentVersion = version.getAsInt();
+        boolean processed = false;
+        for (Tile tile : tiles) {
+            if (currentVersion != version.getAsInt()) {
+                // the settings changed again, the remaining tiles are stale again when they are painted
+                break;
+            }
+            final BufferedImage img;
+            synchronized (tile) {
+                img = tile.getImage();
+            }
+            final ProcessedImage old = images.get(tile);
+            // a tile whose image changed is processed when it is painted
+            if (img != null && old != null && old.source == img && old.version != currentVersion) {
+                process(tile, img, currentVersion);
+                processed = true;
+            }
+        }
+        return processed;
+    }
+
+    /**
+     * Forgets all the processed images.
+     */
+    public void clear() {
+        images.clear();
+        staleTiles.clear();
+    }
+
+    /**
+     * Returns the number of tiles with a processed image.
+     * @return the number of tiles with a processed image
+     */
+    int size() {
+        return images.size();
+    }
+}
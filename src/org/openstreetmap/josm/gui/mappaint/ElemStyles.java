@@ -78,6 +78,8 @@ public class ElemStyles implements PreferenceChangedListener {
 
     private volatile Color backgroundColorCache;
 
+    private final SharedStyleCache sharedStyles = new SharedStyleCache();
+
     /**
      * Constructs a new {@code ElemStyles}.
      */
@@ -104,6 +106,7 @@ public class ElemStyles implements PreferenceChangedListener {
         GuiHelper.runInEDT(() -> {
             cacheIdx++;
             preferenceCache.clear();
+            sharedStyles.clear();
             backgroundColorCache = null;
             MainApplication.getLayerManager().getLayersOfType(OsmDataLayer.class).forEach(
                     dl -> dl.data.clearMappaintCache());
@@ -256,9 +259,9 @@ public class ElemStyles implements PreferenceChangedListener {
      */
     private Pair<StyleElementList, Range> getImpl(IPrimitive osm, double scale, NavigatableComponent nc) {
         if (osm instanceof INode)
-            return generateStyles(osm, scale, false);
+            return generateSharedStyles(osm, scale);
         else if (osm instanceof IWay) {
-            Pair<StyleElementList, Range> p = generateStyles(osm, scale, false);
+            Pair<StyleElementList, Range> p = generateSharedStyles(osm, scale);
 
             boolean isOuterWayOfSomeMP = false;
             Color wayColor = null;
@@ -342,7 +345,7 @@ public class ElemStyles implements PreferenceChangedListener {
                 final Multipolygon multipolygon = MultipolygonCache.getInstance().get((Relation) ref);
 
                 if (multipolygon.getInnerWays().contains(osm)) {
-                    p = generateStyles(osm, scale, false);
+                    p = generateSharedStyles(osm, scale);
                     boolean hasIndependentElemStyle = false;
                     for (StyleElement s : p.a) {
                         if (s.isProperLineStyle() || s instanceof AreaElement) {
@@ -389,13 +392,35 @@ public class ElemStyles implements PreferenceChangedListener {
      * @since 13810 (signature)
      */
     public Pair<StyleElementList, Range> generateStyles(IPrimitive osm, double scale, boolean pretendWayIsClosed) {
+        return generateStyles(osm, scale, pretendWayIsClosed, new MultiCascade());
+    }
+
+    /**
+     * Create the list of styles and its valid scale range for a node or a way, or returns the styles generated
+     * for a primitive with the same tags if they can be shared.
+     * @param osm the node or the way
+     * @param scale the scale (in meters per 100 px), must be &gt; 0
+     * @return the generated styles and the valid range as a pair
+     * @see SharedStyleCache
+     */
+    private Pair<StyleElementList, Range> generateSharedStyles(IPrimitive osm, double scale) {
+        if (!SharedStyleCache.ENABLED.get()) {
+            return generateStyles(osm, scale, false);
+        }
+        return sharedStyles.get(osm, scale, mc -> generateStyles(osm, scale, false, mc));
+    }
+
+    private Pair<StyleElementList, Range> generateStyles(IPrimitive osm, double scale, boolean pretendWayIsClosed, MultiCascade mc) {
         List<StyleElement> sl = new ArrayList<>();
-        MultiCascade mc = new MultiCascade();
         Environment env = new Environment(osm, mc, null, null);
 
         for (StyleSource s : styleSources) {
             if (s.active) {
                 s.apply(mc, osm, scale, pretendWayIsClosed);
+                if (!(s instanceof MapCSSStyleSource)) {
+                    // only the MapCSS rules tell what they depend on
+                    mc.shareable = false;
+                }
             }
         }
 
@@ -511,6 +536,7 @@ public class ElemStyles implements PreferenceChangedListener {
      */
     void clear() {
         styleSources.clear();
+        sharedStyles.clear();
     }
 
     /**
@@ -519,6 +545,7 @@ public class ElemStyles implements PreferenceChangedListener {
      */
     void add(StyleSource style) {
         styleSources.add(Objects.requireNonNull(style));
+        sharedStyles.clear();
     }
 
     /**
@@ -527,6 +554,7 @@ public class ElemStyles implements PreferenceChangedListener {
      * @return {@code true} if this list contained the specified element
      */
     boolean remove(StyleSource style) {
+        sharedStyles.clear();
         return styleSources.remove(Objects.requireNonNull(style));
     }
 
@@ -20,6 +20,21 @@ public class MultiCascade implements StyleKeys {
      * The scale range this cascade is valid for
      */
     public Range range;
+    /**
+     * Whether the cascades can be shared between primitives with the same tags, see {@link SharedStyleCache}
+     * @since xxx
+     */
+    public boolean shareable = true;
+    /**
+     * Whether the cascades depend on the parent ways of the primitive, see {@link SharedStyleCache}
+     * @since xxx
+     */
+    public boolean dependsOnParentWays;
+    /**
+     * Whether the cascades depend on the parent relations of the primitive, see {@link SharedStyleCache}
+     * @since xxx
+     */
+    public boolean dependsOnParentRelations;
 
     /**
      * Constructs a new {@code MultiCascade}.
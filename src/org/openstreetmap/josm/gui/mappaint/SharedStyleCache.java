@@ -0,0 +1,182 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.IWay;
+import org.openstreetmap.josm.data.osm.KeyValueVisitor;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Tagged;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.gui.mappaint.DividedScale.RangeViolatedError;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Pair;
+
+/**
+ * Shares the styles generated for the nodes and ways with the same tags.
+ * <p>
+ * The {@link StyleCache} of a primitive only keeps the styles once they have been computed for this primitive.
+ * In a data set with thousands of buildings with the same tags, each building is evaluated through all the rules of
+ * the style sources. This cache keeps the generated styles for each fingerprint of a primitive: its class, its tags,
+ * whether it is a closed way, whether it is the node of no, one or several ways and whether it is a relation member.
+ * The styles are kept by scale range and selection state, like in the {@link StyleCache}.
+ * <p>
+ * When the style sources apply a rule which depends on more than the fingerprint (see
+ * {@link org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSRule#isShareable()}), the fingerprint is marked as not
+ * shareable and the styles of its primitives are always generated. The rules that may apply are found from the type
+ * and the tags of the primitive, so this holds for all the primitives with the same fingerprint. The rules which only
+ * apply to relation members or way nodes (e.g. {@code relation[type=route] > way}) do not prevent sharing the styles
+ * of the primitives without such parents.
+ * @since xxx
+ */
+public final class SharedStyleCache {
+
+    /** Whether the styles are shared between the primitives with the same tags */
+    public static final BooleanProperty ENABLED = new BooleanProperty("mappaint.share-styles", true);
+
+    /** The maximal number of fingerprints */
+    private static final int MAX_SIZE = 50_000;
+    /** The entry of the fingerprints whose styles cannot be shared */
+    private static final Object NOT_SHAREABLE = new Object();
+
+    /** The {@link StyleCache} for each fingerprint, or {@link #NOT_SHAREABLE} */
+    private final Map<Key, Object> styles = new ConcurrentHashMap<>();
+
+    /**
+     * The fingerprint of a primitive.
+     */
+    private static final class Key implements KeyValueVisitor {
+        private final Class<?> type;
+        private final boolean closed;
+        /** The number of parent ways: 0, 1 or 2 for several ways */
+        private final int parentWays;
+        private final boolean parentRelations;
+        /** The keys and values of the tags, in the order of the primitive */
+        private String[] tags;
+        private int size;
+        private final int hash;
+
+        Key(IPrimitive osm) {
+            this.type = osm.getClass();
+            this.closed = osm.getType() == OsmPrimitiveType.WAY && ((IWay<?>) osm).isClosed();
+            int ways = 0;
+            boolean relations = false;
+            if (osm.getDataSet() != null) {
+                // primitives outside of a data set have no referrers
+                for (IPrimitive referrer : osm.getReferrers()) {
+                    if (referrer.getType() == OsmPrimitiveType.WAY) {
+                        ways = Math.min(ways + 1, 2);
+                    } else if (referrer.getType() == OsmPrimitiveType.RELATION) {
+                        relations = true;
+                    }
+                }
+            }
+            this.parentWays = ways;
+            this.parentRelations = relations;
+            this.tags = new String[2 * osm.getNumKeys()];
+            osm.visitKeys(this);
+            if (size < tags.length) {
+                tags = Arrays.copyOf(tags, size);
+            }
+            this.hash = 31 * (31 * type.hashCode() + (closed ? 8 : 0) + 2 * parentWays + (parentRelations ? 1 : 0))
+                    + Arrays.hashCode(tags);
+        }
+
+        @Override
+        public void visitKeyValue(Tagged primitive, String key, String value) {
+            // the tags may have changed since they have been counted
+            if (size + 2 > tags.length) {
+                tags = Arrays.copyOf(tags, size + 2);
+            }
+            tags[size++] = key;
+            tags[size++] = value;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            final Key other = (Key) obj;
+            return hash == other.hash && type == other.type && closed == other.closed
+                    && parentWays == other.parentWays && parentRelations == other.parentRelations && Arrays.equals(tags, other.tags);
+        }
+    }
+
+    /**
+     * Returns the styles of a node or a way, generates them if they are not shared yet.
+     * @param osm the node or the way
+     * @param scale the scale
+     * @param generator generates the styles of the primitive, see {@link ElemStyles#generateStyles}.
+     * The fields {@code shareable} and {@code dependsOnParent...} of the {@link MultiCascade} tell whether the styles can be shared.
+     * @return the styles and their valid range, as a new pair
+     */
+    Pair<StyleElementList, Range> get(IPrimitive osm, double scale,
+            Function<MultiCascade, Pair<StyleElementList, Range>> generator) {
+        final Key key = new Key(osm);
+        final boolean selected = osm.isSelected();
+        final Object entry = styles.get(key);
+        if (entry == NOT_SHAREABLE) {
+            return generator.apply(new MultiCascade());
+        } else if (entry != null) {
+            final Pair<StyleElementList, Range> p = ((StyleCache) entry).getWithRange(scale, selected);
+            if (p.a != null) {
+                return p;
+            }
+        }
+        final MultiCascade mc = new MultiCascade();
+        final Pair<StyleElementList, Range> p = generator.apply(mc);
+        if (entry == null && styles.size() >= MAX_SIZE) {
+            return p;
+        }
+        if (!mc.shareable || mc.dependsOnParentWays && key.parentWays > 0 || mc.dependsOnParentRelations && key.parentRelations) {
+            styles.put(key, NOT_SHAREABLE);
+        } else {
+            final StyleElementList list = p.a;
+            final Range range = p.b;
+            styles.compute(key, (k, old) -> put(old, list, range, scale, selected));
+        }
+        return p;
+    }
+
+    private static Object put(Object old, StyleElementList list, Range range, double scale, boolean selected) {
+        if (old == NOT_SHAREABLE) {
+            return old;
+        }
+        final StyleCache cache = old != null ? (StyleCache) old : StyleCache.EMPTY_STYLECACHE;
+        if (cache.getWithRange(scale, selected).a != null) {
+            // generated concurrently by another thread
+            return cache;
+        }
+        try {
+            return cache.put(list, range, selected);
+        } catch (RangeViolatedError e) {
+            // should not happen, the styles of a fingerprint do not depend on the primitive
+            Logging.warn(e);
+            return NOT_SHAREABLE;
+        }
+    }
+
+    /**
+     * Forgets all the shared styles, e.g. after the style sources changed.
+     */
+    public void clear() {
+        styles.clear();
+    }
+
+    /**
+     * Returns the number of fingerprints.
+     * @return the number of fingerprints
+     */
+    int size() {
+        return styles.size();
+    }
+}
@@ -56,6 +56,11 @@ public final class ConditionFactory {
      * @throws MapCSSException if the arguments are incorrect
      */
     public static Condition createKeyValueCondition(String k, String v, Op op, Context context, boolean considerValAsKey) {
+        return MapCSSRuleCache.record(createKeyValueConditionImpl(k, v, op, context, considerValAsKey),
+                MapCSSRuleCache.KEY_VALUE_CONDITION, k, v, op, context, considerValAsKey);
+    }
+
+    private static Condition createKeyValueConditionImpl(String k, String v, Op op, Context context, boolean considerValAsKey) {
         switch (context) {
         case PRIMITIVE:
             if (KeyValueRegexpCondition.SUPPORTED_OPS.contains(op) && !considerValAsKey) {
@@ -91,7 +96,8 @@ public final class ConditionFactory {
      * @return The new condition.
      */
     public static Condition createRegexpKeyRegexpValueCondition(String k, String v, Op op) {
-        return new RegexpKeyValueRegexpCondition(k, v, op);
+        return MapCSSRuleCache.record(new RegexpKeyValueRegexpCondition(k, v, op),
+                MapCSSRuleCache.REGEXP_KEY_REGEXP_VALUE_CONDITION, k, v, op);
     }
 
     /**
@@ -103,6 +109,11 @@ public final class ConditionFactory {
      * @return the new condition.
      */
     public static Condition createKeyCondition(String k, boolean not, KeyMatchType matchType, Context context) {
+        return MapCSSRuleCache.record(createKeyConditionImpl(k, not, matchType, context),
+                MapCSSRuleCache.KEY_CONDITION, k, not, matchType, context);
+    }
+
+    private static Condition createKeyConditionImpl(String k, boolean not, KeyMatchType matchType, Context context) {
         switch (context) {
         case PRIMITIVE:
             if (KeyMatchType.REGEX == matchType && k.matches("[A-Za-z0-9:_-]+")) {
@@ -139,7 +150,8 @@ public final class ConditionFactory {
      * @return The new condition
      */
     public static PseudoClassCondition createPseudoClassCondition(String id, boolean not, Context context) {
-        return PseudoClassCondition.createPseudoClassCondition(id, not, context);
+        return MapCSSRuleCache.record(PseudoClassCondition.createPseudoClassCondition(id, not, context),
+                MapCSSRuleCache.PSEUDO_CLASS_CONDITION, id, not, context);
     }
 
     /**
@@ -150,7 +162,7 @@ public final class ConditionFactory {
      * @return The new condition
      */
     public static ClassCondition createClassCondition(String id, boolean not, Context context) {
-        return new ClassCondition(id, not);
+        return MapCSSRuleCache.record(new ClassCondition(id, not), MapCSSRuleCache.CLASS_CONDITION, id, not, context);
     }
 
     /**
@@ -160,7 +172,7 @@ public final class ConditionFactory {
      * @return The new condition
      */
     public static ExpressionCondition createExpressionCondition(Expression e, Context context) {
-        return new ExpressionCondition(e);
+        return MapCSSRuleCache.record(new ExpressionCondition(e), MapCSSRuleCache.EXPRESSION_CONDITION, e, context);
     }
 
     /**
@@ -908,33 +920,43 @@ public final class ConditionFactory {
             PseudoClassCondition.register("anticlockwise", PseudoClasses::anticlockwise);
             PseudoClassCondition.register("areaStyle", PseudoClasses::areaStyle);
             PseudoClassCondition.register("clockwise", PseudoClasses::clockwise);
-            PseudoClassCondition.register("closed", PseudoClasses::closed);
-            PseudoClassCondition.register("closed2", PseudoClasses::closed2);
+            PseudoClassCondition.register("closed", PseudoClasses::closed, true);
+            PseudoClassCondition.register("closed2", PseudoClasses::closed2, true);
             PseudoClassCondition.register("completely_downloaded", PseudoClasses::completely_downloaded);
-            PseudoClassCondition.register("connection", PseudoClasses::connection);
+            PseudoClassCondition.register("connection", PseudoClasses::connection, true);
             PseudoClassCondition.register("highlighted", PseudoClasses::highlighted);
             PseudoClassCondition.register("inDownloadedArea", PseudoClasses::inDownloadedArea);
             PseudoClassCondition.register("modified", PseudoClasses::modified);
             PseudoClassCondition.register("new", PseudoClasses::_new);
             PseudoClassCondition.register("righthandtraffic", PseudoClasses::righthandtraffic);
             PseudoClassCondition.register("sameTags", PseudoClasses::sameTags);
-            PseudoClassCondition.register("selected", PseudoClasses::selected);
-            PseudoClassCondition.register("tagged", PseudoClasses::tagged);
+            PseudoClassCondition.register("selected", PseudoClasses::selected, true);
+            PseudoClassCondition.register("tagged", PseudoClasses::tagged, true);
             PseudoClassCondition.register("unclosed_multipolygon", PseudoClasses::unclosed_multipolygon);
-            PseudoClassCondition.register("unconnected", PseudoClasses::unconnected);
+            PseudoClassCondition.register("unconnected", PseudoClasses::unconnected, true);
         }
 
         private static void register(String name, Predicate<Environment> predicate) {
-            CONDITION_MAP.put(clean(name), new PseudoClassCondition(":" + name, predicate));
-            CONDITION_MAP.put("!" + clean(name), new PseudoClassCondition("!:" + name, predicate.negate()));
+            register(name, predicate, false);
+        }
+
+        private static void register(String name, Predicate<Environment> predicate, boolean shareable) {
+            CONDITION_MAP.put(clean(name), new PseudoClassCondition(":" + name, predicate, shareable));
+            CONDITION_MAP.put("!" + clean(name), new PseudoClassCondition("!:" + name, predicate.negate(), shareable));
         }
 
         private final String name;
         private final Predicate<Environment> predicate;
+        private final boolean shareable;
 
         protected PseudoClassCondition(String name, Predicate<Environment> predicate) {
+            this(name, predicate, false);
+        }
+
+        private PseudoClassCondition(String name, Predicate<Environment> predicate, boolean shareable) {
             this.name = name;
             this.predicate = predicate;
+            this.shareable = shareable;
         }
 
         /**
@@ -962,6 +984,16 @@ public final class ConditionFactory {
             return id.toLowerCase(Locale.ROOT).replaceAll("[-_]", "");
         }
 
+        /**
+         * Determines whether this pseudo class depends only on the tags, the closedness, the selection state and the number
+         * of parent ways of the primitive.
+         * @return {@code true} if the result can be shared between primitives with the same tags
+         * @since xxx
+         */
+        public boolean isShareable() {
+            return shareable;
+        }
+
         @Override
         public boolean applies(Environment e) {
             return predicate.test(e);
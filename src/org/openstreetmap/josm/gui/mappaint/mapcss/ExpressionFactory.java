@@ -11,9 +11,11 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.DoubleBinaryOperator;
 import java.util.function.DoubleUnaryOperator;
@@ -242,6 +244,16 @@ public final class ExpressionFactory {
 
     static final Map<String, Factory> FACTORY_MAP = new HashMap<>();
 
+    /**
+     * The functions whose result depends on more than the tags of the primitive, e.g. on its geometry or its parents.
+     * The preferences ({@code setting}, {@code JOSM_pref}) and the properties of the cascade ({@code prop}) do not count.
+     */
+    private static final Set<String> CONTEXT_FUNCTIONS = new HashSet<>(Arrays.asList(
+            "JOSM_search", "areasize", "at", "center", "child_tag", "count_roles", "gpx_distance", "index", "inside",
+            "is_anticlockwise", "is_clockwise", "is_right_hand_traffic", "osm_changeset_id", "osm_id", "osm_timestamp",
+            "osm_user_id", "osm_user_name", "osm_version", "outside", "parent_osm_id", "parent_osm_primitives",
+            "parent_tag", "parent_tags", "parent_way_angle", "random", "role", "waylength"));
+
     static {
         initFactories();
     }
@@ -378,6 +390,15 @@ public final class ExpressionFactory {
      * returns {@link NullExpression#INSTANCE}.
      */
     public static Expression createFunctionExpression(String name, List<Expression> args) {
+        final Expression expression = createFunctionExpressionImpl(name, args);
+        if (expression instanceof IsInsideFunction
+                || !CONTEXT_FUNCTIONS.contains(name) && args.stream().allMatch(ExpressionFactory::isShareable)) {
+            return MapCSSRuleCache.record(expression, MapCSSRuleCache.FUNCTION_EXPRESSION, name, args);
+        }
+        return MapCSSRuleCache.record(new ContextExpression(expression), MapCSSRuleCache.FUNCTION_EXPRESSION, name, args);
+    }
+
+    private static Expression createFunctionExpressionImpl(String name, List<Expression> args) {
         if ("cond".equals(name) && args.size() == 3)
             return new CondOperator(args.get(0), args.get(1), args.get(2));
         else if ("and".equals(name))
@@ -402,6 +423,40 @@ public final class ExpressionFactory {
         return NullExpression.INSTANCE;
     }
 
+    /**
+     * Determines whether the result of the given expression depends only on the tags of the primitive, the properties
+     * of the cascade and the preferences, so that it can be shared between primitives with the same tags.
+     * @param expression the expression
+     * @return {@code true} if the result of the expression can be shared between primitives with the same tags
+     * @since xxx
+     */
+    public static boolean isShareable(Expression expression) {
+        return !(expression instanceof ContextExpression || expression instanceof IsInsideFunction
+                || expression instanceof PlaceholderExpression);
+    }
+
+    /**
+     * An expression whose result depends on more than the tags of the primitive.
+     * @see #isShareable(Expression)
+     */
+    private static final class ContextExpression implements Expression {
+        private final Expression expression;
+
+        ContextExpression(Expression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public Object evaluate(Environment env) {
+            return expression.evaluate(env);
+        }
+
+        @Override
+        public String toString() {
+            return expression.toString();
+        }
+    }
+
     /**
      * Expression that always evaluates to null.
      */
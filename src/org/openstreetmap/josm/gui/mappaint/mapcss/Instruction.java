@@ -50,6 +50,10 @@ public interface Instruction extends StyleKeys {
         public final String key;
         public final Object val;
         public final boolean isSetInstruction;
+        /** The expression computing the value, {@code null} if the value is constant */
+        private final Expression expression;
+        /** Whether the value is the reference of an image */
+        private final boolean isImage;
 
         public AssignmentInstruction(String key, Object val, boolean isSetInstruction) {
             this.key = key.intern();
@@ -85,14 +89,17 @@ public interface Instruction extends StyleKeys {
             } else {
                 this.val = val;
             }
+            // resolved once, the instruction is executed for each matching primitive
+            this.expression = this.val instanceof Expression ? (Expression) this.val : null;
+            this.isImage = ICON_IMAGE.equals(key) || FILL_IMAGE.equals(key) || REPEAT_IMAGE.equals(key);
         }
 
         @Override
         public void execute(Environment env) {
             Object value;
-            if (val instanceof Expression) {
+            if (expression != null) {
                 try {
-                    value = ((Expression) val).evaluate(env);
+                    value = expression.evaluate(env);
                 } catch (RuntimeException ex) {
                     Logging.error(ex);
                     value = null;
@@ -100,7 +107,7 @@ public interface Instruction extends StyleKeys {
             } else {
                 value = val;
             }
-            if (ICON_IMAGE.equals(key) || FILL_IMAGE.equals(key) || REPEAT_IMAGE.equals(key)) {
+            if (isImage) {
                 if (value instanceof String) {
                     value = new IconReference((String) value, env.source);
                 }
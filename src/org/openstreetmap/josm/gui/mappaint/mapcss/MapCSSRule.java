@@ -1,10 +1,22 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.gui.mappaint.mapcss;
 
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
 import org.openstreetmap.josm.gui.mappaint.Environment;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.TagCondition;
+import org.openstreetmap.josm.gui.mappaint.mapcss.ConditionFactory.ClassCondition;
+import org.openstreetmap.josm.gui.mappaint.mapcss.ConditionFactory.ExpressionCondition;
+import org.openstreetmap.josm.gui.mappaint.mapcss.ConditionFactory.PseudoClassCondition;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Instruction.AssignmentInstruction;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.ChildOrParentSelector;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.ChildOrParentSelectorType;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.GeneralSelector;
 import org.openstreetmap.josm.tools.Utils;
 
 /**
@@ -24,6 +36,11 @@ public class MapCSSRule implements Comparable<MapCSSRule> {
      * The instructions for this selector
      */
     public final Declaration declaration;
+    /**
+     * The types of parents on which the result of this rule depends, {@code null} if it depends on more than the
+     * tags and the parents of the primitive
+     */
+    private final Set<OsmPrimitiveType> parentTypes;
 
     /**
      * Constructs a new {@code MapCSSRule}.
@@ -33,6 +50,95 @@ public class MapCSSRule implements Comparable<MapCSSRule> {
     public MapCSSRule(List<Selector> selectors, Declaration declaration) {
         this.selectors = Utils.toUnmodifiableList(selectors);
         this.declaration = declaration;
+        final boolean shareableInstructions = declaration != null && declaration.instructions.stream().allMatch(MapCSSRule::isShareable);
+        Set<OsmPrimitiveType> types = EnumSet.noneOf(OsmPrimitiveType.class);
+        for (Selector selector : this.selectors) {
+            final Set<OsmPrimitiveType> selectorTypes = getParentTypes(selector, shareableInstructions);
+            if (selectorTypes == null) {
+                types = null;
+                break;
+            }
+            types.addAll(selectorTypes);
+        }
+        this.parentTypes = types != null ? Collections.unmodifiableSet(types) : null;
+    }
+
+    /**
+     * Returns the types of parents on which the result of the selector and the instructions depend.
+     * @param selector the selector
+     * @param shareableInstructions whether the instructions depend only on the tags of the primitive
+     * @return the types of parents, {@code null} if the result depends on more than the tags and the parents
+     */
+    private static Set<OsmPrimitiveType> getParentTypes(Selector selector, boolean shareableInstructions) {
+        if (selector instanceof GeneralSelector) {
+            return shareableInstructions && isShareable(selector) ? Collections.emptySet() : null;
+        } else if (selector instanceof ChildOrParentSelector) {
+            // a relation > primitive or way > node selector only matches the members of a relation or the nodes of a way
+            final ChildOrParentSelector s = (ChildOrParentSelector) selector;
+            final OsmPrimitiveType parentType = Selector.BASE_RELATION.equals(s.left.getBase()) ? OsmPrimitiveType.RELATION
+                    : Selector.BASE_WAY.equals(s.left.getBase()) ? OsmPrimitiveType.WAY : null;
+            if (s.type != ChildOrParentSelectorType.CHILD || !(s.left instanceof GeneralSelector) || parentType == null
+                    || !isShareable(s.right)) {
+                return null;
+            } else if (shareableInstructions && s.left.getConditions().isEmpty() && s.link.getConditions().isEmpty()) {
+                // matches all the primitives with a parent of this type, e.g. way > node
+                return Collections.emptySet();
+            }
+            return EnumSet.of(parentType);
+        }
+        return null;
+    }
+
+    private static boolean isShareable(Selector selector) {
+        return selector instanceof GeneralSelector
+                && !(selector.getSubpart() instanceof Subpart.ExpressionSubpart)
+                && selector.getConditions().stream().allMatch(MapCSSRule::isShareable);
+    }
+
+    private static boolean isShareable(Condition condition) {
+        if (condition instanceof TagCondition || condition instanceof ClassCondition) {
+            return true;
+        } else if (condition instanceof PseudoClassCondition) {
+            return ((PseudoClassCondition) condition).isShareable();
+        } else if (condition instanceof ExpressionCondition) {
+            return ExpressionFactory.isShareable(((ExpressionCondition) condition).getExpression());
+        }
+        return false;
+    }
+
+    private static boolean isShareable(Instruction instruction) {
+        if (instruction instanceof AssignmentInstruction) {
+            final Object val = ((AssignmentInstruction) instruction).val;
+            return !(val instanceof Expression) || ExpressionFactory.isShareable((Expression) val);
+        }
+        return false;
+    }
+
+    /**
+     * Determines whether the result of this rule depends only on the type, the tags, the closedness, the selection
+     * state of the primitive, the number of its parent ways and whether it is a relation member. Then the styles
+     * computed for a primitive can be shared with the primitives with the same tags. This is not the case for the rules
+     * which test the geometry, the metadata or the tags of the parents of the primitive (e.g. {@code :new},
+     * {@code areasize()}, {@code osm_id()}, {@code relation[type=route] > way}).
+     * @return {@code true} if the result of this rule can be shared between primitives with the same tags
+     * @see #getParentTypes()
+     * @since xxx
+     */
+    public boolean isShareable() {
+        return parentTypes != null && parentTypes.isEmpty();
+    }
+
+    /**
+     * Returns the types of the parents on which the result of this rule depends, e.g. {@code relation} for
+     * {@code relation[type=route] > way}. The result of the rule can be shared between the primitives with the same
+     * tags which do not have parents of these types.
+     * @return the types of the parents on which the result depends, {@code null} if the result depends on more than
+     * the tags and the parents of the primitive
+     * @see #isShareable()
+     * @since xxx
+     */
+    public Set<OsmPrimitiveType> getParentTypes() {
+        return parentTypes;
     }
 
     /**
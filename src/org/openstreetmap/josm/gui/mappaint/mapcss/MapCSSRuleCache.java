@@ -0,0 +1,685 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint.mapcss;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.Version;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.gui.mappaint.Keyword;
+import org.openstreetmap.josm.gui.mappaint.MapPaintStyles.TagKeyReference;
+import org.openstreetmap.josm.gui.mappaint.Range;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.Context;
+import org.openstreetmap.josm.gui.mappaint.mapcss.ConditionFactory.KeyMatchType;
+import org.openstreetmap.josm.gui.mappaint.mapcss.ConditionFactory.Op;
+import org.openstreetmap.josm.gui.mappaint.mapcss.ExpressionFactory.NullExpression;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Instruction.AssignmentInstruction;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Instruction.RelativeFloat;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.ChildOrParentSelector;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.ChildOrParentSelectorType;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.GeneralSelector;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.LinkSelector;
+import org.openstreetmap.josm.gui.mappaint.mapcss.parsergen.MapCSSParser;
+import org.openstreetmap.josm.gui.mappaint.mapcss.parsergen.ParseException;
+import org.openstreetmap.josm.io.UTFInputStreamReader;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.tools.JosmRuntimeException;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Caches the parsed rules of MapCSS styles on disk.
+ * <p>
+ * Parsing the default map paint style and the validator rules takes a significant part of the startup time. When a
+ * style is parsed, the calls of the factories ({@link ConditionFactory}, {@link ExpressionFactory}) are recorded, and the
+ * rules are written to a binary file in the cache directory. The next time the same style is loaded, the rules are built
+ * again by calling the factories with the recorded arguments, without running the {@link MapCSSParser}. The result is
+ * the same as parsing the style, but only the arguments of the factories are read from the file.
+ * <p>
+ * The cache file of a style is found from its URL. It is only used if it has been written by the same JOSM version for
+ * the same content of the style. The styles with parse errors are not cached, so that the errors are reported again.
+ * The rule index ({@link MapCSSRuleIndex}) is built again after loading the rules, this is cheap compared to parsing.
+ * @since xxx
+ */
+public final class MapCSSRuleCache {
+
+    /** Whether the parsed rules of the styles are cached on disk */
+    public static final BooleanProperty ENABLED = new BooleanProperty("mappaint.mapcss.rule-cache", true);
+
+    /** The version of the file format, to be increased when the format or the factories change */
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAGIC = 0x4d435343; // MCSC
+
+    /** The factory calls recorded while parsing a style on this thread, {@code null} if no style is parsed */
+    private static final ThreadLocal<Map<Object, Object[]>> ORIGINS = new ThreadLocal<>();
+
+    // the recorded factories
+    static final byte KEY_VALUE_CONDITION = 1;
+    static final byte REGEXP_KEY_REGEXP_VALUE_CONDITION = 2;
+    static final byte KEY_CONDITION = 3;
+    static final byte PSEUDO_CLASS_CONDITION = 4;
+    static final byte CLASS_CONDITION = 5;
+    static final byte EXPRESSION_CONDITION = 6;
+    static final byte FUNCTION_EXPRESSION = 7;
+    static final byte NAMED_COLOR = 8;
+
+    // the other objects
+    private static final byte NULL = 0;
+    private static final byte STRING = 20;
+    private static final byte FLOAT = 21;
+    private static final byte BOOLEAN = 22;
+    private static final byte COLOR = 23;
+    private static final byte KEYWORD = 24;
+    private static final byte RELATIVE_FLOAT = 25;
+    private static final byte FLOAT_ARRAY = 26;
+    private static final byte TAG_KEY_REFERENCE = 27;
+    private static final byte NULL_EXPRESSION = 28;
+    private static final byte LITERAL_EXPRESSION = 29;
+    private static final byte PLACEHOLDER_EXPRESSION = 30;
+    private static final byte GENERAL_SELECTOR = 31;
+    private static final byte CHILD_OR_PARENT_SELECTOR = 32;
+    private static final byte DEFAULT_SUBPART = 33;
+    private static final byte STRING_SUBPART = 34;
+    private static final byte EXPRESSION_SUBPART = 35;
+
+    private MapCSSRuleCache() {
+        // Hide default constructor for utils classes
+    }
+
+    /**
+     * Records the arguments of a factory, when a style is parsed on this thread.
+     * @param <T> the type of the created object
+     * @param created the object created by the factory
+     * @param factory the factory, e.g. {@link #KEY_VALUE_CONDITION}
+     * @param args the arguments of the factory
+     * @return {@code created}
+     */
+    static <T> T record(T created, byte factory, Object... args) {
+        final Map<Object, Object[]> origins = ORIGINS.get();
+        if (origins != null && created != null && created != NullExpression.INSTANCE) {
+            final Object[] origin = new Object[args.length + 1];
+            origin[0] = factory;
+            System.arraycopy(args, 0, origin, 1, args.length);
+            origins.put(created, origin);
+        }
+        return created;
+    }
+
+    /**
+     * Starts recording the factory calls on this thread.
+     * @return the factory calls, by created object
+     */
+    static Map<Object, Object[]> startRecording() {
+        final Map<Object, Object[]> origins = new IdentityHashMap<>();
+        ORIGINS.set(origins);
+        return origins;
+    }
+
+    /**
+     * Stops recording the factory calls on this thread.
+     */
+    static void stopRecording() {
+        ORIGINS.remove();
+    }
+
+    /**
+     * Parses a style and adds its rules to the style source, or adds the rules cached for this style.
+     * @param sheet the style source
+     * @param url the URL of the style, {@code null} to parse it without cache
+     * @param in the content of the style
+     * @throws IOException if the style cannot be read
+     * @throws ParseException if the style cannot be parsed
+     */
+    public static void parse(MapCSSStyleSource sheet, String url, InputStream in) throws IOException, ParseException {
+        if (url == null || !ENABLED.get()) {
+            parse(sheet, UTFInputStreamReader.create(in));
+            return;
+        }
+        parse(sheet, url, in, new File(Config.getDirs().getCacheDirectory(true), "mapcss"));
+    }
+
+    /**
+     * Parses a style and adds its rules to the style source, or adds the rules cached for this style.
+     * @param sheet the style source
+     * @param url the URL of the style
+     * @param in the content of the style
+     * @param dir the cache directory
+     * @throws IOException if the style cannot be read
+     * @throws ParseException if the style cannot be parsed
+     */
+    static void parse(MapCSSStyleSource sheet, String url, InputStream in, File dir) throws IOException, ParseException {
+        final byte[] content = Utils.readBytesFromStream(in);
+        final byte[] hash = hash(content);
+        final File file = new File(dir, Utils.md5Hex(url) + ".bin");
+        if (file.isFile()) {
+            final List<MapCSSRule> rules = read(file, url, hash, sheet);
+            if (rules != null) {
+                sheet.rules.addAll(rules);
+                return;
+            }
+        }
+        final int errors = sheet.getErrors().size();
+        final int first = sheet.rules.size();
+        final Map<Object, Object[]> origins = startRecording();
+        try (Reader reader = UTFInputStreamReader.create(new ByteArrayInputStream(content))) {
+            parse(sheet, reader);
+        } finally {
+            stopRecording();
+        }
+        if (sheet.getErrors().size() == errors) {
+            write(file, url, hash, sheet, sheet.rules.subList(first, sheet.rules.size()), origins);
+        }
+    }
+
+    /**
+     * Parses a style and adds its rules to the style source.
+     * @param sheet the style source
+     * @param reader the content of the style
+     * @throws IOException if the style cannot be read
+     * @throws ParseException if the style cannot be parsed
+     */
+    public static void parse(MapCSSStyleSource sheet, Reader reader) throws IOException, ParseException {
+        // evaluate @media { ... } blocks
+        MapCSSParser preprocessor = new MapCSSParser(reader, MapCSSParser.LexicalState.PREPROCESSOR);
+
+        // do the actual mapcss parsing
+        try (Reader in2 = new StringReader(preprocessor.pp_root(sheet))) {
+            new MapCSSParser(in2, MapCSSParser.LexicalState.DEFAULT).sheet(sheet);
+        }
+    }
+
+    static byte[] hash(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new JosmRuntimeException(e);
+        }
+    }
+
+    private static List<MapCSSRule> read(File file, String url, byte[] hash, MapCSSStyleSource sheet) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            final List<MapCSSRule> rules = read(in, url, hash, sheet);
+            if (rules == null) {
+                Logging.debug("Outdated MapCSS rule cache {0} of {1}", file, url);
+            }
+            return rules;
+        } catch (IOException | RuntimeException e) {
+            // e.g. a truncated file, or a style which does not work with the current factories
+            Logging.warn("Cannot read MapCSS rule cache {0} of {1}: {2}", file, url, e);
+            return null;
+        }
+    }
+
+    private static void write(File file, String url, byte[] hash, MapCSSStyleSource sheet, List<MapCSSRule> rules,
+            Map<Object, Object[]> origins) {
+        Path tmp = null;
+        try {
+            Files.createDirectories(file.toPath().getParent());
+            tmp = Files.createTempFile(file.toPath().getParent(), file.getName(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                write(out, url, sheet.isRemoveAreaStylePseudoClass(), hash, rules, origins);
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | IllegalArgumentException e) {
+            Logging.warn("Cannot write MapCSS rule cache {0} of {1}: {2}", file, url, e);
+            if (tmp != null) {
+                Utils.deleteFileIfExists(tmp.toFile());
+            }
+        }
+    }
+
+    /**
+     * Writes the rules of a style.
+     * @param out the output stream
+     * @param url the URL of the style
+     * @param removeAreaStyle whether the {@code :areaStyle} pseudo classes have been removed while parsing the style
+     * @param hash the hash of the content of the style
+     * @param rules the rules
+     * @param origins the factory calls recorded while parsing the style
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if the rules contain an object which has not been recorded
+     */
+    static void write(OutputStream out, String url, boolean removeAreaStyle, byte[] hash, List<MapCSSRule> rules,
+            Map<Object, Object[]> origins) throws IOException {
+        final RuleWriter writer = new RuleWriter(origins);
+        for (MapCSSRule rule : rules) {
+            writer.writeRule(rule);
+        }
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(Version.getInstance().getVersion());
+        data.writeUTF(String.valueOf(Version.getInstance().getTime()));
+        data.writeUTF(url);
+        data.writeBoolean(removeAreaStyle);
+        data.writeInt(hash.length);
+        data.write(hash);
+        data.writeInt(writer.strings.size());
+        for (String s : writer.strings) {
+            data.writeUTF(s);
+        }
+        data.writeInt(rules.size());
+        writer.body.writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * Reads the rules of a style.
+     * @param in the input stream
+     * @param url the URL of the style
+     * @param hash the hash of the content of the style
+     * @param sheet the style source
+     * @return the rules, {@code null} if they have been written by another JOSM version, for another content or for
+     * another style source
+     * @throws IOException if an I/O error occurs
+     */
+    static List<MapCSSRule> read(InputStream in, String url, byte[] hash, MapCSSStyleSource sheet) throws IOException {
+        final DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC
+                || data.readInt() != FORMAT_VERSION
+                || data.readInt() != Version.getInstance().getVersion()
+                || !data.readUTF().equals(String.valueOf(Version.getInstance().getTime()))
+                || !data.readUTF().equals(url)
+                || data.readBoolean() != sheet.isRemoveAreaStylePseudoClass()) {
+            return null;
+        }
+        final byte[] fileHash = new byte[data.readInt()];
+        data.readFully(fileHash);
+        if (!Arrays.equals(fileHash, hash)) {
+            return null;
+        }
+        final String[] strings = new String[data.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = data.readUTF().intern();
+        }
+        final RuleReader reader = new RuleReader(data, strings, sheet);
+        final int size = data.readInt();
+        final List<MapCSSRule> rules = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rules.add(reader.readRule());
+        }
+        return rules;
+    }
+
+    /**
+     * Writes the rules to a buffer, and the strings to a table.
+     */
+    private static final class RuleWriter {
+        private final Map<Object, Object[]> origins;
+        private final Map<String, Integer> stringIndex = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(body);
+
+        RuleWriter(Map<Object, Object[]> origins) {
+            this.origins = origins;
+        }
+
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                out.writeInt(-1);
+                return;
+            }
+            Integer index = stringIndex.get(s);
+            if (index == null) {
+                index = strings.size();
+                strings.add(s);
+                stringIndex.put(s, index);
+            }
+            out.writeInt(index);
+        }
+
+        void writeEnum(Enum<?> e) throws IOException {
+            out.writeByte(e == null ? -1 : e.ordinal());
+        }
+
+        void writeRule(MapCSSRule rule) throws IOException {
+            out.writeInt(rule.selectors.size());
+            for (Selector selector : rule.selectors) {
+                writeSelector(selector);
+            }
+            out.writeInt(rule.declaration.idx);
+            out.writeInt(rule.declaration.instructions.size());
+            for (Instruction instruction : rule.declaration.instructions) {
+                if (!(instruction instanceof AssignmentInstruction)) {
+                    throw new IllegalArgumentException("Unsupported instruction: " + instruction);
+                }
+                final AssignmentInstruction ai = (AssignmentInstruction) instruction;
+                writeString(ai.key);
+                out.writeBoolean(ai.isSetInstruction);
+                writeValue(ai.val);
+            }
+        }
+
+        void writeSelector(Selector selector) throws IOException {
+            if (selector instanceof GeneralSelector) {
+                final GeneralSelector s = (GeneralSelector) selector;
+                out.writeByte(GENERAL_SELECTOR);
+                writeString(s.base);
+                out.writeDouble(s.range.getLower());
+                out.writeDouble(s.range.getUpper());
+                writeConditions(s.getConditions());
+                writeSubpart(s.subpart);
+            } else if (selector instanceof ChildOrParentSelector) {
+                final ChildOrParentSelector s = (ChildOrParentSelector) selector;
+                out.writeByte(CHILD_OR_PARENT_SELECTOR);
+                writeSelector(s.left);
+                writeConditions(s.link.getConditions());
+                writeSelector(s.right);
+                writeEnum(s.type);
+            } else {
+                throw new IllegalArgumentException("Unsupported selector: " + selector);
+            }
+        }
+
+        void writeSubpart(Subpart subpart) throws IOException {
+            if (subpart == Subpart.DEFAULT_SUBPART) {
+                out.writeByte(DEFAULT_SUBPART);
+            } else if (subpart instanceof Subpart.StringSubpart) {
+                out.writeByte(STRING_SUBPART);
+                writeString(subpart.getId(null));
+            } else if (subpart instanceof Subpart.ExpressionSubpart) {
+                out.writeByte(EXPRESSION_SUBPART);
+                writeExpression(((Subpart.ExpressionSubpart) subpart).getExpression());
+            } else {
+                throw new IllegalArgumentException("Unsupported subpart: " + subpart);
+            }
+        }
+
+        void writeConditions(List<Condition> conditions) throws IOException {
+            out.writeInt(conditions.size());
+            for (Condition condition : conditions) {
+                writeRecorded(condition);
+            }
+        }
+
+        void writeExpression(Expression expression) throws IOException {
+            if (expression == NullExpression.INSTANCE) {
+                out.writeByte(NULL_EXPRESSION);
+            } else if (expression instanceof LiteralExpression) {
+                out.writeByte(LITERAL_EXPRESSION);
+                writeValue(((LiteralExpression) expression).getLiteral());
+            } else if (expression instanceof PlaceholderExpression) {
+                out.writeByte(PLACEHOLDER_EXPRESSION);
+                writeString(((PlaceholderExpression) expression).getPlaceholder());
+            } else {
+                writeRecorded(expression);
+            }
+        }
+
+        /**
+         * Writes the arguments of the factory which created an object, see {@link MapCSSRuleCache#record}.
+         * @param created the created object
+         * @throws IOException if an I/O error occurs
+         */
+        void writeRecorded(Object created) throws IOException {
+            final Object[] origin = origins.get(created);
+            if (origin == null) {
+                throw new IllegalArgumentException("Not created by a recorded factory: " + created);
+            }
+            final byte factory = (Byte) origin[0];
+            out.writeByte(factory);
+            switch (factory) {
+            case KEY_VALUE_CONDITION:
+                writeString((String) origin[1]);
+                writeString((String) origin[2]);
+                writeEnum((Op) origin[3]);
+                writeEnum((Context) origin[4]);
+                out.writeBoolean((Boolean) origin[5]);
+                break;
+            case REGEXP_KEY_REGEXP_VALUE_CONDITION:
+                writeString((String) origin[1]);
+                writeString((String) origin[2]);
+                writeEnum((Op) origin[3]);
+                break;
+            case KEY_CONDITION:
+                writeString((String) origin[1]);
+                out.writeBoolean((Boolean) origin[2]);
+                writeEnum((KeyMatchType) origin[3]);
+                writeEnum((Context) origin[4]);
+                break;
+            case PSEUDO_CLASS_CONDITION:
+            case CLASS_CONDITION:
+                writeString((String) origin[1]);
+                out.writeBoolean((Boolean) origin[2]);
+                writeEnum((Context) origin[3]);
+                break;
+            case EXPRESSION_CONDITION:
+                writeExpression((Expression) origin[1]);
+                writeEnum((Context) origin[2]);
+                break;
+            case FUNCTION_EXPRESSION:
+                writeString((String) origin[1]);
+                final List<?> args = (List<?>) origin[2];
+                out.writeInt(args.size());
+                for (Object arg : args) {
+                    writeExpression((Expression) arg);
+                }
+                break;
+            case NAMED_COLOR:
+                writeString((String) origin[1]);
+                writeString((String) origin[2]);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown factory: " + factory);
+            }
+        }
+
+        void writeValue(Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof String) {
+                out.writeByte(STRING);
+                writeString((String) value);
+            } else if (value instanceof Float) {
+                out.writeByte(FLOAT);
+                out.writeFloat((Float) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Color && origins.containsKey(value)) {
+                // a named color, which can be changed in the preferences
+                writeRecorded(value);
+            } else if (value instanceof Color) {
+                out.writeByte(COLOR);
+                out.writeInt(((Color) value).getRGB());
+            } else if (value instanceof Keyword) {
+                out.writeByte(KEYWORD);
+                writeString(((Keyword) value).val);
+            } else if (value instanceof RelativeFloat) {
+                out.writeByte(RELATIVE_FLOAT);
+                out.writeFloat(((RelativeFloat) value).val);
+            } else if (value instanceof float[]) {
+                out.writeByte(FLOAT_ARRAY);
+                out.writeInt(((float[]) value).length);
+                for (float f : (float[]) value) {
+                    out.writeFloat(f);
+                }
+            } else if (value instanceof TagKeyReference) {
+                out.writeByte(TAG_KEY_REFERENCE);
+                writeString(((TagKeyReference) value).key);
+            } else if (value instanceof Expression) {
+                writeExpression((Expression) value);
+            } else {
+                throw new IllegalArgumentException("Unsupported value: " + value);
+            }
+        }
+    }
+
+    /**
+     * Reads the rules, and calls the factories with the recorded arguments.
+     */
+    private static final class RuleReader {
+        private final DataInputStream in;
+        private final String[] strings;
+        private final MapCSSStyleSource sheet;
+
+        RuleReader(DataInputStream in, String[] strings, MapCSSStyleSource sheet) {
+            this.in = in;
+            this.strings = strings;
+            this.sheet = sheet;
+        }
+
+        String readString() throws IOException {
+            final int index = in.readInt();
+            return index < 0 ? null : strings[index];
+        }
+
+        <E extends Enum<E>> E readEnum(E[] values) throws IOException {
+            final byte ordinal = in.readByte();
+            return ordinal < 0 ? null : values[ordinal];
+        }
+
+        MapCSSRule readRule() throws IOException {
+            final int size = in.readInt();
+            final List<Selector> selectors = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                selectors.add(readSelector());
+            }
+            final int idx = in.readInt();
+            final int instructionCount = in.readInt();
+            final List<Instruction> instructions = new ArrayList<>(instructionCount);
+            for (int i = 0; i < instructionCount; i++) {
+                final String key = readString();
+                final boolean isSetInstruction = in.readBoolean();
+                instructions.add(new AssignmentInstruction(key, readValue(in.readByte()), isSetInstruction));
+            }
+            return new MapCSSRule(selectors, new Declaration(instructions, idx));
+        }
+
+        Selector readSelector() throws IOException {
+            final byte type = in.readByte();
+            if (type == GENERAL_SELECTOR) {
+                final String base = readString();
+                final Range range = new Range(in.readDouble(), in.readDouble());
+                final List<Condition> conditions = readConditions();
+                return new GeneralSelector(base, range, conditions, readSubpart());
+            } else if (type == CHILD_OR_PARENT_SELECTOR) {
+                final Selector left = readSelector();
+                final LinkSelector link = new LinkSelector(readConditions());
+                final Selector right = readSelector();
+                return new ChildOrParentSelector(left, link, right, readEnum(ChildOrParentSelectorType.values()));
+            }
+            throw new IOException("Unknown selector: " + type);
+        }
+
+        Subpart readSubpart() throws IOException {
+            final byte type = in.readByte();
+            switch (type) {
+            case DEFAULT_SUBPART:
+                return null;
+            case STRING_SUBPART:
+                return new Subpart.StringSubpart(readString());
+            case EXPRESSION_SUBPART:
+                return new Subpart.ExpressionSubpart(readExpression());
+            default:
+                throw new IOException("Unknown subpart: " + type);
+            }
+        }
+
+        List<Condition> readConditions() throws IOException {
+            final int size = in.readInt();
+            final List<Condition> conditions = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                conditions.add(readCondition(in.readByte()));
+            }
+            return conditions;
+        }
+
+        Condition readCondition(byte factory) throws IOException {
+            switch (factory) {
+            case KEY_VALUE_CONDITION:
+                return ConditionFactory.createKeyValueCondition(readString(), readString(), readEnum(Op.values()),
+                        readEnum(Context.values()), in.readBoolean());
+            case REGEXP_KEY_REGEXP_VALUE_CONDITION:
+                return ConditionFactory.createRegexpKeyRegexpValueCondition(readString(), readString(), readEnum(Op.values()));
+            case KEY_CONDITION:
+                return ConditionFactory.createKeyCondition(readString(), in.readBoolean(), readEnum(KeyMatchType.values()),
+                        readEnum(Context.values()));
+            case PSEUDO_CLASS_CONDITION:
+                return ConditionFactory.createPseudoClassCondition(readString(), in.readBoolean(), readEnum(Context.values()));
+            case CLASS_CONDITION:
+                return ConditionFactory.createClassCondition(readString(), in.readBoolean(), readEnum(Context.values()));
+            case EXPRESSION_CONDITION:
+                return ConditionFactory.createExpressionCondition(readExpression(), readEnum(Context.values()));
+            default:
+                throw new IOException("Unknown condition: " + factory);
+            }
+        }
+
+        Expression readExpression() throws IOException {
+            final Object value = readValue(in.readByte());
+            if (!(value instanceof Expression)) {
+                throw new IOException("Expression expected: " + value);
+            }
+            return (Expression) value;
+        }
+
+        Object readValue(byte type) throws IOException {
+            switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString();
+            case FLOAT:
+                return in.readFloat();
+            case BOOLEAN:
+                return in.readBoolean();
+            case COLOR:
+                return new Color(in.readInt(), true);
+            case NAMED_COLOR:
+                return sheet.getNamedColor(readString(), readString());
+            case KEYWORD:
+                return new Keyword(readString());
+            case RELATIVE_FLOAT:
+                return new RelativeFloat(in.readFloat());
+            case FLOAT_ARRAY:
+                final float[] array = new float[in.readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = in.readFloat();
+                }
+                return array;
+            case TAG_KEY_REFERENCE:
+                return new TagKeyReference(readString());
+            case NULL_EXPRESSION:
+                return NullExpression.INSTANCE;
+            case LITERAL_EXPRESSION:
+                return new LiteralExpression(readValue(in.readByte()));
+            case PLACEHOLDER_EXPRESSION:
+                return new PlaceholderExpression(readString());
+            case FUNCTION_EXPRESSION:
+                final String name = readString();
+                final int size = in.readInt();
+                final List<Expression> args = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    args.add(readExpression());
+                }
+                return ExpressionFactory.createFunctionExpression(name, args);
+            default:
+                throw new IOException("Unknown value: " + type);
+            }
+        }
+    }
+}
@@ -4,13 +4,10 @@ package org.openstreetmap.josm.gui.mappaint.mapcss;
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.awt.Color;
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.Reader;
-import java.io.StringReader;
 import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -29,6 +26,8 @@ import java.util.zip.ZipFile;
 import org.openstreetmap.josm.data.Version;
 import org.openstreetmap.josm.data.osm.IPrimitive;
 import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.preferences.NamedColorProperty;
 import org.openstreetmap.josm.data.preferences.sources.SourceEntry;
 import org.openstreetmap.josm.gui.mappaint.Cascade;
 import org.openstreetmap.josm.gui.mappaint.Environment;
@@ -40,13 +39,12 @@ import org.openstreetmap.josm.gui.mappaint.StyleSetting.StyleSettingGroup;
 import org.openstreetmap.josm.gui.mappaint.StyleSettingFactory;
 import org.openstreetmap.josm.gui.mappaint.StyleSource;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.GeneralSelector;
-import org.openstreetmap.josm.gui.mappaint.mapcss.parsergen.MapCSSParser;
 import org.openstreetmap.josm.gui.mappaint.mapcss.parsergen.ParseException;
 import org.openstreetmap.josm.gui.mappaint.mapcss.parsergen.TokenMgrError;
 import org.openstreetmap.josm.gui.mappaint.styleelement.LineElement;
 import org.openstreetmap.josm.io.CachedFile;
-import org.openstreetmap.josm.io.UTFInputStreamReader;
 import org.openstreetmap.josm.tools.CheckParameterUtil;
+import org.openstreetmap.josm.tools.ColorHelper;
 import org.openstreetmap.josm.tools.I18n;
 import org.openstreetmap.josm.tools.JosmRuntimeException;
 import org.openstreetmap.josm.tools.LanguageInfo;
@@ -161,14 +159,8 @@ public class MapCSSStyleSource extends StyleSource {
             // remove "areaStyle" pseudo classes intended only for validator (causes StackOverflowError otherwise), see #16183
             removeAreaStylePseudoClass = url == null || !url.contains("validator"); // resource://data/validator/ or xxx.validator.mapcss
             try (InputStream in = getSourceInputStream()) {
-                try (Reader reader = new BufferedReader(UTFInputStreamReader.create(in))) {
-                    // evaluate @media { ... } blocks
-                    MapCSSParser preprocessor = new MapCSSParser(reader, MapCSSParser.LexicalState.PREPROCESSOR);
-
-                    // do the actual mapcss parsing
-                    try (Reader in2 = new StringReader(preprocessor.pp_root(this))) {
-                        new MapCSSParser(in2, MapCSSParser.LexicalState.DEFAULT).sheet(this);
-                    }
+                try {
+                    MapCSSRuleCache.parse(this, url, in);
 
                     loadMeta();
                     if (!metadataOnly) {
@@ -359,6 +351,15 @@ public class MapCSSStyleSource extends StyleSource {
         Iterator<MapCSSRule> candidates = ruleIndex.getRuleCandidates(osm);
         while (candidates.hasNext()) {
             MapCSSRule r = candidates.next();
+            if (!r.isShareable()) {
+                final Set<OsmPrimitiveType> parentTypes = r.getParentTypes();
+                if (parentTypes == null) {
+                    mc.shareable = false;
+                } else {
+                    mc.dependsOnParentWays |= parentTypes.contains(OsmPrimitiveType.WAY);
+                    mc.dependsOnParentRelations |= parentTypes.contains(OsmPrimitiveType.RELATION);
+                }
+            }
             for (Selector s : r.selectors) {
                 env.clearSelectorMatchingInformation();
                 env.layer = s.getSubpart().getId(env);
@@ -423,6 +424,19 @@ public class MapCSSStyleSource extends StyleSource {
         rules.removeIf(x -> x.selectors.get(0) instanceof GeneralSelector && Selector.BASE_META.equals(x.selectors.get(0).getBase()));
     }
 
+    /**
+     * Returns a named color, which can be changed in the preferences, e.g. {@code highway_primary#ff0000}.
+     * Only for use in MapCSSParser!
+     * @param name the name of the color
+     * @param color the default color, as HTML color
+     * @return the color
+     * @since xxx
+     */
+    public Color getNamedColor(String name, String color) {
+        return MapCSSRuleCache.record(new NamedColorProperty(NamedColorProperty.COLOR_CATEGORY_MAPPAINT, title, name,
+                ColorHelper.html2color(color)).get(), MapCSSRuleCache.NAMED_COLOR, name, color);
+    }
+
     /**
      * Whether to remove "areaStyle" pseudo classes. Only for use in MapCSSParser!
      * @return whether to remove "areaStyle" pseudo classes
@@ -32,6 +32,15 @@ public final class PlaceholderExpression implements Expression {
         this.placeholder = placeholder.intern();
     }
 
+    /**
+     * Returns the string containing the placeholders.
+     * @return the string containing the placeholders
+     * @since xxx
+     */
+    public String getPlaceholder() {
+        return placeholder;
+    }
+
     @Override
     public Object evaluate(Environment env) {
         if (env.selector() == null) {
@@ -794,10 +794,12 @@ public interface Selector {
         }
 
         public boolean matchesBase(IPrimitive p) {
-            if (!matchesBase(p.getType())) {
+            final OsmPrimitiveType type = p.getType();
+            if (!matchesBase(type)) {
                 return false;
             } else {
-                if (p instanceof IRelation) {
+                // avoid the costly instanceof check of an interface for nodes and ways, the most common primitives
+                if (type != OsmPrimitiveType.NODE && type != OsmPrimitiveType.WAY && p instanceof IRelation) {
                     if (BASE_AREA.equals(base)) {
                         return ((IRelation<?>) p).isMultipolygon();
                     } else if (BASE_CANVAS.equals(base)) {
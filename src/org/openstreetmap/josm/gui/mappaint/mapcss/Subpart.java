@@ -63,6 +63,15 @@ public interface Subpart {
             return Cascade.convertTo(id.evaluate(env), String.class);
         }
 
+        /**
+         * Returns the expression giving the identifier.
+         * @return the expression
+         * @since xxx
+         */
+        public Expression getExpression() {
+            return id;
+        }
+
         @Override
         public String toString() {
             return String.valueOf(id);
@@ -141,11 +141,13 @@ public abstract class AbstractReader {
      *
      */
     protected void processNodesAfterParsing() {
+        List<OsmPrimitive> nodes = new ArrayList<>();
         for (OsmPrimitive primitive: externalIdMap.values()) {
             if (primitive instanceof Node) {
-                this.ds.addPrimitive(primitive);
+                nodes.add(primitive);
             }
         }
+        this.ds.addPrimitives(nodes);
     }
 
     /**
@@ -155,6 +157,7 @@ public abstract class AbstractReader {
      * @throws IllegalDataException if a data integrity problem is detected
      */
     protected void processWaysAfterParsing() throws IllegalDataException {
+        List<Way> parsedWays = new ArrayList<>(ways.size());
         for (Entry<Long, Collection<Long>> entry : ways.entrySet()) {
             Long externalWayId = entry.getKey();
             Way w = (Way) externalIdMap.get(new SimplePrimitiveId(externalWayId, OsmPrimitiveType.WAY));
@@ -185,8 +188,9 @@ public abstract class AbstractReader {
                 Logging.info(tr("Way {0} with {1} nodes is incomplete because at least one node was missing in the loaded data.",
                         Long.toString(externalWayId), w.getNodesCount()));
             }
-            ds.addPrimitive(w);
+            parsedWays.add(w);
         }
+        ds.addPrimitives(parsedWays);
     }
 
     /**
@@ -198,12 +202,13 @@ public abstract class AbstractReader {
     protected void processRelationsAfterParsing() throws IllegalDataException {
 
         // First add all relations to make sure that when relation reference other relation, the referenced will be already in dataset
+        List<Relation> parsedRelations = new ArrayList<>(relations.size());
         for (Long externalRelationId : relations.keySet()) {
-            Relation relation = (Relation) externalIdMap.get(
+            parsedRelations.add((Relation) externalIdMap.get(
                     new SimplePrimitiveId(externalRelationId, OsmPrimitiveType.RELATION)
-            );
-            ds.addPrimitive(relation);
+            ));
         }
+        ds.addPrimitives(parsedRelations);
 
         for (Entry<Long, Collection<RelationMemberData>> entry : relations.entrySet()) {
             Long externalRelationId = entry.getKey();
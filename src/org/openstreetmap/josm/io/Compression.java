@@ -1,6 +1,7 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.io;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -19,6 +20,7 @@ import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.Utils;
 
@@ -47,6 +49,9 @@ public enum Compression {
      */
     XZ;
 
+    /** The preference for the number of threads used to decompress files, {@code 1} decompresses on the calling thread only */
+    private static final String DECOMPRESSOR_THREADS = "compression.numberOfThreads";
+
     /**
      * Determines the compression type depending on the suffix of {@code name}.
      * @param name File name including extension
@@ -200,6 +205,51 @@ public enum Compression {
         }
     }
 
+    /**
+     * Returns an un-compressing {@link InputStream} for the {@link File} {@code file}, which decompresses the file
+     * on background threads.
+     * @param file file
+     * @return un-compressing input stream
+     * @throws IOException if any I/O error occurs
+     * @see #getParallelUncompressedFileInputStream(Path)
+     * @since xxx
+     */
+    public static InputStream getParallelUncompressedFileInputStream(File file) throws IOException {
+        try {
+            return getParallelUncompressedFileInputStream(file.toPath());  // NOPMD
+        } catch (InvalidPathException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Returns an un-compressing {@link InputStream} for the {@link Path} {@code path}, which decompresses the file
+     * on background threads. This is faster than {@link #getUncompressedFileInputStream(Path)} for large files
+     * if the data is processed while it is read: bzip2 blocks are decompressed in parallel, other formats are
+     * decompressed ahead of the reading thread.
+     * @param path path
+     * @return un-compressing input stream
+     * @throws IOException if any I/O error occurs
+     * @since xxx
+     */
+    public static InputStream getParallelUncompressedFileInputStream(Path path) throws IOException {
+        final Compression compression = byExtension(path.getFileName().toString());
+        if (compression == NONE || Config.getPref().getInt(DECOMPRESSOR_THREADS, Runtime.getRuntime().availableProcessors()) <= 1) {
+            return getUncompressedFileInputStream(path);
+        }
+        if (compression == BZIP2) {
+            return new ParallelBZip2InputStream(() -> new BufferedInputStream(Files.newInputStream(path)),
+                    Utils.newForkJoinPool(DECOMPRESSOR_THREADS, "bzip2-decompressor-%d", Thread.NORM_PRIORITY));
+        }
+        InputStream in = Files.newInputStream(path); // NOPMD
+        try {
+            return new ReadAheadInputStream(compression.getUncompressedInputStream(in), "decompressor");
+        } catch (IOException e) {
+            Utils.close(in);
+            throw e;
+        }
+    }
+
     /**
      * Returns a compressing {@link OutputStream} for {@code out}.
      * @param out raw output stream
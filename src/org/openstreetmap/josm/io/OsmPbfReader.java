@@ -7,14 +7,21 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.DataSource;
@@ -34,12 +41,13 @@ import org.openstreetmap.josm.data.osm.pbf.Blob;
 import org.openstreetmap.josm.data.osm.pbf.BlobHeader;
 import org.openstreetmap.josm.data.osm.pbf.HeaderBlock;
 import org.openstreetmap.josm.data.osm.pbf.Info;
-import org.openstreetmap.josm.data.protobuf.ProtobufPacked;
 import org.openstreetmap.josm.data.protobuf.ProtobufParser;
+import org.openstreetmap.josm.data.protobuf.ProtobufReader;
 import org.openstreetmap.josm.data.protobuf.ProtobufRecord;
 import org.openstreetmap.josm.data.protobuf.WireType;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.Utils;
 
 import jakarta.annotation.Nonnull;
@@ -128,6 +136,10 @@ public final class OsmPbfReader extends AbstractReader {
      * The maximum Blob size. Blobs should (but not must) be less than half this
      */
     private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+    /**
+     * The preference for the number of threads used to decode data blobs. {@code 1} decodes on the parsing thread.
+     */
+    private static final String DECODER_THREADS = "pbf.reader.numberOfThreads";
 
     private OsmPbfReader() {
         // Hide constructor
@@ -158,6 +170,10 @@ public final class OsmPbfReader extends AbstractReader {
         } else {
             inputStream = new BoundedInputStream(new BufferedInputStream(source));
         }
+        // The calling thread only slices the file into blobs; inflating and decoding happens on the pool (if any)
+        final ForkJoinPool pool = Config.getPref().getInt(DECODER_THREADS, Runtime.getRuntime().availableProcessors()) > 1
+                ? Utils.newForkJoinPool(DECODER_THREADS, "pbf-reader-%d", Thread.NORM_PRIORITY) : null;
+        final Deque<Future<DataBlock>> pending = new ArrayDeque<>();
         try (ProtobufParser parser = new ProtobufParser(inputStream)) {
             final ByteArrayOutputStream baos = new ByteArrayOutputStream();
             HeaderBlock headerBlock = null;
@@ -176,13 +192,89 @@ public final class OsmPbfReader extends AbstractReader {
                     blobHeader = null;
                 } else if ("OSMData".equals(blobHeader.type())) {
                     if (headerBlock == null) {
-                        throw new IllegalStateException("A header block must occur before the first data block");
+                        throw new IllegalDataException("A header block must occur before the first data block");
                     }
                     final Blob blob = parseBlob(blobHeader, inputStream, parser, baos);
-                    parseDataBlock(baos, headerBlock, blob);
+                    final HeaderBlock currentHeaderBlock = headerBlock;
+                    if (pool == null) {
+                        mergeDataBlock(currentHeaderBlock, parseDataBlock(blob));
+                    } else {
+                        pending.add(pool.submit(() -> parseDataBlock(blob)));
+                        // Bound the number of decoded blocks waiting in memory; merging is done in file order
+                        while (pending.size() > 2 * pool.getParallelism()) {
+                            mergeDataBlock(currentHeaderBlock, getDataBlock(pending.removeFirst()));
+                        }
+                    }
                     blobHeader = null;
                 } // Other software *may* extend the FileBlocks (from just "OSMHeader" and "OSMData"), so don't throw an error.
             }
+            while (!pending.isEmpty() && !this.cancel) {
+                mergeDataBlock(headerBlock, getDataBlock(pending.removeFirst()));
+            }
+        } finally {
+            if (pool != null) {
+                pending.forEach(future -> future.cancel(true));
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Wait for a data block to be decoded
+     *
+     * @param future The pending decoding task
+     * @return The decoded data block
+     * @throws IOException          if the data block could not be read
+     * @throws IllegalDataException if the data block contained invalid data, or the wait was interrupted
+     */
+    @Nonnull
+    private static DataBlock getDataBlock(Future<DataBlock> future) throws IOException, IllegalDataException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalDataException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // ForkJoinTask wraps checked exceptions
+            while (cause != null && cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof IllegalDataException) {
+                throw (IllegalDataException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalDataException(cause);
+        }
+    }
+
+    /**
+     * Add the primitives of a decoded data block to the dataset. This must be called in file order, from the parsing thread.
+     *
+     * @param headerBlock The header block with data source information
+     * @param dataBlock   The decoded data block
+     */
+    private void mergeDataBlock(HeaderBlock headerBlock, DataBlock dataBlock) {
+        final DataSet ds = getDataSet();
+        try {
+            ds.beginUpdate();
+            if (dataBlock.hasPrimitiveGroups && headerBlock.bbox() != null) {
+                ds.addDataSource(new DataSource(new Bounds((LatLon) headerBlock.bbox().getMin(), (LatLon) headerBlock.bbox().getMax()),
+                        headerBlock.source()));
+            }
+            if (dataBlock.uploadDiscouraged) {
+                ds.setUploadPolicy(UploadPolicy.DISCOURAGED);
+            }
+            this.ways.putAll(dataBlock.ways);
+            this.relations.putAll(dataBlock.relations);
+            for (PrimitiveData primitiveData : dataBlock.primitives) {
+                buildPrimitive(primitiveData);
+            }
+        } finally {
+            ds.endUpdate();
         }
     }
 
@@ -243,10 +335,11 @@ public final class OsmPbfReader extends AbstractReader {
      * @param baos   The reusable output stream
      * @return The blob to use elsewhere
      * @throws IOException If one of the streams has an issue
+     * @throws IllegalDataException If the blob has no data, or data compressed with an unknown algorithm
      */
     @Nonnull
     private static Blob parseBlob(BlobHeader header, BoundedInputStream cis, ProtobufParser parser, ByteArrayOutputStream baos)
-            throws IOException {
+            throws IOException, IllegalDataException {
         long start = cis.getCount();
         int size = Integer.MIN_VALUE;
         Blob.CompressionType type = null;
@@ -284,11 +377,11 @@ public final class OsmPbfReader extends AbstractReader {
                     bytes = current.getBytes();
                     break;
                 default:
-                    throw new IllegalStateException("Unknown compression type: " + current.getField());
+                    throw new IllegalDataException("Unknown compression type: " + current.getField());
             }
         }
         if (type == null) {
-            throw new IllegalStateException("Compression type not found, pbf may be malformed");
+            throw new IllegalDataException("Compression type not found, pbf may be malformed");
         }
         return new Blob(size, type, bytes);
     }
@@ -364,68 +457,61 @@ public final class OsmPbfReader extends AbstractReader {
     }
 
     /**
-     * Parse a data blob (should be "OSMData")
+     * Parse a data blob (should be "OSMData"). This does not modify the dataset, so it may be called from any thread.
      *
-     * @param baos        The reusable stream
-     * @param headerBlock The header block with data source information
-     * @param blob        The blob to read OSM data from
+     * @param blob The blob to read OSM data from
+     * @return The decoded primitives, which still need to be merged with {@link #mergeDataBlock(HeaderBlock, DataBlock)}
      * @throws IOException          if we don't support the compression type
      * @throws IllegalDataException If an invalid OSM primitive was read
      */
-    private void parseDataBlock(ByteArrayOutputStream baos, HeaderBlock headerBlock, Blob blob) throws IOException, IllegalDataException {
+    @Nonnull
+    private static DataBlock parseDataBlock(Blob blob) throws IOException, IllegalDataException {
         String[] stringTable = null; // field 1, note that stringTable[0] is a delimiter, so it is always blank and unused
         // field 2 -- we cannot parse these live just in case the following fields come later
-        final List<ProtobufRecord> primitiveGroups = new ArrayList<>();
+        final List<ProtobufReader> primitiveGroups = new ArrayList<>();
         int granularity = 100; // field 17
         long latOffset = 0; // field 19
         long lonOffset = 0; // field 20
         int dateGranularity = 1000; // field 18, default is milliseconds since the 1970 epoch
-        try (InputStream inputStream = blob.inputStream();
-             ProtobufParser parser = new ProtobufParser(inputStream)) {
-            while (parser.hasNext()) {
-                final ProtobufRecord protobufRecord = new ProtobufRecord(baos, parser);
-                switch (protobufRecord.getField()) {
+        final ProtobufReader reader;
+        try (InputStream inputStream = blob.inputStream()) {
+            reader = new ProtobufReader(inputStream.readAllBytes());
+        }
+        try {
+            while (reader.hasNext()) {
+                switch (reader.nextField()) {
                     case 1:
-                        stringTable = parseStringTable(baos, protobufRecord.getBytes());
+                        stringTable = parseStringTable(reader.readMessage());
                         break;
                     case 2:
-                        primitiveGroups.add(protobufRecord);
+                        primitiveGroups.add(reader.readMessage());
                         break;
                     case 17:
-                        granularity = protobufRecord.asUnsignedVarInt().intValue();
+                        granularity = (int) reader.readVarInt();
                         break;
                     case 18:
-                        dateGranularity = protobufRecord.asUnsignedVarInt().intValue();
+                        dateGranularity = (int) reader.readVarInt();
                         break;
                     case 19:
-                        latOffset = protobufRecord.asUnsignedVarInt().longValue();
+                        latOffset = reader.readVarInt();
                         break;
                     case 20:
-                        lonOffset = protobufRecord.asUnsignedVarInt().longValue();
+                        lonOffset = reader.readVarInt();
                         break;
                     default: // Pass, since someone might have extended the format
+                        reader.skipField();
                 }
             }
-        }
-        final PrimitiveBlockRecord primitiveBlockRecord = new PrimitiveBlockRecord(stringTable, granularity, latOffset, lonOffset,
-                dateGranularity);
-        final DataSet ds = getDataSet();
-        if (!primitiveGroups.isEmpty() && headerBlock.bbox() != null) {
-            try {
-                ds.beginUpdate();
-                ds.addDataSource(new DataSource(new Bounds((LatLon) headerBlock.bbox().getMin(), (LatLon) headerBlock.bbox().getMax()),
-                        headerBlock.source()));
-            } finally {
-                ds.endUpdate();
-            }
-        }
-        for (ProtobufRecord primitiveGroup : primitiveGroups) {
-            try {
-                ds.beginUpdate();
-                parsePrimitiveGroup(baos, primitiveGroup.getBytes(), primitiveBlockRecord);
-            } finally {
-                ds.endUpdate();
+            final PrimitiveBlockRecord primitiveBlockRecord = new PrimitiveBlockRecord(stringTable, granularity, latOffset, lonOffset,
+                    dateGranularity);
+            final DataBlock dataBlock = new DataBlock(!primitiveGroups.isEmpty());
+            for (ProtobufReader primitiveGroup : primitiveGroups) {
+                parsePrimitiveGroup(primitiveGroup, primitiveBlockRecord, dataBlock);
             }
+            return dataBlock;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | IllegalStateException e) {
+            // ProtobufReader throws IllegalArgumentException for malformed var ints and unknown wire types
+            throw new IllegalDataException("OSM PBF data block is truncated or malformed", e);
         }
     }
 
@@ -476,167 +562,149 @@ public final class OsmPbfReader extends AbstractReader {
     /**
      * Parse the string table
      *
-     * @param baos  The reusable stream
-     * @param bytes The message bytes
+     * @param reader The reader for the StringTable message
      * @return The parsed table (reminder: index 0 is empty, note that all strings are already interned by {@link String#intern()})
-     * @throws IOException if something happened while reading a {@link ByteArrayInputStream}
      */
     @Nonnull
-    private static String[] parseStringTable(ByteArrayOutputStream baos, byte[] bytes) throws IOException {
-        try (ByteArrayInputStream is = new ByteArrayInputStream(bytes);
-             ProtobufParser parser = new ProtobufParser(is)) {
-            final List<String> list = new ArrayList<>();
-            while (parser.hasNext()) {
-                final ProtobufRecord protobufRecord = new ProtobufRecord(baos, parser);
-                if (protobufRecord.getField() == 1) {
-                    list.add(protobufRecord.asString().intern()); // field is technically repeated bytes
-                }
+    private static String[] parseStringTable(ProtobufReader reader) {
+        final List<String> list = new ArrayList<>();
+        while (reader.hasNext()) {
+            if (reader.nextField() == 1) {
+                list.add(reader.readString().intern()); // field is technically repeated bytes
+            } else {
+                reader.skipField();
             }
-            return list.toArray(new String[0]);
         }
+        return list.toArray(new String[0]);
     }
 
     /**
      * Parse a PrimitiveGroup. Note: this parsing implementation doesn't check and make certain that all primitives in the group are the same
      * type.
      *
-     * @param baos                 The reusable stream
-     * @param bytes                The bytes to decode
+     * @param reader               The reader for the PrimitiveGroup message
      * @param primitiveBlockRecord The record to use for creating the primitives
+     * @param dataBlock            The block to add the primitives to
      * @throws IllegalDataException if one of the primitive records was invalid
-     * @throws IOException          if something happened while reading a {@link ByteArrayInputStream}
      */
-    private void parsePrimitiveGroup(ByteArrayOutputStream baos, byte[] bytes, PrimitiveBlockRecord primitiveBlockRecord)
-            throws IllegalDataException, IOException {
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-             ProtobufParser parser = new ProtobufParser(bais)) {
-            while (parser.hasNext()) {
-                final ProtobufRecord protobufRecord = new ProtobufRecord(baos, parser);
-                switch (protobufRecord.getField()) {
-                    case 1: // Nodes, repeated
-                        parseNode(baos, protobufRecord.getBytes(), primitiveBlockRecord);
-                        break;
-                    case 2: // Dense nodes, not repeated
-                        parseDenseNodes(baos, protobufRecord.getBytes(), primitiveBlockRecord);
-                        break;
-                    case 3: // Ways, repeated
-                        parseWay(baos, protobufRecord.getBytes(), primitiveBlockRecord);
-                        break;
-                    case 4: // relations, repeated
-                        parseRelation(baos, protobufRecord.getBytes(), primitiveBlockRecord);
-                        break;
-                    case 5: // Changesets, repeated
-                        // Skip -- we don't have a good way to store changeset information in JOSM
-                    default: // OSM PBF could be extended
-                }
+    private static void parsePrimitiveGroup(ProtobufReader reader, PrimitiveBlockRecord primitiveBlockRecord, DataBlock dataBlock)
+            throws IllegalDataException {
+        while (reader.hasNext()) {
+            final int field = reader.nextField();
+            if (field < 1 || field > 4 || reader.getWireType() != WireType.LENGTH_DELIMITED) {
+                // 5 is changesets, repeated -- we don't have a good way to store changeset information in JOSM
+                // OSM PBF could be extended
+                reader.skipField();
+                continue;
             }
+            final int limit = reader.beginMessage();
+            switch (field) {
+                case 1: // Nodes, repeated
+                    parseNode(reader, primitiveBlockRecord, dataBlock);
+                    break;
+                case 2: // Dense nodes, not repeated
+                    parseDenseNodes(reader, primitiveBlockRecord, dataBlock);
+                    break;
+                case 3: // Ways, repeated
+                    parseWay(reader, primitiveBlockRecord, dataBlock);
+                    break;
+                default: // 4, relations, repeated
+                    parseRelation(reader, primitiveBlockRecord, dataBlock);
+            }
+            reader.endMessage(limit);
         }
     }
 
     /**
      * Parse a singular node
      *
-     * @param baos                 The reusable stream
-     * @param bytes                The bytes to decode
+     * @param reader               The reader, limited to the Node message
      * @param primitiveBlockRecord The record to use (mostly for tags and lat/lon calculations)
+     * @param dataBlock            The block to add the node to
      * @throws IllegalDataException if the PBF did not provide all the data necessary for node creation
-     * @throws IOException          if something happened while reading a {@link ByteArrayInputStream}
      */
-    private void parseNode(ByteArrayOutputStream baos, byte[] bytes, PrimitiveBlockRecord primitiveBlockRecord)
-            throws IllegalDataException, IOException {
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-             ProtobufParser parser = new ProtobufParser(bais)) {
-            long id = Long.MIN_VALUE;
-            final List<String> keys = new ArrayList<>();
-            final List<String> values = new ArrayList<>();
-            Info info = null;
-            long lat = Long.MIN_VALUE;
-            long lon = Long.MIN_VALUE;
-            while (parser.hasNext()) {
-                final ProtobufRecord protobufRecord = new ProtobufRecord(baos, parser);
-                switch (protobufRecord.getField()) {
-                    case 1:
-                        id = protobufRecord.asSignedVarInt().intValue();
-                        break;
-                    case 2:
-                        for (long number : new ProtobufPacked(protobufRecord.getBytes()).getArray()) {
-                            keys.add(primitiveBlockRecord.stringTable[(int) number]);
-                        }
-                        break;
-                    case 3:
-                        for (long number : new ProtobufPacked(protobufRecord.getBytes()).getArray()) {
-                            values.add(primitiveBlockRecord.stringTable[(int) number]);
-                        }
-                        break;
-                    case 4:
-                        info = parseInfo(baos, protobufRecord.getBytes());
-                        break;
-                    case 8:
-                        lat = protobufRecord.asSignedVarInt().longValue();
-                        break;
-                    case 9:
-                        lon = protobufRecord.asSignedVarInt().longValue();
-                        break;
-                    default: // Fall through -- PBF could be extended (unlikely)
-                }
-            }
-            if (id == Long.MIN_VALUE || lat == Long.MIN_VALUE || lon == Long.MIN_VALUE) {
-                throw new IllegalDataException("OSM PBF did not provide all the required node information");
-            }
-            final NodeData node = new NodeData(id);
-            node.setCoor(calculateLatLon(primitiveBlockRecord, lat, lon));
-            addTags(node, keys, values);
-            if (info != null) {
-                setOsmPrimitiveData(primitiveBlockRecord, node, info);
-            } else {
-                ds.setUploadPolicy(UploadPolicy.DISCOURAGED);
+    private static void parseNode(ProtobufReader reader, PrimitiveBlockRecord primitiveBlockRecord, DataBlock dataBlock)
+            throws IllegalDataException {
+        long id = Long.MIN_VALUE;
+        long[] keys = EMPTY_LONG;
+        long[] values = EMPTY_LONG;
+        Info info = null;
+        long lat = Long.MIN_VALUE;
+        long lon = Long.MIN_VALUE;
+        while (reader.hasNext()) {
+            switch (reader.nextField()) {
+                case 1:
+                    id = reader.readSignedVarInt();
+                    break;
+                case 2:
+                    keys = reader.readPackedVarInt(keys, false);
+                    break;
+                case 3:
+                    values = reader.readPackedVarInt(values, false);
+                    break;
+                case 4:
+                    info = parseInfo(reader);
+                    break;
+                case 8:
+                    lat = reader.readSignedVarInt();
+                    break;
+                case 9:
+                    lon = reader.readSignedVarInt();
+                    break;
+                default: // Fall through -- PBF could be extended (unlikely)
+                    reader.skipField();
             }
-            buildPrimitive(node);
         }
+        if (id == Long.MIN_VALUE || lat == Long.MIN_VALUE || lon == Long.MIN_VALUE) {
+            throw new IllegalDataException("OSM PBF did not provide all the required node information");
+        }
+        final NodeData node = new NodeData(id);
+        node.setCoor(calculateLatLon(primitiveBlockRecord, lat, lon));
+        addTags(node, primitiveBlockRecord, keys, values);
+        if (info != null) {
+            setOsmPrimitiveData(primitiveBlockRecord, node, info);
+        } else {
+            dataBlock.uploadDiscouraged = true;
+        }
+        dataBlock.primitives.add(node);
     }
 
     /**
      * Parse dense nodes from a record
      *
-     * @param baos                 The reusable output stream
-     * @param bytes                The bytes for the dense node
+     * @param reader               The reader, limited to the DenseNodes message
      * @param primitiveBlockRecord Used for data that is common between several different objects.
+     * @param dataBlock            The block to add the nodes to
      * @throws IllegalDataException if the nodes could not be parsed, or one of the nodes would be malformed
-     * @throws IOException          if something happened while reading a {@link ByteArrayInputStream}
      */
-    private void parseDenseNodes(ByteArrayOutputStream baos, byte[] bytes, PrimitiveBlockRecord primitiveBlockRecord)
-            throws IllegalDataException, IOException {
+    private static void parseDenseNodes(ProtobufReader reader, PrimitiveBlockRecord primitiveBlockRecord, DataBlock dataBlock)
+            throws IllegalDataException {
         long[] ids = EMPTY_LONG;
         long[] lats = EMPTY_LONG;
         long[] lons = EMPTY_LONG;
         long[] keyVals = EMPTY_LONG; // technically can be int
         Info[] denseInfo = null;
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-             ProtobufParser parser = new ProtobufParser(bais)) {
-            while (parser.hasNext()) {
-                final ProtobufRecord protobufRecord = new ProtobufRecord(baos, parser);
-                switch (protobufRecord.getField()) {
-                    case 1: // packed node ids, DELTA encoded
-                        long[] tids = decodePackedSInt64(new ProtobufPacked(protobufRecord.getBytes()).getArray());
-                        ids = joinArrays(ids, tids);
-                        break;
-                    case 5: // DenseInfo
-                        denseInfo = parseDenseInfo(baos, protobufRecord.getBytes()); // not repeated or packed
-                        break;
-                    case 8: // packed lat, DELTA encoded
-                        long[] tlats = decodePackedSInt64(new ProtobufPacked(protobufRecord.getBytes()).getArray());
-                        lats = joinArrays(lats, tlats);
-                        break;
-                    case 9: // packed lon, DELTA encoded
-                        long[] tlons = decodePackedSInt64(new ProtobufPacked(protobufRecord.getBytes()).getArray());
-                        lons = joinArrays(lons, tlons);
-                        break;
-                    case 10: // key_val mappings, packed. '0' used as separator between nodes
-                        long[] tkeyVal = new ProtobufPacked(protobufRecord.getBytes()).getArray();
-                        keyVals = joinArrays(keyVals, tkeyVal);
-                        break;
-                    default: // Someone might have extended the PBF format
-                }
+        while (reader.hasNext()) {
+            switch (reader.nextField()) {
+                case 1: // packed node ids, DELTA encoded
+                    ids = reader.readPackedVarInt(ids, true);
+                    break;
+                case 5: // DenseInfo, not repeated or packed
+                    final int limit = reader.beginMessage();
+                    denseInfo = parseDenseInfo(reader);
+                    reader.endMessage(limit);
+                    break;
+                case 8: // packed lat, DELTA encoded
+                    lats = reader.readPackedVarInt(lats, true);
+                    break;
+                case 9: // packed lon, DELTA encoded
+                    lons = reader.readPackedVarInt(lons, true);
+                    break;
+                case 10: // key_val mappings, packed. '0' used as separator between nodes
+                    keyVals = reader.readPackedVarInt(keyVals, false);
+                    break;
+                default: // Someone might have extended the PBF format
+                    reader.skipField();
             }
         }
 
@@ -653,7 +721,7 @@ public final class OsmPbfReader extends AbstractReader {
                     final Info info = denseInfo[i];
                     setOsmPrimitiveData(primitiveBlockRecord, node, info);
                 } else {
-                    ds.setUploadPolicy(UploadPolicy.DISCOURAGED);
+                    dataBlock.uploadDiscouraged = true;
                 }
                 lat += lats[i];
                 lon += lons[i];
@@ -676,8 +744,7 @@ public final class OsmPbfReader extends AbstractReader {
                         break;
                     }
                 }
-                // Just add the nodes as we make them -- avoid creating another list that expands every time we parse a node
-                buildPrimitive(node);
+                dataBlock.primitives.add(node);
             }
         } else {
             throw new IllegalDataException("OSM PBF has mismatched DenseNode lengths");
@@ -687,50 +754,41 @@ public final class OsmPbfReader extends AbstractReader {
     /**
      * Parse a way from the PBF
      *
-     * @param baos                 The reusable stream
-     * @param bytes                The bytes for the way
+     * @param reader               The reader, limited to the Way message
      * @param primitiveBlockRecord Used for common information, like tags
+     * @param dataBlock            The block to add the way to
      * @throws IllegalDataException if an invalid way could have been created
-     * @throws IOException          if something happened while reading a {@link ByteArrayInputStream}
      */
-    private void parseWay(ByteArrayOutputStream baos, byte[] bytes, PrimitiveBlockRecord primitiveBlockRecord)
-            throws IllegalDataException, IOException {
+    private static void parseWay(ProtobufReader reader, PrimitiveBlockRecord primitiveBlockRecord, DataBlock dataBlock)
+            throws IllegalDataException {
         long id = Long.MIN_VALUE;
-        List<String> keys = new ArrayList<>();
-        List<String> values = new ArrayList<>();
+        long[] keys = EMPTY_LONG;
+        long[] values = EMPTY_LONG;
         Info info = null;
         long[] refs = EMPTY_LONG; // DELTA encoded
         // We don't do live drawing, so we don't care about lats and lons (we essentially throw them away with the current parser)
         // This is for the optional feature "LocationsOnWays"
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-             ProtobufParser parser = new ProtobufParser(bais)) {
-            while (parser.hasNext()) {
-                final ProtobufRecord protobufRecord = new ProtobufRecord(baos, parser);
-                switch (protobufRecord.getField()) {
-                    case 1:
-                        id = protobufRecord.asUnsignedVarInt().longValue();
-                        break;
-                    case 2:
-                        for (long number : new ProtobufPacked(protobufRecord.getBytes()).getArray()) {
-                            keys.add(primitiveBlockRecord.stringTable[(int) number]);
-                        }
-                        break;
-                    case 3:
-                        for (long number : new ProtobufPacked(protobufRecord.getBytes()).getArray()) {
-                            values.add(primitiveBlockRecord.stringTable[(int) number]);
-                        }
-                        break;
-                    case 4:
-                        info = parseInfo(baos, protobufRecord.getBytes());
-                        break;
-                    case 8:
-                        long[] tRefs = decodePackedSInt64(new ProtobufPacked(protobufRecord.getBytes()).getArray());
-                        refs = joinArrays(refs, tRefs);
-                        break;
-                    // case 9 and 10 are for "LocationsOnWays" -- this is only usable if we can create the way geometry directly
-                    // if this is ever supported, lats = joinArrays(lats, decodePackedSInt64(...))
-                    default: // PBF could be expanded by other people
-                }
+        while (reader.hasNext()) {
+            switch (reader.nextField()) {
+                case 1:
+                    id = reader.readVarInt();
+                    break;
+                case 2:
+                    keys = reader.readPackedVarInt(keys, false);
+                    break;
+                case 3:
+                    values = reader.readPackedVarInt(values, false);
+                    break;
+                case 4:
+                    info = parseInfo(reader);
+                    break;
+                case 8:
+                    refs = reader.readPackedVarInt(refs, true);
+                    break;
+                // case 9 and 10 are for "LocationsOnWays" -- this is only usable if we can create the way geometry directly
+                // if this is ever supported, lats = reader.readPackedVarInt(lats, true)
+                default: // PBF could be expanded by other people
+                    reader.skipField();
             }
         }
         if (refs.length == 0 || id == Long.MIN_VALUE) {
@@ -743,81 +801,70 @@ public final class OsmPbfReader extends AbstractReader {
             ref += tRef;
             nodeIds.add(ref);
         }
-        this.ways.put(wayData.getUniqueId(), nodeIds);
-        addTags(wayData, keys, values);
+        dataBlock.ways.put(wayData.getUniqueId(), nodeIds);
+        addTags(wayData, primitiveBlockRecord, keys, values);
         if (info != null) {
             setOsmPrimitiveData(primitiveBlockRecord, wayData, info);
         } else {
-            ds.setUploadPolicy(UploadPolicy.DISCOURAGED);
+            dataBlock.uploadDiscouraged = true;
         }
-        buildPrimitive(wayData);
+        dataBlock.primitives.add(wayData);
     }
 
     /**
      * Parse a relation from a PBF
      *
-     * @param baos                 The reusable stream
-     * @param bytes                The bytes to use
+     * @param reader               The reader, limited to the Relation message
      * @param primitiveBlockRecord Mostly used for tags
+     * @param dataBlock            The block to add the relation to
      * @throws IllegalDataException if the PBF had a bad relation definition
-     * @throws IOException          if something happened while reading a {@link ByteArrayInputStream}
      */
-    private void parseRelation(ByteArrayOutputStream baos, byte[] bytes, PrimitiveBlockRecord primitiveBlockRecord)
-            throws IllegalDataException, IOException {
+    private static void parseRelation(ProtobufReader reader, PrimitiveBlockRecord primitiveBlockRecord, DataBlock dataBlock)
+            throws IllegalDataException {
         long id = Long.MIN_VALUE;
-        final List<String> keys = new ArrayList<>();
-        final List<String> values = new ArrayList<>();
+        long[] keys = EMPTY_LONG;
+        long[] values = EMPTY_LONG;
         Info info = null;
         long[] rolesStringId = EMPTY_LONG; // Technically int
         long[] memids = EMPTY_LONG;
         long[] types = EMPTY_LONG; // Technically an enum
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-             ProtobufParser parser = new ProtobufParser(bais)) {
-            while (parser.hasNext()) {
-                final ProtobufRecord protobufRecord = new ProtobufRecord(baos, parser);
-                switch (protobufRecord.getField()) {
-                    case 1:
-                        id = protobufRecord.asUnsignedVarInt().longValue();
-                        break;
-                    case 2:
-                        for (long number : new ProtobufPacked(protobufRecord.getBytes()).getArray()) {
-                            keys.add(primitiveBlockRecord.stringTable[(int) number]);
-                        }
-                        break;
-                    case 3:
-                        for (long number : new ProtobufPacked(protobufRecord.getBytes()).getArray()) {
-                            values.add(primitiveBlockRecord.stringTable[(int) number]);
-                        }
-                        break;
-                    case 4:
-                        info = parseInfo(baos, protobufRecord.getBytes());
-                        break;
-                    case 8:
-                        long[] tRoles = new ProtobufPacked(protobufRecord.getBytes()).getArray();
-                        rolesStringId = joinArrays(rolesStringId, tRoles);
-                        break;
-                    case 9:
-                        long[] tMemids = decodePackedSInt64(new ProtobufPacked(protobufRecord.getBytes()).getArray());
-                        memids = joinArrays(memids, tMemids);
-                        break;
-                    case 10:
-                        long[] tTypes = new ProtobufPacked(protobufRecord.getBytes()).getArray();
-                        types = joinArrays(types, tTypes);
-                        break;
-                    default: // Fall through for PBF extensions
-                }
+        while (reader.hasNext()) {
+            switch (reader.nextField()) {
+                case 1:
+                    id = reader.readVarInt();
+                    break;
+                case 2:
+                    keys = reader.readPackedVarInt(keys, false);
+                    break;
+                case 3:
+                    values = reader.readPackedVarInt(values, false);
+                    break;
+                case 4:
+                    info = parseInfo(reader);
+                    break;
+                case 8:
+                    rolesStringId = reader.readPackedVarInt(rolesStringId, false);
+                    break;
+                case 9:
+                    memids = reader.readPackedVarInt(memids, true);
+                    break;
+                case 10:
+                    types = reader.readPackedVarInt(types, false);
+                    break;
+                default: // Fall through for PBF extensions
+                    reader.skipField();
             }
         }
-        if (keys.size() != values.size() || rolesStringId.length != memids.length || memids.length != types.length || id == Long.MIN_VALUE) {
+        if (keys.length != values.length || rolesStringId.length != memids.length || memids.length != types.length || id == Long.MIN_VALUE) {
             throw new IllegalDataException("OSM PBF contains a bad relation definition");
         }
         final RelationData data = new RelationData(id);
         if (info != null) {
             setOsmPrimitiveData(primitiveBlockRecord, data, info);
         } else {
-            ds.setUploadPolicy(UploadPolicy.DISCOURAGED);
+            dataBlock.uploadDiscouraged = true;
         }
-        addTags(data, keys, values);
+        addTags(data, primitiveBlockRecord, keys, values);
         OsmPrimitiveType[] valueTypes = OsmPrimitiveType.values();
         List<RelationMemberData> members = new ArrayList<>(rolesStringId.length);
         long memberId = 0;
@@ -827,54 +874,51 @@ public final class OsmPbfReader extends AbstractReader {
             OsmPrimitiveType type = valueTypes[(int) types[i]];
             members.add(new RelationMemberData(role, type, memberId));
         }
-        this.relations.put(data.getUniqueId(), members);
-        buildPrimitive(data);
+        dataBlock.relations.put(data.getUniqueId(), members);
+        dataBlock.primitives.add(data);
     }
 
     /**
      * Parse info for an object
      *
-     * @param baos  The reusable stream to use
-     * @param bytes The bytes to decode
+     * @param reader The reader, positioned at the value of the Info field
      * @return The info for an object
-     * @throws IOException if something happened while reading a {@link ByteArrayInputStream}
      */
     @Nonnull
-    private static Info parseInfo(ByteArrayOutputStream baos, byte[] bytes) throws IOException {
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-             ProtobufParser parser = new ProtobufParser(bais)) {
-            int version = -1;
-            Long timestamp = null;
-            Long changeset = null;
-            Integer uid = null;
-            Integer userSid = null;
-            boolean visible = true;
-            while (parser.hasNext()) {
-                final ProtobufRecord protobufRecord = new ProtobufRecord(baos, parser);
-                switch (protobufRecord.getField()) {
-                    case 1:
-                        version = protobufRecord.asUnsignedVarInt().intValue();
-                        break;
-                    case 2:
-                        timestamp = protobufRecord.asUnsignedVarInt().longValue();
-                        break;
-                    case 3:
-                        changeset = protobufRecord.asUnsignedVarInt().longValue();
-                        break;
-                    case 4:
-                        uid = protobufRecord.asUnsignedVarInt().intValue();
-                        break;
-                    case 5:
-                        userSid = protobufRecord.asUnsignedVarInt().intValue();
-                        break;
-                    case 6:
-                        visible = protobufRecord.asUnsignedVarInt().byteValue() == 1;
-                        break;
-                    default: // Fall through, since the PBF format could be extended
-                }
+    private static Info parseInfo(ProtobufReader reader) {
+        final int limit = reader.beginMessage();
+        int version = -1;
+        Long timestamp = null;
+        Long changeset = null;
+        Integer uid = null;
+        Integer userSid = null;
+        boolean visible = true;
+        while (reader.hasNext()) {
+            switch (reader.nextField()) {
+                case 1:
+                    version = (int) reader.readVarInt();
+                    break;
+                case 2:
+                    timestamp = reader.readVarInt();
+                    break;
+                case 3:
+                    changeset = reader.readVarInt();
+                    break;
+                case 4:
+                    uid = (int) reader.readVarInt();
+                    break;
+                case 5:
+                    userSid = (int) reader.readVarInt();
+                    break;
+                case 6:
+                    visible = reader.readVarInt() == 1;
+                    break;
+                default: // Fall through, since the PBF format could be extended
+                    reader.skipField();
             }
-            return new Info(version, timestamp, changeset, uid, userSid, visible);
         }
+        reader.endMessage(limit);
+        return new Info(version, timestamp, changeset, uid, userSid, visible);
     }
 
     /**
@@ -894,17 +938,18 @@ public final class OsmPbfReader extends AbstractReader {
     /**
      * Add a set of tags to a primitive
      *
-     * @param primitive The primitive to add tags to
-     * @param keys      The keys (must match the size of the values)
-     * @param values    The values (must match the size of the keys)
+     * @param primitive            The primitive to add tags to
+     * @param primitiveBlockRecord The record with the string table
+     * @param keys                 The string table indexes of the keys (must match the size of the values)
+     * @param values               The string table indexes of the values (must match the size of the keys)
      */
-    private static void addTags(Tagged primitive, List<String> keys, List<String> values) {
-        if (keys.isEmpty()) {
+    private static void addTags(Tagged primitive, PrimitiveBlockRecord primitiveBlockRecord, long[] keys, long[] values) {
+        if (keys.length == 0) {
             return;
         }
-        Map<String, String> tagMap = new HashMap<>(keys.size());
-        for (int i = 0; i < keys.size(); i++) {
-            tagMap.put(keys.get(i), values.get(i));
+        Map<String, String> tagMap = new HashMap<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            tagMap.put(primitiveBlockRecord.stringTable[(int) keys[i]], primitiveBlockRecord.stringTable[(int) values[i]]);
         }
         primitive.putAll(tagMap);
     }
@@ -923,7 +968,9 @@ public final class OsmPbfReader extends AbstractReader {
             primitive.setRawTimestamp(Math.toIntExact(info.timestamp() * primitiveBlockRecord.dateGranularity / 1000));
         }
         if (info.uid() != null && info.userSid() != null) {
-            primitive.setUser(User.createOsmUser(info.uid(), primitiveBlockRecord.stringTable[info.userSid()]));
+            // The user methods are synchronized, so avoid hitting them for every primitive of a block
+            primitive.setUser(primitiveBlockRecord.users.computeIfAbsent(((long) info.uid() << Integer.SIZE) | info.userSid(),
+                    key -> User.createOsmUser(info.uid(), primitiveBlockRecord.stringTable[info.userSid()])));
         } else if (info.uid() != null) {
             primitive.setUser(User.getById(info.uid()));
         }
@@ -935,88 +982,43 @@ public final class OsmPbfReader extends AbstractReader {
         }
     }
 
-    /**
-     * Convert an array of numbers to an array of longs, decoded from uint (zig zag decoded)
-     *
-     * @param numbers The numbers to convert
-     * @return The long array (the same array that was passed in)
-     */
-    @Nonnull
-    private static long[] decodePackedSInt64(long[] numbers) {
-        for (int i = 0; i < numbers.length; i++) {
-            numbers[i] = ProtobufParser.decodeZigZag(numbers[i]);
-        }
-        return numbers;
-    }
-
-    /**
-     * Join two different arrays
-     *
-     * @param array1 The first array
-     * @param array2 The second array
-     * @return The joined arrays -- may return one of the original arrays, if the other is empty
-     */
-    @Nonnull
-    private static long[] joinArrays(long[] array1, long[] array2) {
-        if (array1.length == 0) {
-            return array2;
-        }
-        if (array2.length == 0) {
-            return array1;
-        }
-        long[] result = Arrays.copyOf(array1, array1.length + array2.length);
-        System.arraycopy(array2, 0, result, array1.length, array2.length);
-        return result;
-    }
-
     /**
      * Parse dense info
      *
-     * @param baos  The reusable stream
-     * @param bytes The bytes to decode
+     * @param reader The reader, limited to the DenseInfo message
      * @return The dense info array
      * @throws IllegalDataException If the data has mismatched array lengths
-     * @throws IOException          if something happened while reading a {@link ByteArrayInputStream}
      */
     @Nonnull
-    private static Info[] parseDenseInfo(ByteArrayOutputStream baos, byte[] bytes) throws IllegalDataException, IOException {
+    private static Info[] parseDenseInfo(ProtobufReader reader) throws IllegalDataException {
         long[] version = EMPTY_LONG; // technically ints
         long[] timestamp = EMPTY_LONG;
         long[] changeset = EMPTY_LONG;
         long[] uid = EMPTY_LONG; // technically int
         long[] userSid = EMPTY_LONG; // technically int
         long[] visible = EMPTY_LONG; // optional, true if not set, technically booleans
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-             ProtobufParser parser = new ProtobufParser(bais)) {
-            while (parser.hasNext()) {
-                final ProtobufRecord protobufRecord = new ProtobufRecord(baos, parser);
-                switch (protobufRecord.getField()) {
-                    case 1:
-                        long[] tVersion = new ProtobufPacked(protobufRecord.getBytes()).getArray();
-                        version = joinArrays(version, tVersion);
-                        break;
-                    case 2:
-                        long[] tTimestamp = decodePackedSInt64(new ProtobufPacked(protobufRecord.getBytes()).getArray());
-                        timestamp = joinArrays(timestamp, tTimestamp);
-                        break;
-                    case 3:
-                        long[] tChangeset = decodePackedSInt64(new ProtobufPacked(protobufRecord.getBytes()).getArray());
-                        changeset = joinArrays(changeset, tChangeset);
-                        break;
-                    case 4:
-                        long[] tUid = decodePackedSInt64(new ProtobufPacked(protobufRecord.getBytes()).getArray());
-                        uid = joinArrays(uid, tUid);
-                        break;
-                    case 5:
-                        long[] tUserSid = decodePackedSInt64(new ProtobufPacked(protobufRecord.getBytes()).getArray());
-                        userSid = joinArrays(userSid, tUserSid);
-                        break;
-                    case 6:
-                        long[] tVisible = new ProtobufPacked(protobufRecord.getBytes()).getArray();
-                        visible = joinArrays(visible, tVisible);
-                        break;
-                    default: // Fall through
-                }
+        while (reader.hasNext()) {
+            switch (reader.nextField()) {
+                case 1:
+                    version = reader.readPackedVarInt(version, false);
+                    break;
+                case 2:
+                    timestamp = reader.readPackedVarInt(timestamp, true);
+                    break;
+                case 3:
+                    changeset = reader.readPackedVarInt(changeset, true);
+                    break;
+                case 4:
+                    uid = reader.readPackedVarInt(uid, true);
+                    break;
+                case 5:
+                    userSid = reader.readPackedVarInt(userSid, true);
+                    break;
+                case 6:
+                    visible = reader.readPackedVarInt(visible, false);
+                    break;
+                default: // Fall through
+                    reader.skipField();
             }
         }
         if (version.length > 0) {
@@ -1051,6 +1053,7 @@ public final class OsmPbfReader extends AbstractReader {
         private final long latOffset;
         private final long lonOffset;
         private final int dateGranularity;
+        private final Map<Long, User> users = new HashMap<>();
 
         /**
          * Create a new record
@@ -1071,4 +1074,24 @@ public final class OsmPbfReader extends AbstractReader {
         }
 
     }
+
+    /**
+     * The primitives decoded from a single data blob, waiting to be added to the dataset
+     */
+    private static final class DataBlock {
+        private final boolean hasPrimitiveGroups;
+        private final List<PrimitiveData> primitives = new ArrayList<>();
+        private final Map<Long, Collection<Long>> ways = new HashMap<>();
+        private final Map<Long, Collection<RelationMemberData>> relations = new HashMap<>();
+        private boolean uploadDiscouraged;
+
+        /**
+         * Create a new block
+         *
+         * @param hasPrimitiveGroups {@code true} if the blob contained at least one primitive group
+         */
+        DataBlock(boolean hasPrimitiveGroups) {
+            this.hasPrimitiveGroups = hasPrimitiveGroups;
+        }
+    }
 }
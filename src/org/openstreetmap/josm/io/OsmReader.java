@@ -3,13 +3,26 @@ package org.openstreetmap.josm.io;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
+import java.io.CharArrayReader;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -17,11 +30,13 @@ import javax.xml.stream.Location;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
 
 import org.openstreetmap.josm.data.osm.Changeset;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.PrimitiveData;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.RelationData;
@@ -31,8 +46,10 @@ import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.osm.WayData;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.UncheckedParseException;
+import org.openstreetmap.josm.tools.Utils;
 import org.openstreetmap.josm.tools.XmlUtils;
 
 /**
@@ -67,6 +84,15 @@ public class OsmReader extends AbstractReader {
 
     private static final Set<String> COMMON_XML_ATTRIBUTES = new TreeSet<>();
 
+    /** The preference for the number of threads used to parse large files, {@code 1} parses on the calling thread only */
+    private static final String PARSER_THREADS = "osm.reader.numberOfThreads";
+
+    /** The number of characters of primitives parsed at once by a parser thread */
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    /** The chunk size, can be changed by tests */
+    int chunkSize = CHUNK_SIZE;
+
     static {
         COMMON_XML_ATTRIBUTES.add("id");
         COMMON_XML_ATTRIBUTES.add("timestamp");
@@ -503,17 +529,32 @@ public class OsmReader extends AbstractReader {
     protected DataSet doParseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
         return doParseDataSet(source, progressMonitor, (ParserWorker) ir -> {
             try {
-                setParser(XmlUtils.newSafeXMLInputFactory().createXMLStreamReader(ir));
-                parse();
+                Reader document = ir;
+                boolean parallel = false;
+                // Subclasses may depend on seeing all elements, so only plain OSM files are parsed in parallel
+                if (getClass() == OsmReader.class && Config.getPref().getInt(PARSER_THREADS, Runtime.getRuntime().availableProcessors()) > 1) {
+                    // Files smaller than a chunk are parsed as a whole, like before.
+                    // The buffer grows with the data read, so that small documents do not allocate a whole chunk.
+                    final char[] start = readStart(ir, chunkSize);
+                    if (start.length == chunkSize) {
+                        final PushbackReader pushbackReader = new PushbackReader(ir, chunkSize);
+                        pushbackReader.unread(start);
+                        document = pushbackReader;
+                        parallel = true;
+                    } else {
+                        document = new CharArrayReader(start);
+                    }
+                }
+                if (parallel) {
+                    parseInParallel(document);
+                } else {
+                    setParser(XmlUtils.newSafeXMLInputFactory().createXMLStreamReader(document));
+                    parse();
+                }
             } catch (XmlStreamParsingException | UncheckedParseException e) {
                 throw new IllegalDataException(e.getMessage(), e);
             } catch (XMLStreamException e) {
-                String msg = e.getMessage();
-                Pattern p = Pattern.compile("Message: (.+)");
-                Matcher m = p.matcher(msg);
-                if (m.find()) {
-                    msg = m.group(1);
-                }
+                String msg = getMessage(e);
                 if (e.getLocation() != null)
                     throw new IllegalDataException(tr("Line {0} column {1}: ",
                             e.getLocation().getLineNumber(), e.getLocation().getColumnNumber()) + msg, e);
@@ -523,6 +564,212 @@ public class OsmReader extends AbstractReader {
         });
     }
 
+    /**
+     * Reads the start of a document
+     * @param reader The document
+     * @param maxLength The maximum number of characters to read
+     * @return The characters read, {@code maxLength} characters unless the document is shorter
+     * @throws IOException if the document could not be read
+     */
+    private static char[] readStart(Reader reader, int maxLength) throws IOException {
+        char[] buffer = new char[Math.min(maxLength, 8192)];
+        int length = 0;
+        int read = 0;
+        while (read >= 0 && length < maxLength) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(maxLength, 2L * buffer.length));
+            }
+            read = reader.read(buffer, length, buffer.length - length);
+            length += Math.max(read, 0);
+        }
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    private static String getMessage(XMLStreamException e) {
+        String msg = e.getMessage();
+        Pattern p = Pattern.compile("Message: (.+)");
+        Matcher m = p.matcher(msg);
+        if (m.find()) {
+            msg = m.group(1);
+        }
+        return msg;
+    }
+
+    /**
+     * Parses the document in parallel. The top-level nodes, ways and relations are split into chunks which are parsed
+     * by a pool of threads, and merged in document order on the calling thread. The rest of the document (root element,
+     * bounds, changesets, ...) is parsed on the calling thread once all chunks have been merged.
+     * @param reader The document
+     * @throws XMLStreamException if the document could not be parsed
+     * @throws IOException if the document could not be read
+     */
+    private void parseInParallel(Reader reader) throws XMLStreamException, IOException {
+        final OsmXmlSplitter splitter = new OsmXmlSplitter(reader, chunkSize);
+        final OsmXmlSplitter.Chunk first = splitter.next();
+        final OsmXmlSplitter.Chunk second = first != null ? splitter.next() : null;
+        if (second == null) {
+            // Small file, don't bother starting threads
+            if (first != null) {
+                mergeChunk(parseChunk(splitter, first));
+            }
+        } else {
+            final ForkJoinPool pool = Utils.newForkJoinPool(PARSER_THREADS, "osm-reader-%d", Thread.NORM_PRIORITY);
+            final Deque<Future<ChunkReader>> pending = new ArrayDeque<>();
+            try {
+                pending.add(pool.submit(() -> parseChunk(splitter, first)));
+                OsmXmlSplitter.Chunk chunk = second;
+                while (chunk != null) {
+                    if (cancel) {
+                        cancel = false;
+                        throw new OsmParsingCanceledException(tr("Reading was canceled"), null);
+                    }
+                    final OsmXmlSplitter.Chunk toParse = chunk;
+                    pending.add(pool.submit(() -> parseChunk(splitter, toParse)));
+                    // Bound the number of chunks in memory, and merge while the pool is busy
+                    while (pending.size() > 2 * pool.getParallelism()) {
+                        mergeChunk(getChunk(pending.removeFirst()));
+                    }
+                    chunk = splitter.next();
+                }
+                while (!pending.isEmpty()) {
+                    mergeChunk(getChunk(pending.removeFirst()));
+                }
+            } finally {
+                pending.forEach(future -> future.cancel(true));
+                pool.shutdownNow();
+            }
+        }
+        setParser(new RelocatedStreamReader(XmlUtils.newSafeXMLInputFactory().createXMLStreamReader(new StringReader(splitter.getRemainder())),
+                splitter::getDocumentLocation));
+        try {
+            parse();
+        } catch (XMLStreamException e) {
+            throw relocate(e, parser);
+        }
+    }
+
+    /**
+     * Parses a chunk of primitives. This may be called from any thread.
+     * @param splitter The splitter which created the chunk
+     * @param chunk The chunk
+     * @return The reader holding the parsed primitives
+     * @throws XMLStreamException if the chunk could not be parsed
+     */
+    private ChunkReader parseChunk(OsmXmlSplitter splitter, OsmXmlSplitter.Chunk chunk) throws XMLStreamException {
+        final ChunkReader reader = new ChunkReader(options);
+        // XML input factories are not thread safe
+        final RelocatedStreamReader chunkParser = new RelocatedStreamReader(
+                XmlUtils.newSafeXMLInputFactory().createXMLStreamReader(new StringReader(splitter.getDocument(chunk))),
+                location -> splitter.getDocumentLocation(chunk, location));
+        reader.setParser(chunkParser);
+        try {
+            reader.parse();
+        } catch (XMLStreamException e) {
+            throw relocate(e, chunkParser);
+        }
+        return reader;
+    }
+
+    /**
+     * Converts an error of the underlying XML parser to an error at the location in the document
+     * @param e The error
+     * @param parser The parser which threw the error
+     * @return The error to throw
+     */
+    private static XMLStreamException relocate(XMLStreamException e, XMLStreamReader parser) {
+        if (e instanceof XmlStreamParsingException || e.getLocation() == null || !(parser instanceof RelocatedStreamReader)) {
+            return e;
+        }
+        return new XMLStreamException(getMessage(e), ((RelocatedStreamReader) parser).relocate(e.getLocation()), e);
+    }
+
+    /**
+     * Wait for a chunk to be parsed
+     * @param future The pending parsing task
+     * @return The reader holding the parsed primitives
+     * @throws XMLStreamException if the chunk could not be parsed, or the wait was interrupted
+     */
+    private static ChunkReader getChunk(Future<ChunkReader> future) throws XMLStreamException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XMLStreamException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // ForkJoinTask wraps checked exceptions
+            while (cause != null && cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof XMLStreamException) {
+                throw (XMLStreamException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new XMLStreamException(cause);
+        }
+    }
+
+    /**
+     * Adds the primitives of a parsed chunk. This must be called in document order, from the parsing thread.
+     * @param chunk The reader holding the parsed primitives
+     */
+    private void mergeChunk(ChunkReader chunk) {
+        for (int i = 0; i < chunk.data.size(); i++) {
+            final PrimitiveData pd = chunk.data.get(i);
+            final OsmPrimitive p = chunk.primitives.get(i);
+            if (p != null) {
+                externalIdMap.put(pd.getPrimitiveId(), p);
+            } else {
+                buildPrimitive(pd);
+            }
+        }
+        ways.putAll(chunk.ways);
+        relations.putAll(chunk.relations);
+    }
+
+    /**
+     * Parses a chunk of primitives on a pool thread
+     */
+    private static final class ChunkReader extends OsmReader {
+        private final List<PrimitiveData> data = new ArrayList<>();
+        /** The primitives built by the pool thread, {@code null} for new primitives which need the id generators */
+        private final List<OsmPrimitive> primitives = new ArrayList<>();
+
+        ChunkReader(Collection<Options> options) {
+            super(options.toArray(new Options[0]));
+        }
+
+        @Override
+        protected OsmPrimitive buildPrimitive(PrimitiveData pd) {
+            final OsmPrimitive p = pd.getUniqueId() > 0 ? super.buildPrimitive(pd) : null;
+            data.add(pd);
+            primitives.add(p);
+            return p;
+        }
+    }
+
+    /**
+     * Reports locations in the original document for a part of it
+     */
+    private static final class RelocatedStreamReader extends StreamReaderDelegate {
+        private final UnaryOperator<Location> relocation;
+
+        RelocatedStreamReader(XMLStreamReader reader, UnaryOperator<Location> relocation) {
+            super(reader);
+            this.relocation = relocation;
+        }
+
+        @Override
+        public Location getLocation() {
+            return relocate(super.getLocation());
+        }
+
+        Location relocate(Location location) {
+            return location != null ? relocation.apply(location) : null;
+        }
+    }
+
     /**
      * Parse the given input source and return the dataset.
      *
@@ -0,0 +1,507 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import javax.xml.stream.Location;
+
+/**
+ * Splits an OSM XML document into chunks of top-level {@code <node>}, {@code <way>} and {@code <relation>} elements,
+ * which can be parsed independently of each other.
+ * <p>
+ * The splitter only tracks what is needed to find element boundaries (tags, quoted attribute values, comments,
+ * CDATA sections and processing instructions), which is much cheaper than parsing the document.
+ * Everything else (the root element, bounds, changesets, remarks, ...) is kept in the {@link #getRemainder() remainder}.
+ * The prolog (XML declaration, document type declaration, ...) is kept in the remainder and repeated in the document of each
+ * chunk, so that the chunks are parsed like the document.
+ * Locations reported by the parsers of the chunks and of the remainder can be converted back to locations in the document.
+ * @since xxx
+ */
+final class OsmXmlSplitter {
+
+    /**
+     * A chunk of consecutive top-level primitive elements
+     */
+    static final class Chunk {
+        /** The elements */
+        final String text;
+        /** The line of the document where the chunk starts */
+        final int line;
+        /** The column of the document where the chunk starts */
+        final int column;
+        /** The character offset of the document where the chunk starts */
+        final int offset;
+
+        Chunk(String text, int line, int column, int offset) {
+            this.text = text;
+            this.line = line;
+            this.column = column;
+            this.offset = offset;
+        }
+    }
+
+    private enum State {
+        TEXT, TAG_OPEN, START_TAG, ATTRIBUTES, DOUBLE_QUOTED, SINGLE_QUOTED, END_TAG, DECLARATION, COMMENT, CDATA, DOCTYPE,
+        PROCESSING_INSTRUCTION
+    }
+
+    private static final String CDATA_START = "[CDATA[";
+    private static final String COMMENT_START = "--";
+
+    private final Reader source;
+    private final int chunkSize;
+    private final char[] buffer = new char[64 * 1024];
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+
+    private State state = State.TEXT;
+    private int depth;
+    private final StringBuilder name = new StringBuilder();
+    private final StringBuilder declaration = new StringBuilder();
+    private boolean lastWasSlash;
+    private int markupCount;
+    private int bracketDepth;
+
+    private final StringBuilder remainder = new StringBuilder();
+    private StringBuilder chunk = new StringBuilder();
+    /** The start of the current tag at depth 1, until we know if it belongs to a chunk or to the remainder */
+    private final StringBuilder pending = new StringBuilder();
+    private StringBuilder target = remainder;
+    private boolean inChunk;
+    private Chunk completed;
+    private boolean isOsm;
+    private int rootStart = -1;
+    /** Everything before the root element */
+    private String prolog;
+    /** The number of lines of the {@link #prolog} */
+    private int prologLines;
+    /** The number of characters of the last line of the {@link #prolog} */
+    private int prologColumns;
+    private String rootStartTag;
+    private int rootLine;
+    private int rootColumn;
+    private int rootOffset;
+
+    private int line = 1;
+    private int column = 1;
+    private int offset;
+    private int remainderLine = 1;
+    private int remainderLineStart;
+    private int tagLine;
+    private int tagColumn;
+    private int tagOffset;
+    private int chunkLine;
+    private int chunkColumn;
+    private int chunkOffset;
+    /** The offsets of the remainder where chunks were cut out */
+    private int[] cutOffsets = new int[16];
+    /** The lines of the remainder where chunks were cut out */
+    private int[] cutLines = new int[16];
+    /** The number of document lines cut out up to each cut */
+    private int[] cutLineCounts = new int[16];
+    /** The number of document characters cut out up to each cut */
+    private int[] cutCharCounts = new int[16];
+    /** The difference between the document column and the remainder column after each cut */
+    private int[] cutColumnShifts = new int[16];
+    private int cuts;
+
+    /**
+     * Constructs a new {@code OsmXmlSplitter}.
+     * @param source the document
+     * @param chunkSize the minimum number of characters of a chunk (except for the last one)
+     */
+    OsmXmlSplitter(Reader source, int chunkSize) {
+        this.source = source;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Reads the document until the next chunk is complete.
+     * @return the next chunk, or {@code null} at the end of the document
+     * @throws IOException if the document could not be read
+     */
+    Chunk next() throws IOException {
+        while (completed == null) {
+            if (position == limit && (endOfInput || !fill())) {
+                endOfInput = true;
+                flushPending(remainder);
+                endRun(line, column, offset);
+                break;
+            }
+            final char c = buffer[position++];
+            offset++;
+            if (c == '\n') {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+            if (process(c) && chunk.length() >= chunkSize) {
+                endRun(line, column, offset);
+            }
+        }
+        final Chunk result = completed;
+        completed = null;
+        return result;
+    }
+
+    private boolean fill() throws IOException {
+        final int read = source.read(buffer);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    /**
+     * Get everything but the chunks. Only complete after {@link #next()} returned {@code null}.
+     * @return The document without the primitives
+     */
+    String getRemainder() {
+        return remainder.toString();
+    }
+
+    /**
+     * Get the document to parse for a chunk: the chunk wrapped in the root element, after the prolog of the document
+     * @param chunk the chunk
+     * @return the document
+     */
+    String getDocument(Chunk chunk) {
+        return prolog + rootStartTag + chunk.text + "</osm>";
+    }
+
+    /**
+     * Converts a location in the {@link #getDocument(Chunk) document of a chunk} to a location in the document
+     * @param chunk the chunk
+     * @param location the location in the document of the chunk
+     * @return the location in the document
+     */
+    Location getDocumentLocation(Chunk chunk, Location location) {
+        final int l = location.getLineNumber() - prologLines;
+        final int c = l == 1 ? location.getColumnNumber() - prologColumns : location.getColumnNumber();
+        final int o = location.getCharacterOffset() < 0 ? -1 : location.getCharacterOffset() - prolog.length();
+        if (l < 1 || (l == 1 && c < 1) || (location.getCharacterOffset() >= 0 && o < 0)) {
+            // within the prolog, which is the same in the document
+            return location;
+        }
+        final int rootLength = rootStartTag.length();
+        if (l > 1) {
+            return new DocumentLocation(location, chunk.line + l - 1, c, o < 0 ? -1 : chunk.offset + o - rootLength);
+        } else if (o >= 0 ? o <= rootLength : c <= rootLength + 1) {
+            // within (or just after) the root start tag
+            return new DocumentLocation(location, rootLine, rootColumn + c - 1, o < 0 ? -1 : rootOffset + o);
+        }
+        return new DocumentLocation(location, chunk.line, chunk.column + c - rootLength - 1,
+                o < 0 ? -1 : chunk.offset + o - rootLength);
+    }
+
+    /**
+     * Converts a location in the {@link #getRemainder() remainder} to a location in the document
+     * @param location the location in the remainder
+     * @return the location in the document
+     */
+    Location getDocumentLocation(Location location) {
+        final int l = location.getLineNumber();
+        final int o = location.getCharacterOffset();
+        int index = o < 0 ? lastCut(cutLines, l) : lastCut(cutOffsets, o);
+        if (index < 0) {
+            return location;
+        }
+        final int c = location.getColumnNumber() + (l == cutLines[index] ? cutColumnShifts[index] : 0);
+        return new DocumentLocation(location, l + cutLineCounts[index], c, o < 0 ? -1 : o + cutCharCounts[index]);
+    }
+
+    private int lastCut(int[] positions, int position) {
+        int index = Arrays.binarySearch(positions, 0, cuts, position);
+        if (index < 0) {
+            return -index - 2;
+        }
+        // several runs may be cut out at the same position
+        while (index + 1 < cuts && positions[index + 1] == position) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Process one character
+     * @param c the character
+     * @return {@code true} if a primitive element of a chunk has been completed
+     */
+    private boolean process(char c) {
+        switch (state) {
+        case TEXT:
+            if (c == '<') {
+                state = State.TAG_OPEN;
+                if (depth == 1) {
+                    tagLine = line;
+                    tagColumn = column - 1;
+                    tagOffset = offset - 1;
+                    target = pending;
+                } else if (depth == 0) {
+                    rootStart = remainder.length();
+                    rootLine = line;
+                    rootColumn = column - 1;
+                    rootOffset = offset - 1;
+                }
+            }
+            append(c);
+            return false;
+        case TAG_OPEN:
+            if (c == '/') {
+                state = State.END_TAG;
+                if (depth == 1) {
+                    // the end of the root element
+                    endRun(tagLine, tagColumn, tagOffset);
+                    flushPending(remainder);
+                }
+            } else if (c == '!') {
+                state = State.DECLARATION;
+                declaration.setLength(0);
+                flushPending(inChunk ? chunk : remainder);
+            } else if (c == '?') {
+                state = State.PROCESSING_INSTRUCTION;
+                lastWasSlash = false;
+                flushPending(inChunk ? chunk : remainder);
+            } else {
+                state = State.START_TAG;
+                name.setLength(0);
+                name.append(c);
+            }
+            append(c);
+            return false;
+        case START_TAG:
+            if (c == '>' || c == '/' || Character.isWhitespace(c)) {
+                startTagName();
+                state = State.ATTRIBUTES;
+                return processAttributes(c);
+            }
+            if (depth <= 1 && name.length() < 16) {
+                name.append(c);
+            }
+            append(c);
+            return false;
+        case ATTRIBUTES:
+            return processAttributes(c);
+        case DOUBLE_QUOTED:
+            if (c == '"') {
+                state = State.ATTRIBUTES;
+            }
+            append(c);
+            return false;
+        case SINGLE_QUOTED:
+            if (c == '\'') {
+                state = State.ATTRIBUTES;
+            }
+            append(c);
+            return false;
+        case END_TAG:
+            append(c);
+            if (c == '>') {
+                state = State.TEXT;
+                depth--;
+                return endElement();
+            }
+            return false;
+        case DECLARATION:
+            append(c);
+            declaration.append(c);
+            if (COMMENT_START.contentEquals(declaration)) {
+                state = State.COMMENT;
+                markupCount = 0;
+            } else if (CDATA_START.contentEquals(declaration)) {
+                state = State.CDATA;
+                markupCount = 0;
+            } else if (!COMMENT_START.startsWith(declaration.toString()) && !CDATA_START.startsWith(declaration.toString())) {
+                state = State.DOCTYPE;
+                bracketDepth = 0;
+                processDoctype(c);
+            }
+            return false;
+        case COMMENT:
+            append(c);
+            if (c == '>' && markupCount >= 2) {
+                state = State.TEXT;
+            }
+            markupCount = c == '-' ? markupCount + 1 : 0;
+            return false;
+        case CDATA:
+            append(c);
+            if (c == '>' && markupCount >= 2) {
+                state = State.TEXT;
+            }
+            markupCount = c == ']' ? markupCount + 1 : 0;
+            return false;
+        case DOCTYPE:
+            append(c);
+            processDoctype(c);
+            return false;
+        case PROCESSING_INSTRUCTION:
+            append(c);
+            if (c == '>' && lastWasSlash) {
+                state = State.TEXT;
+            }
+            lastWasSlash = c == '?';
+            return false;
+        default:
+            throw new IllegalStateException(state.name());
+        }
+    }
+
+    private void processDoctype(char c) {
+        if (c == '[') {
+            bracketDepth++;
+        } else if (c == ']') {
+            bracketDepth--;
+        } else if (c == '>' && bracketDepth <= 0) {
+            state = State.TEXT;
+        }
+    }
+
+    private boolean processAttributes(char c) {
+        append(c);
+        if (c == '"') {
+            state = State.DOUBLE_QUOTED;
+        } else if (c == '\'') {
+            state = State.SINGLE_QUOTED;
+        } else if (c == '>') {
+            state = State.TEXT;
+            if (depth == 0 && rootStart >= 0 && rootStartTag == null) {
+                rootStartTag = remainder.substring(rootStart).replace('\r', ' ').replace('\n', ' ');
+                prolog = remainder.substring(0, rootStart);
+                final int lastLine = prolog.lastIndexOf('\n');
+                prologLines = (int) prolog.chars().filter(ch -> ch == '\n').count();
+                prologColumns = prolog.length() - lastLine - 1;
+            }
+            if (lastWasSlash) {
+                return endElement();
+            }
+            depth++;
+            return false;
+        }
+        lastWasSlash = c == '/';
+        return false;
+    }
+
+    /**
+     * Called when the name of a start tag is complete
+     */
+    private void startTagName() {
+        lastWasSlash = false;
+        if (depth == 0) {
+            isOsm = isOsm || "osm".contentEquals(name);
+        } else if (depth == 1) {
+            if (isOsm && ("node".contentEquals(name) || "way".contentEquals(name) || "relation".contentEquals(name))) {
+                if (!inChunk) {
+                    inChunk = true;
+                    chunkLine = tagLine;
+                    chunkColumn = tagColumn;
+                    chunkOffset = tagOffset;
+                }
+                flushPending(chunk);
+            } else {
+                endRun(tagLine, tagColumn, tagOffset);
+                flushPending(remainder);
+            }
+        }
+    }
+
+    /**
+     * Called at the end of an element
+     * @return {@code true} if a top-level primitive element has been completed
+     */
+    private boolean endElement() {
+        return depth == 1 && inChunk;
+    }
+
+    private void append(char c) {
+        target.append(c);
+        if (c == '\n' && target == remainder) {
+            remainderLine++;
+            remainderLineStart = remainder.length();
+        }
+    }
+
+    private void flushPending(StringBuilder destination) {
+        if (target == pending) {
+            destination.append(pending);
+            pending.setLength(0);
+            target = destination;
+        }
+    }
+
+    /**
+     * Completes the current chunk, if any
+     * @param endLine the line of the document where the chunk ends
+     * @param endColumn the column of the document where the chunk ends
+     * @param endOffset the character offset of the document where the chunk ends
+     */
+    private void endRun(int endLine, int endColumn, int endOffset) {
+        if (target == chunk) {
+            target = remainder;
+        }
+        if (!inChunk) {
+            return;
+        }
+        inChunk = false;
+        if (cuts == cutLines.length) {
+            cutOffsets = Arrays.copyOf(cutOffsets, 2 * cuts);
+            cutLines = Arrays.copyOf(cutLines, 2 * cuts);
+            cutLineCounts = Arrays.copyOf(cutLineCounts, 2 * cuts);
+            cutCharCounts = Arrays.copyOf(cutCharCounts, 2 * cuts);
+            cutColumnShifts = Arrays.copyOf(cutColumnShifts, 2 * cuts);
+        }
+        cutOffsets[cuts] = remainder.length();
+        cutLines[cuts] = remainderLine;
+        cutLineCounts[cuts] = (cuts == 0 ? 0 : cutLineCounts[cuts - 1]) + endLine - chunkLine;
+        cutCharCounts[cuts] = (cuts == 0 ? 0 : cutCharCounts[cuts - 1]) + endOffset - chunkOffset;
+        cutColumnShifts[cuts] = endColumn - (remainder.length() - remainderLineStart + 1);
+        cuts++;
+        completed = new Chunk(chunk.toString(), chunkLine, chunkColumn, chunkOffset);
+        chunk = new StringBuilder(chunkSize + chunkSize / 8);
+    }
+
+    /**
+     * A location in the document
+     */
+    private static final class DocumentLocation implements Location {
+        private final Location location;
+        private final int line;
+        private final int column;
+        private final int offset;
+
+        DocumentLocation(Location location, int line, int column, int offset) {
+            this.location = location;
+            this.line = line;
+            this.column = column;
+            this.offset = offset;
+        }
+
+        @Override
+        public int getLineNumber() {
+            return line;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return column;
+        }
+
+        @Override
+        public int getCharacterOffset() {
+            return offset;
+        }
+
+        @Override
+        public String getPublicId() {
+            return location.getPublicId();
+        }
+
+        @Override
+        public String getSystemId() {
+            return location.getSystemId();
+        }
+    }
+}
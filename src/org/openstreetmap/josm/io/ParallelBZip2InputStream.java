@@ -0,0 +1,427 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * An input stream which decompresses bzip2 data on several threads.
+ * <p>
+ * The blocks of a bzip2 stream are compressed independently of each other, and start with a (not byte-aligned) magic number.
+ * This stream looks for the block boundaries on the reading thread, wraps each block into a stream of its own and
+ * decompresses the blocks on a pool. The decompressed blocks are returned in order.
+ * Concatenated streams (as written by {@code pbzip2}) are supported.
+ * <p>
+ * The magic numbers may also occur by chance inside a block. Such a false boundary makes the decompression of the blocks
+ * around it fail, since the CRC of each block is checked. The data is then read again from the start, and decompressed
+ * sequentially after the blocks already returned.
+ * @since xxx
+ */
+final class ParallelBZip2InputStream extends InputStream {
+
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+    private static final long MAGIC_MASK = (1L << 48) - 1;
+    private static final int MAGIC_BITS = 48;
+    private static final int CRC_BITS = 32;
+    /** Compressed blocks are less than 1 MB, anything much larger is not bzip2 data */
+    private static final int MAX_BLOCK_LENGTH = 4 << 20;
+
+    /**
+     * Opens the compressed data
+     */
+    @FunctionalInterface
+    interface Source {
+        /**
+         * Opens the compressed data from the start
+         * @return a new stream on the compressed data
+         * @throws IOException if the data could not be opened
+         */
+        InputStream open() throws IOException;
+    }
+
+    private final InputStream in;
+    private final Source source;
+    private final ForkJoinPool pool;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] current = new byte[0];
+    private int position;
+    /** The number of decompressed bytes returned before {@link #current} */
+    private long offset;
+    /** The sequential decompressor used after a block could not be decompressed, {@code null} before */
+    private InputStream sequential;
+
+    private final byte[] input = new byte[64 * 1024];
+    private int inputPosition;
+    private int inputLimit;
+    private boolean firstStream = true;
+    private boolean endOfInput;
+
+    /** The bytes of the current block, starting with the byte in which the block starts */
+    private byte[] block = new byte[1 << 20];
+    private int blockLength;
+    /** The bit of {@code block[0]} where the current block starts, {@code -1} if no block has been started yet */
+    private int blockStart = -1;
+    private int level;
+    /** The last 64 bits read */
+    private long window;
+    /** The number of valid bits in {@link #window} */
+    private int windowBits;
+
+    /**
+     * Constructs a new {@code ParallelBZip2InputStream}.
+     * @param source opens the compressed data. It is opened once more if the data has to be decompressed sequentially
+     * @param pool the pool used to decompress blocks. It is shut down when this stream is closed
+     * @throws IOException if the data could not be opened
+     */
+    ParallelBZip2InputStream(Source source, ForkJoinPool pool) throws IOException {
+        this.source = source;
+        this.pool = pool;
+        try {
+            this.in = source.open();
+        } catch (IOException e) {
+            pool.shutdownNow();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (sequential == null && position == current.length && !fill()) {
+            return -1;
+        }
+        if (sequential != null) {
+            return sequential.read();
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (sequential == null && position == current.length && !fill()) {
+            return -1;
+        }
+        if (sequential != null) {
+            return sequential.read(b, off, len);
+        }
+        final int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return sequential != null ? sequential.available() : current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stopParallel();
+        in.close();
+        if (sequential != null) {
+            sequential.close();
+        }
+    }
+
+    private void stopParallel() {
+        pending.forEach(future -> future.cancel(true));
+        pending.clear();
+        pool.shutdownNow();
+    }
+
+    /**
+     * Get the next decompressed block, or switch to sequential decompression if a block could not be decompressed
+     * @return {@code false} at the end of the data
+     * @throws IOException if the data could not be read or decompressed
+     */
+    private boolean fill() throws IOException {
+        try {
+            do {
+                // Keep the pool busy
+                while (!endOfInput && pending.size() < 2 * pool.getParallelism()) {
+                    scanBlock();
+                }
+                if (pending.isEmpty()) {
+                    return false;
+                }
+                offset += current.length;
+                current = new byte[0];
+                position = 0;
+                current = get(pending.removeFirst());
+            } while (current.length == 0);
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            fallBack(e);
+        }
+        return true;
+    }
+
+    /**
+     * Decompresses the data sequentially, after the data already returned
+     * @param cause the reason why the parallel decompression failed
+     * @throws IOException if the data could not be read or decompressed
+     */
+    private void fallBack(IOException cause) throws IOException {
+        Logging.log(Logging.LEVEL_DEBUG, "Parallel bzip2 decompression failed, decompressing sequentially", cause);
+        stopParallel();
+        Utils.close(in);
+        // The current block, if any, has been read entirely
+        offset += position;
+        current = new byte[0];
+        position = 0;
+        final InputStream raw = source.open();
+        try {
+            sequential = new BZip2CompressorInputStream(new BufferedInputStream(raw), true);
+            for (long remaining = offset; remaining > 0; ) {
+                final long skipped = sequential.skip(remaining);
+                if (skipped <= 0) {
+                    throw new IOException("Unexpected end of bzip2 data");
+                }
+                remaining -= skipped;
+            }
+        } catch (IOException e) {
+            Utils.close(raw);
+            sequential = null;
+            endOfInput = true;
+            e.addSuppressed(cause);
+            throw e;
+        }
+    }
+
+    private static byte[] get(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // ForkJoinTask wraps checked exceptions
+            while (cause != null && cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private int readByte() throws IOException {
+        if (inputPosition == inputLimit) {
+            inputLimit = Math.max(in.read(input), 0);
+            inputPosition = 0;
+            if (inputLimit == 0) {
+                return -1;
+            }
+        }
+        return input[inputPosition++] & 0xff;
+    }
+
+    /**
+     * Reads the header of a stream
+     * @return {@code false} if there is no further stream
+     * @throws IOException if the data could not be read, or is not bzip2 data
+     */
+    private boolean readStreamHeader() throws IOException {
+        final int b = readByte();
+        if (b < 0 && !firstStream) {
+            return false;
+        }
+        final int z = readByte();
+        final int h = readByte();
+        final int blockSize = readByte();
+        if (b != 'B' || z != 'Z' || h != 'h' || blockSize < '1' || blockSize > '9') {
+            if (firstStream) {
+                throw new IOException("Stream is not in the BZip2 format");
+            }
+            // Like BZip2CompressorInputStream, ignore garbage after the first stream
+            return false;
+        }
+        firstStream = false;
+        level = blockSize;
+        blockLength = 0;
+        blockStart = -1;
+        windowBits = 0;
+        return true;
+    }
+
+    /**
+     * Reads until the end of the next block, and submits it for decompression
+     * @throws IOException if the data could not be read, or is not bzip2 data
+     */
+    private void scanBlock() throws IOException {
+        if (blockStart < 0 && blockLength == 0 && !readStreamHeader()) {
+            endOfInput = true;
+            return;
+        }
+        while (true) {
+            final int b = readByte();
+            if (b < 0) {
+                throw new IOException("Unexpected end of bzip2 data");
+            }
+            if (blockLength == block.length) {
+                if (blockLength >= MAX_BLOCK_LENGTH) {
+                    throw new IOException("Invalid bzip2 block");
+                }
+                block = Arrays.copyOf(block, 2 * blockLength);
+            }
+            block[blockLength++] = (byte) b;
+            window = (window << 8) | b;
+            windowBits += 8;
+            // Look for a magic number starting in the bits of this byte, from the first to the last
+            for (int shift = 7; shift >= 0; shift--) {
+                final int start = 8 * blockLength - MAGIC_BITS - shift;
+                if (windowBits - shift < MAGIC_BITS || start <= blockStart) {
+                    continue;
+                }
+                final long magic = (window >>> shift) & MAGIC_MASK;
+                if (magic == BLOCK_MAGIC) {
+                    final boolean submitted = submitBlock(start);
+                    startBlock(start);
+                    if (submitted) {
+                        return;
+                    }
+                    break;
+                } else if (magic == END_OF_STREAM_MAGIC) {
+                    submitBlock(start);
+                    endStream(start);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Submits the current block for decompression
+     * @param end the bit of the buffer where the block ends
+     * @return {@code true} if a block has been submitted
+     * @throws IOException if the data is not bzip2 data
+     */
+    private boolean submitBlock(int end) throws IOException {
+        if (blockStart < 0) {
+            if (end != 0) {
+                // The magic number must start right after the stream header
+                throw new IOException("Invalid bzip2 block");
+            }
+            return false;
+        }
+        final byte[] bytes = Arrays.copyOf(block, (end + 7) / 8);
+        final int start = blockStart;
+        final int blockLevel = level;
+        pending.add(pool.submit(() -> decompress(bytes, start, end, blockLevel)));
+        return true;
+    }
+
+    /**
+     * Starts a new block
+     * @param start the bit of the buffer where the block starts
+     */
+    private void startBlock(int start) {
+        final int startByte = start / 8;
+        System.arraycopy(block, startByte, block, 0, blockLength - startByte);
+        blockLength -= startByte;
+        blockStart = start % 8;
+    }
+
+    /**
+     * Ends the current stream
+     * @param start the bit of the buffer where the end of stream magic number starts
+     * @throws IOException if the data could not be read
+     */
+    private void endStream(int start) throws IOException {
+        // Skip the combined CRC and the padding
+        int remaining = (start + MAGIC_BITS + CRC_BITS + 7) / 8 - blockLength;
+        for (; remaining > 0; remaining--) {
+            if (readByte() < 0) {
+                throw new IOException("Unexpected end of bzip2 data");
+            }
+        }
+        blockLength = 0;
+        blockStart = -1;
+    }
+
+    /**
+     * Decompresses one block. This may be called from any thread.
+     * @param bytes the bytes of the block
+     * @param start the first bit of the block, i.e. of its magic number
+     * @param end the bit after the last bit of the block
+     * @param level the block size of the stream
+     * @return the decompressed data
+     * @throws IOException if the block is invalid
+     */
+    private static byte[] decompress(byte[] bytes, int start, int end, int level) throws IOException {
+        // Make a stream with just this block. Its combined CRC is the CRC of the block, which follows the block magic number
+        final BitWriter stream = new BitWriter(bytes.length + 16);
+        stream.writeBits('B', 8);
+        stream.writeBits('Z', 8);
+        stream.writeBits('h', 8);
+        stream.writeBits(level, 8);
+        for (int bit = start; bit < end; bit++) {
+            stream.writeBits((bytes[bit >>> 3] >>> (7 - (bit & 7))) & 1, 1);
+        }
+        stream.writeBits(END_OF_STREAM_MAGIC, MAGIC_BITS);
+        int crc = 0;
+        for (int bit = start + MAGIC_BITS; bit < start + MAGIC_BITS + CRC_BITS; bit++) {
+            crc = (crc << 1) | ((bytes[bit >>> 3] >>> (7 - (bit & 7))) & 1);
+        }
+        stream.writeBits(crc & 0xffffffffL, CRC_BITS);
+        try (InputStream decompressed = new BZip2CompressorInputStream(new ByteArrayInputStream(stream.toByteArray()))) {
+            return decompressed.readAllBytes();
+        }
+    }
+
+    /**
+     * Writes bits, most significant bit first
+     */
+    private static final class BitWriter {
+        private final ByteArrayOutputStream out;
+        private int buffer;
+        private int bufferBits;
+
+        BitWriter(int size) {
+            out = new ByteArrayOutputStream(size);
+        }
+
+        void writeBits(long value, int bits) {
+            for (int i = bits - 1; i >= 0; i--) {
+                buffer = (buffer << 1) | (int) ((value >>> i) & 1);
+                if (++bufferBits == 8) {
+                    out.write(buffer);
+                    buffer = 0;
+                    bufferBits = 0;
+                }
+            }
+        }
+
+        byte[] toByteArray() {
+            if (bufferBits > 0) {
+                out.write(buffer << (8 - bufferBits));
+                buffer = 0;
+                bufferBits = 0;
+            }
+            return out.toByteArray();
+        }
+    }
+}
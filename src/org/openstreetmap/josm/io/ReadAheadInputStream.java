@@ -0,0 +1,150 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * An input stream which reads another stream on a background thread, so that for instance decompressing
+ * data and parsing it happen at the same time.
+ * @since xxx
+ */
+final class ReadAheadInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final InputStream in;
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(8);
+    private final ExecutorService executor;
+    private volatile boolean closed;
+    private byte[] current = new byte[0];
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+
+    /**
+     * Constructs a new {@code ReadAheadInputStream}.
+     * @param in the stream to read on a background thread
+     * @param name the name of the background thread
+     */
+    ReadAheadInputStream(InputStream in, String name) {
+        this.in = in;
+        this.executor = Executors.newSingleThreadExecutor(Utils.newThreadFactory(name + "-%d", Thread.NORM_PRIORITY));
+        this.executor.execute(this::readAhead);
+    }
+
+    private void readAhead() {
+        try {
+            while (!closed) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int length = 0;
+                int read = 0;
+                while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) >= 0) {
+                    length += read;
+                }
+                if (length > 0) {
+                    queue.put(new Buffer(buffer, length));
+                }
+                if (read < 0) {
+                    queue.put(END_OF_STREAM);
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            put(e);
+        } catch (InterruptedException e) {
+            Logging.trace(e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void put(Exception e) {
+        try {
+            queue.put(e);
+        } catch (InterruptedException ex) {
+            Logging.trace(ex);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        final int n = Math.min(len, limit - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    private boolean fill() throws IOException {
+        if (endOfStream) {
+            return false;
+        }
+        final Object next;
+        try {
+            next = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+        if (next == END_OF_STREAM) {
+            endOfStream = true;
+            return false;
+        } else if (next instanceof IOException) {
+            endOfStream = true;
+            throw (IOException) next;
+        } else if (next instanceof RuntimeException) {
+            endOfStream = true;
+            throw (RuntimeException) next;
+        }
+        current = ((Buffer) next).bytes;
+        limit = ((Buffer) next).length;
+        position = 0;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        executor.shutdownNow();
+        queue.clear();
+        in.close();
+    }
+
+    private static final class Buffer {
+        final byte[] bytes;
+        final int length;
+
+        Buffer(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.commons.jcs3.access.behavior.ICacheAccess;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.PerformanceTestUtils.PerformanceTestTimer;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Compares the hit latency and the cold-open time of the {@link MappedFileCache} and of the JCS block disk cache.
+ */
+@BasicPreferences
+@Timeout(value = 15, unit = TimeUnit.MINUTES)
+class MappedFileCachePerformanceTest {
+
+    private static final int TILES = 20_000;
+    private static final int TILE_SIZE = 20_000;
+    private static final int MAX_DISK_SIZE = 1024 * 1024; // kB
+
+    private static BufferedImageCacheEntry[] tiles;
+
+    /**
+     * Generates the tiles.
+     */
+    @BeforeAll
+    static void createTiles() {
+        Random random = new Random(42);
+        tiles = new BufferedImageCacheEntry[TILES];
+        for (int i = 0; i < TILES; i++) {
+            byte[] content = new byte[TILE_SIZE / 2 + random.nextInt(TILE_SIZE)];
+            random.nextBytes(content);
+            tiles[i] = new BufferedImageCacheEntry(content);
+        }
+    }
+
+    private static String key(int i) {
+        return "TMS:" + (i % 18) + '/' + (i * 31) + '/' + (i * 17);
+    }
+
+    private static void run(String name, Supplier<ICacheAccess<String, BufferedImageCacheEntry>> open) {
+        ICacheAccess<String, BufferedImageCacheEntry> cache = open.get();
+        for (int i = 0; i < TILES; i++) {
+            CacheEntryAttributes attributes = new CacheEntryAttributes();
+            attributes.setExpirationTime(i);
+            cache.put(key(i), tiles[i], attributes);
+        }
+        JCSCacheManager.shutdown();
+
+        PerformanceTestTimer timer = PerformanceTestUtils.startTimer(name + ": cold open");
+        cache = open.get();
+        assertNotNull(cache.get(key(0)));
+        timer.done();
+
+        ICacheAccess<String, BufferedImageCacheEntry> opened = cache;
+        int[] found = new int[1];
+        PerformanceTestUtils.runPerformanceTest(name + ": hits", () -> {
+            found[0] = 0;
+            for (int i = 0; i < TILES; i += 7) {
+                BufferedImageCacheEntry tile = opened.get(key(i));
+                if (tile != null && tile.getContent().length == tiles[i].getContent().length) {
+                    found[0]++;
+                }
+            }
+        });
+        assertEquals((TILES + 6) / 7, found[0]);
+        JCSCacheManager.shutdown();
+    }
+
+    /**
+     * Measures the JCS block disk cache.
+     * @param dir the cache directory
+     */
+    @Test
+    void testBlockCache(@TempDir File dir) {
+        run("JCS block cache", () -> JCSCacheManager.getCache("perf", 0, MAX_DISK_SIZE, dir.getPath()));
+    }
+
+    /**
+     * Measures the mapped file cache.
+     * @param dir the cache directory
+     */
+    @Test
+    void testMappedFileCache(@TempDir File dir) {
+        run("mapped file cache", () -> MappedFileCache.getCache("perf", MAX_DISK_SIZE, dir.getPath()));
+    }
+}
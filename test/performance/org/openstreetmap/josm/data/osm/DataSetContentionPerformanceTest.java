@@ -0,0 +1,130 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.PerformanceTestUtils.PerformanceTestTimer;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * This test measures the throughput of background readers of a {@link DataSet} while another thread modifies it,
+ * using the read lock and using optimistic reads.
+ */
+@Projection
+@Timeout(value = 15, unit = TimeUnit.MINUTES)
+class DataSetContentionPerformanceTest {
+    private static final int READERS = 4;
+    private static final int READS_PER_READER = 20_000;
+    private static final int NODES_PER_UPDATE = 10;
+    private static DataSet dataSet;
+    private static List<Node> nodes;
+    private static BBox bounds;
+
+    /**
+     * Load the test data
+     * @throws Exception if the data could not be loaded
+     */
+    @BeforeAll
+    static void setUp() throws Exception {
+        dataSet = PerformanceTestUtils.getNeubrandenburgDataSet();
+        nodes = new ArrayList<>(dataSet.getNodes());
+        bounds = new BBox();
+        nodes.forEach(n -> bounds.add(n));
+    }
+
+    /**
+     * Readers take the read lock for every search
+     * @throws Exception if a reader failed
+     */
+    @Test
+    void testReadLock() throws Exception {
+        run("read lock", search -> {
+            dataSet.getReadLock().lock();
+            try {
+                return search.get();
+            } finally {
+                dataSet.getReadLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Readers search without lock, and only lock if the search was concurrent to a modification
+     * @throws Exception if a reader failed
+     */
+    @Test
+    void testOptimistic() throws Exception {
+        run("optimistic read", dataSet::readOptimistically);
+    }
+
+    private static void run(String name, Function<Supplier<Integer>, Integer> reader) throws Exception {
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicLong updates = new AtomicLong();
+        final ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+        try {
+            final Future<?> writer = executor.submit(() -> {
+                final Random random = new Random(1);
+                while (!done.get()) {
+                    dataSet.beginUpdate();
+                    try {
+                        for (int i = 0; i < NODES_PER_UPDATE; i++) {
+                            final Node node = nodes.get(random.nextInt(nodes.size()));
+                            if (node.isLatLonKnown()) {
+                                node.setCoor(new LatLon(node.lat() + (random.nextDouble() - 0.5) * 1e-5, node.lon()));
+                            }
+                        }
+                    } finally {
+                        dataSet.endUpdate();
+                    }
+                    updates.incrementAndGet();
+                    Thread.yield();
+                }
+            });
+            final List<Future<Long>> readers = new ArrayList<>();
+            final PerformanceTestTimer timer = PerformanceTestUtils.startTimer(
+                    name + ": " + READERS + " readers with " + READS_PER_READER + " searches each");
+            for (int r = 0; r < READERS; r++) {
+                final Random random = new Random(r);
+                readers.add(executor.submit(() -> {
+                    long found = 0;
+                    for (int i = 0; i < READS_PER_READER; i++) {
+                        final double lat = bounds.getBottomRightLat() + random.nextDouble() * bounds.height();
+                        final double lon = bounds.getTopLeftLon() + random.nextDouble() * bounds.width();
+                        final BBox box = new BBox(lon, lat, lon + 0.002, lat + 0.002);
+                        found += reader.apply(() -> dataSet.searchNodes(box).size() + dataSet.searchWays(box).size());
+                    }
+                    return found;
+                }));
+            }
+            long found = 0;
+            for (Future<Long> future : readers) {
+                found += future.get();
+            }
+            timer.done();
+            done.set(true);
+            writer.get();
+            PerformanceTestUtils.measurementPlotsPluginOutput(name + ": updates during reads", updates.get());
+            assertTrue(found > 0);
+        } finally {
+            done.set(true);
+            executor.shutdownNow();
+        }
+    }
+}
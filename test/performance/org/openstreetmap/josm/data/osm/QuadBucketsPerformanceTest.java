@@ -0,0 +1,129 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.PerformanceTestUtils.PerformanceTestTimer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * This test measures the time to build {@link QuadBuckets} one by one and with a bulk load,
+ * and the time and memory needed to search them with and without packing.
+ */
+@Timeout(value = 15, unit = TimeUnit.MINUTES)
+class QuadBucketsPerformanceTest {
+    private static final int TIMES = 10;
+    private static final int SEARCHES = 100_000;
+    private static List<Node> nodes;
+    private static List<Way> ways;
+    private static BBox bounds;
+
+    /**
+     * Load the test data
+     * @throws Exception if the data could not be loaded
+     */
+    @BeforeAll
+    static void setUp() throws Exception {
+        DataSet dataSet = PerformanceTestUtils.getNeubrandenburgDataSet();
+        nodes = new ArrayList<>(dataSet.getNodes());
+        ways = new ArrayList<>(dataSet.getWays());
+        bounds = new BBox();
+        nodes.forEach(n -> bounds.add(n));
+    }
+
+    /**
+     * Measure the time to add all nodes and ways
+     */
+    @Test
+    void testBuild() {
+        PerformanceTestTimer timer = PerformanceTestUtils.startTimer("add nodes and ways one by one " + TIMES + " times");
+        for (int i = 0; i < TIMES; i++) {
+            QuadBuckets<Node> qbNodes = new QuadBuckets<>();
+            nodes.forEach(qbNodes::add);
+            QuadBuckets<Way> qbWays = new QuadBuckets<>();
+            ways.forEach(qbWays::add);
+            assertEquals(nodes.size(), qbNodes.size());
+        }
+        timer.done();
+
+        timer = PerformanceTestUtils.startTimer("bulk load nodes and ways " + TIMES + " times");
+        for (int i = 0; i < TIMES; i++) {
+            QuadBuckets<Node> qbNodes = new QuadBuckets<>();
+            qbNodes.addAll(nodes);
+            QuadBuckets<Way> qbWays = new QuadBuckets<>();
+            qbWays.addAll(ways);
+            assertEquals(nodes.size(), qbNodes.size());
+        }
+        timer.done();
+    }
+
+    /**
+     * Measure the time to search the nodes and ways
+     */
+    @Test
+    void testSearch() {
+        QuadBuckets<Node> qbNodes = new QuadBuckets<>();
+        qbNodes.addAll(nodes);
+        QuadBuckets<Way> qbWays = new QuadBuckets<>();
+        qbWays.addAll(ways);
+        long expected = search("search buckets", qbNodes, qbWays);
+        qbNodes.pack();
+        qbWays.pack();
+        assertEquals(expected, search("search packed buckets", qbNodes, qbWays));
+    }
+
+    /**
+     * Measure the heap used by the buckets, with and without packing
+     */
+    @Test
+    void testMemory() {
+        final long baseline = usedMemory();
+        QuadBuckets<Node> qbNodes = new QuadBuckets<>();
+        qbNodes.addAll(nodes);
+        QuadBuckets<Way> qbWays = new QuadBuckets<>();
+        qbWays.addAll(ways);
+        final long treeMemory = usedMemory() - baseline;
+        qbNodes.pack();
+        qbWays.pack();
+        final long packedMemory = usedMemory() - baseline;
+        PerformanceTestUtils.measurementPlotsPluginOutput("QuadBuckets memory (bytes)", treeMemory);
+        PerformanceTestUtils.measurementPlotsPluginOutput("packed QuadBuckets memory (bytes)", packedMemory);
+        assertEquals(nodes.size(), qbNodes.size());
+        assertEquals(ways.size(), qbWays.size());
+        assertTrue(packedMemory < treeMemory, packedMemory + " should be less than " + treeMemory);
+    }
+
+    @SuppressFBWarnings(value = "DM_GC", justification = "Performance test code")
+    private static long usedMemory() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long search(String name, QuadBuckets<Node> qbNodes, QuadBuckets<Way> qbWays) {
+        Random random = new Random(1);
+        long found = 0;
+        PerformanceTestTimer timer = PerformanceTestUtils.startTimer(name + ' ' + SEARCHES + " times");
+        for (int i = 0; i < SEARCHES; i++) {
+            double lat = bounds.getBottomRightLat() + random.nextDouble() * bounds.height();
+            double lon = bounds.getTopLeftLon() + random.nextDouble() * bounds.width();
+            BBox box = new BBox(lon, lat, lon + 0.002, lat + 0.002);
+            found += qbNodes.search(box).size() + qbWays.search(box).size();
+        }
+        timer.done();
+        return found;
+    }
+}
@@ -0,0 +1,59 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.data.osm.search.SearchCompiler;
+import org.openstreetmap.josm.data.osm.search.SearchCompiler.Match;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Compares the time needed to search the Neubrandenburg data set with and without the {@link TagIndex}.
+ */
+@BasicPreferences
+@Projection
+@Timeout(value = 15, unit = TimeUnit.MINUTES)
+class TagIndexPerformanceTest {
+
+    private static DataSet ds;
+
+    /**
+     * Loads the data.
+     * @throws Exception if any error occurs
+     */
+    @BeforeAll
+    static void loadData() throws Exception {
+        ds = PerformanceTestUtils.getNeubrandenburgDataSet();
+        PerformanceTestUtils.runPerformanceTest("TagIndex#<init>", () -> new TagIndex(ds.allPrimitives()));
+        ds.getTagIndex();
+    }
+
+    /**
+     * Measures the time needed to search the data set by testing every primitive, and with the candidates of the tag index.
+     * @param search the search expression
+     * @throws Exception if the search expression cannot be compiled
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"amenity=bench", "highway=* -highway=footway", "building=yes | amenity=school", "bench"})
+    void testSearch(String search) throws Exception {
+        Match match = SearchCompiler.compile(search);
+        int[] found = new int[2];
+        PerformanceTestUtils.runPerformanceTest("scan: " + search,
+                () -> found[0] = ds.allPrimitives().stream().filter(match).collect(Collectors.toList()).size());
+        PerformanceTestUtils.runPerformanceTest("tag index: " + search, () -> {
+            Collection<OsmPrimitive> candidates = SearchCompiler.getCandidates(match, ds);
+            found[1] = candidates.stream().filter(match).collect(Collectors.toList()).size();
+        });
+        assertEquals(found[0], found[1]);
+    }
+}
@@ -8,6 +8,11 @@ import javax.imageio.ImageIO;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.PerformanceTestUtils.PerformanceTestTimer;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.gui.mappaint.MapPaintStyles;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -34,6 +39,33 @@ class StyledMapRendererPerformanceTest extends AbstractMapRendererPerformanceTes
         return new StyledMapRenderer(g, nc, false);
     }
 
+    /**
+     * Pans across the city, computing the style records at each repaint or keeping them in a {@link DisplayList}.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testCityPan() throws Exception {
+        DataSet ds = PerformanceTestUtils.getNeubrandenburgDataSet();
+        DisplayList displayList = new DisplayList(ds);
+        try {
+            for (boolean retain : new boolean[] {false, true}) {
+                PerformanceTestTimer timer = PerformanceTestUtils.startTimer("pan " + (retain ? "with" : "without") + " display list");
+                for (int i = 0; i < 50; i++) {
+                    Bounds bounds = new Bounds(53.55, 13.25 + i * 0.001, 53.57, 13.28 + i * 0.001);
+                    nc.zoomTo(bounds);
+                    StyledMapRenderer renderer = new StyledMapRenderer(g, nc, false);
+                    if (retain) {
+                        renderer.setDisplayList(displayList);
+                    }
+                    renderer.render(ds, false, bounds);
+                }
+                timer.done();
+            }
+        } finally {
+            displayList.destroy();
+        }
+    }
+
     /**
      * run this manually to verify that the rendering is set up properly
      * @throws IOException if any I/O error occurs
@@ -0,0 +1,133 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.protobuf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.PerformanceTestUtils.PerformanceTestTimer;
+
+/**
+ * This test compares decoding protobuf data with {@link ProtobufParser}/{@link ProtobufRecord} and with {@link ProtobufReader}.
+ * <p>
+ * The data mimics OSM PBF primitive groups: messages with a var int id and delta encoded packed sint64 fields.
+ */
+@Timeout(value = 15, unit = TimeUnit.MINUTES)
+class ProtobufReaderPerformanceTest {
+    private static final int TIMES = 20;
+    private static final int MESSAGES = 20_000;
+    private static final int VALUES_PER_MESSAGE = 50;
+    private static byte[] data;
+    private static long expected;
+
+    /**
+     * Generate the test data
+     */
+    @BeforeAll
+    static void setUp() {
+        final Random random = new Random(42);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < MESSAGES; i++) {
+            final ByteArrayOutputStream packed = new ByteArrayOutputStream();
+            for (int j = 0; j < VALUES_PER_MESSAGE; j++) {
+                final long value = random.nextInt(2_000_000) - 1_000_000L;
+                writeVarInt(packed, (value << 1) ^ (value >> 63));
+                expected += value;
+            }
+            final ByteArrayOutputStream message = new ByteArrayOutputStream();
+            writeVarInt(message, 1 << 3);
+            writeVarInt(message, i);
+            expected += i;
+            writeVarInt(message, (8 << 3) | 2);
+            writeVarInt(message, packed.size());
+            message.write(packed.toByteArray(), 0, packed.size());
+            writeVarInt(out, (3 << 3) | 2);
+            writeVarInt(out, message.size());
+            out.write(message.toByteArray(), 0, message.size());
+        }
+        data = out.toByteArray();
+    }
+
+    /**
+     * Decode the data using {@link ProtobufParser}, {@link ProtobufRecord} and {@link ProtobufPacked}
+     * @throws IOException if an error occurs
+     */
+    @Test
+    void testProtobufRecord() throws IOException {
+        PerformanceTestTimer timer = PerformanceTestUtils.startTimer("decode with ProtobufRecord " + TIMES + " times");
+        long sum = 0;
+        for (int i = 0; i < TIMES; i++) {
+            sum = 0;
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (ProtobufParser parser = new ProtobufParser(data)) {
+                while (parser.hasNext()) {
+                    final ProtobufRecord message = new ProtobufRecord(baos, parser);
+                    try (ProtobufParser messageParser = new ProtobufParser(message.getBytes())) {
+                        while (messageParser.hasNext()) {
+                            final ProtobufRecord field = new ProtobufRecord(baos, messageParser);
+                            if (field.getField() == 1) {
+                                sum += field.asUnsignedVarInt().longValue();
+                            } else if (field.getField() == 8) {
+                                for (long value : new ProtobufPacked(field.getBytes()).getArray()) {
+                                    sum += ProtobufParser.decodeZigZag(value);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        timer.done();
+        assertEquals(expected, sum);
+    }
+
+    /**
+     * Decode the data using {@link ProtobufReader}
+     */
+    @Test
+    void testProtobufReader() {
+        PerformanceTestTimer timer = PerformanceTestUtils.startTimer("decode with ProtobufReader " + TIMES + " times");
+        long sum = 0;
+        final long[] values = new long[VALUES_PER_MESSAGE];
+        for (int i = 0; i < TIMES; i++) {
+            sum = 0;
+            final ProtobufReader reader = new ProtobufReader(data);
+            while (reader.hasNext()) {
+                reader.nextField();
+                final int limit = reader.beginMessage();
+                while (reader.hasNext()) {
+                    final int field = reader.nextField();
+                    if (field == 1) {
+                        sum += reader.readVarInt();
+                    } else if (field == 8) {
+                        final int count = reader.readPackedSignedVarInt(values, 0);
+                        for (int j = 0; j < count; j++) {
+                            sum += values[j];
+                        }
+                    } else {
+                        reader.skipField();
+                    }
+                }
+                reader.endMessage(limit);
+            }
+        }
+        timer.done();
+        assertEquals(expected, sum);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream stream, long value) {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            stream.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        stream.write((int) v);
+    }
+}
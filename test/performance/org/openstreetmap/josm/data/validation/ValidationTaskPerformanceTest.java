@@ -3,6 +3,7 @@ package org.openstreetmap.josm.data.validation;
 
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -10,7 +11,10 @@ import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.PerformanceTestUtils.PerformanceTestTimer;
+import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.validation.tests.ApiCapabilitiesTest;
 import org.openstreetmap.josm.gui.MainApplication;
@@ -60,4 +64,31 @@ class ValidationTaskPerformanceTest {
             assertTrue(validationTask.getErrors().size() > 3000);
         });
     }
+
+    /**
+     * Runs an incremental validation of a few changes after the validation of the test dataset.
+     */
+    @Test
+    void testIncremental() {
+        DataSet dataSet = MainApplication.getLayerManager().getActiveDataSet();
+        IncrementalValidator validator = new IncrementalValidator(dataSet);
+        try {
+            PerformanceTestTimer timer = PerformanceTestUtils.startTimer("IncrementalValidator#validate on " + dataSet.getName());
+            int errors = validator.validate(tests, NullProgressMonitor.INSTANCE).size();
+            timer.done();
+            assertTrue(errors > 3000);
+
+            List<Node> nodes = new ArrayList<>(dataSet.getNodes());
+            for (int i = 0; i < 50; i++) {
+                Node node = nodes.get(i * nodes.size() / 50);
+                node.setCoor(new LatLon(node.lat() + 1e-5, node.lon()));
+            }
+            timer = PerformanceTestUtils.startTimer("IncrementalValidator#validate of 50 changes on " + dataSet.getName());
+            errors = validator.validate(tests, NullProgressMonitor.INSTANCE).size();
+            timer.done();
+            assertTrue(errors > 3000);
+        } finally {
+            validator.destroy();
+        }
+    }
 }
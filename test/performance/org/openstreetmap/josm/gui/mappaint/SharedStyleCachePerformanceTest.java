@@ -0,0 +1,84 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.preferences.sources.SourceEntry;
+import org.openstreetmap.josm.data.preferences.sources.SourceType;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Compares the time needed to compute the styles of the Neubrandenburg data set with and without shared styles.
+ */
+@Projection
+@Timeout(value = 15, unit = TimeUnit.MINUTES)
+class SharedStyleCachePerformanceTest {
+
+    private static final String STYLE_FILE = "resources/styles/standard/elemstyles.mapcss";
+
+    private static DataSet ds;
+    private static List<OsmPrimitive> primitives;
+    private static MapCSSStyleSource source;
+
+    /**
+     * Loads the data and the style.
+     * @throws Exception if any error occurs
+     */
+    @BeforeAll
+    static void load() throws Exception {
+        ds = PerformanceTestUtils.getNeubrandenburgDataSet();
+        primitives = new ArrayList<>(ds.allPrimitives());
+        source = new MapCSSStyleSource(new SourceEntry(SourceType.MAP_PAINT_STYLE, STYLE_FILE, "test style", "a test style", true));
+        source.loadStyleSource();
+        assertTrue(source.getErrors().isEmpty(), source.getErrors()::toString);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SharedStyleCache.ENABLED.remove();
+    }
+
+    private static void runTest(String description) {
+        NavigatableComponent nc = new NavigatableComponent();
+        PerformanceTestUtils.runPerformanceTest("ElemStyles#get(...) with " + description, () -> {
+            // start from empty caches
+            MapRendererPerformanceTest.resetStylesToSingle(source);
+            ds.clearMappaintCache();
+            ElemStyles styles = MapPaintStyles.getStyles();
+            for (OsmPrimitive p : primitives) {
+                styles.get(p, 10, nc);
+            }
+        });
+    }
+
+    /**
+     * Measures the time needed to compute the styles of each primitive.
+     */
+    @Test
+    void testNotShared() {
+        SharedStyleCache.ENABLED.put(false);
+        runTest("styles computed for each primitive");
+    }
+
+    /**
+     * Measures the time needed to compute the styles shared between the primitives with the same tags.
+     */
+    @Test
+    void testShared() {
+        SharedStyleCache.ENABLED.put(true);
+        runTest("shared styles");
+    }
+}
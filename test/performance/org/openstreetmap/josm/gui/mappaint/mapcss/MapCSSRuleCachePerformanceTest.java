@@ -0,0 +1,62 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint.mapcss;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.data.preferences.sources.SourceEntry;
+import org.openstreetmap.josm.data.preferences.sources.SourceType;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Compares the time needed to load the default style with and without the rule cache.
+ */
+@BasicPreferences
+@Timeout(value = 15, unit = TimeUnit.MINUTES)
+class MapCSSRuleCachePerformanceTest {
+
+    @AfterEach
+    void tearDown() {
+        MapCSSRuleCache.ENABLED.remove();
+    }
+
+    private static void loadStyle() {
+        MapCSSStyleSource source = new MapCSSStyleSource(new SourceEntry(SourceType.MAP_PAINT_STYLE,
+                MapCSSPerformanceTest.STYLE_FILE, "test style", "a test style", true));
+        source.loadStyleSource();
+        assertTrue(source.getErrors().isEmpty(), source.getErrors()::toString);
+    }
+
+    private static void runTest(String description) {
+        // the first load fills the cache
+        loadStyle();
+        PerformanceTestUtils.runPerformanceTest("MapCSSStyleSource#loadStyleSource() " + description, () -> {
+            for (int i = 0; i < 10; i++) {
+                loadStyle();
+            }
+        });
+    }
+
+    /**
+     * Measures the time needed to parse the style.
+     */
+    @Test
+    void testParse() {
+        MapCSSRuleCache.ENABLED.put(false);
+        runTest("without rule cache");
+    }
+
+    /**
+     * Measures the time needed to read the cached rules of the style.
+     */
+    @Test
+    void testCached() {
+        MapCSSRuleCache.ENABLED.put(true);
+        runTest("with rule cache");
+    }
+}
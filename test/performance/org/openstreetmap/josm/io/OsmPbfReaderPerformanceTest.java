@@ -0,0 +1,73 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.PerformanceTestUtils.PerformanceTestTimer;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.OsmPbfTestWriter;
+
+/**
+ * This test tests how fast we are at reading an OSM PBF file, with and without parallel block decoding.
+ * <p>
+ * The PBF file is generated in memory from the neubrandenburg-file, since we do not ship a large PBF test file.
+ */
+@Timeout(value = 15, unit = TimeUnit.MINUTES)
+class OsmPbfReaderPerformanceTest {
+    private static final int TIMES = 4;
+    private static final int PRIMITIVES_PER_BLOCK = 8000;
+    private static byte[] data;
+    private static int primitiveCount;
+
+    /**
+     * Write the test data as PBF
+     * @throws Exception if an error occurs
+     */
+    @BeforeAll
+    static void setUp() throws Exception {
+        OsmPbfTestWriter writer = new OsmPbfTestWriter(PRIMITIVES_PER_BLOCK);
+        data = writer.write(PerformanceTestUtils.getNeubrandenburgDataSet());
+        primitiveCount = writer.getCount();
+    }
+
+    /**
+     * Simulates a plain read of a .osm.pbf file (from memory), decoding all blocks on the reading thread
+     * @throws Exception if an error occurs
+     */
+    @Test
+    void testSingleThread() throws Exception {
+        runTest(1);
+    }
+
+    /**
+     * Simulates a plain read of a .osm.pbf file (from memory), decoding the blocks in parallel
+     * @throws Exception if an error occurs
+     */
+    @Test
+    void testParallel() throws Exception {
+        runTest(Runtime.getRuntime().availableProcessors());
+    }
+
+    private static void runTest(int threads) throws IllegalDataException {
+        Config.getPref().putInt("pbf.reader.numberOfThreads", threads);
+        try {
+            PerformanceTestTimer timer = PerformanceTestUtils.startTimer("load .osm.pbf-file with " + threads + " thread(s) " + TIMES + " times");
+            DataSet ds = null;
+            for (int i = 0; i < TIMES; i++) {
+                ds = OsmPbfReader.parseDataSet(new ByteArrayInputStream(data), null);
+            }
+            timer.done();
+            assertEquals(primitiveCount, ds.allNonDeletedCompletePrimitives().size());
+        } finally {
+            Config.getPref().put("pbf.reader.numberOfThreads", null);
+        }
+    }
+}
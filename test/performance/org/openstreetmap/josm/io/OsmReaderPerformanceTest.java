@@ -16,6 +16,9 @@ import org.junit.jupiter.api.Timeout;
 import org.openstreetmap.josm.PerformanceTestUtils;
 import org.openstreetmap.josm.PerformanceTestUtils.PerformanceTestTimer;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.tools.Utils;
 
 /**
  * This test tests how fast we are at reading an OSM file.
@@ -24,6 +27,7 @@ import org.openstreetmap.josm.data.osm.DataSet;
  *
  * @author Michael Zangl
  */
+@BasicPreferences
 @Timeout(value = 15, unit = TimeUnit.MINUTES)
 class OsmReaderPerformanceTest {
     private static final int TIMES = 4;
@@ -34,7 +38,7 @@ class OsmReaderPerformanceTest {
      */
     @Test
     void testCompressed() throws Exception {
-        runTest("compressed (.osm.bz2)", false);
+        runTest("compressed (.osm.bz2)", false, 1);
     }
 
     /**
@@ -43,18 +47,49 @@ class OsmReaderPerformanceTest {
      */
     @Test
     void testPlain() throws Exception {
-        runTest(".osm-file", true);
+        runTest(".osm-file", true, 1);
     }
 
-    private void runTest(String what, boolean decompressBeforeRead) throws IllegalDataException, IOException {
+    /**
+     * Simulates a read of a .osm.bz2 file (from memory), decompressing and parsing on all processors
+     * @throws Exception if an error occurs
+     */
+    @Test
+    void testCompressedParallel() throws Exception {
+        runTest("compressed (.osm.bz2) in parallel", false, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Simulates a read of a .osm file (from memory), parsing on all processors
+     * @throws Exception if an error occurs
+     */
+    @Test
+    void testPlainParallel() throws Exception {
+        runTest(".osm-file in parallel", true, Runtime.getRuntime().availableProcessors());
+    }
+
+    private void runTest(String what, boolean decompressBeforeRead, int threads) throws IllegalDataException, IOException {
+        Config.getPref().putInt("osm.reader.numberOfThreads", threads);
+        Config.getPref().putInt("compression.numberOfThreads", threads);
         InputStream is = loadFile(decompressBeforeRead);
         PerformanceTestTimer timer = PerformanceTestUtils.startTimer("load " + what + " " + TIMES + " times");
         DataSet ds = null;
         for (int i = 0; i < TIMES; i++) {
             is.reset();
 
-            ds = OsmReader.parseDataSet(decompressBeforeRead ? is : Compression.byExtension(PerformanceTestUtils.DATA_FILE)
-                    .getUncompressedInputStream(is), null);
+            if (decompressBeforeRead) {
+                ds = OsmReader.parseDataSet(is, null);
+            } else if (threads > 1) {
+                try (InputStream in = new ParallelBZip2InputStream(() -> {
+                            is.reset();
+                            return is;
+                        },
+                        Utils.newForkJoinPool("compression.numberOfThreads", "bzip2-decompressor-%d", Thread.NORM_PRIORITY))) {
+                    ds = OsmReader.parseDataSet(in, null);
+                }
+            } else {
+                ds = OsmReader.parseDataSet(Compression.byExtension(PerformanceTestUtils.DATA_FILE).getUncompressedInputStream(is), null);
+            }
         }
         timer.done();
         assertNotNull(ds);
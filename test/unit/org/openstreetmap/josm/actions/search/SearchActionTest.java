@@ -0,0 +1,63 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.actions.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.search.SearchMode;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.Main;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Unit tests of {@link SearchAction} class.
+ */
+@BasicPreferences
+@Main
+@Projection
+class SearchActionTest {
+    /**
+     * Checks that a search on several threads finds the same primitives as a search on the calling thread.
+     */
+    @Test
+    void testParallelSearch() {
+        DataSet ds = new DataSet();
+        for (int i = 0; i < 5000; i++) {
+            Node n = new Node(new LatLon(i / 100.0, i % 100 / 100.0));
+            if (i % 3 == 0) {
+                n.put("foo", "bar");
+            }
+            ds.addPrimitive(n);
+        }
+        // a selection crossing several chunks, with tagged and untagged nodes
+        ds.setSelected(ds.getNodes().stream().filter(n -> n.getCoor().lat() < 25).collect(Collectors.toList()));
+        OsmDataLayer layer = new OsmDataLayer(ds, null, null);
+        MainApplication.getLayerManager().addLayer(layer);
+        try {
+            for (SearchMode mode : SearchMode.values()) {
+                // the negation is not pruned by the tag index, every primitive is tested
+                Config.getPref().putInt(SearchAction.SEARCH_THREADS, 1);
+                Collection<IPrimitive> expected = new HashSet<>(SearchAction.searchAndReturn("-foo=bar", mode));
+                Config.getPref().putInt(SearchAction.SEARCH_THREADS, 4);
+                Collection<IPrimitive> actual = new HashSet<>(SearchAction.searchAndReturn("-foo=bar", mode));
+                assertEquals(expected, actual, mode::toString);
+            }
+            Config.getPref().putInt(SearchAction.SEARCH_THREADS, 4);
+            assertEquals(3333, SearchAction.searchAndReturn("-foo=bar", SearchMode.replace).size());
+        } finally {
+            Config.getPref().put(SearchAction.SEARCH_THREADS, null);
+            MainApplication.getLayerManager().removeLayer(layer);
+        }
+    }
+}
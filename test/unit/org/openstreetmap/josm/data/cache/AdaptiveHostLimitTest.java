@@ -0,0 +1,122 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of {@link AdaptiveHostLimit}.
+ */
+class AdaptiveHostLimitTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Runs as many downloads as allowed, all answered with the same latency and response code.
+     * @param limit the host limit
+     * @param latency the latency of the downloads, in nanoseconds
+     * @param responseCode the response code of the downloads
+     */
+    private static void download(AdaptiveHostLimit limit, long latency, int responseCode) {
+        int count = 0;
+        while (limit.tryAcquire()) {
+            count++;
+        }
+        for (int i = 0; i < count; i++) {
+            limit.update(latency, 1000, responseCode);
+            limit.release();
+        }
+    }
+
+    /**
+     * Checks that the limit does not change when both bounds are equal.
+     */
+    @Test
+    void testFixed() {
+        AdaptiveHostLimit limit = new AdaptiveHostLimit("localhost", 3, 3, 3);
+        for (int i = 0; i < 20; i++) {
+            download(limit, SECOND, 200);
+        }
+        assertEquals(3, limit.getLimit());
+        download(limit, SECOND, 429);
+        assertEquals(3, limit.getLimit());
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+        assertFalse(limit.isAvailable());
+        limit.release();
+        assertTrue(limit.isAvailable());
+    }
+
+    /**
+     * Checks that the limit grows while the host answers fast, up to the upper bound.
+     */
+    @Test
+    void testIncrease() {
+        AdaptiveHostLimit limit = new AdaptiveHostLimit("localhost", 2, 1, 8);
+        // the limit is not used, so it does not grow
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limit.tryAcquire());
+            limit.update(SECOND / 10, 1000, 200);
+            limit.release();
+        }
+        assertEquals(2, limit.getLimit());
+        // about one more download per round trip
+        download(limit, SECOND / 10, 200);
+        download(limit, SECOND / 10, 200);
+        assertEquals(2, limit.getLimit());
+        download(limit, SECOND / 10, 200);
+        assertEquals(3, limit.getLimit());
+        for (int i = 0; i < 50; i++) {
+            download(limit, SECOND / 10, 200);
+        }
+        assertEquals(8, limit.getLimit());
+        assertEquals(100, limit.getLatency(), 1e-6);
+    }
+
+    /**
+     * Checks that the limit stops growing when the latency rises.
+     */
+    @Test
+    void testLatency() {
+        AdaptiveHostLimit limit = new AdaptiveHostLimit("localhost", 4, 1, 16);
+        download(limit, SECOND / 10, 200);
+        for (int i = 0; i < 10; i++) {
+            download(limit, SECOND, 200);
+        }
+        assertEquals(4, limit.getLimit());
+        assertTrue(limit.getLatency() > 800);
+    }
+
+    /**
+     * Checks that the limit is halved, at most once per round trip, when the host fails or asks to slow down.
+     */
+    @Test
+    void testDecrease() {
+        AdaptiveHostLimit limit = new AdaptiveHostLimit("localhost", 8, 2, 16);
+        download(limit, 10 * SECOND, 200);
+        assertEquals(8, limit.getLimit());
+        // all the running downloads are throttled, but the limit is halved only once
+        download(limit, 10 * SECOND, 429);
+        assertEquals(4, limit.getLimit());
+        assertEquals(0.5, limit.getThrottledRate(), 1e-6);
+        assertEquals(0, limit.getErrorRate(), 1e-6);
+        assertEquals(16, limit.getDownloads());
+
+        limit = new AdaptiveHostLimit("localhost", 8, 2, 16);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limit.tryAcquire());
+            limit.update(0, 0, 500);
+            limit.release();
+        }
+        assertEquals(2, limit.getLimit());
+        assertEquals(1, limit.getErrorRate(), 1e-6);
+        assertEquals(0, limit.getActive());
+    }
+}
@@ -6,6 +6,11 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -66,6 +71,33 @@ class HostLimitQueueTest {
         }
     }
 
+    /**
+     * Mock class recording the order of execution
+     */
+    static class PriorityTask extends Task {
+        private final int id;
+        private final List<Integer> order;
+        volatile double priority;
+
+        PriorityTask(ICacheAccess<String, CacheEntry> cache, URL url, int id, double priority, List<Integer> order) {
+            super(cache, url, new AtomicInteger());
+            this.id = id;
+            this.priority = priority;
+            this.order = order;
+        }
+
+        @Override
+        public void run() {
+            order.add(id);
+            executionFinished();
+        }
+
+        @Override
+        public double getPriority() {
+            return priority;
+        }
+    }
+
     /**
      * Check if single threaded execution works properly
      * @throws Exception in case of error
@@ -142,4 +174,38 @@ class HostLimitQueueTest {
         assertTrue(duration < 6*1000 & duration > 4*1000,
                 "Expected duration between 4 and 6 seconds not met. Actual duration: " + (duration /1000));
     }
+
+    /**
+     * Check that the queued jobs are run by increasing priority, evaluated when a worker takes a job
+     * @throws Exception in case of error
+     */
+    @Test
+    void testPriority() throws Exception {
+        ThreadPoolExecutor tpe = TMSCachedTileLoader.getNewThreadPoolExecutor("test-%d", 1, 1);
+        ICacheAccess<String, CacheEntry> cache = JCSCacheManager.getCache("test", 3, 0, "");
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // keep the only worker busy while the jobs are queued
+        tpe.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Logging.trace(e);
+            }
+        });
+        started.await();
+        double[] priorities = {3, 1, 4, 2, 5};
+        PriorityTask[] tasks = new PriorityTask[priorities.length];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new PriorityTask(cache, new URL("http://localhost/" + i), i, priorities[i], order);
+            tpe.execute(tasks[i]);
+        }
+        tasks[4].priority = 0;
+        release.countDown();
+        tpe.shutdown();
+        tpe.awaitTermination(15, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(4, 1, 3, 0, 2), order);
+    }
 }
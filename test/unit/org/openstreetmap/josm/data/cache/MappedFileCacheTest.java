@@ -0,0 +1,258 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.jcs3.engine.behavior.ICacheElement;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Unit tests of {@link MappedFileCache}.
+ */
+@BasicPreferences
+class MappedFileCacheTest {
+
+    private static byte[] content(int seed, int length) {
+        byte[] content = new byte[length];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private static MappedFileCache open(File dir, int maxDiskSize) {
+        MappedFileCache cache = MappedFileCache.getCache("test", maxDiskSize, dir.getPath());
+        assertNotNull(cache);
+        return cache;
+    }
+
+    private static void assertContent(MappedFileCache cache, String key, byte[] expected) {
+        BufferedImageCacheEntry entry = cache.get(key);
+        assertNotNull(entry, key);
+        assertArrayEquals(expected, entry.getContent(), key);
+    }
+
+    /**
+     * Checks that the entries and their attributes are stored, replaced and removed.
+     * @param dir the cache directory
+     */
+    @Test
+    void testPutGetRemove(@TempDir File dir) {
+        MappedFileCache cache = open(dir, 0);
+        try {
+            assertSame(cache, open(dir, 0));
+            CacheEntryAttributes attributes = new CacheEntryAttributes();
+            attributes.setEtag("\"abc\"");
+            attributes.setExpirationTime(123_456_789L);
+            attributes.setResponseCode(404);
+            Map<String, String> metadata = new HashMap<>();
+            metadata.put("X-Tile-Source", "Bänk");
+            attributes.setMetadata(metadata);
+            cache.put("Bing:18/1/2", new BufferedImageCacheEntry(content(1, 1000)), attributes);
+            cache.put("Bing:18/1/3", new BufferedImageCacheEntry(content(2, 1000)));
+            cache.put("OSM:18/1/2", new BufferedImageCacheEntry(content(3, 0)));
+
+            ICacheElement<String, BufferedImageCacheEntry> element = cache.getCacheElement("Bing:18/1/2");
+            assertEquals("Bing:18/1/2", element.getKey());
+            assertArrayEquals(content(1, 1000), element.getVal().getContent());
+            CacheEntryAttributes read = (CacheEntryAttributes) element.getElementAttributes();
+            assertEquals(attributes.getMetadata(), read.getMetadata());
+            assertEquals(123_456_789L, read.getExpirationTime());
+            assertEquals(404, read.getResponseCode());
+            assertContent(cache, "OSM:18/1/2", new byte[0]);
+            assertNull(cache.get("Bing:18/2/2"));
+            assertEquals(2, cache.getMatching("Bing:.*").size());
+
+            cache.put("Bing:18/1/3", new BufferedImageCacheEntry(content(4, 2000)));
+            assertContent(cache, "Bing:18/1/3", content(4, 2000));
+            cache.remove("OSM:18/1/2");
+            assertNull(cache.get("OSM:18/1/2"));
+            cache.put("OSM:18/1/2", new BufferedImageCacheEntry(content(3, 10)));
+            cache.remove("Bing:");
+            assertNull(cache.get("Bing:18/1/2"));
+            assertNull(cache.get("Bing:18/1/3"));
+            assertContent(cache, "OSM:18/1/2", content(3, 10));
+
+            cache.clear();
+            assertNull(cache.get("OSM:18/1/2"));
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    /**
+     * Checks that the entries are found again when the cache is reopened, with or without its saved index, and that a
+     * truncated record is discarded.
+     * @param dir the cache directory
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    void testReopen(@TempDir File dir) throws IOException {
+        MappedFileCache cache = open(dir, 0);
+        for (int i = 0; i < 100; i++) {
+            cache.put("TMS:" + i, new BufferedImageCacheEntry(content(i, 100 + i)));
+        }
+        cache.remove("TMS:7");
+        cache.dispose();
+
+        cache = open(dir, 0);
+        assertContent(cache, "TMS:42", content(42, 142));
+        assertNull(cache.get("TMS:7"));
+        cache.put("TMS:100", new BufferedImageCacheEntry(content(100, 200)));
+        cache.remove("TMS:8");
+        cache.dispose();
+
+        // lose the index and the end of the last record, as after a crash
+        File dataFile = new File(dir, "test_MAPPED_v1.data");
+        Files.delete(new File(dir, "test_MAPPED_v1.key").toPath());
+        Files.write(dataFile.toPath(), content(0, 10), StandardOpenOption.APPEND);
+        long length = dataFile.length();
+
+        cache = open(dir, 0);
+        try {
+            for (int i = 0; i <= 100; i++) {
+                if (i == 7 || i == 8) {
+                    assertNull(cache.get("TMS:" + i));
+                } else {
+                    assertContent(cache, "TMS:" + i, content(i, i == 100 ? 200 : 100 + i));
+                }
+            }
+            assertEquals(length - 10, dataFile.length());
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    /**
+     * Checks that the compaction reclaims the replaced entries and evicts the oldest unread entries over the size limit.
+     * @param dir the cache directory
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    void testCompaction(@TempDir File dir) throws IOException {
+        MappedFileCache cache = open(dir, 1024);
+        File firstFile = new File(dir, "test_MAPPED_v1.data");
+        assertEquals(firstFile, cache.getDataFile().toFile());
+        File dataFile;
+        try {
+            for (int i = 0; i < 40; i++) {
+                cache.put("TMS:" + i, new BufferedImageCacheEntry(content(i, 10_000)));
+            }
+            cache.put("TMS:0", new BufferedImageCacheEntry(content(-1, 10_000)));
+            cache.compact();
+            dataFile = cache.getDataFile().toFile();
+            assertEquals(new File(dir, "test_MAPPED_v1.1.data"), dataFile);
+            assertFalse(firstFile.exists());
+            assertTrue(dataFile.length() < 41 * 10_000);
+            for (int i = 0; i < 40; i++) {
+                assertContent(cache, "TMS:" + i, content(i == 0 ? -1 : i, 10_000));
+            }
+
+            // TMS:0 to TMS:39 were read, TMS:1 is read again after the next compaction
+            for (int i = 40; i < 120; i++) {
+                cache.put("TMS:" + i, new BufferedImageCacheEntry(content(i, 10_000)));
+            }
+            cache.compact();
+            dataFile = cache.getDataFile().toFile();
+            assertTrue(dataFile.length() <= 1024 * 1024, Long.toString(dataFile.length()));
+            assertContent(cache, "TMS:1", content(1, 10_000));
+            assertContent(cache, "TMS:119", content(119, 10_000));
+            assertNull(cache.get("TMS:40"));
+            cache.put("TMS:120", new BufferedImageCacheEntry(content(120, 10_000)));
+            assertContent(cache, "TMS:120", content(120, 10_000));
+        } finally {
+            cache.dispose();
+        }
+        dataFile = cache.getDataFile().toFile();
+
+        // the last generation is opened again, and the previous ones are deleted
+        assertTrue(new File(dir, "test_MAPPED_v1.data").createNewFile());
+        cache = open(dir, 1024);
+        try {
+            assertEquals(dataFile, cache.getDataFile().toFile());
+            assertFalse(firstFile.exists());
+            assertContent(cache, "TMS:1", content(1, 10_000));
+            assertContent(cache, "TMS:120", content(120, 10_000));
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    /**
+     * Checks that the cache keeps using its data file when the compacted file cannot replace it.
+     * @param dir the cache directory
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    void testFailedCompaction(@TempDir File dir) throws IOException {
+        MappedFileCache cache = open(dir, 0);
+        File dataFile = new File(dir, "test_MAPPED_v1.data");
+        try {
+            for (int i = 0; i < 10; i++) {
+                cache.put("TMS:" + i, new BufferedImageCacheEntry(content(i, 1000)));
+                cache.put("TMS:" + i, new BufferedImageCacheEntry(content(-i, 1000)));
+            }
+            // the next generation cannot be created
+            File blocker = new File(dir, "test_MAPPED_v1.1.data");
+            assertTrue(new File(blocker, "file").mkdirs());
+            long length = dataFile.length();
+            cache.compact();
+            assertEquals(dataFile, cache.getDataFile().toFile());
+            assertEquals(length, dataFile.length());
+            assertFalse(new File(dir, "test_MAPPED_v1.data.tmp").exists());
+            for (int i = 0; i < 10; i++) {
+                assertContent(cache, "TMS:" + i, content(-i, 1000));
+            }
+            cache.put("TMS:10", new BufferedImageCacheEntry(content(10, 1000)));
+            assertContent(cache, "TMS:10", content(10, 1000));
+        } finally {
+            cache.dispose();
+        }
+    }
+
+    /**
+     * Checks the removal of colliding hashes from the index.
+     */
+    @Test
+    void testHashIndex() {
+        MappedFileCache.HashIndex index = new MappedFileCache.HashIndex(0);
+        // hashes 16 apart collide in the first table, and the clusters wrap around the end of the table
+        long[] hashes = {15, 31, 47, 1, 17, 2, 14};
+        for (int i = 0; i < hashes.length; i++) {
+            assertEquals(-1, index.put(hashes[i], i, 10 + i));
+        }
+        assertEquals(11, index.remove(31));
+        assertEquals(-1, index.remove(31));
+        assertEquals(13, index.remove(1));
+        for (int i = 0; i < hashes.length; i++) {
+            int slot = index.find(hashes[i]);
+            if (hashes[i] == 31 || hashes[i] == 1) {
+                assertEquals(-1, slot);
+            } else {
+                assertEquals(i, index.offset(slot));
+                assertEquals(10 + i, index.length(slot));
+            }
+        }
+        assertEquals(5, index.size());
+        for (int i = 0; i < 1000; i++) {
+            index.put(MappedFileCache.hash("key" + i), i, i);
+        }
+        assertEquals(1005, index.size());
+        assertEquals(500, index.offset(index.find(MappedFileCache.hash("key500"))));
+        assertEquals(12, index.put(47, 0, 0));
+    }
+}
@@ -3,12 +3,15 @@ package org.openstreetmap.josm.data.imagery;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -130,6 +133,33 @@ class TMSCachedTileLoaderJobTest {
         }
     }
 
+    /**
+     * Checks that the queued prefetched tiles are kept while they are in a prefetched area, even far from the viewport.
+     */
+    @Test
+    void testRelevant() {
+        TileViewport viewport = new TileViewport(10, 100, 200, 103, 203);
+        List<TileViewport> areas = Collections.singletonList(new TileViewport(10, 99, 199, 110, 204));
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(1);
+        try {
+            TMSCachedTileLoaderJob job = new TMSCachedTileLoaderJob(null,
+                    new Tile(new MockTileSource("http://localhost"), 108, 201, 10), getCache(), new TileJobOptions(30000, 30000, null, 0),
+                    executor);
+            assertFalse(job.isRelevant(viewport, areas));
+            job.setPrefetch(true);
+            assertTrue(job.isRelevant(viewport, areas));
+            assertFalse(job.isRelevant(viewport, Collections.emptyList()));
+            assertFalse(job.isRelevant(null, areas));
+
+            TMSCachedTileLoaderJob near = new TMSCachedTileLoaderJob(null,
+                    new Tile(new MockTileSource("http://localhost"), 105, 201, 10), getCache(), new TileJobOptions(30000, 30000, null, 0),
+                    executor);
+            assertTrue(near.isRelevant(viewport, Collections.emptyList()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     /**
      * Tests that {@code TMSCachedTileLoaderJob#SERVICE_EXCEPTION_PATTERN} is correct.
      */
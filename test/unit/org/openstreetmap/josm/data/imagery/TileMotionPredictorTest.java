@@ -0,0 +1,81 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.imagery;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of {@link TileMotionPredictor}.
+ */
+class TileMotionPredictorTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Checks that only the previous zoom level is prefetched while the map stands still.
+     */
+    @Test
+    void testStill() {
+        TileMotionPredictor predictor = new TileMotionPredictor();
+        assertTrue(predictor.getPrefetchAreas(0).isEmpty());
+        predictor.update(new TileViewport(10, 100, 200, 103, 203), 0);
+        predictor.update(new TileViewport(10, 100, 200, 103, 203), 100 * MILLIS);
+        assertEquals(Arrays.asList(new TileViewport(9, 50, 100, 51, 101)), predictor.getPrefetchAreas(100 * MILLIS));
+        predictor.update(null, 200 * MILLIS);
+        assertTrue(predictor.getPrefetchAreas(200 * MILLIS).isEmpty());
+    }
+
+    /**
+     * Checks that the tiles ahead of the pan motion are prefetched, at most half a screen ahead.
+     */
+    @Test
+    void testPan() {
+        TileMotionPredictor predictor = new TileMotionPredictor();
+        // panning to the east, one tile every 250 ms
+        for (int i = 0; i <= 8; i++) {
+            predictor.update(new TileViewport(10, 100 + i, 200, 107 + i, 203), i * 250 * MILLIS);
+        }
+        List<TileViewport> areas = predictor.getPrefetchAreas(2000 * MILLIS);
+        assertEquals(2, areas.size());
+        TileViewport ahead = areas.get(0);
+        assertEquals(10, ahead.getZoom());
+        assertEquals(107, ahead.getMinX());
+        assertEquals(199, ahead.getMinY());
+        assertTrue(ahead.getMaxX() > 116 && ahead.getMaxX() <= 120, ahead::toString);
+        assertEquals(204, ahead.getMaxY());
+
+        // panning to the north-west, faster than the screen size
+        for (int i = 1; i <= 8; i++) {
+            predictor.update(new TileViewport(10, 108 - 4 * i, 200 - 4 * i, 115 - 4 * i, 203 - 4 * i), (2000 + i * 100) * MILLIS);
+        }
+        ahead = predictor.getPrefetchAreas(2800 * MILLIS).get(0);
+        assertEquals(new TileViewport(10, 71, 165, 84, 172), ahead);
+
+        // the motion stopped
+        assertEquals(1, predictor.getPrefetchAreas(5000 * MILLIS).size());
+        predictor.update(new TileViewport(10, 77, 169, 84, 172), 5000 * MILLIS);
+        assertEquals(1, predictor.getPrefetchAreas(5000 * MILLIS).size());
+    }
+
+    /**
+     * Checks that the next zoom level is prefetched shortly after zooming in.
+     */
+    @Test
+    void testZoom() {
+        TileMotionPredictor predictor = new TileMotionPredictor();
+        predictor.update(new TileViewport(10, 100, 200, 103, 203), 0);
+        predictor.update(new TileViewport(11, 201, 401, 204, 404), 100 * MILLIS);
+        assertEquals(Arrays.asList(new TileViewport(10, 100, 200, 102, 202), new TileViewport(12, 402, 802, 409, 809)),
+                predictor.getPrefetchAreas(100 * MILLIS));
+        assertEquals(1, predictor.getPrefetchAreas(3000 * MILLIS).size());
+
+        predictor.update(new TileViewport(10, 100, 200, 102, 202), 200 * MILLIS);
+        assertEquals(1, predictor.getPrefetchAreas(200 * MILLIS).size());
+    }
+}
@@ -0,0 +1,89 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.imagery;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.TestUtils;
+
+import nl.jqno.equalsverifier.EqualsVerifier;
+
+/**
+ * Unit tests of {@link TileViewport}.
+ */
+class TileViewportTest {
+
+    private final TileViewport viewport = new TileViewport(10, 100, 200, 103, 203);
+
+    /**
+     * Checks that the tiles are ordered from the center of the viewport to its edges, then by zoom level, and that the
+     * tiles outside of the viewport come last.
+     */
+    @Test
+    void testPriority() {
+        assertEquals(0, viewport.getPriority(101, 201, 10));
+        assertEquals(0, viewport.getPriority(102, 202, 10));
+        assertTrue(viewport.getPriority(101, 201, 10) < viewport.getPriority(100, 201, 10));
+        assertTrue(viewport.getPriority(101, 202, 10) < viewport.getPriority(103, 203, 10));
+        // a lower zoom tile covering the center
+        assertEquals(1, viewport.getPriority(50, 100, 9));
+        // a higher zoom tile in the center
+        assertEquals(1, viewport.getPriority(203, 403, 11));
+        double lastVisible = viewport.getPriority(103, 203, 10);
+        assertTrue(lastVisible < viewport.getPriority(104, 201, 10));
+        assertTrue(lastVisible < viewport.getPriority(99, 203, 10));
+        assertTrue(lastVisible < viewport.getPriority(0, 0, 1));
+    }
+
+    /**
+     * Checks that the prefetched tiles are loaded after all the other tiles, until they are displayed.
+     */
+    @Test
+    void testPrefetchPriority() {
+        assertEquals(viewport.getPriority(101, 201, 10), viewport.getPrefetchPriority(101, 201, 10));
+        assertEquals(viewport.getPriority(103, 203, 10), viewport.getPrefetchPriority(103, 203, 10));
+        double lastOffScreen = viewport.getPriority(0, 0, 10);
+        assertTrue(lastOffScreen < viewport.getPrefetchPriority(104, 201, 10));
+        assertTrue(lastOffScreen < viewport.getPrefetchPriority(50, 100, 9));
+        assertTrue(lastOffScreen < viewport.getPrefetchPriority(203, 403, 11));
+    }
+
+    /**
+     * Checks which tiles are worth downloading.
+     */
+    @Test
+    void testRelevant() {
+        assertTrue(viewport.isRelevant(100, 200, 10));
+        assertTrue(viewport.isRelevant(105, 198, 10));
+        assertFalse(viewport.isRelevant(106, 201, 10));
+        assertFalse(viewport.isRelevant(101, 197, 10));
+        assertTrue(viewport.isRelevant(0, 0, 1));
+        assertFalse(viewport.isRelevant(1, 0, 2));
+        assertTrue(viewport.isRelevant(201, 401, 11));
+        assertFalse(viewport.isRelevant(402, 802, 12));
+    }
+
+    /**
+     * Checks which tiles are in the viewport.
+     */
+    @Test
+    void testContains() {
+        assertTrue(viewport.contains(100, 200, 10));
+        assertTrue(viewport.contains(103, 203, 10));
+        assertFalse(viewport.contains(104, 203, 10));
+        assertFalse(viewport.contains(100, 199, 10));
+        assertFalse(viewport.contains(50, 100, 9));
+        assertFalse(viewport.contains(200, 400, 11));
+    }
+
+    /**
+     * Unit test of methods {@link TileViewport#equals} and {@link TileViewport#hashCode}.
+     */
+    @Test
+    void testEqualsContract() {
+        TestUtils.assumeWorkingEqualsVerifier();
+        EqualsVerifier.forClass(TileViewport.class).usingGetClass().verify();
+    }
+}
@@ -4,6 +4,10 @@ package org.openstreetmap.josm.data.osm;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.ArrayList;
@@ -11,14 +15,17 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 import org.openstreetmap.josm.TestUtils;
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.DataSource;
 import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
 import org.openstreetmap.josm.data.osm.event.DataSourceAddedEvent;
 import org.openstreetmap.josm.data.osm.event.DataSourceRemovedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesAddedEvent;
 
 /**
  * Unit tests for class {@link DataSet}.
@@ -337,4 +344,87 @@ class DataSetTest {
         assertEquals(4, copy.allPrimitives().size());
         assertTrue(copy.isLocked());
     }
+
+    /**
+     * Unit test of {@link DataSet#tryOptimisticRead}, {@link DataSet#validate} and {@link DataSet#readOptimistically}.
+     */
+    @Test
+    void testOptimisticRead() {
+        final DataSet ds = new DataSet();
+        final Node node = new Node(LatLon.ZERO);
+        ds.addPrimitive(node);
+        long stamp = ds.tryOptimisticRead();
+        assertNotEquals(0, stamp);
+        assertTrue(ds.validate(stamp));
+        node.put("amenity", "bench");
+        assertFalse(ds.validate(stamp));
+        assertFalse(ds.validate(0));
+
+        stamp = ds.tryOptimisticRead();
+        final BBox bbox = new BBox(-1, -1, 1, 1);
+        ds.beginUpdate();
+        try {
+            assertEquals(0, ds.tryOptimisticRead());
+            // The current thread holds the write lock, so the action is run with the read lock
+            assertEquals(Collections.singletonList(node), ds.readOptimistically(() -> ds.searchNodes(bbox)));
+        } finally {
+            ds.endUpdate();
+        }
+        assertFalse(ds.validate(stamp));
+
+        // The result of the first run is discarded because of the concurrent modification, and so is its exception
+        final AtomicInteger runs = new AtomicInteger();
+        assertEquals(LatLon.NORTH_POLE, ds.readOptimistically(() -> {
+            if (runs.incrementAndGet() == 1) {
+                node.setCoor(LatLon.NORTH_POLE);
+                throw new IllegalStateException();
+            }
+            return node.getCoor();
+        }));
+        assertEquals(2, runs.get());
+        assertTrue(ds.searchNodes(bbox).isEmpty());
+    }
+
+    /**
+     * Unit test of {@link DataSet#addPrimitives}.
+     */
+    @Test
+    void testAddPrimitives() {
+        final DataSet ds = new DataSet();
+        final List<OsmPrimitive> primitives = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            primitives.add(new Node(new LatLon(i * 0.01, i * 0.01)));
+        }
+        final Way way = new Way();
+        way.setNodes(Arrays.asList((Node) primitives.get(0), (Node) primitives.get(99)));
+        primitives.add(way);
+        final List<PrimitivesAddedEvent> events = new ArrayList<>();
+        ds.addDataSetListener(new DataSetListenerAdapter(event -> {
+            if (event instanceof PrimitivesAddedEvent) {
+                events.add((PrimitivesAddedEvent) event);
+            }
+        }));
+        ds.addPrimitives(primitives);
+        assertEquals(100, ds.getNodes().size());
+        assertEquals(1, ds.getWays().size());
+        assertSame(ds, way.getDataSet());
+        assertEquals(50, ds.searchNodes(new BBox(0, 0, 0.495, 0.495)).size());
+        assertEquals(Collections.singletonList(way), ds.searchWays(new BBox(0.5, 0.5, 0.6, 0.6)));
+        assertEquals(1, events.size());
+        assertEquals(primitives.size(), events.get(0).getPrimitives().size());
+
+        // Nothing is added if one of the primitives is already included
+        final Node node = new Node(LatLon.ZERO);
+        assertThrows(DataIntegrityProblemException.class, () -> ds.addPrimitives(Arrays.asList(node, primitives.get(1))));
+        assertEquals(100, ds.getNodes().size());
+        assertNull(node.getDataSet());
+
+        // The spatial index of a locked dataset is packed, and rebuilt on modification
+        ds.lock();
+        assertEquals(50, ds.searchNodes(new BBox(0, 0, 0.495, 0.495)).size());
+        ds.unlock();
+        ((Node) primitives.get(0)).setCoor(new LatLon(10, 10));
+        assertEquals(49, ds.searchNodes(new BBox(0, 0, 0.495, 0.495)).size());
+        assertTrue(ds.searchWays(new BBox(9.9, 9.9, 10, 10)).contains(way));
+    }
 }
@@ -19,10 +19,18 @@ import org.junit.jupiter.api.Test;
 import org.openstreetmap.josm.TestUtils;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.Filter.FilterPreferenceEntry;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesRemovedEvent;
+import org.openstreetmap.josm.data.osm.event.RelationMembersChangedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
 import org.openstreetmap.josm.data.osm.search.SearchMode;
 import org.openstreetmap.josm.data.osm.search.SearchParseError;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.io.OsmReader;
+import org.openstreetmap.josm.testutils.annotations.Main;
+import org.openstreetmap.josm.testutils.annotations.Projection;
 
 import nl.jqno.equalsverifier.EqualsVerifier;
 import nl.jqno.equalsverifier.Warning;
@@ -237,6 +245,153 @@ class FilterTest {
             .verify();
     }
 
+    /**
+     * Unit test of {@link FilterMatcher#getDependencyDepth}.
+     * @throws SearchParseError if a filter cannot be compiled
+     */
+    @Test
+    void testDependencyDepth() throws SearchParseError {
+        FilterMatcher filterMatcher = new FilterMatcher();
+        assertEquals(0, filterMatcher.getDependencyDepth());
+        Filter f1 = new Filter();
+        f1.text = "fixme";
+        filterMatcher.update(Collections.singletonList(f1));
+        assertEquals(0, filterMatcher.getDependencyDepth());
+        Filter f2 = new Filter();
+        f2.text = "parent (child fixme)";
+        f2.hiding = true;
+        filterMatcher.update(Arrays.asList(f1, f2));
+        assertEquals(2, filterMatcher.getDependencyDepth());
+        f2.enable = false;
+        filterMatcher.update(Arrays.asList(f1, f2));
+        assertEquals(0, filterMatcher.getDependencyDepth());
+    }
+
+    /**
+     * Unit test of {@link FilterModel#getAffectedPrimitives(Collection, int)}.
+     */
+    @Test
+    void testAffectedPrimitives() {
+        Node n1 = new Node(LatLon.ZERO);
+        Node n2 = new Node(LatLon.NORTH_POLE);
+        Node n3 = new Node(LatLon.SOUTH_POLE);
+        Way w1 = TestUtils.newWay("highway=residential", n1, n2);
+        Way w2 = TestUtils.newWay("highway=residential", n2, n3);
+        Relation r1 = TestUtils.newRelation("type=route", new RelationMember("", w1));
+        Relation r2 = TestUtils.newRelation("type=superroute", new RelationMember("", r1));
+        DataSet ds = new DataSet();
+        for (OsmPrimitive p : Arrays.asList(n1, n2, n3, w1, w2, r1, r2)) {
+            ds.addPrimitive(p);
+        }
+        Collection<OsmPrimitive> changed = Collections.singleton(n1);
+        assertEquals(new HashSet<>(changed), new HashSet<>(FilterModel.getAffectedPrimitives(changed, 0)));
+        assertEquals(new HashSet<>(Arrays.asList(n1, n2, w1)), new HashSet<>(FilterModel.getAffectedPrimitives(changed, 1)));
+        assertEquals(new HashSet<>(Arrays.asList(n1, n2, w1, r1)), new HashSet<>(FilterModel.getAffectedPrimitives(changed, 2)));
+        assertEquals(new HashSet<>(ds.allPrimitives()), new HashSet<>(FilterModel.getAffectedPrimitives(changed, 3)));
+        assertEquals(new HashSet<>(Arrays.asList(r1, w1, n1, n2)),
+                new HashSet<>(FilterModel.getAffectedPrimitives(Collections.singleton(r1), 0)));
+    }
+
+    /**
+     * Checks that {@link FilterModel#executeFilters(Collection)} counts the filtered primitives like a full run.
+     */
+    @Test
+    @Main
+    @Projection
+    void testIncrementalCounts() {
+        Node n1 = new Node(LatLon.ZERO);
+        n1.put("fixme", "yes");
+        Node n2 = new Node(LatLon.ZERO);
+        n2.put("note", "yes");
+        Node n3 = new Node(LatLon.ZERO);
+        DataSet ds = new DataSet();
+        for (OsmPrimitive p : Arrays.asList(n1, n2, n3)) {
+            ds.addPrimitive(p);
+        }
+        MainApplication.getLayerManager().addLayer(new OsmDataLayer(ds, "testIncrementalCounts", null));
+        Filter hiding = new Filter();
+        hiding.text = "fixme";
+        hiding.hiding = true;
+        Filter disabling = new Filter();
+        disabling.text = "note";
+        FilterModel model = new FilterModel();
+        model.addFilters(hiding, disabling);
+        model.executeFilters();
+        assertEquals(1, model.getDisabledCount());
+        assertEquals(1, model.getDisabledAndHiddenCount());
+
+        n1.remove("fixme");
+        n1.put("note", "yes");
+        n2.put("fixme", "yes");
+        n3.put("fixme", "yes");
+        model.executeFilters(Arrays.asList(n1, n2, n3));
+        assertEquals(1, model.getDisabledCount());
+        assertEquals(2, model.getDisabledAndHiddenCount());
+        model.executeFilters();
+        assertEquals(1, model.getDisabledCount());
+        assertEquals(2, model.getDisabledAndHiddenCount());
+    }
+
+    /**
+     * Checks that {@link FilterModel#executeFilters(AbstractDatasetChangedEvent)} evaluates the children dropped by a change
+     * again, although the change events do not carry them.
+     */
+    @Test
+    @Main
+    @Projection
+    void testIncrementalDroppedChildren() {
+        Node n1 = new Node(LatLon.ZERO);
+        Node n2 = new Node(LatLon.NORTH_POLE);
+        Node n3 = new Node(LatLon.SOUTH_POLE);
+        Node n4 = new Node(new LatLon(1, 1));
+        Node n5 = new Node(new LatLon(1, 2));
+        Node n6 = new Node(new LatLon(2, 2));
+        Way w1 = TestUtils.newWay("highway=residential", n1, n2, n3);
+        Way w2 = TestUtils.newWay("", n4, n5, n6, n4);
+        Relation r = TestUtils.newRelation("type=multipolygon", new RelationMember("outer", w2));
+        DataSet ds = new DataSet();
+        for (OsmPrimitive p : Arrays.asList(n1, n2, n3, n4, n5, n6, w1, w2, r)) {
+            ds.addPrimitive(p);
+        }
+        MainApplication.getLayerManager().addLayer(new OsmDataLayer(ds, "testIncrementalDroppedChildren", null));
+        Filter highways = new Filter();
+        highways.text = "highway";
+        Filter multipolygons = new Filter();
+        multipolygons.text = "type=multipolygon";
+        FilterModel model = new FilterModel();
+        model.addFilters(highways, multipolygons);
+        model.executeFilters();
+        assertTrue(n3.isDisabled());
+        assertTrue(w2.isDisabled());
+
+        w1.setNodes(Arrays.asList(n1, n2));
+        model.executeFilters(new WayNodesChangedEvent(ds, w1));
+        assertFalse(n3.isDisabled());
+        assertTrue(n2.isDisabled());
+        assertIncrementalCounts(model);
+
+        r.setMembers(Collections.emptyList());
+        model.executeFilters(new RelationMembersChangedEvent(ds, r));
+        assertFalse(w2.isDisabled());
+        assertIncrementalCounts(model);
+
+        // like DeleteCommand, clear the nodes of the way before deleting it
+        w1.setNodes(Collections.emptyList());
+        w1.setDeleted(true);
+        model.executeFilters(new PrimitivesRemovedEvent(ds, Collections.singleton(w1), false));
+        assertFalse(n1.isDisabled());
+        assertFalse(n2.isDisabled());
+        assertIncrementalCounts(model);
+    }
+
+    private static void assertIncrementalCounts(FilterModel model) {
+        int disabledCount = model.getDisabledCount();
+        int disabledAndHiddenCount = model.getDisabledAndHiddenCount();
+        model.executeFilters();
+        assertEquals(model.getDisabledCount(), disabledCount);
+        assertEquals(model.getDisabledAndHiddenCount(), disabledAndHiddenCount);
+    }
+
     private static String filterCode(OsmPrimitive osm) {
         if (!osm.isDisabled())
             return "v";
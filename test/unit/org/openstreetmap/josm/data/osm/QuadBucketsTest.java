@@ -14,12 +14,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 
 import org.junit.jupiter.api.Test;
 import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.coor.QuadTiling;
 import org.openstreetmap.josm.data.projection.ProjectionRegistry;
 import org.openstreetmap.josm.data.projection.Projections;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
@@ -250,4 +252,116 @@ class QuadBucketsTest {
         }
         assertEquals(0, qb.size());
     }
+
+    private static List<Way> createWays(Random random, int count) {
+        List<Way> ways = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Way w = new Way(i + 1L);
+            // Mostly small ways, some crossing the borders of large quads
+            double size = random.nextInt(10) == 0 ? random.nextDouble() * 10 : random.nextDouble() * 0.001;
+            double lat = random.nextDouble() * 2 - 1;
+            double lon = random.nextDouble() * 2 - 1;
+            w.setNodes(Arrays.asList(new Node(new LatLon(lat, lon)), new Node(new LatLon(lat + size, lon + size))));
+            ways.add(w);
+        }
+        // an incomplete way without bbox
+        Way incomplete = new Way(count + 1L);
+        incomplete.setIncomplete(true);
+        ways.add(incomplete);
+        return ways;
+    }
+
+    private static void assertSameContent(QuadBuckets<Way> expected, QuadBuckets<Way> actual, Random random) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+        for (Way w : expected) {
+            assertTrue(actual.contains(w), w::toString);
+        }
+        for (int i = 0; i < 100; i++) {
+            double lat = random.nextDouble() * 2 - 1;
+            double lon = random.nextDouble() * 2 - 1;
+            double size = random.nextDouble() * 0.1;
+            BBox bbox = new BBox(lon, lat, lon + size, lat + size);
+            assertEquals(new HashSet<>(expected.search(bbox)), new HashSet<>(actual.search(bbox)), bbox::toString);
+        }
+    }
+
+    /**
+     * Test that the quad keys are consistent with the quad tiling indexes
+     */
+    @Test
+    void testQuadKey() {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            long key = QuadTiling.quadKey(lat, lon);
+            for (int level = 0; level < QuadTiling.NR_LEVELS; level++) {
+                assertEquals(QuadTiling.index(lat, lon, level), (key >> 2 * (QuadTiling.NR_LEVELS - level - 1)) & 3);
+            }
+        }
+    }
+
+    /**
+     * Test that adding many objects at once gives the same buckets as adding them one by one
+     */
+    @Test
+    void testBulkLoad() {
+        Random random = new Random(42);
+        List<Way> ways = createWays(random, 5000);
+        QuadBuckets<Way> incremental = new QuadBuckets<>();
+        ways.forEach(incremental::add);
+        QuadBuckets<Way> bulk = new QuadBuckets<>();
+        // Bulk load into an empty and into an existing tree
+        bulk.addAll(ways.subList(0, 3000));
+        bulk.addAll(ways.subList(3000, ways.size()));
+        assertSameContent(incremental, bulk, random);
+
+        for (Way w : ways.subList(0, 2500)) {
+            assertTrue(bulk.remove(w));
+        }
+        assertEquals(ways.size() - 2500, bulk.size());
+        for (Way w : ways.subList(0, 2500)) {
+            assertFalse(bulk.contains(w));
+        }
+    }
+
+    /**
+     * Test the packed representation
+     */
+    @Test
+    void testPack() {
+        Random random = new Random(42);
+        List<Way> ways = createWays(random, 2000);
+        QuadBuckets<Way> expected = new QuadBuckets<>();
+        ways.forEach(expected::add);
+        QuadBuckets<Way> packed = new QuadBuckets<>();
+        packed.addAll(ways);
+        assertFalse(packed.isPacked());
+        packed.pack();
+        assertTrue(packed.isPacked());
+        assertSameContent(expected, packed, random);
+        assertFalse(packed.contains(new Way(1)));
+
+        // A modification rebuilds the buckets
+        Way removed = ways.get(0);
+        assertTrue(packed.remove(removed));
+        assertTrue(expected.remove(removed));
+        assertFalse(packed.isPacked());
+        assertSameContent(expected, packed, random);
+
+        // Removing with the iterator of a packed tree
+        packed.pack();
+        int count = packed.size();
+        Iterator<Way> iter = packed.iterator();
+        while (iter.hasNext()) {
+            iter.next();
+            iter.remove();
+            count--;
+            assertEquals(count, packed.size());
+        }
+        assertEquals(0, count);
+        assertTrue(packed.isEmpty());
+        assertFalse(packed.isPacked());
+    }
 }
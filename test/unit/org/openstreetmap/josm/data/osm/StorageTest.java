@@ -1,6 +1,12 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.data.osm;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.junit.jupiter.api.Test;
 import org.openstreetmap.josm.TestUtils;
 
@@ -19,8 +25,47 @@ class StorageTest {
         TestUtils.assumeWorkingEqualsVerifier();
         EqualsVerifier.forClass(Storage.class).usingGetClass()
             .suppress(Warning.NONFINAL_FIELDS)
-            .withIgnoredFields("arrayCopyNecessary", "hash", "mask", "modCount", "safeIterator", "size")
+            .withIgnoredFields("arrayCopyNecessary", "hash", "mask", "modCount", "safeIterator", "size", "writeStamp")
             .withPrefabValues(Hash.class, Storage.<Integer>defaultHash(), Storage.<Boolean>defaultHash())
             .verify();
     }
+
+    /**
+     * Check that lookups without lock find the entries which are not modified, while other entries are modified
+     * @throws Exception if the writer thread could not be joined
+     */
+    @Test
+    void testConcurrentLookup() throws Exception {
+        final Storage<SimplePrimitiveId> storage = new Storage<>(new Storage.PrimitiveIdHash(), true);
+        final Map<PrimitiveId, SimplePrimitiveId> map = storage.foreignKey(new Storage.PrimitiveIdHash());
+        for (long id = 1; id <= 1000; id++) {
+            storage.add(new SimplePrimitiveId(id, OsmPrimitiveType.NODE));
+        }
+        final AtomicBoolean done = new AtomicBoolean();
+        final Thread writer = new Thread(() -> {
+            // Adding and removing many entries causes resizes and moves of the existing entries
+            while (!done.get()) {
+                for (long id = 1001; id <= 5000; id++) {
+                    storage.add(new SimplePrimitiveId(id, OsmPrimitiveType.NODE));
+                }
+                for (long id = 1001; id <= 5000; id++) {
+                    map.remove(new SimplePrimitiveId(id, OsmPrimitiveType.NODE));
+                }
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 200; i++) {
+                for (long id = 1; id <= 1000; id++) {
+                    final SimplePrimitiveId key = new SimplePrimitiveId(id, OsmPrimitiveType.NODE);
+                    assertTrue(storage.contains(key));
+                    assertEquals(key, map.get(key));
+                }
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+        assertEquals(1000, storage.size());
+    }
 }
@@ -0,0 +1,137 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.search.SearchCompiler;
+import org.openstreetmap.josm.data.osm.search.SearchCompiler.Match;
+import org.openstreetmap.josm.data.osm.search.SearchSetting;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Unit tests of {@link TagIndex}.
+ */
+@BasicPreferences
+class TagIndexTest {
+
+    @AfterEach
+    void tearDown() {
+        TagIndex.ENABLED.remove();
+    }
+
+    private static DataSet createDataSet() {
+        DataSet ds = new DataSet();
+        ds.addPrimitive(TestUtils.newNode("amenity=bench"));
+        ds.addPrimitive(TestUtils.newNode("amenity=bench backrest=no"));
+        ds.addPrimitive(TestUtils.newNode("amenity=Bench name=Bänkchen"));
+        ds.addPrimitive(TestUtils.newNode("Amenity=waste_basket"));
+        ds.addPrimitive(TestUtils.newNode("name=Café amenity=cafe"));
+        ds.addPrimitive(new Node(LatLon.ZERO));
+        Way way = TestUtils.newWay("highway=residential name=\"Main Street\"",
+                new Node(LatLon.ZERO), TestUtils.newNode("highway=crossing"));
+        way.getNodes().forEach(ds::addPrimitive);
+        ds.addPrimitive(way);
+        ds.addPrimitive(TestUtils.newRelation("type=route route=bus name=1", new RelationMember("", way)));
+        return ds;
+    }
+
+    /**
+     * Checks that the index is kept up to date when the data set changes.
+     */
+    @Test
+    void testUpdate() {
+        DataSet ds = createDataSet();
+        TagIndex index = ds.getTagIndex();
+        assertNotNull(index);
+        assertSame(index, ds.getTagIndex());
+        assertEquals(ds.allPrimitives().stream().filter(p -> "bench".equals(p.get("amenity"))).collect(Collectors.toSet()),
+                index.get("amenity", "bench"));
+        assertEquals(5, index.get("amenity").size() + index.get("Amenity").size());
+        assertEquals(new HashSet<>(Arrays.asList("bench", "Bench", "cafe")), index.getValues("amenity"));
+
+        Node bench = (Node) index.get("backrest", "no").iterator().next();
+        bench.put("amenity", "waste_basket");
+        assertEquals(1, index.get("amenity", "bench").size());
+        assertEquals(Collections.singleton(bench), index.get("amenity", "waste_basket"));
+        bench.remove("backrest");
+        assertTrue(index.get("backrest").isEmpty());
+        assertTrue(index.getValues("backrest").isEmpty());
+
+        ds.removePrimitive(bench);
+        assertTrue(index.get("amenity", "waste_basket").isEmpty());
+        Node node = TestUtils.newNode("amenity=bench");
+        ds.addPrimitives(Collections.singleton(node));
+        assertEquals(2, index.get("amenity", "bench").size());
+        assertTrue(index.get("amenity", "bench").contains(node));
+
+        ds.clear();
+        assertTrue(ds.getTagIndex().getKeys().isEmpty());
+    }
+
+    /**
+     * Checks that the index can be disabled.
+     * @throws Exception if the search expression cannot be compiled
+     */
+    @Test
+    void testDisabled() throws Exception {
+        TagIndex.ENABLED.put(false);
+        DataSet ds = createDataSet();
+        assertNull(ds.getTagIndex());
+        assertNull(SearchCompiler.getCandidates(SearchCompiler.compile("amenity=bench"), ds));
+    }
+
+    /**
+     * Checks that the candidates found with the index contain all the primitives matching a search expression.
+     * @param search the search expression
+     * @throws Exception if the search expression cannot be compiled
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"amenity=bench", "amenity=*", "*=bench", "amenity:bench", "amenity:", "bench", "café", "Ban",
+        "amenity=bench | highway=*", "amenity=bench backrest=no", "type:node amenity=bench", "name~Main", "foo=bar",
+        "\"name\"=\"B.*\"", "a.*=b.*", "*=B.*"})
+    void testCandidates(String search) throws Exception {
+        DataSet ds = createDataSet();
+        for (boolean regexSearch : new boolean[] {false, true}) {
+            for (boolean caseSensitive : new boolean[] {false, true}) {
+                SearchSetting setting = new SearchSetting();
+                setting.text = search;
+                setting.regexSearch = regexSearch;
+                setting.caseSensitive = caseSensitive;
+                Match match = SearchCompiler.compile(setting);
+                Collection<OsmPrimitive> candidates = SearchCompiler.getCandidates(match, ds);
+                assertNotNull(candidates, setting::toString);
+                Set<OsmPrimitive> expected = ds.allPrimitives().stream().filter(match).collect(Collectors.toSet());
+                assertTrue(candidates.containsAll(expected), setting::toString);
+            }
+        }
+    }
+
+    /**
+     * Checks that the search expressions which also match untagged primitives do not use the index.
+     * @throws Exception if the search expression cannot be compiled
+     */
+    @Test
+    void testNoCandidates() throws Exception {
+        DataSet ds = createDataSet();
+        for (String search : Arrays.asList("-amenity=bench", "amenity=", "*=", "untagged", "amenity=bench | type:node")) {
+            assertNull(SearchCompiler.getCandidates(SearchCompiler.compile(search), ds), search);
+        }
+    }
+}
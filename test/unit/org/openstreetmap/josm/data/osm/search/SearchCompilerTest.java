@@ -24,6 +24,8 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
@@ -852,6 +854,41 @@ class SearchCompilerTest {
         assertFalse(c.match(OsmUtils.createPrimitive("node name=bar")));
     }
 
+    /**
+     * Unit test of {@link SearchCompiler#getCandidates} with the spatial index.
+     * @param search the search expression
+     * @throws SearchParseError if the search expression cannot be compiled
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"indownloadedarea", "allindownloadedarea", "indownloadedarea amenity=bench",
+        "type:way indownloadedarea", "indownloadedarea | allindownloadedarea"})
+    void testSpatialCandidates(String search) throws SearchParseError {
+        final DataSet ds = new DataSet();
+        ds.addDataSource(new DataSource(new Bounds(0, 0, 1, 1), "test"));
+        ds.addDataSource(new DataSource(new Bounds(0, 179, 1, -179), "test"));
+        final Node inside = new Node(new LatLon(0.5, 0.5));
+        final Node outside = new Node(new LatLon(10, 10));
+        final Node bench = TestUtils.newNode("amenity=bench");
+        bench.setCoor(new LatLon(0.5, 179.5));
+        final Way crossing = TestUtils.newWay("highway=residential", inside, outside);
+        final Way far = TestUtils.newWay("highway=residential", outside, new Node(new LatLon(11, 11)));
+        for (Node n : Arrays.asList(inside, outside, bench, far.lastNode())) {
+            ds.addPrimitive(n);
+        }
+        ds.addPrimitive(crossing);
+        ds.addPrimitive(far);
+        ds.addPrimitive(TestUtils.newRelation("type=route", new RelationMember("", crossing)));
+        ds.addPrimitive(TestUtils.newRelation("type=route", new RelationMember("", far)));
+        ds.addPrimitive(TestUtils.newRelation("type=empty"));
+
+        final Match match = SearchCompiler.compile(search);
+        final Collection<OsmPrimitive> candidates = SearchCompiler.getCandidates(match, ds);
+        assertNotNull(candidates);
+        assertTrue(candidates.containsAll(ds.getPrimitives(match)));
+        assertFalse(candidates.contains(outside));
+        assertFalse(candidates.contains(far));
+    }
+
     /**
      * Non-regression test for JOSM #22156
      * x % 0 throws an ArithmeticException
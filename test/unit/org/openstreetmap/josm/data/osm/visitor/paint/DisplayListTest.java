@@ -0,0 +1,144 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer.StyleRecord;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.io.OsmReader;
+import org.openstreetmap.josm.testutils.annotations.MapPaintStyles;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Unit tests of {@link DisplayList}.
+ */
+@MapPaintStyles
+@Projection
+class DisplayListTest {
+    private static final Bounds BOUNDS = new Bounds(51.12, 14.147, 51.128, 14.162);
+
+    private DataSet ds;
+    private DisplayList displayList;
+    private NavigatableComponent nc;
+    private StyledMapRenderer renderer;
+
+    /**
+     * Setup test.
+     * @throws Exception if any error occurs
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        try (InputStream in = Files.newInputStream(Paths.get("nodist/data/restriction.osm"))) {
+            ds = OsmReader.parseDataSet(in, null);
+        }
+        displayList = new DisplayList(ds);
+        BufferedImage img = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+        nc = new NavigatableComponent();
+        nc.setBounds(0, 0, 800, 600);
+        nc.zoomTo(BOUNDS);
+        renderer = new StyledMapRenderer((Graphics2D) img.getGraphics(), nc, false);
+        renderer.getSettings(false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        displayList.destroy();
+    }
+
+    private void assertSameRecords(BBox bbox) {
+        StyleRecord[] expected = renderer.computeStyleRecords(ds.searchNodes(bbox), ds.searchWays(bbox), ds.searchRelations(bbox))
+                .a.toArray(new StyleRecord[0]);
+        Arrays.sort(expected);
+        assertArrayEquals(expected, displayList.getRecords(renderer, bbox));
+    }
+
+    private static BBox bbox(double minLat, double minLon, double maxLat, double maxLon) {
+        return new BBox(minLon, minLat, maxLon, maxLat);
+    }
+
+    /**
+     * Checks that the records are the same as the ones computed for each repaint when panning the map.
+     */
+    @Test
+    void testPan() {
+        BBox left = bbox(51.12, 14.147, 51.128, 14.155);
+        BBox right = bbox(51.12, 14.152, 51.128, 14.162);
+        assertTrue(displayList.getRecords(renderer, left).length > 100);
+        assertSameRecords(left);
+        assertSameRecords(right);
+        assertSameRecords(left);
+        assertSameRecords(BOUNDS.toBBox());
+        // the areas of many small pans are merged
+        for (int i = 0; i < 20; i++) {
+            assertSameRecords(bbox(51.12, 14.147 + i * 0.0005, 51.124, 14.150 + i * 0.0005));
+        }
+    }
+
+    /**
+     * Checks that the records follow the changes of the data set and of the selection.
+     */
+    @Test
+    void testChanges() {
+        BBox bbox = BOUNDS.toBBox();
+        assertSameRecords(bbox);
+
+        Way way = ds.getWays().stream().filter(w -> w.hasKey("highway") && !w.isIncomplete()).findFirst().orElseThrow(AssertionError::new);
+        way.put("highway", "motorway");
+        assertSameRecords(bbox);
+
+        ds.setSelected(way);
+        assertSameRecords(bbox);
+
+        Relation relation = ds.getRelations().stream().filter(r -> !r.isIncomplete()).findFirst().orElseThrow(AssertionError::new);
+        ds.setSelected(relation);
+        assertSameRecords(bbox);
+        ds.clearSelection();
+        assertSameRecords(bbox);
+
+        Node node = new Node(new LatLon(51.125, 14.15));
+        ds.addPrimitive(node);
+        ArrayList<Node> nodes = new ArrayList<>(way.getNodes());
+        nodes.add(1, node);
+        way.setNodes(nodes);
+        assertSameRecords(bbox);
+
+        node.setCoor(new LatLon(51.126, 14.151));
+        way.removeNode(node);
+        assertSameRecords(bbox);
+
+        way.setDeleted(true);
+        assertSameRecords(bbox);
+    }
+
+    /**
+     * Checks that the records are computed again when the styles are reloaded.
+     */
+    @Test
+    void testInvalidation() {
+        BBox bbox = BOUNDS.toBBox();
+        assertSameRecords(bbox);
+        ds.clearMappaintCache();
+        assertSameRecords(bbox);
+        displayList.invalidate();
+        assertSameRecords(bbox);
+    }
+}
@@ -0,0 +1,141 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.INode;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
+import org.openstreetmap.josm.gui.MapViewState;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+import org.openstreetmap.josm.tools.Geometry;
+
+/**
+ * Unit tests of {@link SimplifiedWayCache}.
+ */
+@BasicPreferences
+@Projection
+class SimplifiedWayCacheTest {
+    private DataSet ds;
+    private Way way;
+    private SimplifiedWayCache cache;
+    private NavigatableComponent nc;
+
+    /**
+     * Setup test.
+     */
+    @BeforeEach
+    void setUp() {
+        ds = new DataSet();
+        way = new Way();
+        List<Node> nodes = new ArrayList<>();
+        // a slightly wavy line along the equator
+        for (int i = 0; i < 1000; i++) {
+            Node n = new Node(new LatLon(0.00001 * Math.sin(i), 0.001 * i));
+            ds.addPrimitive(n);
+            nodes.add(n);
+        }
+        way.setNodes(nodes);
+        ds.addPrimitive(way);
+        cache = new SimplifiedWayCache(ds);
+        nc = new NavigatableComponent();
+        nc.setBounds(0, 0, 800, 600);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.destroy();
+    }
+
+    private static double distanceInPixels(Node n, List<? extends INode> line, MapViewState state) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i + 1 < line.size(); i++) {
+            min = Math.min(min, n.getEastNorth().distance(
+                    Geometry.closestPointToSegment(line.get(i).getEastNorth(), line.get(i + 1).getEastNorth(), n.getEastNorth())));
+        }
+        return min / state.getScale();
+    }
+
+    /**
+     * Checks that long ways are simplified within the tolerance when zoomed out.
+     */
+    @Test
+    void testGetNodes() {
+        nc.zoomTo(new EastNorth(0, 0), 1000);
+        MapViewState state = nc.getState();
+        List<? extends INode> nodes = cache.getNodes(way, state);
+        assertTrue(nodes.size() < 100, () -> Integer.toString(nodes.size()));
+        assertSame(way.firstNode(), nodes.get(0));
+        assertSame(way.lastNode(), nodes.get(nodes.size() - 1));
+        for (Node n : way.getNodes()) {
+            assertTrue(distanceInPixels(n, nodes, state) <= SimplifiedWayCache.TOLERANCE.get() + 1e-9);
+        }
+        // the same zoom band
+        nc.zoomTo(new EastNorth(0, 0), 1001);
+        assertSame(nodes, cache.getNodes(way, nc.getState()));
+
+        // all the nodes are drawn when zoomed in
+        nc.zoomTo(new EastNorth(0, 0), 0.01);
+        assertEquals(way.getNodes(), cache.getNodes(way, nc.getState()));
+        // even if the way could be simplified at an editing scale
+        nc.zoomTo(new EastNorth(0, 0), SimplifiedWayCache.MIN_SCALE.get() / 2);
+        assertEquals(way.getNodes(), cache.getNodes(way, nc.getState()));
+
+        // short ways are not simplified
+        Way shortWay = new Way();
+        shortWay.setNodes(way.getNodes().subList(0, 10));
+        ds.addPrimitive(shortWay);
+        assertEquals(10, cache.getNodes(shortWay, state).size());
+        // only the long way is kept
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * Checks that the simplified nodes follow the changes of the way.
+     */
+    @Test
+    void testChanges() {
+        nc.zoomTo(new EastNorth(0, 0), 1000);
+        List<? extends INode> nodes = cache.getNodes(way, nc.getState());
+        assertSame(nodes, cache.getNodes(way, nc.getState()));
+
+        way.getNode(500).setCoor(new LatLon(0.1, 0.5));
+        List<? extends INode> moved = cache.getNodes(way, nc.getState());
+        assertNotSame(nodes, moved);
+        assertTrue(moved.contains(way.getNode(500)));
+
+        way.removeNode(way.getNode(500));
+        assertTrue(cache.getNodes(way, nc.getState()).size() < moved.size());
+
+        ds.removePrimitive(way);
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Unit test of {@link SimplifiedWayCache#simplify}
+     */
+    @Test
+    void testSimplify() {
+        List<Node> nodes = new ArrayList<>(way.getNodes());
+        assertEquals(2, SimplifiedWayCache.simplify(nodes, ProjectionRegistry.getProjection(), 1000).size());
+        assertNull(SimplifiedWayCache.simplify(nodes, ProjectionRegistry.getProjection(), 0.001));
+        nodes.set(10, new Node(1));
+        assertNull(SimplifiedWayCache.simplify(nodes, ProjectionRegistry.getProjection(), 1000));
+    }
+}
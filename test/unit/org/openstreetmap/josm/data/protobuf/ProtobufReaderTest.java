@@ -0,0 +1,153 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.protobuf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Test class for {@link ProtobufReader}
+ */
+class ProtobufReaderTest {
+    private static byte[] toBytes(int... bytes) {
+        final byte[] toReturn = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            toReturn[i] = (byte) bytes[i];
+        }
+        return toReturn;
+    }
+
+    static Stream<Arguments> testReadVarInt() {
+        return Stream.of(
+                Arguments.of(1L, new int[] {0x01}),
+                Arguments.of(150L, new int[] {0x96, 0x01}),
+                Arguments.of(9223372036854775806L, new int[] {0xFE, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x7F}),
+                Arguments.of(Long.MAX_VALUE, new int[] {0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x7F}),
+                Arguments.of(-1L, new int[] {0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01})
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testReadVarInt(long expected, int[] bytes) {
+        final ProtobufReader reader = new ProtobufReader(toBytes(bytes));
+        assertEquals(expected, reader.readVarInt());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    void testReadMalformedVarInt() {
+        final ProtobufReader reader = new ProtobufReader(toBytes(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01));
+        assertThrows(IllegalArgumentException.class, reader::readVarInt);
+        assertThrows(BufferUnderflowException.class, new ProtobufReader(toBytes(0x96))::readVarInt);
+    }
+
+    @Test
+    void testReadSignedVarInt() {
+        final ProtobufReader reader = new ProtobufReader(toBytes(0x2A, 0x2D, 0x00, 0x01));
+        assertEquals(21, reader.readSignedVarInt());
+        assertEquals(-23, reader.readSignedVarInt());
+        assertEquals(0, reader.readSignedVarInt());
+        assertEquals(-1, reader.readSignedVarInt());
+    }
+
+    @Test
+    void testFields() {
+        // field 1 varint 150, field 2 string "testing", field 3 fixed32 1.5f, field 4 fixed64 -2.25
+        final ByteBuffer buffer = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(toBytes(0x08, 0x96, 0x01, 0x12, 0x07, 't', 'e', 's', 't', 'i', 'n', 'g', 0x1D));
+        buffer.putFloat(1.5f);
+        buffer.put((byte) 0x21);
+        buffer.putDouble(-2.25);
+        buffer.flip();
+        final ProtobufReader reader = new ProtobufReader(buffer);
+        assertEquals(0, buffer.position(), "The source buffer must not be modified");
+
+        assertEquals(1, reader.nextField());
+        assertEquals(WireType.VARINT, reader.getWireType());
+        assertEquals(150, reader.readVarInt());
+        assertEquals(2, reader.nextField());
+        assertEquals(WireType.LENGTH_DELIMITED, reader.getWireType());
+        assertEquals("testing", reader.readString());
+        assertEquals(3, reader.nextField());
+        assertEquals(WireType.THIRTY_TWO_BIT, reader.getWireType());
+        assertEquals(1.5f, reader.readFloat());
+        assertEquals(4, reader.nextField());
+        assertEquals(WireType.SIXTY_FOUR_BIT, reader.getWireType());
+        assertEquals(-2.25, reader.readDouble());
+        assertFalse(reader.hasNext());
+
+        final ProtobufReader skipping = new ProtobufReader(buffer);
+        while (skipping.hasNext()) {
+            skipping.nextField();
+            skipping.skipField();
+        }
+        assertEquals(4, skipping.getField());
+    }
+
+    @Test
+    void testPacked() {
+        // field 1, packed [3, 270, 86942], field 2, packed sint [-1, 1, -2]
+        final ProtobufReader reader = new ProtobufReader(toBytes(0x0A, 0x06, 0x03, 0x8E, 0x02, 0x9E, 0xA7, 0x05,
+                0x12, 0x03, 0x01, 0x02, 0x03));
+        assertEquals(1, reader.nextField());
+        assertEquals(3, reader.getPackedVarIntCount());
+        final long[] values = new long[4];
+        assertEquals(3, reader.readPackedVarInt(values, 1));
+        assertArrayEquals(new long[] {0, 3, 270, 86942}, values);
+        assertEquals(2, reader.nextField());
+        assertArrayEquals(new long[] {3, 270, 86942, -1, 1, -2}, reader.readPackedVarInt(new long[] {3, 270, 86942}, true));
+        assertFalse(reader.hasNext());
+
+        final ProtobufReader intReader = new ProtobufReader(toBytes(0x0A, 0x06, 0x03, 0x8E, 0x02, 0x9E, 0xA7, 0x05));
+        intReader.nextField();
+        final int[] ints = new int[3];
+        assertEquals(3, intReader.readPackedVarInt(ints, 0));
+        assertArrayEquals(new int[] {3, 270, 86942}, ints);
+    }
+
+    @Test
+    void testNestedMessages() {
+        // field 3, message {field 1 varint 150, field 2 varint 1}, field 4 varint 2
+        final byte[] bytes = toBytes(0x1A, 0x05, 0x08, 0x96, 0x01, 0x10, 0x01, 0x20, 0x02);
+        final ProtobufReader reader = new ProtobufReader(bytes);
+        assertEquals(3, reader.nextField());
+        final int limit = reader.beginMessage();
+        assertEquals(1, reader.nextField());
+        assertEquals(150, reader.readVarInt());
+        assertTrue(reader.hasNext());
+        reader.endMessage(limit); // skips field 2
+        assertEquals(4, reader.nextField());
+        assertEquals(2, reader.readVarInt());
+        assertFalse(reader.hasNext());
+
+        final ProtobufReader copying = new ProtobufReader(bytes);
+        copying.nextField();
+        final ProtobufReader message = copying.readMessage();
+        assertEquals(4, copying.nextField());
+        assertEquals(1, message.nextField());
+        assertEquals(150, message.readVarInt());
+        assertEquals(2, message.nextField());
+        assertEquals(1, message.readVarInt());
+        assertFalse(message.hasNext());
+    }
+
+    @Test
+    void testTruncatedLength() {
+        final ProtobufReader reader = new ProtobufReader(toBytes(0x12, 0x07, 't', 'e', 's', 't'));
+        reader.nextField();
+        assertThrows(BufferUnderflowException.class, reader::readString);
+    }
+}
@@ -0,0 +1,162 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.validation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.validation.tests.CrossingWays;
+import org.openstreetmap.josm.data.validation.tests.DuplicateNode;
+import org.openstreetmap.josm.data.validation.tests.UntaggedWay;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.LayerManager;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Unit tests of {@link IncrementalValidator}.
+ */
+@BasicPreferences
+@LayerManager
+@Projection
+class IncrementalValidatorTest {
+    private final Collection<Test> tests = Arrays.asList(new DuplicateNode(), new UntaggedWay(), new CrossingWays.Ways());
+    private DataSet ds;
+    private IncrementalValidator validator;
+
+    /**
+     * Setup test.
+     */
+    @BeforeEach
+    void setUp() {
+        ds = new DataSet();
+        // some tests obtain the active dataset
+        MainApplication.getLayerManager().addLayer(new OsmDataLayer(ds, null, null));
+        validator = new IncrementalValidator(ds);
+    }
+
+    /**
+     * Cleanup test.
+     */
+    @AfterEach
+    void tearDown() {
+        validator.destroy();
+    }
+
+    private Node addNode(double lat, double lon) {
+        Node n = new Node(new LatLon(lat, lon));
+        ds.addPrimitive(n);
+        return n;
+    }
+
+    private Way addWay(String tags, Node... nodes) {
+        Way w = new Way();
+        w.setNodes(Arrays.asList(nodes));
+        if (tags != null) {
+            String[] tag = tags.split("=", -1);
+            w.put(tag[0], tag[1]);
+        }
+        ds.addPrimitive(w);
+        return w;
+    }
+
+    private static List<String> describe(Collection<TestError> errors) {
+        return errors.stream()
+                .map(e -> e.getTester().getClass().getSimpleName() + ' ' + e.getCode() + ' ' + e.getPrimitives().stream()
+                        .map(OsmPrimitive::getPrimitiveId).map(Object::toString).sorted().collect(Collectors.joining(",")))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Validates the changes, and compares the result with a complete validation
+     * @return the errors
+     */
+    private List<String> validate() {
+        List<String> errors = describe(validator.validate(tests, NullProgressMonitor.INSTANCE));
+        assertEquals(0, validator.getDirtyCount());
+        IncrementalValidator complete = new IncrementalValidator(ds);
+        try {
+            assertEquals(describe(complete.validate(tests, NullProgressMonitor.INSTANCE)), errors);
+        } finally {
+            complete.destroy();
+        }
+        return errors;
+    }
+
+    /**
+     * Unit test of {@link IncrementalValidator#validate}
+     */
+    @org.junit.jupiter.api.Test
+    void testValidate() {
+        Node a = addNode(10.0, 5.0);
+        Node b = addNode(10.0, 5.01);
+        Way w1 = addWay("highway=service", a, b);
+        Node c = addNode(9.995, 5.005);
+        Node d = addNode(10.005, 5.005);
+        addWay("highway=service", c, d);
+        Way w3 = addWay(null, addNode(11.0, 6.0), addNode(11.0, 6.01));
+        addNode(12.0, 7.0);
+        Node f = addNode(12.0, 7.0);
+        Node g = addNode(12.5, 7.5);
+
+        assertEquals(-1, validator.getDirtyCount());
+        assertEquals(3, validate().size());
+
+        // Tag changes
+        w3.put("highway", "service");
+        assertEquals(1, validator.getDirtyCount());
+        assertEquals(2, validate().size());
+
+        // Moved nodes: the crossing disappears and another duplicated node appears
+        c.setCoor(new LatLon(9.995, 5.02));
+        d.setCoor(new LatLon(10.005, 5.02));
+        f.setCoor(new LatLon(12.5, 7.5));
+        List<String> errors = validate();
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).contains(f.getPrimitiveId().toString()) && errors.get(0).contains(g.getPrimitiveId().toString()),
+                errors::toString);
+
+        // Way nodes, added and removed primitives
+        w1.addNode(addNode(10.0, 5.018));
+        ds.removePrimitive(g);
+        addWay("highway=service", addNode(9.9, 5.015), addNode(10.1, 5.015));
+        assertEquals(1, validate().size());
+
+        // Nothing changed
+        assertEquals(1, validate().size());
+    }
+
+    /**
+     * Unit test of {@link IncrementalValidator#invalidate}
+     */
+    @org.junit.jupiter.api.Test
+    void testInvalidate() {
+        addWay(null, addNode(11.0, 6.0), addNode(11.0, 6.01));
+        assertEquals(1, validate().size());
+        validator.invalidate();
+        assertEquals(-1, validator.getDirtyCount());
+        assertEquals(1, validate().size());
+        // Too many changes to be recorded
+        ds.update(() -> {
+            for (int i = 0; i < 1100; i++) {
+                addNode(20.0, i / 1000.0);
+            }
+        });
+        assertEquals(-1, validator.getDirtyCount());
+        assertEquals(1, validate().size());
+    }
+}
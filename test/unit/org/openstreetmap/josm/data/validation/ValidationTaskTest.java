@@ -0,0 +1,124 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.validation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.validation.tests.ApiCapabilitiesTest;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.OsmReader;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.LayerManager;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+import org.openstreetmap.josm.testutils.annotations.Territories;
+
+/**
+ * Unit tests of {@link ValidationTask}.
+ */
+@BasicPreferences
+@LayerManager
+@Projection
+@Territories
+class ValidationTaskTest {
+    private List<Test> tests;
+    private DataSet ds;
+
+    /**
+     * Setup test.
+     * @throws Exception if any error occurs
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        tests = OsmValidator.getTests().stream().filter(test -> !(test instanceof ApiCapabilitiesTest)).collect(Collectors.toList());
+        OsmValidator.initialize();
+        OsmValidator.initializeTests(tests);
+        try (InputStream in = Files.newInputStream(Paths.get("nodist/data/multipolygon.osm"))) {
+            ds = OsmReader.parseDataSet(in, null);
+        }
+        // some tests obtain the active dataset
+        MainApplication.getLayerManager().addLayer(new OsmDataLayer(ds, null, null));
+    }
+
+    private List<String> validate(int threads, Collection<OsmPrimitive> primitives, List<String> testOrder) {
+        Config.getPref().putInt(ValidationTask.VALIDATOR_THREADS, threads);
+        ValidationTask task = new ValidationTask(errors -> { }, NullProgressMonitor.INSTANCE, tests, primitives, null, false);
+        task.setTestConsumer((t, test) -> testOrder.add(test.getName()));
+        task.realRun();
+        return task.getErrors().stream()
+                .map(e -> e.getTester().getName() + ' ' + e.getCode() + ' ' + e.getMessage() + ' ' + e.getPrimitives().stream()
+                        .map(OsmPrimitive::getPrimitiveId).map(Object::toString).collect(Collectors.joining(",")))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Checks that running the tests on several threads gives the same results, in the same order, as a sequential run.
+     */
+    @org.junit.jupiter.api.Test
+    void testConcurrentRun() {
+        Collection<OsmPrimitive> primitives = ds.allPrimitives();
+        List<String> sequentialOrder = new ArrayList<>();
+        List<String> sequential = validate(1, primitives, sequentialOrder);
+        assertTrue(sequential.size() > 10, sequential::toString);
+        assertEquals(tests.size(), sequentialOrder.size());
+
+        List<String> concurrentOrder = new ArrayList<>();
+        assertEquals(sequential, validate(4, primitives, concurrentOrder));
+        assertEquals(sequentialOrder, concurrentOrder);
+    }
+
+    /**
+     * Checks that the tests which cannot run concurrently run alone.
+     */
+    @org.junit.jupiter.api.Test
+    void testExclusiveTests() {
+        final AtomicBoolean exclusiveRunning = new AtomicBoolean();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicBoolean overlap = new AtomicBoolean();
+        tests = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            final boolean concurrent = i % 3 != 2;
+            tests.add(new Test("test " + i) {
+                @Override
+                public boolean canRunConcurrently() {
+                    return concurrent;
+                }
+
+                @Override
+                public void visit(Collection<OsmPrimitive> selection) {
+                    if ((running.incrementAndGet() > 1 && !concurrent) || exclusiveRunning.get()) {
+                        overlap.set(true);
+                    }
+                    exclusiveRunning.set(!concurrent);
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    exclusiveRunning.set(false);
+                    running.decrementAndGet();
+                }
+            });
+        }
+        List<String> order = new ArrayList<>();
+        validate(4, ds.allPrimitives(), order);
+        assertFalse(overlap.get());
+        assertEquals(tests.stream().map(Test::getName).collect(Collectors.toList()), order);
+    }
+}
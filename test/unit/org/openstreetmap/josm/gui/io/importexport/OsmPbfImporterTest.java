@@ -18,6 +18,8 @@ import java.util.Arrays;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.openstreetmap.josm.TestUtils;
 import org.openstreetmap.josm.data.coor.ILatLon;
 import org.openstreetmap.josm.data.coor.LatLon;
@@ -31,7 +33,9 @@ import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.protobuf.ProtobufTest;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.tools.Utils;
 
 /**
  * Test class for {@link OsmPbfImporter}
@@ -212,4 +216,48 @@ class OsmPbfImporterTest {
         assertEquals(UploadPolicy.DISCOURAGED, dataSet.getUploadPolicy());
     }
 
+
+    /**
+     * Check that the data blocks are merged in file order, regardless of the number of decoding threads
+     * @param threads The number of threads to decode the data blocks with
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    void testDecoderThreads(int threads) throws IOException, IllegalDataException {
+        Config.getPref().putInt("pbf.reader.numberOfThreads", threads);
+        final DataSet dataSet;
+        try (InputStream inputStream = TestUtils.getRegressionDataStream(23599, "w1194668585.full.osm.pbf")) {
+            dataSet = importer.parseDataSet(inputStream, NullProgressMonitor.INSTANCE);
+        } finally {
+            Config.getPref().put("pbf.reader.numberOfThreads", null);
+        }
+        final Way way = (Way) dataSet.getPrimitiveById(1194668585L, OsmPrimitiveType.WAY);
+        assertNotNull(way);
+        assertTrue(way.getNodes().stream().noneMatch(OsmPrimitive::isIncomplete));
+        assertEquals(145987123, way.getChangesetId());
+        assertEquals(UploadPolicy.NORMAL, dataSet.getUploadPolicy());
+    }
+
+    /**
+     * Check that errors in blobs decoded on other threads are reported as such
+     * @param threads The number of threads to decode the data blocks with
+     * @throws IOException if the file could not be read
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    void testCorruptBlob(int threads) throws IOException {
+        final byte[] data;
+        try (InputStream inputStream = TestUtils.getRegressionDataStream(23599, "w1194668585.full.osm.pbf")) {
+            data = Utils.readBytesFromStream(inputStream);
+        }
+        for (int i = data.length / 2; i < data.length / 2 + 4; i++) {
+            data[i] ^= 0x5a;
+        }
+        Config.getPref().putInt("pbf.reader.numberOfThreads", threads);
+        try (InputStream inputStream = new ByteArrayInputStream(data)) {
+            assertThrows(IllegalDataException.class, () -> importer.parseDataSet(inputStream, NullProgressMonitor.INSTANCE));
+        } finally {
+            Config.getPref().put("pbf.reader.numberOfThreads", null);
+        }
+    }
 }
@@ -5,9 +5,11 @@ import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.awt.Point;
+import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -26,8 +28,10 @@ import org.openstreetmap.gui.jmapviewer.interfaces.TileLoader;
 import org.openstreetmap.gui.jmapviewer.interfaces.TileLoaderListener;
 import org.openstreetmap.gui.jmapviewer.tilesources.AbstractTMSTileSource;
 import org.openstreetmap.gui.jmapviewer.tilesources.TileSourceInfo;
+import org.openstreetmap.josm.data.ProjectionBounds;
 import org.openstreetmap.josm.data.imagery.ImageryInfo;
 import org.openstreetmap.josm.data.imagery.TileLoaderFactory;
+import org.openstreetmap.josm.data.imagery.TileViewport;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.layer.imagery.ImageryFilterSettings;
@@ -197,4 +201,17 @@ class AbstractTileSourceLayerTest {
     void testTileSourceLayerPopup() {
         assertDoesNotThrow(() -> testLayer.new TileSourceLayerPopup(100, 100));
     }
+
+    /**
+     * Checks that a tile set at zoom level 0 has a viewport, unlike the null tile set.
+     * @throws ReflectiveOperationException if an error occurs
+     */
+    @Test
+    void testToViewport() throws ReflectiveOperationException {
+        Method toViewport = AbstractTileSourceLayer.TileSet.class.getDeclaredMethod("toViewport");
+        toViewport.setAccessible(true);
+        Object tileSet = testLayer.new TileSet(new TileXY(0, 0), new TileXY(0, 0), 0);
+        assertEquals(new TileViewport(0, 0, 0, 0, 0), toViewport.invoke(tileSet));
+        assertNull(toViewport.invoke(testLayer.getTileSet(new ProjectionBounds(0, 0, 1, 1), 0)));
+    }
 }
@@ -0,0 +1,207 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.layer;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmData;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.visitor.paint.MapRendererFactory;
+import org.openstreetmap.josm.data.osm.visitor.paint.WireframeMapRenderer;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.io.OsmReader;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.annotations.MapPaintStyles;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+import org.openstreetmap.josm.tools.JosmRuntimeException;
+
+/**
+ * Unit tests of {@link DataLayerBackgroundRenderer}.
+ */
+@MapPaintStyles
+@Projection
+class DataLayerBackgroundRendererTest {
+    private DataSet ds;
+    private OsmDataLayer layer;
+    private DataLayerBackgroundRenderer renderer;
+    private NavigatableComponent nc;
+    private BufferedImage image;
+
+    /**
+     * Setup test.
+     * @throws Exception if any error occurs
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        try (InputStream in = Files.newInputStream(Paths.get("nodist/data/restriction.osm"))) {
+            ds = OsmReader.parseDataSet(in, null);
+        }
+        layer = new OsmDataLayer(ds, "test", null);
+        renderer = new DataLayerBackgroundRenderer(layer);
+        nc = new NavigatableComponent() {
+            {
+                setBounds(0, 0, 600, 400);
+                updateLocationState();
+            }
+
+            @Override
+            protected boolean isVisibleOnScreen() {
+                return true;
+            }
+
+            @Override
+            public Point getLocationOnScreen() {
+                return new Point(0, 0);
+            }
+        };
+        nc.zoomTo(new Bounds(51.12, 14.147, 51.128, 14.162));
+        image = new BufferedImage(600, 400, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @AfterEach
+    void tearDown() {
+        renderer.destroy();
+        layer.destroy();
+    }
+
+    private void paint() {
+        Graphics2D g = image.createGraphics();
+        renderer.paint(g, nc, false, false, true);
+        g.dispose();
+    }
+
+    private void paintAndWait() {
+        // the layer is painted again when an image has been rendered, and rendered again after a change
+        Awaitility.await().atMost(30, TimeUnit.SECONDS).until(() -> {
+            paint();
+            return !renderer.isRendering();
+        });
+    }
+
+    private boolean isPainted() {
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                if (image.getRGB(x, y) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks that the layer is rendered in the background and painted.
+     */
+    @Test
+    void testPaint() {
+        paintAndWait();
+        assertTrue(isPainted());
+    }
+
+    /**
+     * Checks that a new viewport replaces the rendering of the previous one.
+     */
+    @Test
+    void testPan() {
+        paint();
+        assertTrue(renderer.isRendering());
+        nc.zoomTo(new LatLon(51.124, 14.155));
+        paint();
+        paintAndWait();
+        image = new BufferedImage(600, 400, BufferedImage.TYPE_INT_ARGB);
+        paint();
+        assertFalse(renderer.isRendering());
+        assertTrue(isPainted());
+    }
+
+    /**
+     * Checks that the layer is rendered again after a change of the data.
+     */
+    @Test
+    void testChange() {
+        paintAndWait();
+        paint();
+        assertFalse(renderer.isRendering());
+
+        Way way = ds.getWays().stream().filter(w -> w.hasKey("highway") && !w.isIncomplete()).findFirst().orElseThrow(AssertionError::new);
+        way.put("highway", "motorway");
+        paint();
+        assertTrue(renderer.isRendering());
+        paintAndWait();
+    }
+
+    /**
+     * Checks that the layer is only rendered again after a change of a rendering preference.
+     */
+    @Test
+    void testPreferenceChanged() {
+        paintAndWait();
+        Config.getPref().putBoolean("download.zoomtodata", false);
+        paint();
+        assertFalse(renderer.isRendering());
+
+        Config.getPref().putBoolean("mappaint.fillareas", false);
+        paint();
+        assertTrue(renderer.isRendering());
+        paintAndWait();
+    }
+
+    /**
+     * A renderer which always fails.
+     */
+    public static class FailingMapRenderer extends WireframeMapRenderer {
+        static final AtomicInteger CALLS = new AtomicInteger();
+
+        /**
+         * Constructs a new {@code FailingMapRenderer}.
+         * @param g the graphics context
+         * @param nc the map viewport
+         * @param isInactiveMode if true, the paint visitor shall render OSM objects such that they look inactive
+         */
+        public FailingMapRenderer(Graphics2D g, NavigatableComponent nc, boolean isInactiveMode) {
+            super(g, nc, isInactiveMode);
+        }
+
+        @Override
+        public void render(OsmData<?, ?, ?, ?> data, boolean renderVirtualNodes, Bounds bounds) {
+            CALLS.incrementAndGet();
+            throw new JosmRuntimeException("failure");
+        }
+    }
+
+    /**
+     * Checks that the layer is rendered again after a failure.
+     */
+    @Test
+    void testFailure() {
+        MapRendererFactory factory = MapRendererFactory.getInstance();
+        factory.register(FailingMapRenderer.class, "failing", "failing");
+        try {
+            factory.activate(FailingMapRenderer.class);
+            paint();
+            Awaitility.await().atMost(30, TimeUnit.SECONDS).until(() -> FailingMapRenderer.CALLS.get() > 0 && !renderer.isRendering());
+            // the failed rendering is not shown as complete, the next repaint renders the layer again
+            int calls = FailingMapRenderer.CALLS.get();
+            paint();
+            Awaitility.await().atMost(30, TimeUnit.SECONDS).until(() -> FailingMapRenderer.CALLS.get() > calls);
+        } finally {
+            factory.unregister(FailingMapRenderer.class);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.layer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.io.OsmReader;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.annotations.MapPaintStyles;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Unit tests of {@link DataLayerTileCache}.
+ */
+@MapPaintStyles
+@Projection
+class DataLayerTileCacheTest {
+    private DataSet ds;
+    private OsmDataLayer layer;
+    private DataLayerTileCache cache;
+    private NavigatableComponent nc;
+    private BufferedImage image;
+
+    /**
+     * Setup test.
+     * @throws Exception if any error occurs
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        try (InputStream in = Files.newInputStream(Paths.get("nodist/data/restriction.osm"))) {
+            ds = OsmReader.parseDataSet(in, null);
+        }
+        layer = new OsmDataLayer(ds, "test", null);
+        cache = new DataLayerTileCache(layer);
+        nc = new NavigatableComponent() {
+            {
+                setBounds(0, 0, 600, 400);
+                updateLocationState();
+            }
+
+            @Override
+            protected boolean isVisibleOnScreen() {
+                return true;
+            }
+
+            @Override
+            public Point getLocationOnScreen() {
+                return new Point(0, 0);
+            }
+        };
+        nc.zoomTo(new Bounds(51.12, 14.147, 51.128, 14.162));
+        image = new BufferedImage(600, 400, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.destroy();
+        layer.destroy();
+    }
+
+    private void paintAndWait() {
+        Graphics2D g = image.createGraphics();
+        // the layer is painted again when tiles have been rendered, or rendered again after a change
+        Awaitility.await().atMost(30, TimeUnit.SECONDS).until(() -> {
+            cache.paint(g, nc, true);
+            return cache.getUpToDateCount() == cache.getTileCount();
+        });
+        cache.paint(g, nc, true);
+        g.dispose();
+    }
+
+    private boolean isPainted() {
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                if (image.getRGB(x, y) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks that the tiles are rendered in the background and painted.
+     */
+    @Test
+    void testPaint() {
+        paintAndWait();
+        // the visible tiles and a ring of tiles around them
+        assertTrue(cache.getTileCount() >= 16, () -> Integer.toString(cache.getTileCount()));
+        assertTrue(isPainted());
+    }
+
+    /**
+     * Checks that a change only invalidates the tiles around the changed primitive.
+     */
+    @Test
+    void testInvalidate() {
+        paintAndWait();
+        int count = cache.getTileCount();
+        Way way = ds.getWays().stream().filter(w -> w.hasKey("highway") && !w.isIncomplete()).findFirst().orElseThrow(AssertionError::new);
+        way.put("highway", "motorway");
+        int upToDate = cache.getUpToDateCount();
+        assertTrue(upToDate < count && upToDate > 0, () -> upToDate + " of " + count);
+
+        paintAndWait();
+        assertEquals(count, cache.getUpToDateCount());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getUpToDateCount());
+    }
+
+    /**
+     * Checks that only the rendering preferences invalidate the tiles.
+     */
+    @Test
+    void testPreferenceChanged() {
+        paintAndWait();
+        int count = cache.getTileCount();
+        Config.getPref().putBoolean("download.zoomtodata", false);
+        assertEquals(count, cache.getUpToDateCount());
+        Config.getPref().putBoolean("mappaint.fillareas", false);
+        assertEquals(0, cache.getUpToDateCount());
+    }
+
+    /**
+     * Checks that the tiles of an active and of an inactive layer are not mixed.
+     */
+    @Test
+    void testInactive() {
+        paintAndWait();
+        int count = cache.getTileCount();
+        Graphics2D g = image.createGraphics();
+        cache.paint(g, nc, false);
+        g.dispose();
+        assertEquals(2 * count, cache.getTileCount());
+        // the tiles of the active layer are rendered in the background
+        assertTrue(cache.getUpToDateCount() >= count);
+    }
+}
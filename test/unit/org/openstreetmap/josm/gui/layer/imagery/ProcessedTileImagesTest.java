@@ -0,0 +1,120 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.layer.imagery;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.gui.jmapviewer.Tile;
+import org.openstreetmap.gui.jmapviewer.tilesources.TMSTileSource;
+import org.openstreetmap.josm.data.imagery.ImageryInfo;
+
+/**
+ * Unit tests of {@link ProcessedTileImages}.
+ */
+class ProcessedTileImagesTest {
+    private final TMSTileSource source = new TMSTileSource(new ImageryInfo("test"));
+    private final AtomicInteger version = new AtomicInteger();
+    private final AtomicInteger processed = new AtomicInteger();
+    private ProcessedTileImages images;
+
+    /**
+     * Setup test.
+     */
+    @BeforeEach
+    void setUp() {
+        images = new ProcessedTileImages(version::get, img -> {
+            processed.incrementAndGet();
+            return new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        });
+    }
+
+    private Tile newTile(int x) {
+        return new Tile(source, x, 0, 1, new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB));
+    }
+
+    /**
+     * Checks that the image of a tile is processed once.
+     */
+    @Test
+    void testCache() {
+        Tile tile = newTile(0);
+        BufferedImage image = images.get(tile, tile.getImage());
+        assertNotSame(tile.getImage(), image);
+        assertSame(image, images.get(tile, tile.getImage()));
+        assertEquals(1, processed.get());
+        assertFalse(images.hasStaleTiles());
+        assertFalse(images.processStaleTiles());
+
+        // a new image of the tile is processed at once
+        tile.setImage(new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB));
+        assertNotSame(image, images.get(tile, tile.getImage()));
+        assertEquals(2, processed.get());
+        assertEquals(1, images.size());
+    }
+
+    /**
+     * Checks that the images processed with previous settings are returned until the stale tiles are processed again.
+     */
+    @Test
+    void testVersion() {
+        Tile tile1 = newTile(0);
+        Tile tile2 = newTile(1);
+        BufferedImage image1 = images.get(tile1, tile1.getImage());
+        BufferedImage image2 = images.get(tile2, tile2.getImage());
+        version.incrementAndGet();
+
+        // only the painted tiles are processed again
+        assertSame(image1, images.get(tile1, tile1.getImage()));
+        assertTrue(images.hasStaleTiles());
+        assertTrue(images.processStaleTiles());
+        assertFalse(images.hasStaleTiles());
+        assertEquals(3, processed.get());
+        BufferedImage updated = images.get(tile1, tile1.getImage());
+        assertNotSame(image1, updated);
+        assertSame(updated, images.get(tile1, tile1.getImage()));
+        assertFalse(images.hasStaleTiles());
+        assertFalse(images.processStaleTiles());
+        assertEquals(3, processed.get());
+
+        // a stale tile whose image changed is processed when it is painted
+        assertSame(image2, images.get(tile2, tile2.getImage()));
+        tile2.setImage(new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB));
+        assertFalse(images.processStaleTiles());
+        assertEquals(3, processed.get());
+    }
+
+    /**
+     * Checks that the processed images are released together with their tiles.
+     * @throws InterruptedException if the test is interrupted
+     */
+    @Test
+    void testEviction() throws InterruptedException {
+        Tile tile = newTile(0);
+        images.get(tile, tile.getImage());
+        version.incrementAndGet();
+        images.get(tile, tile.getImage());
+        assertEquals(1, images.size());
+        assertTrue(images.hasStaleTiles());
+
+        tile = null;
+        for (int i = 0; i < 10 && images.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertEquals(0, images.size());
+        assertFalse(images.processStaleTiles());
+
+        Tile other = newTile(1);
+        images.get(other, other.getImage());
+        images.clear();
+        assertEquals(0, images.size());
+    }
+}
@@ -0,0 +1,131 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.OsmUtils;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSRule;
+import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+import org.openstreetmap.josm.tools.Pair;
+
+/**
+ * Unit tests of {@link SharedStyleCache}.
+ */
+@BasicPreferences
+@Projection
+class SharedStyleCacheTest {
+
+    private static MapCSSStyleSource load(String css) {
+        MapCSSStyleSource source = new MapCSSStyleSource(css);
+        source.loadStyleSource();
+        assertTrue(source.getErrors().isEmpty(), source.getErrors()::toString);
+        return source;
+    }
+
+    /**
+     * Returns the styles of the primitives through a new cache, and counts how often they are generated.
+     * @param css the style
+     * @param primitives the primitives
+     * @return the number of generated styles
+     */
+    private static int countGenerated(String css, OsmPrimitive... primitives) {
+        MapCSSStyleSource source = load(css);
+        SharedStyleCache cache = new SharedStyleCache();
+        AtomicInteger count = new AtomicInteger();
+        for (OsmPrimitive p : primitives) {
+            Pair<StyleElementList, Range> styles = cache.get(p, 10, mc -> {
+                count.incrementAndGet();
+                source.apply(mc, p, 10, false);
+                return new Pair<>(new StyleElementList(), Range.ZERO_TO_INFINITY);
+            });
+            assertEquals(Range.ZERO_TO_INFINITY, styles.b);
+        }
+        return count.get();
+    }
+
+    /**
+     * Checks which rules are found shareable when the style is loaded.
+     */
+    @Test
+    void testRuleShareable() {
+        MapCSSStyleSource source = load("way[building] {color: red;}\n"
+                + "way:closed[name=~/^A/] {width: 2;}\n"
+                + "way > node:unconnected {symbol-shape: circle;}\n"
+                + "relation[type=route] > way {color: blue;}\n"
+                + "way[highway] > node[highway=crossing] {symbol-shape: square;}\n"
+                + "node:new {symbol-shape: square;}\n"
+                + "way[building] {width: eval(areasize());}\n"
+                + "node < way {color: green;}\n");
+        assertEquals(8, source.rules.size());
+        boolean[] shareable = {true, true, true, false, false, false, false, false};
+        for (int i = 0; i < shareable.length; i++) {
+            MapCSSRule rule = source.rules.get(i);
+            assertEquals(shareable[i], rule.isShareable(), rule::toString);
+        }
+        assertEquals(EnumSet.of(OsmPrimitiveType.RELATION), source.rules.get(3).getParentTypes());
+        assertEquals(EnumSet.of(OsmPrimitiveType.WAY), source.rules.get(4).getParentTypes());
+        assertNull(source.rules.get(5).getParentTypes());
+        assertNull(source.rules.get(6).getParentTypes());
+        assertNull(source.rules.get(7).getParentTypes());
+    }
+
+    /**
+     * Checks that the styles are generated once per fingerprint.
+     */
+    @Test
+    void testShared() {
+        assertEquals(2, countGenerated("way[building] {color: red;}",
+                OsmUtils.createPrimitive("way building=yes"),
+                OsmUtils.createPrimitive("way building=yes"),
+                OsmUtils.createPrimitive("way building=house"),
+                OsmUtils.createPrimitive("way building=yes")));
+        assertEquals(3, countGenerated("way[building] {width: eval(areasize());}",
+                OsmUtils.createPrimitive("way building=yes"),
+                OsmUtils.createPrimitive("way building=yes"),
+                OsmUtils.createPrimitive("way building=yes")));
+    }
+
+    /**
+     * Checks that the styles which depend on a parent relation are only shared between the primitives without parent relation.
+     */
+    @Test
+    void testParentRelation() {
+        OsmPrimitive way1 = OsmUtils.createPrimitive("way highway=primary");
+        OsmPrimitive way2 = OsmUtils.createPrimitive("way highway=primary");
+        OsmPrimitive member1 = OsmUtils.createPrimitive("way highway=primary");
+        OsmPrimitive member2 = OsmUtils.createPrimitive("way highway=primary");
+        Relation route = (Relation) OsmUtils.createPrimitive("relation type=route");
+        new DataSet(way1, way2, member1, member2, route);
+        route.addMember(new RelationMember("", member1));
+        route.addMember(new RelationMember("", member2));
+        assertFalse(member1.getReferrers().isEmpty());
+        assertEquals(3, countGenerated("relation[type=route] > way[highway] {color: blue;}", way1, way2, member1, member2));
+    }
+
+    /**
+     * Checks that the styles are not shared after the cache has been cleared.
+     */
+    @Test
+    void testClear() {
+        SharedStyleCache cache = new SharedStyleCache();
+        OsmPrimitive way = OsmUtils.createPrimitive("way building=yes");
+        cache.get(way, 10, mc -> new Pair<>(new StyleElementList(), Range.ZERO_TO_INFINITY));
+        assertEquals(1, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+}
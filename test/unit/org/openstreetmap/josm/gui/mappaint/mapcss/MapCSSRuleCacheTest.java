@@ -0,0 +1,136 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint.mapcss;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Unit tests of {@link MapCSSRuleCache}.
+ */
+@BasicPreferences
+class MapCSSRuleCacheTest {
+
+    private static final String URL = "https://example.com/test.mapcss";
+    private static final String CSS = "meta { title: \"test\"; }\n"
+            + "way[highway=primary][!tunnel], way[highway=~/^(secondary|tertiary)$/] { color: highway_primary#ff0000; width: 2; }\n"
+            + "way|z14-[/^name:/] > node:connection!.done::label { text: auto; dashes: 3,4; z-index: -1; }\n"
+            + "relation[type=route] >[role=forward] way[eval(number_of_tags()) > 2] { set .done; font-size: +2; }\n"
+            + "node[amenity][count(split(\";\", tag(\"amenity\"))) > 1]::(concat(\"layer_\", 1)) { icon-image: \"a.png\"; }\n"
+            + "area:closed[building?][name!=*ref] { fill-color: #00ff0080; text: name; throwWarning: tr(\"{0} {1.tag}\", \"a\"); }\n"
+            + "*[unknown_function(1)] { width: none; }\n";
+
+    /**
+     * Parses the style and records the factory calls.
+     * @param content the style
+     * @param origins the recorded factory calls
+     * @return the parsed rules
+     * @throws Exception if any error occurs
+     */
+    private static List<MapCSSRule> parse(byte[] content, Map<Object, Object[]> origins) throws Exception {
+        final MapCSSStyleSource source = new MapCSSStyleSource("");
+        try (InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8)) {
+            MapCSSRuleCache.parse(source, reader);
+        } finally {
+            MapCSSRuleCache.stopRecording();
+        }
+        assertTrue(source.getErrors().isEmpty(), source.getErrors()::toString);
+        assertFalse(origins.isEmpty());
+        return source.rules;
+    }
+
+    private static byte[] write(List<MapCSSRule> rules, byte[] hash, Map<Object, Object[]> origins) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MapCSSRuleCache.write(out, URL, false, hash, rules, origins);
+        return out.toByteArray();
+    }
+
+    /**
+     * Checks that the cached rules are created by the same factory calls as the parsed rules.
+     * @param file the style
+     * @throws Exception if any error occurs
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"", "resources/styles/standard/elemstyles.mapcss", "resources/data/validator/combinations.mapcss",
+        "resources/data/validator/deprecated.mapcss", "resources/data/validator/geometry.mapcss"})
+    void testRoundTrip(String file) throws Exception {
+        final byte[] content = file.isEmpty() ? CSS.getBytes(StandardCharsets.UTF_8) : Files.readAllBytes(Paths.get(file));
+        final byte[] hash = MapCSSRuleCache.hash(content);
+        final Map<Object, Object[]> origins = MapCSSRuleCache.startRecording();
+        final List<MapCSSRule> parsed = parse(content, origins);
+        final byte[] written = write(parsed, hash, origins);
+        // the rules are read with the factories, which record their arguments again
+        final Map<Object, Object[]> readOrigins = MapCSSRuleCache.startRecording();
+        final List<MapCSSRule> rules;
+        try {
+            rules = MapCSSRuleCache.read(new ByteArrayInputStream(written), URL, hash, new MapCSSStyleSource(""));
+        } finally {
+            MapCSSRuleCache.stopRecording();
+        }
+        assertNotNull(rules);
+        assertEquals(parsed.size(), rules.size());
+        assertArrayEquals(written, write(rules, hash, readOrigins));
+    }
+
+    /**
+     * Checks that the cached rules are not used for another content or another style.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testOutdated() throws Exception {
+        final byte[] content = CSS.getBytes(StandardCharsets.UTF_8);
+        final byte[] hash = MapCSSRuleCache.hash(content);
+        final Map<Object, Object[]> origins = MapCSSRuleCache.startRecording();
+        final byte[] written = write(parse(content, origins), hash, origins);
+        final byte[] otherHash = MapCSSRuleCache.hash("way {}".getBytes(StandardCharsets.UTF_8));
+        assertNull(MapCSSRuleCache.read(new ByteArrayInputStream(written), URL, otherHash, new MapCSSStyleSource("")));
+        assertNull(MapCSSRuleCache.read(new ByteArrayInputStream(written), URL + "?", hash, new MapCSSStyleSource("")));
+    }
+
+    /**
+     * Checks that a style is cached in the cache directory, and that the styles with errors are not cached.
+     * @param dir the cache directory
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testCacheFile(@TempDir File dir) throws Exception {
+        final MapCSSStyleSource parsed = new MapCSSStyleSource("");
+        try (InputStream in = new ByteArrayInputStream(CSS.getBytes(StandardCharsets.UTF_8))) {
+            MapCSSRuleCache.parse(parsed, URL, in, dir);
+        }
+        assertEquals(1, dir.listFiles().length);
+        final MapCSSStyleSource cached = new MapCSSStyleSource("");
+        try (InputStream in = new ByteArrayInputStream(CSS.getBytes(StandardCharsets.UTF_8))) {
+            MapCSSRuleCache.parse(cached, URL, in, dir);
+        }
+        assertEquals(parsed.rules.size(), cached.rules.size());
+        assertEquals(parsed.rules.get(1).selectors.toString(), cached.rules.get(1).selectors.toString());
+
+        final MapCSSStyleSource invalid = new MapCSSStyleSource("");
+        try (InputStream in = new ByteArrayInputStream("way[highway=~/(/] { width: 2; }".getBytes(StandardCharsets.UTF_8))) {
+            MapCSSRuleCache.parse(invalid, URL + "/invalid", in, dir);
+        }
+        assertFalse(invalid.getErrors().isEmpty());
+        assertEquals(1, dir.listFiles().length);
+    }
+}
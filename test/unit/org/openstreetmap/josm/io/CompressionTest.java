@@ -0,0 +1,178 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Unit tests of {@link Compression} class.
+ */
+@BasicPreferences
+class CompressionTest {
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        Config.getPref().putInt("compression.numberOfThreads", 4);
+    }
+
+    /**
+     * Some text which compresses like OSM data
+     * @param size The number of bytes
+     * @return The text
+     */
+    private static byte[] createData(int size) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(size + 100);
+        while (sb.length() < size) {
+            sb.append("  <node id='").append(random.nextInt(1_000_000)).append("' lat='").append(random.nextDouble())
+              .append("' lon='").append(random.nextDouble()).append("' />\n");
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bzip2(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (OutputStream out = new BZip2CompressorOutputStream(baos, blockSize)) {
+            out.write(data);
+        }
+        return baos.toByteArray();
+    }
+
+    private byte[] readParallel(String name, byte[] compressed) throws IOException {
+        try (InputStream in = Compression.getParallelUncompressedFileInputStream(writeFile(name, compressed))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Unit test of {@link Compression#getParallelUncompressedFileInputStream} with bzip2 data of many blocks.
+     * @param size The size of the uncompressed data
+     * @throws IOException if an error occurs
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 99_000, 1_234_567})
+    void testParallelBZip2(int size) throws IOException {
+        byte[] data = createData(size);
+        assertArrayEquals(data, readParallel("test.osm.bz2", bzip2(data, 1)));
+        assertArrayEquals(data, readParallel("test9.osm.bz2", bzip2(data, 9)));
+    }
+
+    /**
+     * Unit test of {@link Compression#getParallelUncompressedFileInputStream} with concatenated bzip2 streams.
+     * @throws IOException if an error occurs
+     */
+    @Test
+    void testParallelBZip2Concatenated() throws IOException {
+        byte[] first = createData(345_678);
+        byte[] second = "</osm>\n".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.write(bzip2(first, 1));
+        compressed.write(bzip2(new byte[0], 2));
+        compressed.write(bzip2(second, 3));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+        assertArrayEquals(expected.toByteArray(), readParallel("concatenated.bz2", compressed.toByteArray()));
+    }
+
+    /**
+     * Unit test of {@link Compression#getParallelUncompressedFileInputStream} with invalid bzip2 data.
+     * @throws IOException if an error occurs
+     */
+    @Test
+    void testParallelBZip2Invalid() throws IOException {
+        assertThrows(IOException.class, () -> readParallel("invalid.bz2", "<osm/>".getBytes(StandardCharsets.UTF_8)));
+        byte[] compressed = bzip2(createData(250_000), 1);
+        compressed[compressed.length / 2] ^= 0x5a;
+        assertThrows(IOException.class, () -> readParallel("corrupt.bz2", compressed));
+        byte[] truncated = new byte[compressed.length / 2];
+        System.arraycopy(bzip2(createData(250_000), 1), 0, truncated, 0, truncated.length);
+        assertThrows(IOException.class, () -> readParallel("truncated.bz2", truncated));
+    }
+
+    /**
+     * Unit test of {@link ParallelBZip2InputStream} with a block magic number inside a block, which is not a block boundary.
+     * @throws IOException if an error occurs
+     */
+    @Test
+    void testParallelBZip2FalseMagic() throws IOException {
+        byte[] data = createData(250_000);
+        byte[] compressed = bzip2(data, 1);
+        // Pretend the second block contains the block magic number: its decompression fails, the parallel reading stops
+        byte[] falseMagic = compressed.clone();
+        System.arraycopy(new byte[] {0x31, 0x41, 0x59, 0x26, 0x53, 0x59}, 0, falseMagic, falseMagic.length / 2, 6);
+        AtomicInteger opened = new AtomicInteger();
+        try (InputStream in = new ParallelBZip2InputStream(
+                () -> new ByteArrayInputStream(opened.getAndIncrement() == 0 ? falseMagic : compressed), new ForkJoinPool(4))) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+        assertEquals(2, opened.get());
+    }
+
+    /**
+     * Unit test of {@link Compression#getParallelUncompressedFileInputStream} with other formats.
+     * @throws IOException if an error occurs
+     */
+    @Test
+    void testParallelOtherFormats() throws IOException {
+        byte[] data = createData(1_000_000);
+        for (String name : new String[] {"test.osm", "test.osm.gz", "test.osm.xz", "test.osm.zip"}) {
+            Path file = tempDir.resolve(name);
+            try (OutputStream out = Compression.getCompressedFileOutputStream(file)) {
+                if (name.endsWith(".zip")) {
+                    ((ZipOutputStream) out).putNextEntry(new ZipEntry("test.osm"));
+                }
+                out.write(data);
+            }
+            try (InputStream in = Compression.getParallelUncompressedFileInputStream(file)) {
+                assertArrayEquals(data, in.readAllBytes(), name);
+            }
+        }
+    }
+
+    /**
+     * Unit test of {@link Compression#getParallelUncompressedFileInputStream} on a single thread.
+     * @throws IOException if an error occurs
+     */
+    @Test
+    void testParallelSingleThread() throws IOException {
+        Config.getPref().putInt("compression.numberOfThreads", 1);
+        byte[] data = createData(10_000);
+        try (InputStream in = Compression.getParallelUncompressedFileInputStream(
+                writeFile("single.bz2", bzip2(data, 1)))) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    private Path writeFile(String name, byte[] content) throws IOException {
+        Path file = tempDir.resolve(name);
+        Files.write(file, content);
+        return file;
+    }
+}
@@ -0,0 +1,49 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.OsmPbfTestWriter;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Test class for {@link OsmPbfReader}
+ */
+@BasicPreferences
+class OsmPbfReaderTest {
+    /**
+     * Check that truncated or malformed data blocks are reported as invalid data, whichever thread decodes them
+     * @param threads The number of decoding threads
+     * @throws Exception if the file could not be written
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    void testMalformedDataBlock(int threads) throws Exception {
+        final byte[][] blocks = {
+                // granularity (field 17) with a var int longer than 10 bytes
+                {(byte) 0x88, 0x01, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 0x01},
+                // field 30 with the unknown wire type 7
+                {(byte) 0xf7, 0x01, 0x00},
+                // a primitive group (field 2) longer than the block
+                {0x12, 0x10, 0x00},
+                // granularity truncated in the middle of the var int
+                {(byte) 0x88, 0x01, -1},
+        };
+        Config.getPref().putInt("pbf.reader.numberOfThreads", threads);
+        try {
+            for (byte[] block : blocks) {
+                final byte[] data = new OsmPbfTestWriter(1).write(block);
+                assertThrows(IllegalDataException.class, () -> OsmPbfReader.parseDataSet(new ByteArrayInputStream(data), null),
+                        Arrays.toString(block));
+            }
+        } finally {
+            Config.getPref().put("pbf.reader.numberOfThreads", null);
+        }
+    }
+}
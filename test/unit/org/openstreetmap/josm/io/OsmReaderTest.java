@@ -14,11 +14,18 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import org.junit.jupiter.params.ParameterizedTest;
@@ -32,6 +39,7 @@ import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.io.OsmReader.Options;
+import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
 
 import org.junit.jupiter.api.Test;
@@ -436,4 +444,115 @@ class OsmReaderTest {
         IllegalDataException illegalDataException = testInvalidData(testData);
         assertTrue(illegalDataException.getMessage().contains("Unknown error element type"));
     }
+
+    /**
+     * Parse data with the given number of threads, and write it again
+     * @param osm The OSM data
+     * @param threads The number of threads
+     * @param chunkSize The number of characters to parse at once
+     * @return The written data
+     * @throws Exception if any error occurs
+     */
+    private static String parseAndWrite(byte[] osm, int threads, int chunkSize) throws Exception {
+        Config.getPref().putInt("osm.reader.numberOfThreads", threads);
+        OsmReader reader = new OsmReader();
+        reader.chunkSize = chunkSize;
+        DataSet ds = reader.doParseDataSet(new ByteArrayInputStream(osm), NullProgressMonitor.INSTANCE);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(baos, StandardCharsets.UTF_8));
+             OsmWriter writer = OsmWriterFactory.createOsmWriter(out, true, OsmWriter.DEFAULT_API_VERSION)) {
+            writer.write(ds);
+        }
+        // New primitives get new ids for each parse, so number them in order of appearance
+        Map<String, String> newIds = new HashMap<>();
+        Matcher matcher = Pattern.compile("(id|ref)='(-\\d+)'").matcher(new String(baos.toByteArray(), StandardCharsets.UTF_8));
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            String id = newIds.computeIfAbsent(matcher.group(2), k -> Integer.toString(-1 - newIds.size()));
+            matcher.appendReplacement(sb, matcher.group(1) + "='" + id + "'");
+        }
+        return matcher.appendTail(sb).toString();
+    }
+
+    /**
+     * Test that parsing in parallel gives the same data as parsing sequentially.
+     * @param file The test file
+     * @throws Exception if any error occurs
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"alignCircleCases.osm", "multipolygon.osm", "regress/12038/data.osm"})
+    void testParallel(String file) throws Exception {
+        byte[] osm = Files.readAllBytes(Paths.get(TestUtils.getTestDataRoot(), file));
+        String expected = parseAndWrite(osm, 1, 1024);
+        assertEquals(expected, parseAndWrite(osm, 4, 1024));
+        assertEquals(expected, parseAndWrite(osm, 4, 1));
+    }
+
+    /**
+     * Test that parsing in parallel keeps the elements which are not primitives.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testParallelMixedContent() throws Exception {
+        byte[] osm = ("<?xml version='1.0' encoding='UTF-8'?>\n<osm version='0.6' generator='test'\n upload='never'>\n"
+                + "<bounds minlat='0' minlon='0' maxlat='1' maxlon='1'/>\n"
+                + "<node id='1' version='1' lat='0.5' lon='0.5'><tag k='a' v='&lt;node&gt;'/></node>\n"
+                + "<!-- <way id='3'> -->\n"
+                + "<node id='2' version='1' lat='0.6' lon='0.6'/>"
+                + "<changeset id='5'><tag k='comment' v='/>'/></changeset>\n"
+                + "<way id='3' version='1'><nd ref='1'/><nd ref='2'/></way>\n"
+                + "<remark>runtime <![CDATA[<relation>]]></remark>\n"
+                + "<relation id='4' version='1'><member type='way' ref='3' role='outer'/></relation>\n"
+                + "</osm>").getBytes(StandardCharsets.UTF_8);
+        String expected = parseAndWrite(osm, 1, 1);
+        assertTrue(expected.contains("upload='never'"), expected);
+        assertEquals(expected, parseAndWrite(osm, 4, 1));
+        assertEquals(expected, parseAndWrite(osm, 4, 100));
+    }
+
+    /**
+     * Test that parsing in parallel keeps the prolog of the document for each chunk.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testParallelProlog() throws Exception {
+        byte[] osm = ("<?xml version='1.0' encoding='UTF-8'?>\n<!-- exported -->\n<!DOCTYPE osm>\n<osm version='0.6'>\n"
+                + "<node id='1' version='1' lat='0.5' lon='0.5'><tag k='a' v='&amp;&#x42;'/></node>\n"
+                + "<node id='2' version='1' lat='0.6' lon='0.6'/>\n"
+                + "<way id='3' version='1'><nd ref='1'/><nd ref='2'/></way>\n"
+                + "</osm>").getBytes(StandardCharsets.UTF_8);
+        String expected = parseAndWrite(osm, 1, 1);
+        assertTrue(expected.contains("v='&amp;B'"), expected);
+        assertEquals(expected, parseAndWrite(osm, 4, 1));
+    }
+
+    private static String parallelErrorMessage(byte[] data, int threads, int chunkSize) {
+        // The number of characters read by the XML parser depends on how the document has been split
+        return assertThrows(IllegalDataException.class, () -> parseAndWrite(data, threads, chunkSize)).getMessage()
+                .replaceAll("\\. \\d+ bytes have been read$", "");
+    }
+
+    /**
+     * Test that errors are reported at the same location when parsing in parallel.
+     * @param osm OSM data without XML prefix
+     * @throws Exception if any error occurs
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "<osm version='0.6'><node id='1' version='1'/><node id='2' version='1' uid='nan'/></osm>",
+            "<osm>\n<node id='1' version='1'/>\n</osm>",
+            "<osm version='0.6'>\n  <node id='1' version='1'/>\n  <node id='2' version='1'/>\n"
+                + "  <way id='1' version='1'><nd ref='0'/></way>\n</osm>",
+            "<osm version='0.6'>\n  <node id='1' version='1'/>\n  <node id='2' version='1'/><bounds minlat='0'/>\n</osm>",
+            "<osm version='0.6'>\n  <node id='1' version='1'/>\n  <node id='2' version='1'/>\n  <bounds minlat='0'/>\n</osm>",
+            "<osm version='0.6'>\n  <node id='1' version='1'/>\n  <changeset id='-1'/>\n  <node id='2' version='1'></way>\n</osm>",
+            "<!DOCTYPE osm [\n<!ENTITY t 'tree'>\n]>\n<osm version='0.6'>\n  <node id='1' version='1'/>\n"
+                + "  <node id='2' version='1'><tag k='natural' v='&t;'/></node>\n</osm>"
+    })
+    void testParallelErrors(String osm) throws Exception {
+        byte[] data = ("<?xml version='1.0' encoding='UTF-8'?>" + osm).getBytes(StandardCharsets.UTF_8);
+        String expected = parallelErrorMessage(data, 1, 1);
+        assertEquals(expected, parallelErrorMessage(data, 4, 1));
+        assertEquals(expected, parallelErrorMessage(data, 4, 30));
+    }
 }
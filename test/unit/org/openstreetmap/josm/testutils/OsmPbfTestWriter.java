@@ -0,0 +1,294 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.testutils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * A minimal OSM PBF writer for tests (dense nodes, ways and relations without metadata).
+ * <p>
+ * Primitives are written sorted by type, then id, with at most a given number of primitives per blob.
+ */
+public final class OsmPbfTestWriter {
+    private static final Comparator<OsmPrimitive> BY_ID = Comparator.comparingLong(OsmPrimitive::getUniqueId);
+    private final ByteArrayOutputStream file = new ByteArrayOutputStream();
+    private final int primitivesPerBlock;
+    private int count;
+
+    /**
+     * Create a new writer
+     * @param primitivesPerBlock The maximum number of primitives in a data blob
+     */
+    public OsmPbfTestWriter(int primitivesPerBlock) {
+        this.primitivesPerBlock = primitivesPerBlock;
+    }
+
+    /**
+     * Get the number of primitives written
+     * @return The number of primitives written
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Write a dataset. Ways without nodes are skipped, since PBF does not allow them.
+     * @param ds The dataset to write
+     * @return The PBF file
+     * @throws IOException if the data could not be compressed
+     */
+    public byte[] write(DataSet ds) throws IOException {
+        writeHeader();
+        List<Node> nodes = ds.getNodes().stream().sorted(BY_ID).collect(Collectors.toList());
+        for (int i = 0; i < nodes.size(); i += primitivesPerBlock) {
+            writeNodes(nodes.subList(i, Math.min(nodes.size(), i + primitivesPerBlock)));
+        }
+        // PBF does not allow ways without nodes
+        List<Way> ways = ds.getWays().stream().filter(w -> w.getNodesCount() > 0).sorted(BY_ID).collect(Collectors.toList());
+        for (int i = 0; i < ways.size(); i += primitivesPerBlock) {
+            writeWays(ways.subList(i, Math.min(ways.size(), i + primitivesPerBlock)));
+        }
+        List<Relation> relations = ds.getRelations().stream().sorted(BY_ID).collect(Collectors.toList());
+        for (int i = 0; i < relations.size(); i += primitivesPerBlock) {
+            writeRelations(relations.subList(i, Math.min(relations.size(), i + primitivesPerBlock)));
+        }
+        return file.toByteArray();
+    }
+
+    /**
+     * Write a file with a single data block, e.g. a malformed one
+     * @param primitiveBlock The raw content of the data block, a PrimitiveBlock message
+     * @return The PBF file
+     * @throws IOException if the data could not be compressed
+     */
+    public byte[] write(byte[] primitiveBlock) throws IOException {
+        writeHeader();
+        writeBlob("OSMData", primitiveBlock);
+        return file.toByteArray();
+    }
+
+    private void writeHeader() throws IOException {
+        ProtoBuilder header = new ProtoBuilder();
+        header.string(4, "OsmSchema-V0.6");
+        header.string(4, "DenseNodes");
+        header.string(16, getClass().getSimpleName());
+        writeBlob("OSMHeader", header.toByteArray());
+    }
+
+    private void writeNodes(List<Node> nodes) throws IOException {
+        StringTable strings = new StringTable();
+        long[] ids = new long[nodes.size()];
+        long[] lats = new long[nodes.size()];
+        long[] lons = new long[nodes.size()];
+        List<Long> keysVals = new ArrayList<>();
+        long lastId = 0;
+        long lastLat = 0;
+        long lastLon = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            long lat = Math.round(node.lat() * 1e7);
+            long lon = Math.round(node.lon() * 1e7);
+            ids[i] = node.getUniqueId() - lastId;
+            lats[i] = lat - lastLat;
+            lons[i] = lon - lastLon;
+            lastId = node.getUniqueId();
+            lastLat = lat;
+            lastLon = lon;
+            node.getKeys().forEach((k, v) -> {
+                keysVals.add((long) strings.get(k));
+                keysVals.add((long) strings.get(v));
+            });
+            keysVals.add(0L);
+        }
+        ProtoBuilder dense = new ProtoBuilder();
+        dense.packedSInt(1, ids);
+        dense.packedSInt(8, lats);
+        dense.packedSInt(9, lons);
+        dense.packed(10, keysVals.stream().mapToLong(Long::longValue).toArray());
+        ProtoBuilder group = new ProtoBuilder();
+        group.message(2, dense);
+        group.count = nodes.size();
+        writeBlock(strings, group);
+    }
+
+    private void writeWays(List<Way> ways) throws IOException {
+        StringTable strings = new StringTable();
+        ProtoBuilder group = new ProtoBuilder();
+        for (Way way : ways) {
+            ProtoBuilder w = primitive(way, strings);
+            long[] refs = new long[way.getNodesCount()];
+            long last = 0;
+            for (int i = 0; i < refs.length; i++) {
+                long id = way.getNodeId(i);
+                refs[i] = id - last;
+                last = id;
+            }
+            w.packedSInt(8, refs);
+            group.message(3, w);
+            group.count++;
+        }
+        writeBlock(strings, group);
+    }
+
+    private void writeRelations(List<Relation> relations) throws IOException {
+        StringTable strings = new StringTable();
+        ProtoBuilder group = new ProtoBuilder();
+        for (Relation relation : relations) {
+            ProtoBuilder r = primitive(relation, strings);
+            long[] roles = new long[relation.getMembersCount()];
+            long[] memids = new long[roles.length];
+            long[] types = new long[roles.length];
+            long last = 0;
+            for (int i = 0; i < roles.length; i++) {
+                RelationMember member = relation.getMember(i);
+                roles[i] = strings.get(member.getRole());
+                memids[i] = member.getUniqueId() - last;
+                last = member.getUniqueId();
+                types[i] = member.getType().ordinal();
+            }
+            r.packed(8, roles);
+            r.packedSInt(9, memids);
+            r.packed(10, types);
+            group.message(4, r);
+            group.count++;
+        }
+        writeBlock(strings, group);
+    }
+
+    private static ProtoBuilder primitive(OsmPrimitive primitive, StringTable strings) throws IOException {
+        ProtoBuilder builder = new ProtoBuilder();
+        builder.varInt(1, primitive.getUniqueId());
+        long[] keys = new long[primitive.getNumKeys()];
+        long[] values = new long[keys.length];
+        int i = 0;
+        for (Map.Entry<String, String> tag : primitive.getKeys().entrySet()) {
+            keys[i] = strings.get(tag.getKey());
+            values[i++] = strings.get(tag.getValue());
+        }
+        builder.packed(2, keys);
+        builder.packed(3, values);
+        return builder;
+    }
+
+    private void writeBlock(StringTable strings, ProtoBuilder group) throws IOException {
+        ProtoBuilder stringTable = new ProtoBuilder();
+        for (String s : strings.strings.keySet()) {
+            stringTable.string(1, s);
+        }
+        ProtoBuilder block = new ProtoBuilder();
+        block.message(1, stringTable);
+        block.message(2, group);
+        writeBlob("OSMData", block.toByteArray());
+        count += group.count;
+    }
+
+    private void writeBlob(String type, byte[] raw) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+            deflater.write(raw);
+        }
+        ProtoBuilder blob = new ProtoBuilder();
+        blob.varInt(2, raw.length);
+        blob.bytes(3, compressed.toByteArray());
+        byte[] blobBytes = blob.toByteArray();
+        ProtoBuilder blobHeader = new ProtoBuilder();
+        blobHeader.string(1, type);
+        blobHeader.varInt(3, blobBytes.length);
+        byte[] headerBytes = blobHeader.toByteArray();
+        DataOutputStream out = new DataOutputStream(file);
+        out.writeInt(headerBytes.length);
+        out.write(headerBytes);
+        out.write(blobBytes);
+    }
+
+    /**
+     * The string table of a block. Index 0 is reserved.
+     */
+    private static final class StringTable {
+        private final Map<String, Integer> strings = new LinkedHashMap<>();
+
+        StringTable() {
+            strings.put("", 0);
+        }
+
+        int get(String s) {
+            return strings.computeIfAbsent(s, ignored -> strings.size());
+        }
+    }
+
+    /**
+     * Builds a protobuf message
+     */
+    private static final class ProtoBuilder {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int count;
+
+        void varInt(int field, long value) {
+            tag(field, 0);
+            writeVarInt(out, value);
+        }
+
+        void string(int field, String value) throws IOException {
+            bytes(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void message(int field, ProtoBuilder message) throws IOException {
+            bytes(field, message.toByteArray());
+        }
+
+        void bytes(int field, byte[] value) throws IOException {
+            tag(field, 2);
+            writeVarInt(out, value.length);
+            out.write(value);
+        }
+
+        void packed(int field, long[] values) throws IOException {
+            ByteArrayOutputStream packed = new ByteArrayOutputStream();
+            for (long value : values) {
+                writeVarInt(packed, value);
+            }
+            bytes(field, packed.toByteArray());
+        }
+
+        void packedSInt(int field, long[] values) throws IOException {
+            long[] encoded = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                encoded[i] = (values[i] << 1) ^ (values[i] >> 63);
+            }
+            packed(field, encoded);
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+
+        private void tag(int field, int wireType) {
+            writeVarInt(out, ((long) field << 3) | wireType);
+        }
+
+        private static void writeVarInt(ByteArrayOutputStream stream, long value) {
+            long v = value;
+            while ((v & ~0x7FL) != 0) {
+                stream.write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            stream.write((int) v);
+        }
+    }
+}